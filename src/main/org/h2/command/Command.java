@@ -174,6 +174,21 @@ public abstract class Command implements CommandInterface {
      */
     public LocalResult executeQueryLocal(final int maxrows) throws SQLException {
 
+        return executeQueryLocal(maxrows, false);
+    }
+
+    /**
+     * Execute a query and return a local result set.
+     * 
+     * @param maxrows
+     *            the maximum number of rows to return
+     * @param partOfABiggerThing
+     *            true if the query is run on behalf of another statement, in which case the locks it acquires are kept until that statement
+     *            finishes
+     * @return the local result set
+     */
+    public LocalResult executeQueryLocal(final int maxrows, final boolean partOfABiggerThing) throws SQLException {
+
         startTime = System.currentTimeMillis();
         final Database database = session.getDatabase();
         session.waitIfExclusiveModeEnabled();
@@ -183,7 +198,7 @@ public abstract class Command implements CommandInterface {
             try {
                 database.checkPowerOff();
                 session.setCurrentCommand(this, startTime);
-                return query(maxrows);
+                return partOfABiggerThing ? query(maxrows, true) : query(maxrows);
             }
             catch (final Exception e) {
                 e.printStackTrace();
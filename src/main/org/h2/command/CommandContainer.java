@@ -14,6 +14,8 @@ import org.h2.util.ObjectArray;
 import org.h2.value.Value;
 import org.h2o.db.query.TableProxyManager;
 import org.h2o.db.query.locking.LockException;
+import org.h2o.db.query.locking.LockRequest;
+import org.h2o.db.query.locking.OptimisticConflictException;
 import org.h2o.test.fixture.H2OTest;
 
 import uk.ac.standrews.cs.nds.rpc.RPCException;
@@ -116,7 +118,7 @@ public class CommandContainer extends Command {
         try {
             final LocalResult result = prepared.query(maxrows);
             prepared.trace(startTime, result.getRowCount());
-            if (session.getApplicationAutoCommit()) {
+            if (!partOfMultiQueryTransaction && session.getApplicationAutoCommit() && !currentProxyManager.finishQuery(session.getDatabase())) {
                 currentProxyManager.releaseLocksAndUpdateReplicaState(null, true);
 
                 session.completeTransaction();
@@ -127,7 +129,10 @@ public class CommandContainer extends Command {
         catch (final SQLException e) {
             // session.getDatabase().getSchema(session.getCurrentSchemaName()).removeLinkedTable(prepared.table, null);
             e.printStackTrace();
-            currentProxyManager.releaseLocksAndUpdateReplicaState(null, false);
+            if (!partOfMultiQueryTransaction) {
+                // Otherwise the locks are released when the statement this query is part of fails.
+                currentProxyManager.releaseLocksAndUpdateReplicaState(null, false);
+            }
             throw e;
         }
 
@@ -182,6 +187,11 @@ public class CommandContainer extends Command {
                 currentProxyManager.finishTransaction(false, true, session.getDatabase());
                 session.rollback();
 
+                if (e instanceof OptimisticConflictException && singleQuery && session.getApplicationAutoCommit()) {
+                    // Another instance updated the table first. The update has been rolled back, so it can be run again with a lock.
+                    return updateWithLocks(partOfMultiQueryTransaction);
+                }
+
                 throw e;
             }
         }
@@ -224,6 +234,22 @@ public class CommandContainer extends Command {
         return updateCount;
     }
 
+    /**
+     * H2O. Run the update again, acquiring a lock from the Table Manager of every table it updates.
+     */
+    private int updateWithLocks(final boolean partOfMultiQueryTransaction) throws SQLException, RPCException {
+
+        final Boolean optimisticConcurrency = session.getOptimisticConcurrency();
+        session.setOptimisticConcurrency(false);
+
+        try {
+            return update(partOfMultiQueryTransaction);
+        }
+        finally {
+            session.setOptimisticConcurrency(optimisticConcurrency);
+        }
+    }
+
     @Override
     public boolean isReadOnly() {
 
@@ -239,6 +265,9 @@ public class CommandContainer extends Command {
     @Override
     public void acquireLocks() throws SQLException {
 
+        // Read locks from this session's last query may still be waiting to be released. They must go before the session asks for more.
+        session.getDatabase().getReadLockReleaser().awaitRelease(new LockRequest(session));
+
         prepared.acquireLocks(session.getProxyManagerForTransaction());
     }
 
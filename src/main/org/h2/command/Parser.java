@@ -8,6 +8,7 @@ import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.sql.SQLException;
 import java.text.Collator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.Map;
@@ -75,13 +76,20 @@ import org.h2.command.dml.Set;
 import org.h2.command.dml.SetTypes;
 import org.h2.command.dml.TransactionCommand;
 import org.h2.command.dml.Update;
+import org.h2.command.h2o.ApplyRowChanges;
+import org.h2.command.h2o.BulkLoad;
+import org.h2.command.h2o.CreatePartitionedTable;
 import org.h2.command.h2o.CreateReplica;
+import org.h2.command.h2o.DropPartitionedTable;
 import org.h2.command.h2o.DropReplica;
 import org.h2.command.h2o.GetMetaDatReplicationFactor;
 import org.h2.command.h2o.GetReplicationFactor;
 import org.h2.command.h2o.MigrateSystemTable;
 import org.h2.command.h2o.MigrateTableManager;
+import org.h2.command.h2o.PartitionedInsert;
+import org.h2.command.h2o.PartitionedUpdate;
 import org.h2.command.h2o.RecreateTableManager;
+import org.h2.command.h2o.SetConsistencyLevel;
 import org.h2.command.h2o.SetReplicate;
 import org.h2.constant.ErrorCode;
 import org.h2.constant.LocationPreference;
@@ -161,9 +169,13 @@ import org.h2o.db.manager.PersistentSystemTable;
 import org.h2o.db.manager.TableManagerProxy;
 import org.h2o.db.manager.interfaces.ISystemTableMigratable;
 import org.h2o.db.manager.interfaces.ISystemTableReference;
+import org.h2o.db.partitioning.PartitionMethod;
+import org.h2o.db.partitioning.PartitionScheme;
 import org.h2o.db.query.TableProxy;
 import org.h2o.db.query.locking.LockRequest;
 import org.h2o.db.query.locking.LockType;
+import org.h2o.db.replication.ConsistencyLevel;
+import org.h2o.db.replication.ReadConsistency;
 import org.h2o.db.wrappers.DatabaseInstanceWrapper;
 import org.h2o.util.exceptions.MovedException;
 
@@ -246,6 +258,12 @@ public class Parser {
      */
     private final boolean internalQuery;
 
+    /**
+     * H2O. Views created while parsing the current statement to read from the partitions of a partitioned table, mapped to the partition
+     * scheme of that table.
+     */
+    private final Map<Table, PartitionScheme> partitionedTables = new HashMap<Table, PartitionScheme>();
+
     /**
      * 
      * @param session
@@ -364,6 +382,7 @@ public class Parser {
             expectedList = null;
         }
         parameters = new ObjectArray();
+        partitionedTables.clear();
         currentSelect = null;
         currentPrepared = null;
         prepared = null;
@@ -394,6 +413,9 @@ public class Parser {
                     else if (readIf("ANALYZE")) {
                         c = parseAnalyze();
                     }
+                    else if (readIf("APPLY")) {
+                        c = parseApplyRowChanges();
+                    }
                     break;
                 case 'B':
                     if (readIf("BACKUP")) {
@@ -402,6 +424,9 @@ public class Parser {
                     else if (readIf("BEGIN")) {
                         c = parseBegin();
                     }
+                    else if (readIf("BULK")) {
+                        c = parseBulkLoad();
+                    }
                     break;
                 case 'C':
                     if (readIf("COMMIT")) {
@@ -768,12 +793,13 @@ public class Parser {
         return filter.getTable().getColumn(columnName);
     }
 
-    private Update parseUpdate() throws SQLException {
+    private Prepared parseUpdate() throws SQLException {
 
         final Update command = new Update(session, internalQuery);
         currentPrepared = command;
         final int start = lastParseIndex;
         final TableFilter filter = readSimpleTableFilter();
+        final int statementEndStart = lastParseIndex;
         command.setTableFilter(filter);
         read("SET");
         if (readIf("(")) {
@@ -810,11 +836,21 @@ public class Parser {
             }
             while (readIf(","));
         }
+        Expression condition = null;
         if (readIf("WHERE")) {
-            final Expression condition = readExpression();
+            condition = readExpression();
             command.setCondition(condition);
         }
         setSQL(command, "UPDATE", start);
+
+        final PartitionScheme partitionScheme = partitionedTables.get(filter.getTable());
+        if (partitionScheme != null) {
+            if (command.isAssigned(filter.getTable().getColumn(partitionScheme.getColumnName()))) { throw new SQLException("The partition column of a partitioned table can't be updated: " + partitionScheme.getColumnName()); }
+
+            final Prepared partitioned = createPartitionedUpdate("UPDATE", partitionScheme, filter, condition, statementEndStart);
+            setSQL(partitioned, "UPDATE", start);
+            return partitioned;
+        }
         return command;
     }
 
@@ -834,19 +870,28 @@ public class Parser {
         return new TableFilter(session, table, alias, rightsChecked, currentSelect);
     }
 
-    private Delete parseDelete() throws SQLException {
+    private Prepared parseDelete() throws SQLException {
 
         final Delete command = new Delete(session, internalQuery);
         currentPrepared = command;
         final int start = lastParseIndex;
         readIf("FROM");
         final TableFilter filter = readSimpleTableFilter();
+        final int statementEndStart = lastParseIndex;
         command.setTableFilter(filter);
+        Expression condition = null;
         if (readIf("WHERE")) {
-            final Expression condition = readExpression();
+            condition = readExpression();
             command.setCondition(condition);
         }
         setSQL(command, "DELETE", start);
+
+        final PartitionScheme partitionScheme = partitionedTables.get(filter.getTable());
+        if (partitionScheme != null) {
+            final Prepared partitioned = createPartitionedUpdate("DELETE FROM", partitionScheme, filter, condition, statementEndStart);
+            setSQL(partitioned, "DELETE", start);
+            return partitioned;
+        }
         return command;
     }
 
@@ -1046,13 +1091,14 @@ public class Parser {
         currentPrepared = command;
         read("INTO");
         final Table table = readTableOrView();
+        final PartitionScheme partitionScheme = partitionedTables.get(table);
 
         command.setTable(table);
         if (readIf("(")) {
             if (isToken("SELECT") || isToken("FROM")) {
                 command.setQuery(parseSelect());
                 read(")");
-                return command;
+                return partitionScheme == null ? command : new PartitionedInsert(session, partitionScheme, command, internalQuery);
             }
             else {
                 final Column[] columns = parseColumnList(table);
@@ -1088,7 +1134,7 @@ public class Parser {
         else {
             command.setQuery(parseSelect());
         }
-        return command;
+        return partitionScheme == null ? command : new PartitionedInsert(session, partitionScheme, command, internalQuery);
     }
 
     private TableFilter readTableFilter(final boolean fromOuter) throws SQLException {
@@ -1264,17 +1310,23 @@ public class Parser {
             String tableName = readIdentifierWithSchema();
             final DropTable command = new DropTable(session, getSchema(), internalQuery);
             command.setTableName(tableName);
+            boolean singleTable = true;
             while (readIf(",")) {
                 tableName = readIdentifierWithSchema();
                 final DropTable next = new DropTable(session, getSchema(), internalQuery);
                 next.setTableName(tableName);
                 command.addNextDropTable(next);
+                singleTable = false;
             }
             ifExists = readIfExists(ifExists);
             command.setIfExists(ifExists);
             if (readIf("CASCADE")) {
                 readIf("CONSTRAINTS");
             }
+            if (singleTable && !internalQuery && database.isConnected() && !database.getLocalSchema().contains(getSchema().getName())) {
+                final PartitionScheme partitionScheme = lookupPartitionScheme(new TableInfo(tableName, getSchema().getName()), false);
+                if (partitionScheme != null) { return new DropPartitionedTable(session, getSchema(), partitionScheme); }
+            }
             return command;
         }
         else if (readIf("REPLICA")) {
@@ -1891,10 +1943,12 @@ public class Parser {
                 parseSelectSimpleFromPart(command);
             }
         }
+        Expression where = null;
         if (readIf("WHERE")) {
-            final Expression condition = readExpression();
-            command.addCondition(condition);
+            where = readExpression();
+            command.addCondition(where);
         }
+        prunePartitions(command, where);
         // the group by is read for the outer select (or not a select)
         // so that columns that are not grouped can be used
         currentSelect = oldSelect;
@@ -4628,6 +4682,45 @@ public class Parser {
 
             return new SetReplicate(session, allowReplication);
         }
+        else if (readIf("WRITE_QUORUM")) {
+            final SetConsistencyLevel command = parseSetConsistencyLevelTarget();
+            readIfEqualOrTo();
+
+            if (readIf("DEFAULT")) {
+                command.setWriteQuorum(null);
+            }
+            else if (readIf("ALL")) {
+                command.setWriteQuorum(ConsistencyLevel.ALL_REPLICAS);
+            }
+            else {
+                final int writeQuorum = getPositiveInt();
+
+                // 0 is the ALL_REPLICAS sentinel, which is only set with ALL.
+                if (writeQuorum == 0) { throw Message.getInvalidValueException("0", "WRITE_QUORUM"); }
+
+                command.setWriteQuorum(writeQuorum);
+            }
+
+            return command;
+        }
+        else if (readIf("READ_CONSISTENCY")) {
+            final SetConsistencyLevel command = parseSetConsistencyLevelTarget();
+            readIfEqualOrTo();
+
+            if (readIf("DEFAULT")) {
+                command.setReadConsistency(null);
+            }
+            else {
+                try {
+                    command.setReadConsistency(ReadConsistency.valueOf(readAliasIdentifier().toUpperCase()));
+                }
+                catch (final IllegalArgumentException e) {
+                    throw getSyntaxError();
+                }
+            }
+
+            return command;
+        }
         else {
             if (isToken("LOGSIZE")) {
                 // HSQLDB compatibility
@@ -4797,11 +4890,11 @@ public class Parser {
 
                 if (Settings.CHECK_LOCAL_TABLE_VALIDITY_AT_TABLE_MANAGER) {
 
-                    replicaLocations.addAll(tableProxy.getReplicaLocations().keySet());
+                    replicaLocations.addAll(tableProxy.getReadableReplicaLocations(session).keySet());
 
                 }
                 else {
-                    replicaLocations.addAll(tableProxy.getReplicaLocations().keySet());
+                    replicaLocations.addAll(tableProxy.getReadableReplicaLocations(session).keySet());
 
                     //Diagnostic.traceNoEvent(DiagnosticLevel.FULL, "Replica locations for table " + tableName + ": " + PrettyPrinter.toString(replicaLocations));
                 }
@@ -4813,6 +4906,9 @@ public class Parser {
 
             }
             else {
+                final PartitionScheme partitionScheme = lookupPartitionScheme(tableInfo, true);
+                if (partitionScheme != null) { return createPartitionView(partitionScheme, partitionScheme.getAllPartitions()); }
+
                 // It might be a view. Continue on and check.
                 replicaLocations.add(database.getLocalDatabaseInstanceInWrapper());
             }
@@ -5126,6 +5222,132 @@ public class Parser {
         }
     }
 
+    /**
+     * H2O. Find the partition scheme of a table through the System Table.
+     * 
+     * @return the partition scheme, or null if the table is not partitioned.
+     */
+    private PartitionScheme lookupPartitionScheme(final TableInfo tableInfo, final boolean useCache) throws SQLException {
+
+        try {
+            return database.getSystemTableReference().lookupPartitionScheme(tableInfo, useCache);
+        }
+        catch (final RPCException e) {
+            throw new SQLException("Unable to contact the System Table for " + tableInfo + ":: " + e.getMessage());
+        }
+        catch (final MovedException e) {
+            throw new SQLException("Unable to contact the System Table for " + tableInfo + ":: " + e.getMessage());
+        }
+    }
+
+    /**
+     * H2O. Create a view that reads from the given partitions of a partitioned table. The view has the name of the partitioned table, so
+     * it can be used in its place in the rest of the statement.
+     */
+    private TableView createPartitionView(final PartitionScheme partitionScheme, final int... partitions) throws SQLException {
+
+        final Query query = (Query) session.prepare(partitionScheme.getSelectSQL(partitions));
+        final TableView view = TableView.createTempView(session, session.getUser(), partitionScheme.getTableInfo().getTableName(), query, currentSelect);
+        partitionedTables.put(view, partitionScheme);
+        return view;
+    }
+
+    /**
+     * H2O. If a query reads from a single partitioned table and its condition fixes the value of the partition column, read only from the
+     * partition that holds this value. The partitions that are read are recorded in the query, so that grouped queries can be evaluated by
+     * scatter-gather.
+     */
+    private void prunePartitions(final Select command, final Expression condition) throws SQLException {
+
+        final ObjectArray filters = command.getTopFilters();
+        if (filters.size() != 1) { return; }
+
+        final TableFilter filter = (TableFilter) filters.get(0);
+        final PartitionScheme partitionScheme = partitionedTables.get(filter.getTable());
+        if (partitionScheme == null || filter.getJoin() != null) { return; }
+
+        final int partition = condition == null ? -1 : getPartitionForCondition(partitionScheme, filter, condition);
+        if (partition < 0) {
+            command.setPartitionedTable(partitionScheme, partitionScheme.getAllPartitions());
+            return;
+        }
+
+        final TableFilter partitionFilter = new TableFilter(session, createPartitionView(partitionScheme, partition), filter.getTableAlias(), rightsChecked, currentSelect);
+        command.replaceTableFilter(filter, partitionFilter);
+        command.setPartitionedTable(partitionScheme, new int[]{partition});
+    }
+
+    /**
+     * H2O. Create the statement that runs an UPDATE or DELETE on each partition of a partitioned table that may hold affected rows.
+     * 
+     * @param statementStart
+     *            the start of the statement, up to the table name.
+     * @param statementEndStart
+     *            the position in the SQL of the first token after the table name and alias.
+     */
+    private Prepared createPartitionedUpdate(final String statementStart, final PartitionScheme partitionScheme, final TableFilter filter, final Expression condition, final int statementEndStart) throws SQLException {
+
+        final int partition = condition == null ? -1 : getPartitionForCondition(partitionScheme, filter, condition);
+        final int[] partitions = partition < 0 ? partitionScheme.getAllPartitions() : new int[]{partition};
+        final String statementEnd = originalSQL.substring(statementEndStart, lastParseIndex).trim();
+
+        return new PartitionedUpdate(session, partitionScheme, partitions, statementStart, quoteIdentifier(filter.getTableAlias()), statementEnd, internalQuery);
+    }
+
+    /**
+     * H2O. Find the partition holding every row that satisfies the given condition.
+     * 
+     * @return the partition number, or -1 if the condition doesn't fix the partition column to a constant value.
+     */
+    private int getPartitionForCondition(final PartitionScheme partitionScheme, final TableFilter filter, final Expression condition) throws SQLException {
+
+        final Expression key = findPartitionKey(condition, partitionScheme.getColumnName(), filter.getTableAlias());
+        if (key == null) { return -1; }
+
+        final Column column = filter.getTable().getColumn(partitionScheme.getColumnName());
+        final Value value = key.optimize(session).getValue(session).convertTo(column.getType());
+
+        return partitionScheme.getPartition(value, database);
+    }
+
+    /**
+     * H2O. Look for a conjunct of the form <code>column = constant</code> on the partition column.
+     * 
+     * @return the constant expression, or null if there is no such conjunct.
+     */
+    private Expression findPartitionKey(final Expression condition, final String columnName, final String tableAlias) {
+
+        if (condition instanceof ConditionAndOr) {
+            final ConditionAndOr andOr = (ConditionAndOr) condition;
+            if (andOr.getAndOrType() != ConditionAndOr.AND) { return null; }
+
+            final Expression key = findPartitionKey(andOr.getExpression(true), columnName, tableAlias);
+            return key != null ? key : findPartitionKey(andOr.getExpression(false), columnName, tableAlias);
+        }
+        else if (condition instanceof Comparison) {
+            final Comparison comparison = (Comparison) condition;
+            if (comparison.getCompareType() != Comparison.EQUAL) { return null; }
+
+            final Expression left = comparison.getExpression(true);
+            final Expression right = comparison.getExpression(false);
+
+            if (isColumn(left, columnName, tableAlias) && right.isConstant()) { return right; }
+            if (isColumn(right, columnName, tableAlias) && left.isConstant()) { return left; }
+        }
+
+        return null;
+    }
+
+    private static boolean isColumn(final Expression expression, final String columnName, final String tableAlias) {
+
+        if (!(expression instanceof ExpressionColumn)) { return false; }
+
+        final ExpressionColumn column = (ExpressionColumn) expression;
+        final String alias = column.getOriginalTableAliasName();
+
+        return columnName.equals(column.getOriginalColumnName()) && (alias == null || alias.equals(tableAlias));
+    }
+
     private Sequence readSequence() throws SQLException {
 
         // same algorithm than readTableOrView
@@ -5521,6 +5743,24 @@ public class Parser {
         return null;
     }
 
+    /**
+     * Parse the optional table name of a SET WRITE_QUORUM or SET READ_CONSISTENCY command.
+     * 
+     * <p>Syntax: SET { WRITE_QUORUM | READ_CONSISTENCY } [ FOR tableName ] ...
+     * 
+     * @return a command applying to the given table, or to the current session if no table was specified.
+     */
+    private SetConsistencyLevel parseSetConsistencyLevelTarget() throws SQLException {
+
+        if (readIf("FOR")) {
+            final String tableName = readIdentifierWithSchema();
+            final Schema schema = getSchema();
+            return new SetConsistencyLevel(session, schema, tableName);
+        }
+
+        return new SetConsistencyLevel(session, null, null);
+    }
+
     /**
      * @return
      * @throws SQLException
@@ -5547,6 +5787,35 @@ public class Parser {
         }
     }
 
+    /**
+     * H2O. APPLY ROWS TO tableName 'changes'. Only accepted in internal queries, sent between instances.
+     */
+    private Prepared parseApplyRowChanges() throws SQLException {
+
+        if (!internalQuery) { throw Message.getUnsupportedException(); }
+
+        read("ROWS");
+        read("TO");
+        final String tableName = readIdentifierWithSchema();
+        final Schema schema = getSchema();
+        final String changes = readString();
+        return new ApplyRowChanges(session, schema, tableName, changes);
+    }
+
+    /**
+     * H2O. BULK LOAD INTO tableName FROM 'fileName'
+     */
+    private Prepared parseBulkLoad() throws SQLException {
+
+        read("LOAD");
+        read("INTO");
+        final String tableName = readIdentifierWithSchema();
+        final Schema schema = getSchema();
+        read("FROM");
+        final String fileName = readString();
+        return new BulkLoad(session, schema, tableName, fileName);
+    }
+
     /**
      * @return
      * @throws SQLException
@@ -5816,7 +6085,7 @@ public class Parser {
 
     }
 
-    private CreateTable parseCreateTable(final boolean temp, boolean globalTemp, final boolean persistent) throws SQLException {
+    private Prepared parseCreateTable(final boolean temp, boolean globalTemp, final boolean persistent) throws SQLException {
 
         final boolean ifNotExists = readIfNoExists();
         final String tableName = readIdentifierWithSchema();
@@ -5834,10 +6103,14 @@ public class Parser {
         command.setIfNotExists(ifNotExists);
         command.setTableName(tableName);
         command.setComment(readCommentIf());
+        final ObjectArray columns = new ObjectArray();
+        int definitionStart = -1;
+        int definitionEnd = -1;
         if (readIf("AS")) {
             command.setQuery(parseSelect());
         }
         else {
+            definitionStart = lastParseIndex;
             read("(");
             if (!readIf(")")) {
                 do {
@@ -5859,6 +6132,7 @@ public class Parser {
                             command.addConstraintCommand(pk);
                         }
                         command.addColumn(column);
+                        columns.add(column);
                         String constraintName = null;
                         if (readIf("CONSTRAINT")) {
                             constraintName = readColumnIdentifier();
@@ -5907,10 +6181,18 @@ public class Parser {
                 }
                 while (readIfMore());
             }
+            definitionEnd = lastParseIndex;
             if (readIf("AS")) {
                 command.setQuery(parseSelect());
+                definitionEnd = -1;
             }
         }
+        if (readIf("PARTITION")) {
+            read("BY");
+            if (temp || definitionEnd < 0) { throw Message.getUnsupportedException(); }
+            final String tableDefinition = originalSQL.substring(definitionStart, definitionEnd).trim();
+            return parsePartitionBy(schema, tableName, tableDefinition, columns, ifNotExists);
+        }
         if (temp) {
             if (readIf("ON")) {
                 read("COMMIT");
@@ -5932,6 +6214,61 @@ public class Parser {
         return command;
     }
 
+    /**
+     * H2O. Parse the PARTITION BY clause of a CREATE TABLE statement, after the keywords PARTITION BY.
+     * 
+     * @param tableDefinition
+     *            the column and constraint definitions of the table, including the enclosing brackets.
+     * @param columns
+     *            the columns of the table.
+     */
+    private CreatePartitionedTable parsePartitionBy(final Schema schema, final String tableName, final String tableDefinition, final ObjectArray columns, final boolean ifNotExists) throws SQLException {
+
+        final PartitionMethod method = readIf("HASH") ? PartitionMethod.HASH : null;
+        if (method == null) {
+            read("RANGE");
+        }
+        read("(");
+        final String columnName = readColumnIdentifier();
+        read(")");
+
+        Column partitionColumn = null;
+        for (int i = 0; i < columns.size(); i++) {
+            final Column column = (Column) columns.get(i);
+            if (column.getName().equals(columnName)) {
+                partitionColumn = column;
+            }
+        }
+        if (partitionColumn == null) { throw Message.getSQLException(ErrorCode.COLUMN_NOT_FOUND_1, columnName); }
+
+        final TableInfo tableInfo = new TableInfo(tableName, schema.getName());
+
+        if (method == PartitionMethod.HASH) {
+            read("PARTITIONS");
+            final int numberOfPartitions = getPositiveInt();
+            if (numberOfPartitions < 1) { throw Message.getInvalidValueException("" + numberOfPartitions, "PARTITIONS"); }
+            return new CreatePartitionedTable(session, schema, PartitionScheme.createHashScheme(tableInfo, columnName, numberOfPartitions), tableDefinition, ifNotExists);
+        }
+
+        read("VALUES");
+        read("LESS");
+        read("THAN");
+        read("(");
+        final ObjectArray bounds = new ObjectArray();
+        Value previous = null;
+        do {
+            final Value bound = readExpression().optimize(session).getValue(session).convertTo(partitionColumn.getType());
+            if (previous != null && database.compareTypeSave(previous, bound) >= 0) { throw Message.getInvalidValueException(bound.getString(), "VALUES LESS THAN"); }
+            bounds.add(bound.getString());
+            previous = bound;
+        }
+        while (readIfMore());
+
+        final String[] upperBounds = new String[bounds.size()];
+        bounds.toArray(upperBounds);
+        return new CreatePartitionedTable(session, schema, PartitionScheme.createRangeScheme(tableInfo, columnName, upperBounds), tableDefinition, ifNotExists);
+    }
+
     private int getCompareType(final int tokenType) {
 
         switch (tokenType) {
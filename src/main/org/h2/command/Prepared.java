@@ -7,8 +7,11 @@ package org.h2.command;
 import java.sql.SQLException;
 import java.util.Set;
 
+import org.h2.command.h2o.ApplyRowChanges;
 import org.h2.constant.ErrorCode;
 import org.h2.constant.SysProperties;
+import org.h2.constraint.Constraint;
+import org.h2.constraint.ConstraintReferential;
 import org.h2.engine.Database;
 import org.h2.engine.Session;
 import org.h2.expression.Comparison;
@@ -21,9 +24,12 @@ import org.h2.index.Index;
 import org.h2.jdbc.JdbcSQLException;
 import org.h2.message.Message;
 import org.h2.result.LocalResult;
+import org.h2.table.Column;
 import org.h2.table.Table;
 import org.h2.util.ObjectArray;
+import org.h2.value.DataType;
 import org.h2.value.Value;
+import org.h2o.autonomic.settings.Settings;
 import org.h2o.db.query.TableProxy;
 import org.h2o.db.query.TableProxyManager;
 import org.h2o.db.query.locking.LockRequest;
@@ -38,6 +44,11 @@ import uk.ac.standrews.cs.nds.util.ErrorHandling;
  */
 public abstract class Prepared {
 
+    /**
+     * H2O. Returned by {@link #updateAndShipRows(String)} when a statement changed too many rows for them to be sent to the other replicas.
+     */
+    protected static final int ROWS_NOT_SHIPPED = -1;
+
     /**
      * The session.
      */
@@ -217,6 +228,16 @@ public abstract class Prepared {
         this.command = command;
     }
 
+    /**
+     * H2O. Get the command.
+     *
+     * @return the command, or null if this statement is part of another statement (for example, a subquery)
+     */
+    public Command getCommand() {
+
+        return command;
+    }
+
     /**
      * Check if this object is a query.
      * 
@@ -607,6 +628,102 @@ public abstract class Prepared {
         }
     }
 
+    /**
+     * H2O. Whether the rows changed by this statement are sent to the other replicas of its table, rather than the statement itself (see the
+     * ROW_BASED_REPLICATION setting). The statement must be executed here first, so there has to be a local replica. Tables whose changes
+     * may cascade to other tables, that have triggers or large objects, or that have no unique index through which changed rows can be found,
+     * are replicated by statement, as are statements run without an undo log, whose changes couldn't be undone if there were too many to
+     * send.
+     */
+    protected boolean isRowBasedReplication() {
+
+        if (!supportsRowBasedReplication() || tableProxy == null || tableProxy.getReplicaLocations() == null) { return false; }
+
+        final Settings settings = session.getDatabase().getDatabaseSettings();
+
+        if (settings == null || !Boolean.parseBoolean(settings.get("ROW_BASED_REPLICATION")) || !session.getUndoLogEnabled() || table.hasTriggers()) { return false; }
+
+        for (final Column column : table.getColumns()) {
+            if (DataType.isLargeObject(column.getType())) { return false; }
+        }
+
+        if (ApplyRowChanges.findUniqueIndex(table) == null) { return false; }
+
+        final ObjectArray constraints = table.getConstraints();
+        for (int i = 0; constraints != null && i < constraints.size(); i++) {
+            final Constraint constraint = (Constraint) constraints.get(i);
+            if (constraint instanceof ConstraintReferential && ((ConstraintReferential) constraint).getRefTable() == table) { return false; }
+        }
+
+        for (final DatabaseInstanceWrapper replica : tableProxy.getReplicaLocations().keySet()) {
+            if (session.getDatabase().getID().equals(replica.getURL())) { return true; }
+        }
+
+        return false;
+    }
+
+    /**
+     * H2O. The most rows a statement may change and still have them sent to the other replicas.
+     */
+    private int getRowBasedReplicationLimit() {
+
+        final String limit = session.getDatabase().getDatabaseSettings().get("ROW_BASED_REPLICATION_LIMIT");
+
+        return limit == null ? Integer.MAX_VALUE : Integer.parseInt(limit);
+    }
+
+    /**
+     * H2O. Whether this statement can be executed on the local replica of its table alone, by {@link #updateLocalReplica()}. Overridden by
+     * statements that support row-based replication.
+     */
+    protected boolean supportsRowBasedReplication() {
+
+        return false;
+    }
+
+    /**
+     * H2O. Execute this statement on the local replica, then send the rows it changed to the other replicas, where they are applied without
+     * the statement being executed again (see {@link ApplyRowChanges}).
+     * 
+     * @param transactionName
+     *            the transaction this statement is part of
+     * @return the update count, or {@link #ROWS_NOT_SHIPPED} if the statement changed more rows than the ROW_BASED_REPLICATION_LIMIT setting
+     *         allows, in which case its changes have been undone and it must be replicated by statement
+     */
+    protected int updateAndShipRows(final String transactionName) throws SQLException {
+
+        int count;
+        ObjectArray changes;
+
+        final int savepoint = session.getLogId();
+
+        session.startCapturingRowChanges(getRowBasedReplicationLimit());
+        try {
+            count = updateLocalReplica();
+        }
+        finally {
+            changes = session.stopCapturingRowChanges();
+        }
+
+        if (changes == null) {
+            // Too many rows changed to send them all. They are undone here, and the statement is sent to every replica instead.
+            session.rollbackTo(savepoint, false);
+            return ROWS_NOT_SHIPPED;
+        }
+
+        return tableProxy.executeUpdate(ApplyRowChanges.getSQL(session.getDatabase(), table, changes, count), transactionName, session, count);
+    }
+
+    /**
+     * H2O. Execute this statement on the local replica of its table only. Only called if {@link #supportsRowBasedReplication()}.
+     * 
+     * @return the update count
+     */
+    protected int updateLocalReplica() throws SQLException {
+
+        throw Message.getUnsupportedException();
+    }
+
     public void setTable(final Table table) {
 
         this.table = table;
@@ -631,6 +748,10 @@ public abstract class Prepared {
 
             tableProxy = tableProxyManager.getTableProxy(table.getFullName());
 
+            if (tableProxy == null && canUpdateOptimistically(tableProxyManager, table, lockRequested)) {
+                tableProxy = session.getDatabase().getTableProxyCache().getOptimisticTableProxy(table.getFullName(), new LockRequest(session), session);
+            }
+
             if (!lockAlreadyGranted(tableProxy)) {
                 tableProxy = TableProxy.getTableProxyAndLock(table, lockRequested, new LockRequest(session), session.getDatabase());
             }
@@ -642,6 +763,17 @@ public abstract class Prepared {
         }
     }
 
+    /**
+     * H2O. Whether this update can be executed without first acquiring a lock from the Table Manager. This is only done for updates that
+     * H2O commits itself, because the Table Manager may reject the transaction when it commits, and for at most one table in each
+     * transaction, so that only one Table Manager has to agree to the commit. Tables on which this instance has kept a lock are updated
+     * with that lock instead.
+     */
+    private boolean canUpdateOptimistically(final TableProxyManager tableProxyManager, final Table table, final LockType lockRequested) {
+
+        return lockRequested == LockType.WRITE && session.getApplicationAutoCommit() && session.isOptimisticConcurrency() && !tableProxyManager.hasOptimisticUpdate() && !session.getDatabase().getStickyLockCache().isKept(table.getFullName());
+    }
+
     /**
      * Should this command be propagated to multiple sites. This method will be overridden if true.
      */
@@ -67,6 +67,11 @@ public class Delete extends Prepared {
         if (isRegularTable() && (tableProxy.getNumberOfReplicas() > 1 || !isReplicaLocal(tableProxy))) {
             if (tableProxy == null) { throw new SQLException("Internal Error: Query Proxy was null."); }
 
+            if (isRowBasedReplication()) {
+                final int count = updateAndShipRows(transactionName);
+                if (count != ROWS_NOT_SHIPPED) { return count; }
+            }
+
             String sql = null;
             if (isPreparedStatement()) {
                 sql = adjustForPreparedStatement();
@@ -78,6 +83,18 @@ public class Delete extends Prepared {
             return tableProxy.executeUpdate(sql, transactionName, session);
         }
 
+        return updateLocalReplica();
+    }
+
+    @Override
+    protected boolean supportsRowBasedReplication() {
+
+        return true;
+    }
+
+    @Override
+    protected int updateLocalReplica() throws SQLException {
+
         table.fireBefore(session);
         table.lock(session, true, false);
         final RowList rows = new RowList(session);
@@ -0,0 +1,356 @@
+/*
+ * Copyright 2004-2009 H2 Group. Multiple-Licensed under the H2 License, Version 1.0, and under the Eclipse Public License, Version 1.0
+ * (http://h2database.com/html/license.html). Initial Developer: H2 Group
+ */
+package org.h2.command.dml;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import org.h2.command.Command;
+import org.h2.command.Parser;
+import org.h2.engine.Constants;
+import org.h2.engine.Session;
+import org.h2.expression.Aggregate;
+import org.h2.expression.Alias;
+import org.h2.expression.Comparison;
+import org.h2.expression.ConditionAndOr;
+import org.h2.expression.Expression;
+import org.h2.expression.ExpressionColumn;
+import org.h2.expression.Operation;
+import org.h2.expression.ValueExpression;
+import org.h2.result.LocalResult;
+import org.h2.table.TableFilter;
+import org.h2.table.TableLink;
+import org.h2.util.ObjectArray;
+import org.h2.util.ValueHashMap;
+import org.h2.value.DataType;
+import org.h2.value.Value;
+import org.h2.value.ValueArray;
+import org.h2o.db.partitioning.PartitionScheme;
+
+import uk.ac.standrews.cs.nds.util.ErrorHandling;
+
+/**
+ * H2O. Evaluates a grouped query over a linked table or a partitioned table by scatter-gather.
+ *
+ * <p>Rather than streaming every row of the table to this instance, a query computing partial aggregates for each group is sent to every
+ * instance holding part of the data: the linked table's instance, or the table for each partition that may hold matching rows. Only the
+ * partial results for each group are returned, and these are merged into the aggregates of the original query.
+ *
+ * <p>This is only possible when the condition, the GROUP BY expressions and the arguments of the aggregates can be evaluated remotely, and
+ * every other expression is built from COUNT, SUM, MIN, MAX and AVG aggregates (without DISTINCT). Other queries stream rows as before.
+ *
+ * @author Angus Macdonald (angus@cs.st-andrews.ac.uk)
+ */
+class DistributedAggregation {
+
+    private final Session session;
+
+    /**
+     * The GROUP BY expressions, in the order of the group key.
+     */
+    private final Expression[] groupExpressions;
+
+    private final Aggregate[] aggregates;
+
+    /**
+     * The position in each partial result row of the first partial result for each aggregate.
+     */
+    private final int[] offsets;
+
+    /**
+     * The select list of the partial query.
+     */
+    private final String partialSelectList;
+
+    /**
+     * The condition and GROUP BY clause of the partial query, after the table name and alias.
+     */
+    private final String partialQueryEnd;
+
+    private final TableLink link;
+
+    private final PartitionScheme partitionScheme;
+
+    private final int[] partitions;
+
+    private DistributedAggregation(final Session session, final Expression[] groupExpressions, final List<Aggregate> aggregates, final String tableAlias, final Expression condition, final TableLink link, final PartitionScheme partitionScheme, final int[] partitions) {
+
+        this.session = session;
+        this.groupExpressions = groupExpressions;
+        this.aggregates = aggregates.toArray(new Aggregate[aggregates.size()]);
+        this.link = link;
+        this.partitionScheme = partitionScheme;
+        this.partitions = partitions;
+
+        offsets = new int[this.aggregates.length];
+
+        final StringBuilder selectList = new StringBuilder();
+        final StringBuilder groupBy = new StringBuilder();
+
+        for (final Expression expression : groupExpressions) {
+            if (groupBy.length() > 0) {
+                groupBy.append(", ");
+            }
+            groupBy.append(expression.getSQL());
+        }
+        selectList.append(groupBy);
+
+        int offset = groupExpressions.length;
+        for (int i = 0; i < this.aggregates.length; i++) {
+            offsets[i] = offset;
+            for (final String partial : this.aggregates[i].getPartialResultSQL()) {
+                if (selectList.length() > 0) {
+                    selectList.append(", ");
+                }
+                selectList.append(partial);
+                offset++;
+            }
+        }
+        partialSelectList = selectList.toString();
+
+        final StringBuilder end = new StringBuilder(Parser.quoteIdentifier(tableAlias));
+        if (condition != null) {
+            end.append(" WHERE ").append(condition.getSQL());
+        }
+        if (groupBy.length() > 0) {
+            end.append(" GROUP BY ").append(groupBy);
+        }
+        partialQueryEnd = end.toString();
+    }
+
+    /**
+     * Check whether a grouped query can be evaluated by scatter-gather, and if so prepare to do so.
+     *
+     * @param filter
+     *            the only table filter of the query
+     * @param expressions
+     *            the expressions of the query, including HAVING and hidden ORDER BY expressions
+     * @param groupIndex
+     *            the positions of the GROUP BY expressions, or null if there are none
+     * @param groupByExpression
+     *            which expressions are GROUP BY expressions, or null if there are none
+     * @param condition
+     *            the condition of the query, or null
+     * @param partitionScheme
+     *            the partition scheme of the table, if the filter reads from a partitioned table
+     * @param partitions
+     *            the partitions that may hold matching rows, if the filter reads from a partitioned table
+     * @return the distributed aggregation, or null if the query must be evaluated by reading every row
+     */
+    static DistributedAggregation create(final Session session, final TableFilter filter, final ObjectArray expressions, final int[] groupIndex, final boolean[] groupByExpression, final Expression condition, final PartitionScheme partitionScheme, final int[] partitions) {
+
+        TableLink link = null;
+        if (partitionScheme == null) {
+            if (!(filter.getTable() instanceof TableLink)) { return null; }
+            link = (TableLink) filter.getTable();
+        }
+
+        if (condition != null && !isPushable(condition, filter)) { return null; }
+
+        final Expression[] groupExpressions = new Expression[groupIndex == null ? 0 : groupIndex.length];
+        for (int i = 0; i < groupExpressions.length; i++) {
+            groupExpressions[i] = ((Expression) expressions.get(groupIndex[i])).getNonAliasExpression();
+            if (!isPushable(groupExpressions[i], filter)) { return null; }
+        }
+
+        final List<Aggregate> aggregates = new ArrayList<Aggregate>();
+        for (int i = 0; i < expressions.size(); i++) {
+            if (groupByExpression != null && groupByExpression[i]) {
+                continue;
+            }
+            if (!collectAggregates((Expression) expressions.get(i), filter, aggregates)) { return null; }
+        }
+
+        if (groupExpressions.length == 0 && aggregates.isEmpty()) { return null; }
+
+        return new DistributedAggregation(session, groupExpressions, aggregates, filter.getTableAlias(), condition, link, partitionScheme, partitions);
+    }
+
+    /**
+     * Find the aggregates in an expression that isn't a GROUP BY expression.
+     *
+     * @return false if the expression uses anything other than aggregates that can be computed from partial results, and constants
+     */
+    private static boolean collectAggregates(final Expression expression, final TableFilter filter, final List<Aggregate> aggregates) {
+
+        if (expression instanceof Alias) { return collectAggregates(expression.getNonAliasExpression(), filter, aggregates); }
+
+        if (expression instanceof Aggregate) {
+            final Aggregate aggregate = (Aggregate) expression;
+            if (aggregate.getPartialResultSQL() == null) { return false; }
+            if (aggregate.getExpression() != null && !isPushable(aggregate.getExpression(), filter)) { return false; }
+
+            if (!aggregates.contains(aggregate)) {
+                aggregates.add(aggregate);
+            }
+            return true;
+        }
+
+        if (expression instanceof ValueExpression) { return true; }
+
+        final Expression[] children = getChildren(expression);
+        if (children == null) { return false; }
+
+        for (final Expression child : children) {
+            if (child != null && !collectAggregates(child, filter, aggregates)) { return false; }
+        }
+        return true;
+    }
+
+    /**
+     * Check whether an expression can be evaluated by the instance holding the data. This is the case for columns of the table,
+     * constants, and arithmetic, comparisons and AND/OR of these.
+     */
+    private static boolean isPushable(final Expression expression, final TableFilter filter) {
+
+        if (expression instanceof ExpressionColumn) {
+            final ExpressionColumn column = (ExpressionColumn) expression;
+            return column.getTableFilter() == filter && column.getSchemaName() == null;
+        }
+
+        if (expression instanceof ValueExpression) { return true; }
+
+        final Expression[] children = getChildren(expression);
+        if (children == null) { return false; }
+
+        for (final Expression child : children) {
+            if (child != null && !isPushable(child, filter)) { return false; }
+        }
+        return true;
+    }
+
+    /**
+     * @return the operands of an arithmetic operation, comparison or AND/OR condition, or null for any other expression.
+     */
+    private static Expression[] getChildren(final Expression expression) {
+
+        try {
+            if (expression instanceof Operation) {
+                final Operation operation = (Operation) expression;
+                return new Expression[]{operation.getLeftExpression(), operation.getRightExpression()};
+            }
+        }
+        catch (final SQLException e) {
+            return null;
+        }
+
+        if (expression instanceof Comparison) {
+            final Comparison comparison = (Comparison) expression;
+            return new Expression[]{comparison.getExpression(true), comparison.getExpression(false)};
+        }
+
+        if (expression instanceof ConditionAndOr) {
+            final ConditionAndOr andOr = (ConditionAndOr) expression;
+            return new Expression[]{andOr.getExpression(true), andOr.getExpression(false)};
+        }
+
+        return null;
+    }
+
+    /**
+     * Compute the partial results on every instance holding data, and merge them into the groups of the query.
+     *
+     * @param groups
+     *            the groups of the query, by group key
+     */
+    void query(final ValueHashMap groups) throws SQLException {
+
+        if (link != null) {
+            queryLinkedTable(groups);
+        }
+        else {
+            for (final int partition : partitions) {
+                queryPartition(groups, partition);
+            }
+        }
+    }
+
+    /**
+     * Run the partial query on the instance holding a linked table.
+     */
+    private void queryLinkedTable(final ValueHashMap groups) throws SQLException {
+
+        final String sql = getPartialSQL(link.getQualifiedTable()) + Constants.INTERNAL_FLAG;
+
+        synchronized (link.getConnection()) {
+            try {
+                final PreparedStatement prep = link.getPreparedStatement(sql, true);
+                final ResultSet rs = prep.executeQuery();
+                final ResultSetMetaData meta = rs.getMetaData();
+
+                final int[] types = new int[meta.getColumnCount()];
+                for (int i = 0; i < types.length; i++) {
+                    types[i] = i < groupExpressions.length ? groupExpressions[i].getType() : DataType.convertSQLTypeToValueType(meta.getColumnType(i + 1));
+                }
+
+                while (rs.next()) {
+                    final Value[] row = new Value[types.length];
+                    for (int i = 0; i < row.length; i++) {
+                        row[i] = DataType.readValue(session, rs, i + 1, types[i]);
+                    }
+                    merge(groups, row);
+                }
+
+                rs.close();
+                link.reusePreparedStatement(prep, sql);
+            }
+            catch (final SQLException e) {
+                ErrorHandling.exceptionError(e, "Failed to compute partial aggregates via linked table on " + link.getUrl());
+                session.getDatabase().clearTableLinkCache();
+                throw link.wrapException(sql, e);
+            }
+        }
+    }
+
+    /**
+     * Run the partial query on a partition. If the partition is remote, it is read through a linked table, so the partial query is itself
+     * sent to the instance holding the partition. The query is run as a command, so it takes a read lock on the partition through its Table
+     * Manager, and holds it until the enclosing query finishes.
+     */
+    private void queryPartition(final ValueHashMap groups, final int partition) throws SQLException {
+
+        final Command command = session.prepareLocal(getPartialSQL(partitionScheme.getPartitionTableInfo(partition).getFullTableName()));
+        final LocalResult result = command.executeQueryLocal(0, true);
+
+        while (result.next()) {
+            merge(groups, result.currentRow());
+        }
+
+        result.close();
+        command.close();
+    }
+
+    private String getPartialSQL(final String tableName) {
+
+        return "SELECT " + partialSelectList + " FROM " + tableName + " " + partialQueryEnd;
+    }
+
+    /**
+     * Merge a row of partial results into the group it belongs to.
+     */
+    private void merge(final ValueHashMap groups, final Value[] row) throws SQLException {
+
+        final Value[] keyValues = new Value[groupExpressions.length];
+        for (int i = 0; i < keyValues.length; i++) {
+            keyValues[i] = row[i].convertTo(groupExpressions[i].getType());
+        }
+        final Value key = ValueArray.get(keyValues);
+
+        HashMap group = (HashMap) groups.get(key);
+        if (group == null) {
+            group = new HashMap();
+            groups.put(key, group);
+        }
+
+        for (int i = 0; i < aggregates.length; i++) {
+            aggregates[i].mergePartialResult(session, group, row, offsets[i]);
+        }
+    }
+}
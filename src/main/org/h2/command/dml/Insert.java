@@ -14,6 +14,7 @@ import org.h2.constant.ErrorCode;
 import org.h2.engine.Right;
 import org.h2.engine.Session;
 import org.h2.expression.Expression;
+import org.h2.expression.ExpressionVisitor;
 import org.h2.expression.Operation;
 import org.h2.expression.Parameter;
 import org.h2.log.UndoLogRecord;
@@ -23,12 +24,16 @@ import org.h2.result.Row;
 import org.h2.table.Column;
 import org.h2.util.ObjectArray;
 import org.h2.value.Value;
+import org.h2o.autonomic.settings.Settings;
 import org.h2o.db.id.TableInfo;
 import org.h2o.db.query.TableProxyManager;
 import org.h2o.db.query.asynchronous.CommitResult;
 import org.h2o.db.query.locking.LockType;
 import org.h2o.test.AsynchronousTests;
 
+import uk.ac.standrews.cs.nds.util.Diagnostic;
+import uk.ac.standrews.cs.nds.util.DiagnosticLevel;
+
 /**
  * This class represents the statement INSERT
  */
@@ -74,6 +79,30 @@ public class Insert extends Prepared {
         this.query = query;
     }
 
+    /**
+     * @return the columns being inserted into, or null if the statement has not been prepared and no columns were named.
+     */
+    public Column[] getColumns() {
+
+        return columns;
+    }
+
+    /**
+     * @return the list of rows (each an Expression[]) to insert, or an empty list if the rows come from a query.
+     */
+    public ObjectArray getRows() {
+
+        return list;
+    }
+
+    /**
+     * @return the query returning the rows to insert, or null if the rows are given as values.
+     */
+    public Query getQuery() {
+
+        return query;
+    }
+
     /**
      * Add a row to this merge statement.
      * 
@@ -99,21 +128,21 @@ public class Insert extends Prepared {
     @Override
     public int update(final String transactionName) throws SQLException {
 
-        int count = 0;
-
         session.getUser().checkRight(table, Right.INSERT);
 
         /*
          * (QUERY PROPAGATED TO ALL REPLICAS).
          */
         if (isRegularTable() && (tableProxy.getNumberOfReplicas() > 1 || !isReplicaLocal(tableProxy))) {
-            String sql;
-
-            if (isPreparedStatement()) {
-                sql = adjustForPreparedStatement();
+            if (isRowBasedReplication()) {
+                final int count = updateAndShipRows(transactionName);
+                if (count != ROWS_NOT_SHIPPED) { return count; }
             }
-            else {
-                sql = sqlStatement;
+
+            String sql = isUsingDistributedSequences() && generatesValues() ? getSQLWithGeneratedValues() : null;
+
+            if (sql == null) {
+                sql = isPreparedStatement() ? adjustForPreparedStatement() : sqlStatement;
             }
 
             return tableProxy.executeUpdate(sql, transactionName, session);
@@ -129,6 +158,20 @@ public class Insert extends Prepared {
 
         AsynchronousTests.pauseThreadIfTestingAsynchronousUpdates(table, session.getDatabase().getDatabaseSettings(), session.getDatabase().getID(), getSQL());
 
+        return updateLocalReplica();
+    }
+
+    @Override
+    protected boolean supportsRowBasedReplication() {
+
+        return true;
+    }
+
+    @Override
+    protected int updateLocalReplica() throws SQLException {
+
+        int count = 0;
+
         setCurrentRowNumber(0);
         if (list.size() > 0) {
             count = 0;
@@ -212,6 +255,154 @@ public class Insert extends Prepared {
         return count;
     }
 
+    /**
+     * H2O. Whether sequences are shared by every instance (see the DISTRIBUTED_SEQUENCES setting), in which case a value taken on each
+     * replica would differ.
+     */
+    private boolean isUsingDistributedSequences() {
+
+        final Settings settings = session.getDatabase().getDatabaseSettings();
+
+        return settings != null && Boolean.parseBoolean(settings.get("DISTRIBUTED_SEQUENCES"));
+    }
+
+    /**
+     * H2O. The most rows of an INSERT ... SELECT whose generated values are sent to the other replicas as literals.
+     */
+    private int getGeneratedValuesLimit() {
+
+        final String limit = session.getDatabase().getDatabaseSettings().get("GENERATED_VALUES_LIMIT");
+
+        return limit == null ? Integer.MAX_VALUE : Integer.parseInt(limit);
+    }
+
+    /**
+     * @return true if any of the values inserted aren't given by the statement itself, but are generated when it is executed: values taken
+     *         from sequences (including those of IDENTITY and AUTO_INCREMENT columns) or from other non-deterministic expressions.
+     */
+    private boolean generatesValues() {
+
+        final ExpressionVisitor deterministic = ExpressionVisitor.get(ExpressionVisitor.DETERMINISTIC);
+
+        for (final Column c : table.getColumns()) {
+            final Expression defaultExpression = c.getDefaultExpression();
+            if (c.getSequence() != null || defaultExpression != null && !defaultExpression.isEverything(deterministic)) { return true; }
+        }
+
+        for (int x = 0; x < list.size(); x++) {
+            for (final Expression e : (Expression[]) list.get(x)) {
+                if (e != null && !e.isEverything(deterministic)) { return true; }
+            }
+        }
+
+        return query != null && !query.isEverything(deterministic);
+    }
+
+    /**
+     * Generate the values of each row on this instance, and return an equivalent statement giving every value as a literal. If each replica
+     * generated its own values (taking them from its own copy of a sequence, for example) the replicas would diverge, and values taken from
+     * a sequence shared by every instance would be taken once for each replica. The rows of an INSERT ... SELECT are found by running the
+     * query on this instance. If it returns more rows than the GENERATED_VALUES_LIMIT setting allows, no values are generated, and the
+     * statement is sent as it is, so that a large statement isn't built in memory; each replica then generates its own values.
+     * 
+     * @return an INSERT statement containing the value of every column of each row, or null if the statement should be sent as it is
+     *         because a query returned no rows or too many.
+     */
+    private String getSQLWithGeneratedValues() throws SQLException {
+
+        final Column[] tableColumns = table.getColumns();
+
+        final StringBuilder buff = new StringBuilder("INSERT INTO ");
+        buff.append(table.getSQL());
+        buff.append('(');
+        for (int i = 0; i < tableColumns.length; i++) {
+            if (i > 0) {
+                buff.append(", ");
+            }
+            buff.append(tableColumns[i].getSQL());
+        }
+        buff.append(") VALUES ");
+
+        if (query == null) {
+            for (int x = 0; x < list.size(); x++) {
+                final Expression[] expr = (Expression[]) list.get(x);
+                final Row newRow = table.getTemplateRow();
+                setCurrentRowNumber(x + 1);
+                for (int i = 0; i < columns.length; i++) {
+                    final Column c = columns[i];
+                    final Expression e = expr[i];
+                    if (e != null) {
+                        try {
+                            newRow.setValue(c.getColumnId(), e.optimize(session).getValue(session).convertTo(c.getType()));
+                        }
+                        catch (final SQLException ex) {
+                            throw setRow(ex, x, getSQL(expr));
+                        }
+                    }
+                }
+
+                appendGeneratedRow(buff, newRow, x);
+            }
+        }
+        else {
+            final LocalResult rows = query.query(0);
+            int count = 0;
+
+            try {
+                if (rows.getRowCount() > getGeneratedValuesLimit()) {
+                    Diagnostic.traceNoEvent(DiagnosticLevel.FULL, "INSERT ... SELECT into " + table.getSQL() + " returned " + rows.getRowCount() + " rows, so each replica generates its own values.");
+                    return null;
+                }
+
+                while (rows.next()) {
+                    final Value[] r = rows.currentRow();
+                    final Row newRow = table.getTemplateRow();
+                    setCurrentRowNumber(count + 1);
+                    for (int j = 0; j < columns.length; j++) {
+                        final Column c = columns[j];
+                        try {
+                            newRow.setValue(c.getColumnId(), r[j].convertTo(c.getType()));
+                        }
+                        catch (final SQLException ex) {
+                            throw setRow(ex, count + 1, getSQL(r));
+                        }
+                    }
+
+                    appendGeneratedRow(buff, newRow, count);
+                    count++;
+                }
+            }
+            finally {
+                rows.close();
+            }
+
+            // Nothing is inserted, so nothing is generated.
+            if (count == 0) { return null; }
+        }
+
+        return buff.toString();
+    }
+
+    /**
+     * Fill in the default values of a row, taking them from sequences where necessary, and append the row's values to an INSERT statement.
+     */
+    private void appendGeneratedRow(final StringBuilder buff, final Row newRow, final int rowNumber) throws SQLException {
+
+        table.validateConvertUpdateSequence(session, newRow);
+
+        if (rowNumber > 0) {
+            buff.append(", ");
+        }
+        buff.append('(');
+        for (int i = 0; i < table.getColumns().length; i++) {
+            if (i > 0) {
+                buff.append(", ");
+            }
+            buff.append(newRow.getValue(i).getSQL());
+        }
+        buff.append(')');
+    }
+
     private String sessionIdentityAssertionInfo(final Session session, final Session sessionGrantedLock) {
 
         return "Lock requested by session: " + session + " but granted to session: " + sessionGrantedLock + " for query: " + sqlStatement;
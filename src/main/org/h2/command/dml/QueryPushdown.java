@@ -0,0 +1,178 @@
+/*
+ * Copyright 2004-2009 H2 Group. Multiple-Licensed under the H2 License, Version 1.0, and under the Eclipse Public License, Version 1.0
+ * (http://h2database.com/html/license.html). Initial Developer: H2 Group
+ */
+package org.h2.command.dml;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.Iterator;
+
+import org.h2.engine.Constants;
+import org.h2.engine.Database;
+import org.h2.engine.Session;
+import org.h2.expression.Expression;
+import org.h2.expression.ExpressionVisitor;
+import org.h2.expression.Parameter;
+import org.h2.result.LocalResult;
+import org.h2.table.TableLink;
+import org.h2.util.ObjectArray;
+import org.h2.value.DataType;
+import org.h2.value.Value;
+
+import uk.ac.standrews.cs.nds.util.ErrorHandling;
+
+/**
+ * H2O. Executes a whole query on another instance, because every table it reads is a linked table to that instance.
+ *
+ * <p>Otherwise the query would be evaluated here, reading the rows of each table through its linked table. Instead the query's SQL is
+ * sent to the instance holding the tables, and only the rows of its result are returned. The SQL is sent as it was written, because linked
+ * tables have the same names as the tables they link to. This includes joins, grouping, sorting and subqueries, as long as every table in
+ * the subqueries is also on that instance.
+ *
+ * <p>A query isn't pushed down if it reads any other table, view or schema object, if it is a correlated subquery, if it is a SELECT FOR
+ * UPDATE, or if it is a subquery with parameters (whose values are held by the enclosing statement).
+ *
+ * @author Angus Macdonald (angus@cs.st-andrews.ac.uk)
+ */
+class QueryPushdown {
+
+    private final TableLink link;
+
+    private final String sql;
+
+    /**
+     * The version of the database's link connection cache when this pushdown was created.
+     */
+    private final int linkCacheVersion;
+
+    private QueryPushdown(final TableLink link, final String sql, final int linkCacheVersion) {
+
+        this.link = link;
+        this.sql = sql;
+        this.linkCacheVersion = linkCacheVersion;
+    }
+
+    /**
+     * Check whether a query can be executed on another instance, and if so prepare to do so.
+     *
+     * @param select
+     *            the query
+     * @param forUpdate
+     *            if the query is a SELECT FOR UPDATE
+     * @param session
+     *            the session
+     * @return the pushdown, or null if the query must be evaluated here
+     */
+    static QueryPushdown create(final Select select, final boolean forUpdate, final Session session) {
+
+        String sql = select.getSQL();
+        if (sql == null || forUpdate) { return null; }
+
+        sql = sql.trim();
+        if (sql.endsWith(";")) {
+            sql = sql.substring(0, sql.length() - 1);
+        }
+
+        final ObjectArray parameters = select.getParameters();
+        if (parameters != null && parameters.size() > 0) {
+            // Parameter values are only known for the top level statement.
+            if (select.getCommand() == null) { return null; }
+        }
+        else if (!select.isEverything(ExpressionVisitor.get(ExpressionVisitor.INDEPENDENT))) { return null; }
+
+        final ExpressionVisitor visitor = ExpressionVisitor.get(ExpressionVisitor.GET_DEPENDENCIES);
+        visitor.setDependencies(new HashSet());
+        select.isEverything(visitor);
+
+        TableLink link = null;
+        for (final Iterator it = visitor.getDependencies().iterator(); it.hasNext();) {
+            final Object dependency = it.next();
+            if (!(dependency instanceof TableLink)) { return null; }
+
+            final TableLink table = (TableLink) dependency;
+            if (link == null) {
+                link = table;
+            }
+            else if (!link.getUrl().equals(table.getUrl())) { return null; }
+        }
+
+        return link == null ? null : new QueryPushdown(link, sql, session.getDatabase().getTableLinkCacheVersion());
+    }
+
+    /**
+     * Check whether the linked table this pushdown was created with may be stale, because the link connection cache has been cleared since.
+     *
+     * @param database
+     *            the database
+     * @return true if the pushdown must be created again
+     */
+    boolean isStale(final Database database) {
+
+        return database.getTableLinkCacheVersion() != linkCacheVersion;
+    }
+
+    /**
+     * Execute the query on the instance holding its tables.
+     *
+     * @param session
+     *            the session
+     * @param expressions
+     *            the expressions of the query
+     * @param visibleColumnCount
+     *            the number of columns in the result
+     * @param parameters
+     *            the parameters of the query
+     * @param limit
+     *            the maximum number of rows to return, or 0 for no limit
+     * @return the result
+     */
+    LocalResult query(final Session session, final ObjectArray expressions, final int visibleColumnCount, final ObjectArray parameters, final int limit) throws SQLException {
+
+        final LocalResult result = new LocalResult(session, expressions, visibleColumnCount);
+        final String statement = sql + Constants.INTERNAL_FLAG;
+
+        synchronized (link.getConnection()) {
+            try {
+                final PreparedStatement prep = link.getPreparedStatement(statement, true);
+                for (int i = 0; parameters != null && i < parameters.size(); i++) {
+                    ((Parameter) parameters.get(i)).getParamValue().set(prep, i + 1);
+                }
+                prep.setMaxRows(limit);
+
+                final ResultSet rs = prep.executeQuery();
+                while (rs.next()) {
+                    final Value[] row = new Value[visibleColumnCount];
+                    for (int i = 0; i < visibleColumnCount; i++) {
+                        final Expression expression = (Expression) expressions.get(i);
+                        row[i] = DataType.readValue(session, rs, i + 1, expression.getType());
+                    }
+                    result.addRow(row);
+                }
+
+                rs.close();
+                link.reusePreparedStatement(prep, statement);
+            }
+            catch (final SQLException e) {
+                ErrorHandling.exceptionError(e, "Failed to execute query on " + link.getUrl());
+                session.getDatabase().clearTableLinkCache();
+                throw link.wrapException(sql, e);
+            }
+        }
+
+        result.done();
+        return result;
+    }
+
+    /**
+     * Get the query plan text for this pushdown.
+     *
+     * @return the plan text
+     */
+    String getPlanSQL() {
+
+        return "executed on " + link.getUrl();
+    }
+}
@@ -44,6 +44,7 @@ import org.h2.util.ValueHashMap;
 import org.h2.value.Value;
 import org.h2.value.ValueArray;
 import org.h2.value.ValueNull;
+import org.h2o.db.partitioning.PartitionScheme;
 import org.h2o.db.query.TableProxy;
 import org.h2o.db.query.TableProxyManager;
 import org.h2o.db.query.locking.LockRequest;
@@ -108,6 +109,28 @@ public class Select extends Query {
 
     private LocationPreference locationPreference = LocationPreference.NO_PREFERENCE;
 
+    /**
+     * H2O. The partition scheme of the table this query reads from, if it reads from a single partitioned table.
+     */
+    private PartitionScheme partitionScheme;
+
+    /**
+     * H2O. The partitions that may hold rows matching this query, if it reads from a single partitioned table.
+     */
+    private int[] partitions;
+
+    /**
+     * H2O. Set if this is a grouped query whose aggregates are computed on the instances holding the data.
+     */
+    private DistributedAggregation distributedAggregation;
+
+    /**
+     * H2O. Set if this whole query is executed on the instance holding all of its tables. Only valid if pushdownChecked is true.
+     */
+    private QueryPushdown pushdown;
+
+    private boolean pushdownChecked;
+
     public Select(final Session session, final boolean internalQuery) {
 
         super(session, internalQuery);
@@ -142,6 +165,43 @@ public class Select extends Query {
         return topFilters;
     }
 
+    /**
+     * Replace a table filter that was added with {@link #addTableFilter(TableFilter, boolean)}. This must be called before the statement is
+     * prepared.
+     * 
+     * @param oldFilter
+     *            the filter to remove
+     * @param newFilter
+     *            the filter to use in its place
+     */
+    public void replaceTableFilter(final TableFilter oldFilter, final TableFilter newFilter) {
+
+        for (int i = 0; i < filters.size(); i++) {
+            if (filters.get(i) == oldFilter) {
+                filters.set(i, newFilter);
+            }
+        }
+        for (int i = 0; i < topFilters.size(); i++) {
+            if (topFilters.get(i) == oldFilter) {
+                topFilters.set(i, newFilter);
+            }
+        }
+    }
+
+    /**
+     * H2O. Called if this query reads from a single partitioned table.
+     * 
+     * @param partitionScheme
+     *            the partition scheme of the table
+     * @param partitions
+     *            the partitions that may hold rows matching the query
+     */
+    public void setPartitionedTable(final PartitionScheme partitionScheme, final int[] partitions) {
+
+        this.partitionScheme = partitionScheme;
+        this.partitions = partitions;
+    }
+
     public void setExpressions(final ObjectArray expressions) {
 
         this.expressions = expressions;
@@ -376,6 +436,43 @@ public class Select extends Query {
         if (groupIndex == null && groups.size() == 0) {
             groups.put(defaultGroup, new HashMap());
         }
+        addGroupRows(columnCount, result, groups);
+    }
+
+    /**
+     * H2O. Check whether this whole query can be executed on the instance holding all of its tables. This is decided when the query is
+     * first executed (or explained), because parameter values can only be used if this is a top level statement, and again once the link
+     * connection cache has been cleared.
+     * 
+     * @return the pushdown, or null if the query is evaluated here
+     */
+    private QueryPushdown getPushdown() {
+
+        if (!pushdownChecked || pushdown != null && pushdown.isStale(session.getDatabase())) {
+            pushdown = QueryPushdown.create(this, isForUpdate, session);
+            pushdownChecked = true;
+        }
+        return pushdown;
+    }
+
+    /**
+     * H2O. Evaluate a grouped query by merging the partial aggregates computed on each instance holding data for the table.
+     */
+    private void queryGroupDistributed(final int columnCount, final LocalResult result) throws SQLException {
+
+        final ValueHashMap groups = new ValueHashMap(session.getDatabase());
+        distributedAggregation.query(groups);
+        if (groupIndex == null && groups.size() == 0) {
+            groups.put(ValueArray.get(new Value[0]), new HashMap());
+        }
+        addGroupRows(columnCount, result, groups);
+    }
+
+    /**
+     * Add a row to the result for each group for which the HAVING condition holds.
+     */
+    private void addGroupRows(final int columnCount, final LocalResult result, final ValueHashMap groups) throws SQLException {
+
         final ObjectArray keys = groups.keys();
         for (int i = 0; i < keys.size(); i++) {
             final ValueArray key = (ValueArray) keys.get(i);
@@ -555,6 +652,8 @@ public class Select extends Query {
     @Override
     protected LocalResult queryWithoutCache(final int maxRows) throws SQLException {
 
+        if (getPushdown() != null) { return pushdown.query(session, expressions, visibleColumnCount, getParameters(), maxRows); }
+
         int limitRows = maxRows;
         if (limit != null) {
             final int l = limit.getValue(session).getInt();
@@ -589,7 +688,10 @@ public class Select extends Query {
             queryQuick(columnCount, result);
         }
         else if (isGroupQuery) {
-            if (isGroupSortedQuery) {
+            if (distributedAggregation != null && sampleSize == 0) {
+                queryGroupDistributed(columnCount, result);
+            }
+            else if (isGroupSortedQuery) {
                 queryGroupSorted(columnCount, result);
             }
             else {
@@ -837,6 +939,9 @@ public class Select extends Query {
                 isGroupSortedQuery = true;
             }
         }
+        if (isGroupQuery && !isQuickAggregateQuery && filters.size() == 1 && topTableFilter.getJoin() == null) {
+            distributedAggregation = DistributedAggregation.create(session, topTableFilter, expressions, groupIndex, groupByExpression, condition, partitionScheme, partitions);
+        }
         isPrepared = true;
     }
 
@@ -954,6 +1059,12 @@ public class Select extends Query {
                 buff.append(filter.getPlanSQL(i > 0));
             }
         }
+        if (getPushdown() != null) {
+            buff.append("\n/* " + StringUtils.quoteRemarkSQL(pushdown.getPlanSQL()) + " */");
+        }
+        else if (distributedAggregation != null) {
+            buff.append("\n/* distributed aggregation */");
+        }
         if (condition != null) {
             buff.append("\nWHERE " + StringUtils.unEnclose(condition.getSQL()));
         }
@@ -56,6 +56,18 @@ public class Update extends Prepared {
         this.condition = condition;
     }
 
+    /**
+     * Check whether this statement assigns a new value to the given column.
+     * 
+     * @param column
+     *            the column
+     * @return true if there is an assignment to the column
+     */
+    public boolean isAssigned(final Column column) {
+
+        return expressions[column.getColumnId()] != null;
+    }
+
     /**
      * Add an assignment of the form column = expression.
      * 
@@ -80,31 +92,48 @@ public class Update extends Prepared {
 
         tableFilter.startQuery(session);
         tableFilter.reset();
-        final RowList rows = new RowList(session);
-        try {
-            final Table table = tableFilter.getTable();
-            setTable(table);
-            session.getUser().checkRight(table, Right.UPDATE);
+        final Table table = tableFilter.getTable();
+        setTable(table);
+        session.getUser().checkRight(table, Right.UPDATE);
 
-            /*
-             * (QUERY PROPAGATED TO ALL REPLICAS).
-             */
-            if (isRegularTable() && thisIsNotALocalOrSingleTableUpdate()) {
+        /*
+         * (QUERY PROPAGATED TO ALL REPLICAS).
+         */
+        if (isRegularTable() && thisIsNotALocalOrSingleTableUpdate()) {
 
-                String sql = null;
-                if (isPreparedStatement()) {
-                    sql = adjustForPreparedStatement();
-                }
-                else {
-                    sql = sqlStatement;
-                }
+            if (isRowBasedReplication()) {
+                final int count = updateAndShipRows(transactionName);
+                if (count != ROWS_NOT_SHIPPED) { return count; }
+            }
 
-                if (tableProxy == null) {
-                    tableProxy = new TableProxy(new LockRequest(session)); // in case of MERGE statement.
-                }
-                return tableProxy.executeUpdate(sql, transactionName, session);
+            String sql = null;
+            if (isPreparedStatement()) {
+                sql = adjustForPreparedStatement();
+            }
+            else {
+                sql = sqlStatement;
+            }
+
+            if (tableProxy == null) {
+                tableProxy = new TableProxy(new LockRequest(session)); // in case of MERGE statement.
             }
+            return tableProxy.executeUpdate(sql, transactionName, session);
+        }
+
+        return updateLocalReplica();
+    }
+
+    @Override
+    protected boolean supportsRowBasedReplication() {
+
+        return true;
+    }
 
+    @Override
+    protected int updateLocalReplica() throws SQLException {
+
+        final RowList rows = new RowList(session);
+        try {
             table.fireBefore(session);
             table.lock(session, true, false);
             final int columnCount = table.getColumns().length;
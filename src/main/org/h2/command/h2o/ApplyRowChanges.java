@@ -0,0 +1,216 @@
+package org.h2.command.h2o;
+
+import java.sql.SQLException;
+
+import org.h2.command.Prepared;
+import org.h2.constant.ErrorCode;
+import org.h2.engine.Database;
+import org.h2.engine.Session;
+import org.h2.index.Cursor;
+import org.h2.index.Index;
+import org.h2.log.UndoLogRecord;
+import org.h2.message.Message;
+import org.h2.result.LocalResult;
+import org.h2.result.Row;
+import org.h2.schema.Schema;
+import org.h2.store.DataPage;
+import org.h2.table.Table;
+import org.h2.util.ByteUtils;
+import org.h2.util.ObjectArray;
+import org.h2.value.Value;
+import org.h2o.db.query.TableProxy;
+import org.h2o.db.query.TableProxyManager;
+import org.h2o.db.query.locking.LockRequest;
+
+import uk.ac.standrews.cs.nds.rpc.RPCException;
+
+/**
+ * Applies the rows changed by a statement on another replica of a table directly to the local replica, without executing the statement
+ * (see the ROW_BASED_REPLICATION setting). Only used internally, between instances.
+ *
+ * <p>Syntax: APPLY ROWS TO tableName 'changes'
+ *
+ * <p>The changes are the undo log records made by the statement, in order, with the values of each row: an UPDATE is a DELETE of each old row
+ * followed by an INSERT of each new one. They are Base64 encoded, after the update count of the original statement and the table's number
+ * of columns. The changes are logged as usual, so they are committed or rolled back with the transaction they are part of, but constraints
+ * aren't checked and triggers aren't fired, as that has already been done where the statement was executed. The table must have a unique
+ * index, through which each deleted row is found.
+ */
+public class ApplyRowChanges extends Prepared {
+
+    private final Schema schema;
+
+    private final String tableName;
+
+    private final String changes;
+
+    public ApplyRowChanges(final Session session, final Schema schema, final String tableName, final String changes) {
+
+        super(session, true);
+
+        this.schema = schema;
+        this.tableName = tableName;
+        this.changes = changes;
+    }
+
+    /**
+     * Create the statement that applies the given changes to another replica of a table.
+     *
+     * @param database  the local database.
+     * @param table     the table changed.
+     * @param changes   the {@link UndoLogRecord}s of the changes, in the order they were made. Records for other tables are ignored.
+     * @param count     the update count of the statement that made the changes.
+     * @return the statement.
+     */
+    public static String getSQL(final Database database, final Table table, final ObjectArray changes, final int count) throws SQLException {
+
+        final int columnCount = table.getColumns().length;
+
+        final DataPage page = DataPage.create(database, 256);
+        page.checkCapacity(8);
+        page.writeInt(count);
+        page.writeInt(columnCount);
+
+        for (int i = 0; i < changes.size(); i++) {
+            final UndoLogRecord change = (UndoLogRecord) changes.get(i);
+
+            if (change.getTable() != table) {
+                continue;
+            }
+
+            final Row row = change.getRow();
+
+            page.checkCapacity(1);
+            page.writeByte((byte) change.getOperation());
+
+            for (int j = 0; j < columnCount; j++) {
+                final Value v = row.getValue(j);
+                page.checkCapacity(page.getValueLen(v));
+                page.writeValue(v);
+            }
+        }
+
+        final byte[] data = new byte[page.length()];
+        System.arraycopy(page.getBytes(), 0, data, 0, data.length);
+
+        return "APPLY ROWS TO " + table.getSQL() + " '" + ByteUtils.convertBytesToBase64(data) + "'";
+    }
+
+    @Override
+    public int update() throws SQLException, RPCException {
+
+        final Table table = schema.findLocalTableOrView(session, tableName);
+
+        if (table == null) { throw Message.getSQLException(ErrorCode.TABLE_OR_VIEW_NOT_FOUND_1, tableName); }
+
+        final byte[] data = ByteUtils.convertBase64ToBytes(changes);
+        final DataPage page = DataPage.create(session.getDatabase(), data);
+
+        final int count = page.readInt();
+        final int columnCount = page.readInt();
+
+        if (columnCount != table.getColumns().length) { throw Message.getSQLException(ErrorCode.COLUMN_COUNT_DOES_NOT_MATCH); }
+
+        table.lock(session, true, false);
+
+        while (page.length() < data.length) {
+            final short type = (short) page.readByte();
+
+            final Row row = table.getTemplateRow();
+            for (int i = 0; i < columnCount; i++) {
+                row.setValue(i, page.readValue());
+            }
+
+            if (type == UndoLogRecord.INSERT) {
+                table.addRow(session, row);
+                session.log(table, UndoLogRecord.INSERT, row);
+            }
+            else {
+                final Row stored = findRow(table, row);
+
+                if (stored == null) { throw Message.getSQLException(ErrorCode.ROW_NOT_FOUND_WHEN_DELETING_1, table.getSQL()); }
+
+                table.removeRow(session, stored);
+                session.log(table, UndoLogRecord.DELETE, stored);
+            }
+        }
+
+        return count;
+    }
+
+    @Override
+    public int update(final String transactionName) throws SQLException, RPCException {
+
+        return update();
+    }
+
+    /**
+     * Find an index that identifies the rows of a table, so that a changed row can be found without scanning the table: the primary key if
+     * there is one, or else another unique index.
+     *
+     * @return the index, or null if the table has none, in which case its changes are replicated by statement.
+     */
+    public static Index findUniqueIndex(final Table table) {
+
+        final Index primaryKey = table.findPrimaryKey();
+
+        if (primaryKey != null) { return primaryKey; }
+
+        final ObjectArray indexes = table.getIndexes();
+        for (int i = 0; indexes != null && i < indexes.size(); i++) {
+            final Index index = (Index) indexes.get(i);
+            if (index.getIndexType().getUnique()) { return index; }
+        }
+
+        return null;
+    }
+
+    /**
+     * Find a row of the table with the same values as the given row, using its unique index.
+     *
+     * @return the stored row, or null if there is none.
+     */
+    private Row findRow(final Table table, final Row values) throws SQLException {
+
+        final Index index = findUniqueIndex(table);
+
+        if (index == null) { throw Message.getUnsupportedException(); }
+
+        final Cursor cursor = index.find(session, values, values);
+
+        final Database database = session.getDatabase();
+        final int columnCount = table.getColumns().length;
+
+        while (cursor.next()) {
+            final Row row = cursor.get();
+
+            boolean equal = true;
+            for (int i = 0; i < columnCount && equal; i++) {
+                equal = database.compareTypeSave(row.getValue(i), values.getValue(i)) == 0;
+            }
+
+            if (equal) { return row; }
+        }
+
+        return null;
+    }
+
+    @Override
+    public void acquireLocks(final TableProxyManager tableProxyManager) throws SQLException {
+
+        // Only executed as part of a transaction that already holds the lock on the table, on the instance that sent the changes.
+        tableProxyManager.addProxy(TableProxy.getDummyQueryProxy(new LockRequest(session)));
+    }
+
+    @Override
+    public boolean isTransactional() {
+
+        return true;
+    }
+
+    @Override
+    public LocalResult queryMeta() throws SQLException {
+
+        return null;
+    }
+}
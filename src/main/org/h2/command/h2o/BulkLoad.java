@@ -0,0 +1,385 @@
+/***************************************************************************
+ *                                                                         *
+ * H2O                                                                     *
+ * Copyright (C) 2010 Distributed Systems Architecture Research Group      *
+ * University of St Andrews, Scotland                                      *
+ * http://blogs.cs.st-andrews.ac.uk/h2o/                                   *
+ *                                                                         *
+ * This file is part of H2O, a distributed database based on the open      *
+ * source database H2 (www.h2database.com).                                *
+ *                                                                         *
+ * H2O is free software: you can redistribute it and/or                    *
+ * modify it under the terms of the GNU General Public License as          *
+ * published by the Free Software Foundation, either version 3 of the      *
+ * License, or (at your option) any later version.                         *
+ *                                                                         *
+ * H2O is distributed in the hope that it will be useful,                  *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of          *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the           *
+ * GNU General Public License for more details.                            *
+ *                                                                         *
+ * You should have received a copy of the GNU General Public License       *
+ * along with H2O.  If not, see <http://www.gnu.org/licenses/>.            *
+ *                                                                         *
+ ***************************************************************************/
+
+package org.h2.command.h2o;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.h2.command.Parser;
+import org.h2.command.Prepared;
+import org.h2.command.ddl.SchemaCommand;
+import org.h2.constant.ErrorCode;
+import org.h2.engine.Database;
+import org.h2.engine.Right;
+import org.h2.engine.Session;
+import org.h2.message.Message;
+import org.h2.schema.Schema;
+import org.h2.table.Table;
+import org.h2.tools.Csv;
+import org.h2.util.JdbcUtils;
+import org.h2.value.ValueNull;
+import org.h2.value.ValueString;
+import org.h2o.db.id.TableInfo;
+import org.h2o.db.interfaces.ITableManagerRemote;
+import org.h2o.db.query.TableProxy;
+import org.h2o.db.query.asynchronous.CommitResult;
+import org.h2o.db.query.locking.LockRequest;
+import org.h2o.db.query.locking.LockType;
+import org.h2o.db.wrappers.DatabaseInstanceWrapper;
+import org.h2o.util.exceptions.MovedException;
+
+import uk.ac.standrews.cs.nds.rpc.RPCException;
+import uk.ac.standrews.cs.nds.util.Diagnostic;
+import uk.ac.standrews.cs.nds.util.DiagnosticLevel;
+import uk.ac.standrews.cs.nds.util.ErrorHandling;
+
+/**
+ * Loads the contents of a CSV file into a replicated table.
+ *
+ * <p>Syntax: BULK LOAD INTO tableName FROM 'fileName'
+ *
+ * <p>The file is read on the instance executing the command, which must hold a replica of the table. Its columns must be in the order of
+ * the table's columns, as for INSERT INTO tableName SELECT * FROM CSVREAD('fileName'). A write lock is held on the table for the whole
+ * load. Rows are inserted into the local replica without undo logging, and sent to the other replicas in batches, each replica being
+ * loaded in parallel with the others. When every replica has been loaded the Table Manager is told once, so the update ID of each replica is
+ * increased by one for the whole load rather than once per row.
+ *
+ * <p>The user must have the right to insert into the table. As for every update sent to other replicas, the batches are run there by an
+ * internal session of each instance, so the right is checked only on the instance executing the command.
+ *
+ * <p>The load isn't transactional: if it fails part way through, the rows already loaded into the local replica are kept, and the other
+ * replicas are marked as inactive by the Table Manager. A remote replica that fails to load a batch is given no more, and is also marked as
+ * inactive when the load finishes.
+ */
+public class BulkLoad extends SchemaCommand {
+
+    /**
+     * The number of rows sent to replicas in each statement.
+     */
+    private static final int BATCH_SIZE = 1000;
+
+    /**
+     * The number of batches that can be waiting to be sent to a replica before reading from the file stops until one has been sent.
+     */
+    private static final int MAX_PENDING_BATCHES = 16;
+
+    private final String tableName;
+
+    private final String fileName;
+
+    public BulkLoad(final Session session, final Schema schema, final String tableName, final String fileName) {
+
+        super(session, schema);
+
+        this.tableName = tableName;
+        this.fileName = fileName;
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.h2.command.Prepared#isTransactional()
+     */
+    @Override
+    public boolean isTransactional() {
+
+        return false;
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.h2.command.Prepared#update()
+     */
+    @Override
+    public int update() throws SQLException, RPCException {
+
+        session.commit(true);
+
+        final Database db = session.getDatabase();
+        final Table table = getSchema().findLocalTableOrView(session, tableName);
+
+        if (table == null) { throw Message.getSQLException(ErrorCode.TABLE_OR_VIEW_NOT_FOUND_1, tableName); }
+
+        // The other replicas are loaded by internal sessions, so the user's right to insert is only checked here.
+        session.getUser().checkRight(table, Right.INSERT);
+
+        final TableInfo ti = new TableInfo(tableName, getSchema().getName());
+        final LockRequest lockRequest = new LockRequest(session);
+
+        ITableManagerRemote tableManager = db.getSystemTableReference().lookup(ti, true);
+
+        if (tableManager == null) { throw Message.getSQLException(ErrorCode.TABLE_OR_VIEW_NOT_FOUND_1, tableName); }
+
+        TableProxy tableProxy = null;
+        try {
+            tableProxy = tableManager.getTableProxy(LockType.WRITE, lockRequest);
+        }
+        catch (final MovedException e) {
+            tableManager = db.getSystemTableReference().lookup(ti, false);
+            try {
+                tableProxy = tableManager.getTableProxy(LockType.WRITE, lockRequest);
+            }
+            catch (final MovedException e1) {
+                throw new SQLException("Table Manager of " + ti.getFullTableName() + " has moved.");
+            }
+        }
+
+        if (tableProxy == null || tableProxy.getLockGranted() != LockType.WRITE) { throw Message.getSQLException(ErrorCode.LOCK_TIMEOUT_1, ti.getFullTableName()); }
+
+        final DatabaseInstanceWrapper localInstance = db.getLocalDatabaseInstanceInWrapper();
+        final Map<DatabaseInstanceWrapper, Integer> replicas = tableProxy.getReplicaLocations();
+
+        final List<CommitResult> commitResults = new LinkedList<CommitResult>();
+        boolean loaded = false;
+
+        final Map<DatabaseInstanceWrapper, ReplicaLoader> loaders = new HashMap<DatabaseInstanceWrapper, ReplicaLoader>();
+
+        try {
+            if (replicas == null || !replicas.containsKey(localInstance)) { throw new SQLException("BULK LOAD of " + ti.getFullTableName() + " must be run on an instance holding a replica of the table."); }
+
+            for (final DatabaseInstanceWrapper replica : replicas.keySet()) {
+                if (!replica.equals(localInstance)) {
+                    loaders.put(replica, new ReplicaLoader(replica));
+                }
+            }
+
+            int rowCount = 0;
+            SQLException loadFailure = null;
+
+            try {
+                rowCount = load(table, loaders);
+            }
+            catch (final SQLException e) {
+                loadFailure = e;
+            }
+
+            // Rows loaded before a failure are kept, so the local replica is up to date whether or not the load succeeded.
+            session.commit(false);
+
+            commitResults.add(new CommitResult(true, localInstance, tableProxy.getUpdateID(), tableProxy.getUpdateID(), ti));
+
+            for (final Entry<DatabaseInstanceWrapper, ReplicaLoader> loader : loaders.entrySet()) {
+                final boolean committed = loader.getValue().finish() && loadFailure == null;
+                commitResults.add(new CommitResult(committed, loader.getKey(), tableProxy.getUpdateID(), tableProxy.getUpdateID(), ti));
+            }
+
+            loaded = true;
+
+            if (loadFailure != null) { throw loadFailure; }
+
+            Diagnostic.traceNoEvent(DiagnosticLevel.FINAL, "Bulk loaded " + rowCount + " rows from " + fileName + " into " + replicas.size() + " replicas of " + ti.getFullTableName() + ".");
+
+            return rowCount;
+        }
+        finally {
+            for (final ReplicaLoader loader : loaders.values()) {
+                loader.shutdown();
+            }
+
+            try {
+                tableManager.releaseLockAndUpdateReplicaState(loaded, lockRequest, commitResults, false);
+            }
+            catch (final MovedException e) {
+                ErrorHandling.errorNoEvent("Table Manager of " + ti.getFullTableName() + " moved during a bulk load, so the lock on it couldn't be released.");
+            }
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.h2.command.Prepared#update(java.lang.String)
+     */
+    @Override
+    public int update(final String transactionName) throws SQLException, RPCException {
+
+        return update();
+    }
+
+    /**
+     * Read the file in batches, inserting each batch into the local replica and passing it to the loaders of the other replicas.
+     *
+     * @return the number of rows loaded.
+     */
+    private int load(final Table table, final Map<DatabaseInstanceWrapper, ReplicaLoader> loaders) throws SQLException {
+
+        final String insertPrefix = "INSERT INTO " + table.getSQL() + " VALUES ";
+
+        ResultSet rs = null;
+
+        final boolean undoLogEnabled = session.getUndoLogEnabled();
+
+        try {
+            session.setUndoLogEnabled(false);
+
+            rs = Csv.getInstance().read(fileName, null, null);
+            final int columnCount = rs.getMetaData().getColumnCount();
+
+            int rowCount = 0;
+            int rowsInBatch = 0;
+            StringBuilder batch = new StringBuilder(insertPrefix);
+
+            while (rs.next()) {
+
+                if (rowsInBatch > 0) {
+                    batch.append(", ");
+                }
+
+                batch.append('(');
+                for (int i = 1; i <= columnCount; i++) {
+                    if (i > 1) {
+                        batch.append(", ");
+                    }
+
+                    final String value = rs.getString(i);
+                    batch.append(value == null ? ValueNull.INSTANCE.getSQL() : ValueString.get(value).getSQL());
+                }
+                batch.append(')');
+
+                rowCount++;
+
+                if (++rowsInBatch == BATCH_SIZE) {
+                    loadBatch(batch.toString(), loaders);
+
+                    batch = new StringBuilder(insertPrefix);
+                    rowsInBatch = 0;
+                }
+            }
+
+            if (rowsInBatch > 0) {
+                loadBatch(batch.toString(), loaders);
+            }
+
+            return rowCount;
+        }
+        finally {
+            session.setUndoLogEnabled(undoLogEnabled);
+            JdbcUtils.closeSilently(rs);
+        }
+    }
+
+    private void loadBatch(final String insert, final Map<DatabaseInstanceWrapper, ReplicaLoader> loaders) throws SQLException {
+
+        // Inserted through an internal query, so it isn't propagated to the other replicas.
+        final Prepared localInsert = new Parser(session, true).prepare(insert);
+        localInsert.update();
+
+        for (final ReplicaLoader loader : loaders.values()) {
+            loader.send(insert);
+        }
+    }
+
+    /**
+     * Sends batches of rows to one remote replica, in order, on a thread of its own.
+     */
+    private final class ReplicaLoader {
+
+        private final DatabaseInstanceWrapper replica;
+
+        private final ExecutorService sender = Executors.newSingleThreadExecutor();
+
+        private final LinkedList<Future<Boolean>> pending = new LinkedList<Future<Boolean>>();
+
+        /**
+         * Set when a batch fails to load, after which no more are sent.
+         */
+        private volatile boolean failed = false;
+
+        private ReplicaLoader(final DatabaseInstanceWrapper replica) {
+
+            this.replica = replica;
+        }
+
+        private void send(final String insert) {
+
+            if (failed) { return; }
+
+            pending.add(sender.submit(new Callable<Boolean>() {
+
+                @Override
+                public Boolean call() {
+
+                    if (failed) { return false; }
+
+                    try {
+                        replica.getDatabaseInstance().executeUpdate(insert, true);
+                        return true;
+                    }
+                    catch (final Exception e) {
+                        ErrorHandling.errorNoEvent("Failed to bulk load " + tableName + " on " + replica.getURL() + ": " + e.getMessage());
+                        failed = true;
+                        return false;
+                    }
+                }
+            }));
+
+            while (pending.size() > MAX_PENDING_BATCHES) {
+                waitFor(pending.removeFirst());
+            }
+        }
+
+        /**
+         * Wait for every batch to be sent.
+         *
+         * @return true if they were all loaded.
+         */
+        private boolean finish() {
+
+            while (!pending.isEmpty()) {
+                waitFor(pending.removeFirst());
+            }
+
+            return !failed;
+        }
+
+        private void waitFor(final Future<Boolean> batch) {
+
+            try {
+                batch.get();
+            }
+            catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failed = true;
+            }
+            catch (final ExecutionException e) {
+                failed = true;
+            }
+        }
+
+        private void shutdown() {
+
+            sender.shutdownNow();
+        }
+    }
+}
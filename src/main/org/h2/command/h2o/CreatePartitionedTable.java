@@ -0,0 +1,163 @@
+package org.h2.command.h2o;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+
+import org.h2.command.ddl.SchemaCommand;
+import org.h2.constant.ErrorCode;
+import org.h2.engine.Database;
+import org.h2.engine.Session;
+import org.h2.message.Message;
+import org.h2.schema.Schema;
+import org.h2o.autonomic.numonic.metric.CreateReplicaMetric;
+import org.h2o.autonomic.numonic.ranking.Requirements;
+import org.h2o.db.id.TableInfo;
+import org.h2o.db.manager.interfaces.ISystemTableReference;
+import org.h2o.db.partitioning.PartitionScheme;
+import org.h2o.db.wrappers.DatabaseInstanceWrapper;
+import org.h2o.util.exceptions.MovedException;
+
+import uk.ac.standrews.cs.nds.rpc.RPCException;
+import uk.ac.standrews.cs.nds.util.Diagnostic;
+import uk.ac.standrews.cs.nds.util.DiagnosticLevel;
+import uk.ac.standrews.cs.nds.util.ErrorHandling;
+
+/**
+ * Creates a horizontally partitioned table.
+ *
+ * <p>Syntax:
+ * <ul>
+ * <li>CREATE TABLE tableName (columnDefinitions) PARTITION BY HASH(columnName) PARTITIONS n</li>
+ * <li>CREATE TABLE tableName (columnDefinitions) PARTITION BY RANGE(columnName) VALUES LESS THAN (bound [, bound ...])</li>
+ * </ul>
+ *
+ * <p>Each partition is created as an ordinary table on one of the instances returned by the System Table's ranking, so that its Table
+ * Manager and primary copy are spread across the database system. The partition scheme is registered with the System Table once every
+ * partition exists. Creation is not transactional: if a partition can't be created, those already created are dropped again.
+ *
+ * @author Angus Macdonald (angus@cs.st-andrews.ac.uk)
+ */
+public class CreatePartitionedTable extends SchemaCommand {
+
+    private final PartitionScheme partitionScheme;
+
+    /**
+     * The column and constraint definitions of the table, including the enclosing brackets.
+     */
+    private final String tableDefinition;
+
+    private final boolean ifNotExists;
+
+    public CreatePartitionedTable(final Session session, final Schema schema, final PartitionScheme partitionScheme, final String tableDefinition, final boolean ifNotExists) {
+
+        super(session, schema);
+
+        this.partitionScheme = partitionScheme;
+        this.tableDefinition = tableDefinition;
+        this.ifNotExists = ifNotExists;
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.h2.command.Prepared#isTransactional()
+     */
+    @Override
+    public boolean isTransactional() {
+
+        return false;
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.h2.command.Prepared#update()
+     */
+    @Override
+    public int update() throws SQLException, RPCException {
+
+        final Database db = session.getDatabase();
+        final ISystemTableReference systemTableReference = db.getSystemTableReference();
+        final TableInfo tableInfo = partitionScheme.getTableInfo();
+
+        try {
+            if (systemTableReference.lookupPartitionScheme(tableInfo, false) != null || systemTableReference.lookup(tableInfo, false) != null) {
+                if (ifNotExists) { return 0; }
+
+                throw Message.getSQLException(ErrorCode.TABLE_OR_VIEW_ALREADY_EXISTS_1, tableInfo.getFullTableName());
+            }
+
+            final List<DatabaseInstanceWrapper> locations = getPartitionLocations(systemTableReference);
+
+            int created = 0;
+
+            try {
+                for (int i = 0; i < partitionScheme.getNumberOfPartitions(); i++) {
+                    final DatabaseInstanceWrapper location = locations.get(i % locations.size());
+                    final String partitionName = partitionScheme.getPartitionTableInfo(i).getFullTableName();
+
+                    Diagnostic.traceNoEvent(DiagnosticLevel.FULL, "Creating partition " + partitionName + " on " + location.getURL());
+
+                    location.getDatabaseInstance().executeUpdate("CREATE TABLE " + partitionName + " " + tableDefinition, false);
+                    created++;
+                }
+
+                if (!systemTableReference.addPartitionScheme(partitionScheme)) { throw Message.getSQLException(ErrorCode.TABLE_OR_VIEW_ALREADY_EXISTS_1, tableInfo.getFullTableName()); }
+            }
+            catch (final SQLException e) {
+                dropPartitions(db, created);
+                throw e;
+            }
+            catch (final RPCException e) {
+                dropPartitions(db, created);
+                throw e;
+            }
+        }
+        catch (final MovedException e) {
+            throw new SQLException("The System Table has moved and can't be accessed at this location: " + e.getMessage());
+        }
+
+        return 0;
+    }
+
+    /**
+     * Get the instances on which partitions should be created, best first. Partitions are assigned to these instances in turn.
+     */
+    private List<DatabaseInstanceWrapper> getPartitionLocations(final ISystemTableReference systemTableReference) throws RPCException, MovedException {
+
+        final List<DatabaseInstanceWrapper> locations = new ArrayList<DatabaseInstanceWrapper>();
+
+        final Queue<DatabaseInstanceWrapper> rankedInstances = systemTableReference.getRankedListOfInstances(new CreateReplicaMetric(), Requirements.NO_FILTERING);
+
+        if (rankedInstances != null) {
+            for (final DatabaseInstanceWrapper instance : rankedInstances) {
+                if (instance.isActive()) {
+                    locations.add(instance);
+                }
+            }
+        }
+
+        if (locations.isEmpty()) {
+            locations.add(session.getDatabase().getLocalDatabaseInstanceInWrapper());
+        }
+
+        return locations;
+    }
+
+    /**
+     * Drop the first <code>count</code> partitions after a failed create.
+     */
+    private void dropPartitions(final Database db, final int count) {
+
+        for (int i = 0; i < count; i++) {
+            final String partitionName = partitionScheme.getPartitionTableInfo(i).getFullTableName();
+
+            try {
+                db.getLocalDatabaseInstance().executeUpdate("DROP TABLE IF EXISTS " + partitionName, false);
+            }
+            catch (final Exception e) {
+                ErrorHandling.exceptionError(e, "Failed to drop partition " + partitionName + " after the partitioned table couldn't be created.");
+            }
+        }
+    }
+}
@@ -71,6 +71,7 @@ import org.h2.value.ValueDate;
 import org.h2.value.ValueString;
 import org.h2.value.ValueTime;
 import org.h2.value.ValueTimestamp;
+import org.h2o.autonomic.settings.Settings;
 import org.h2o.db.id.TableInfo;
 import org.h2o.db.interfaces.ITableManagerRemote;
 import org.h2o.db.manager.PersistentSystemTable;
@@ -719,6 +720,35 @@ public class CreateReplica extends SchemaCommand {
         }
     }
 
+    /**
+     * H2O. The rate, in bytes per second, at which the data of the replica is read from its source, or 0 if there is no limit.
+     */
+    private long getReplicaCreationBandwidth() {
+
+        final Settings settings = session.getDatabase().getDatabaseSettings();
+
+        if (settings == null || settings.get("REPLICA_CREATION_BANDWIDTH") == null) { return 0; }
+
+        return Long.parseLong(settings.get("REPLICA_CREATION_BANDWIDTH"));
+    }
+
+    /**
+     * H2O. Wait until reading the given number of bytes since the start time is within the given rate.
+     */
+    private static void throttle(final long start, final long bytesRead, final long bytesPerSecond) {
+
+        final long wait = start + bytesRead * 1000 / bytesPerSecond - System.currentTimeMillis();
+
+        if (wait > 0) {
+            try {
+                Thread.sleep(wait);
+            }
+            catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
     /**
      * Get the data required to fill up this replica (to match the contents of the primary).
      * 
@@ -737,8 +767,19 @@ public class CreateReplica extends SchemaCommand {
 
             final List<String> inserts = new LinkedList<String>();
 
+            // H2O. Rows are fetched from the source as they are read, so reading slowly limits the bandwidth taken from it.
+            final long bytesPerSecond = getReplicaCreationBandwidth();
+            final long start = System.currentTimeMillis();
+            long bytesRead = 0;
+
             while (rs.next()) {
-                inserts.add(rs.getString(1));
+                final String insert = rs.getString(1);
+                inserts.add(insert);
+
+                if (bytesPerSecond > 0 && insert != null) {
+                    bytesRead += insert.length();
+                    throttle(start, bytesRead, bytesPerSecond);
+                }
             }
 
             this.inserts = inserts;
@@ -0,0 +1,70 @@
+package org.h2.command.h2o;
+
+import java.sql.SQLException;
+
+import org.h2.command.ddl.SchemaCommand;
+import org.h2.engine.Database;
+import org.h2.engine.Session;
+import org.h2.schema.Schema;
+import org.h2o.db.partitioning.PartitionScheme;
+import org.h2o.util.exceptions.MovedException;
+
+import uk.ac.standrews.cs.nds.rpc.RPCException;
+
+/**
+ * Drops a horizontally partitioned table, with all of its partitions.
+ *
+ * <p>Syntax:
+ * <ul>
+ * <li>DROP TABLE [IF EXISTS] tableName</li>
+ * </ul>
+ *
+ * <p>Only a single partitioned table can be dropped by one statement. Each partition is dropped as an ordinary table, then the partition
+ * scheme is removed from the System Table.
+ *
+ * @author Angus Macdonald (angus@cs.st-andrews.ac.uk)
+ */
+public class DropPartitionedTable extends SchemaCommand {
+
+    private final PartitionScheme partitionScheme;
+
+    public DropPartitionedTable(final Session session, final Schema schema, final PartitionScheme partitionScheme) {
+
+        super(session, schema);
+
+        this.partitionScheme = partitionScheme;
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.h2.command.Prepared#isTransactional()
+     */
+    @Override
+    public boolean isTransactional() {
+
+        return false;
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.h2.command.Prepared#update()
+     */
+    @Override
+    public int update() throws SQLException, RPCException {
+
+        final Database db = session.getDatabase();
+
+        for (final int partition : partitionScheme.getAllPartitions()) {
+            db.getLocalDatabaseInstance().executeUpdate("DROP TABLE IF EXISTS " + partitionScheme.getPartitionTableInfo(partition).getFullTableName(), false);
+        }
+
+        try {
+            db.getSystemTableReference().removePartitionScheme(partitionScheme.getTableInfo());
+        }
+        catch (final MovedException e) {
+            throw new SQLException("The System Table has moved and can't be accessed at this location: " + e.getMessage());
+        }
+
+        return 0;
+    }
+}
@@ -0,0 +1,215 @@
+package org.h2.command.h2o;
+
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.h2.command.Command;
+import org.h2.command.Prepared;
+import org.h2.command.dml.Insert;
+import org.h2.engine.Session;
+import org.h2.expression.Expression;
+import org.h2.result.LocalResult;
+import org.h2.table.Column;
+import org.h2.util.ObjectArray;
+import org.h2.value.Value;
+import org.h2o.db.partitioning.PartitionScheme;
+import org.h2o.db.query.TableProxy;
+import org.h2o.db.query.TableProxyManager;
+import org.h2o.db.query.locking.LockRequest;
+
+import uk.ac.standrews.cs.nds.rpc.RPCException;
+
+/**
+ * An INSERT into a horizontally partitioned table.
+ *
+ * <p>The statement is parsed as an ordinary {@link Insert} on the view over all partitions. When it is executed each row is evaluated,
+ * assigned to a partition by its value in the partition column, and the rows for each partition are inserted with a single INSERT on that
+ * partition. These statements run in the current transaction and lock only the partitions they touch.
+ *
+ * @author Angus Macdonald (angus@cs.st-andrews.ac.uk)
+ */
+public class PartitionedInsert extends Prepared {
+
+    private final PartitionScheme partitionScheme;
+
+    private final Insert insert;
+
+    public PartitionedInsert(final Session session, final PartitionScheme partitionScheme, final Insert insert, final boolean internalQuery) {
+
+        super(session, internalQuery);
+
+        this.partitionScheme = partitionScheme;
+        this.insert = insert;
+    }
+
+    @Override
+    public void setCommand(final Command command) {
+
+        super.setCommand(command);
+        insert.setCommand(command);
+    }
+
+    @Override
+    public void prepare() throws SQLException {
+
+        insert.prepare();
+    }
+
+    @Override
+    public void acquireLocks(final TableProxyManager tableProxyManager) throws SQLException {
+
+        // Locks are requested for each partition when the statement for that partition is executed.
+        tableProxyManager.addProxy(TableProxy.getDummyQueryProxy(new LockRequest(session)));
+    }
+
+    @Override
+    public int update(final String transactionName) throws SQLException, RPCException {
+
+        /*
+         * The statements on each partition prepare their own part of the transaction.
+         */
+        return update();
+    }
+
+    @Override
+    public int update() throws SQLException, RPCException {
+
+        final Column[] columns = insert.getColumns();
+        final int keyIndex = getPartitionColumnIndex(columns);
+
+        /*
+         * The default of the partition column is only known to the partitions themselves, so the partition a row belongs in can't be
+         * decided unless its key is given.
+         */
+        if (keyIndex < 0) { throw noPartitionKey(); }
+
+        // Partition number -> the VALUES list for that partition.
+        final Map<Integer, StringBuilder> rowsByPartition = new TreeMap<Integer, StringBuilder>();
+
+        final ObjectArray rows = insert.getRows();
+
+        if (rows.size() > 0) {
+            for (int x = 0; x < rows.size(); x++) {
+                final Expression[] expr = (Expression[]) rows.get(x);
+                final Value[] values = new Value[expr.length];
+
+                for (int i = 0; i < expr.length; i++) {
+                    // The expression is null if DEFAULT was specified.
+                    values[i] = expr[i] == null ? null : expr[i].optimize(session).getValue(session).convertTo(columns[i].getType());
+                }
+
+                addRow(rowsByPartition, values, keyIndex);
+            }
+        }
+        else {
+            final LocalResult result = insert.getQuery().query(0);
+
+            while (result.next()) {
+                final Value[] row = result.currentRow();
+                final Value[] values = new Value[columns.length];
+
+                for (int i = 0; i < columns.length; i++) {
+                    values[i] = row[i].convertTo(columns[i].getType());
+                }
+
+                addRow(rowsByPartition, values, keyIndex);
+            }
+
+            result.close();
+        }
+
+        final String columnList = getColumnList(columns);
+
+        int count = 0;
+
+        for (final Map.Entry<Integer, StringBuilder> entry : rowsByPartition.entrySet()) {
+            final String sql = "INSERT INTO " + partitionScheme.getPartitionTableInfo(entry.getKey()).getFullTableName() + columnList + " VALUES " + entry.getValue();
+
+            final Command command = session.prepareLocal(sql);
+            count += command.executeUpdate(true);
+            command.close();
+        }
+
+        return count;
+    }
+
+    private void addRow(final Map<Integer, StringBuilder> rowsByPartition, final Value[] values, final int keyIndex) throws SQLException {
+
+        final Value key = values[keyIndex];
+
+        if (key == null) { throw noPartitionKey(); }
+
+        final int partition = partitionScheme.getPartition(key, session.getDatabase());
+
+        StringBuilder sql = rowsByPartition.get(partition);
+
+        if (sql == null) {
+            sql = new StringBuilder();
+            rowsByPartition.put(partition, sql);
+        }
+        else {
+            sql.append(", ");
+        }
+
+        sql.append('(');
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append(values[i] == null ? "DEFAULT" : values[i].getSQL());
+        }
+        sql.append(')');
+    }
+
+    private SQLException noPartitionKey() {
+
+        return new SQLException("An INSERT into the partitioned table " + partitionScheme.getTableInfo().getFullTableName() + " must give a value for the partition column " + partitionScheme.getColumnName() + ".");
+    }
+
+    /**
+     * @return the position of the partition column in the list of columns being inserted, or -1 if it isn't being inserted.
+     */
+    private int getPartitionColumnIndex(final Column[] columns) {
+
+        for (int i = 0; i < columns.length; i++) {
+            if (columns[i].getName().equals(partitionScheme.getColumnName())) { return i; }
+        }
+
+        return -1;
+    }
+
+    private static String getColumnList(final Column[] columns) {
+
+        if (columns.length == 0) { return ""; }
+
+        final StringBuilder sql = new StringBuilder("(");
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append(columns[i].getSQL());
+        }
+        sql.append(')');
+
+        return sql.toString();
+    }
+
+    @Override
+    public boolean isTransactional() {
+
+        return true;
+    }
+
+    @Override
+    public LocalResult queryMeta() throws SQLException {
+
+        return null;
+    }
+
+    @Override
+    public String getPlanSQL() {
+
+        return insert.getPlanSQL();
+    }
+}
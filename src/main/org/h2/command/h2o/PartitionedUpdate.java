@@ -0,0 +1,143 @@
+package org.h2.command.h2o;
+
+import java.sql.SQLException;
+
+import org.h2.command.Command;
+import org.h2.command.Prepared;
+import org.h2.engine.Session;
+import org.h2.expression.Parameter;
+import org.h2.expression.ParameterInterface;
+import org.h2.result.LocalResult;
+import org.h2.util.ObjectArray;
+import org.h2o.db.partitioning.PartitionScheme;
+import org.h2o.db.query.TableProxy;
+import org.h2o.db.query.TableProxyManager;
+import org.h2o.db.query.locking.LockRequest;
+
+import uk.ac.standrews.cs.nds.rpc.RPCException;
+
+/**
+ * An UPDATE or DELETE on a horizontally partitioned table.
+ *
+ * <p>The statement is re-issued on each partition that may hold affected rows: a single partition if the WHERE clause fixes the value of
+ * the partition column, otherwise every partition. The statements run in the current transaction and lock only the partitions they touch.
+ *
+ * @author Angus Macdonald (angus@cs.st-andrews.ac.uk)
+ */
+public class PartitionedUpdate extends Prepared {
+
+    private final PartitionScheme partitionScheme;
+
+    private final int[] partitions;
+
+    /**
+     * The start of the statement, up to the table name (for example 'DELETE FROM').
+     */
+    private final String statementStart;
+
+    /**
+     * The alias by which the table is referred to in the rest of the statement.
+     */
+    private final String tableAlias;
+
+    /**
+     * The rest of the statement, after the table name and alias.
+     */
+    private final String statementEnd;
+
+    /**
+     * @param partitions        the partitions on which the statement must be executed.
+     * @param statementStart    the start of the statement, up to the table name (for example 'DELETE FROM').
+     * @param tableAlias        the alias by which the table is referred to in the rest of the statement.
+     * @param statementEnd      the rest of the statement, after the table name and alias.
+     */
+    public PartitionedUpdate(final Session session, final PartitionScheme partitionScheme, final int[] partitions, final String statementStart, final String tableAlias, final String statementEnd, final boolean internalQuery) {
+
+        super(session, internalQuery);
+
+        this.partitionScheme = partitionScheme;
+        this.partitions = partitions;
+        this.statementStart = statementStart;
+        this.tableAlias = tableAlias;
+        this.statementEnd = statementEnd;
+    }
+
+    @Override
+    public void acquireLocks(final TableProxyManager tableProxyManager) throws SQLException {
+
+        // Locks are requested for each partition when the statement for that partition is executed.
+        tableProxyManager.addProxy(TableProxy.getDummyQueryProxy(new LockRequest(session)));
+    }
+
+    @Override
+    public int update(final String transactionName) throws SQLException, RPCException {
+
+        /*
+         * The statements on each partition prepare their own part of the transaction.
+         */
+        return update();
+    }
+
+    @Override
+    public int update() throws SQLException, RPCException {
+
+        int count = 0;
+
+        for (final int partition : partitions) {
+            final Command command = session.prepareLocal(getPartitionSQL(partition));
+
+            setParameters(command.getParameters());
+
+            count += command.executeUpdate(true);
+            command.close();
+        }
+
+        return count;
+    }
+
+    /**
+     * Copy the values of this statement's parameters to the statement being executed on a partition. The partition statement has the same
+     * parameters in the same order, because only the table name differs.
+     */
+    private void setParameters(final ObjectArray partitionParameters) throws SQLException {
+
+        final ObjectArray parameters = getParameters();
+
+        for (int i = 0; i < partitionParameters.size(); i++) {
+            final ParameterInterface target = (ParameterInterface) partitionParameters.get(i);
+            target.setValue(((Parameter) parameters.get(i)).getParamValue(), false);
+        }
+    }
+
+    private String getPartitionSQL(final int partition) {
+
+        return statementStart + " " + partitionScheme.getPartitionTableInfo(partition).getFullTableName() + " " + tableAlias + " " + statementEnd;
+    }
+
+    @Override
+    public boolean isTransactional() {
+
+        return true;
+    }
+
+    @Override
+    public LocalResult queryMeta() throws SQLException {
+
+        return null;
+    }
+
+    @Override
+    public String getPlanSQL() {
+
+        final StringBuilder sql = new StringBuilder();
+
+        for (final int partition : partitions) {
+            if (sql.length() > 0) {
+                sql.append(";\n");
+            }
+            sql.append(getPartitionSQL(partition));
+        }
+
+        return sql.toString();
+    }
+}
@@ -1,10 +1,12 @@
 package org.h2.command.h2o;
 
 import java.sql.SQLException;
+import java.util.List;
 
 import org.h2.engine.Database;
 import org.h2.engine.Session;
 import org.h2.schema.Schema;
+import org.h2o.db.id.DatabaseID;
 import org.h2o.db.id.TableInfo;
 import org.h2o.db.interfaces.ITableManagerRemote;
 import org.h2o.db.manager.TableManager;
@@ -64,7 +66,6 @@ public class RecreateTableManager extends org.h2.command.ddl.SchemaCommand {
     public int update() throws SQLException, RPCException {
 
         final Database db = session.getDatabase();
-        final ISystemTableReference systemTableReference = db.getSystemTableReference();
 
         String schemaName = "";
         if (getSchema() != null) {
@@ -76,6 +77,27 @@ public class RecreateTableManager extends org.h2.command.ddl.SchemaCommand {
 
         final TableInfo ti = new TableInfo(tableName, schemaName, db.getID());
 
+        return recreate(db, ti, oldPrimaryLocation, null) ? 1 : -1;
+    }
+
+    /**
+     * Recreate a Table Manager on the given instance, unless it is already active elsewhere.
+     * 
+     * @param db
+     *            the instance on which the Table Manager is to be recreated.
+     * @param ti
+     *            the table whose Table Manager is to be recreated.
+     * @param oldPrimaryLocation
+     *            the sanitized location of the instance that previously held the Table Manager.
+     * @param replicaLocations
+     *            the replica locations of the table, if they have already been read from the old primary's meta-tables, or null if they
+     *            should be read now.
+     * @return true if the Table Manager was recreated or was already active; false if it couldn't be recreated.
+     */
+    public static boolean recreate(final Database db, final TableInfo ti, final String oldPrimaryLocation, final List<DatabaseID> replicaLocations) throws SQLException, RPCException {
+
+        final ISystemTableReference systemTableReference = db.getSystemTableReference();
+
         /*
          * Perform a check to see that it isn't already active.
          */
@@ -98,7 +120,12 @@ public class RecreateTableManager extends org.h2.command.ddl.SchemaCommand {
 
             try {
                 tm = new TableManager(ti, db, true);
-                tm.recreateReplicaManagerState(oldPrimaryLocation);
+                if (replicaLocations == null) {
+                    tm.recreateReplicaManagerState(oldPrimaryLocation);
+                }
+                else {
+                    tm.recreateReplicaManagerState(oldPrimaryLocation, replicaLocations);
+                }
                 Diagnostic.traceNoEvent(DiagnosticLevel.FULL, "Re-created replica manager for " + ti + " on " + db.getID() + ".");
                 tm.persistToCompleteStartup(ti);
                 tm.persistReplicaInformation();
@@ -108,11 +135,11 @@ public class RecreateTableManager extends org.h2.command.ddl.SchemaCommand {
             }
             catch (final SQLException e) {
                 //Update Failed.
-                return -1;
+                return false;
             }
             catch (final Exception e) {
                 //Update Failed.
-                return -1;
+                return false;
             }
 
             Diagnostic.traceNoEvent(DiagnosticLevel.INIT, ti + " recreated on " + db.getID() + ".");
@@ -123,7 +150,7 @@ public class RecreateTableManager extends org.h2.command.ddl.SchemaCommand {
             Diagnostic.traceNoEvent(DiagnosticLevel.FULL, "Table Manager for " + ti + " will not be recreated on " + db.getID() + " because it already active elsewhere.");
         }
 
-        return 1;
+        return true;
     }
 
     /*
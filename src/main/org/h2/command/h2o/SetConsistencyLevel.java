@@ -0,0 +1,160 @@
+package org.h2.command.h2o;
+
+import java.sql.SQLException;
+
+import org.h2.command.Prepared;
+import org.h2.constant.ErrorCode;
+import org.h2.engine.Session;
+import org.h2.message.Message;
+import org.h2.result.LocalResult;
+import org.h2.schema.Schema;
+import org.h2o.db.id.TableInfo;
+import org.h2o.db.interfaces.ITableManagerRemote;
+import org.h2o.db.manager.interfaces.ISystemTableReference;
+import org.h2o.db.query.TableProxyManager;
+import org.h2o.db.replication.ConsistencyLevel;
+import org.h2o.db.replication.ReadConsistency;
+import org.h2o.util.exceptions.MovedException;
+
+import uk.ac.standrews.cs.nds.rpc.RPCException;
+
+/**
+ * Sets the write quorum or read consistency of a table, or overrides them for the current session.
+ * 
+ * <p>Syntax:
+ * <ul>
+ * <li>SET WRITE_QUORUM [FOR tableName] { n | ALL | DEFAULT }</li>
+ * <li>SET READ_CONSISTENCY [FOR tableName] { ANY | LATEST | DEFAULT }</li>
+ * </ul>
+ * 
+ * <p>If no table is given the setting applies to every table used by this session. DEFAULT restores the database default (for a table) or
+ * the setting of each table (for a session).
+ * 
+ * @author Angus Macdonald (angus@cs.st-andrews.ac.uk)
+ */
+public class SetConsistencyLevel extends Prepared {
+
+    private final Schema schema;
+
+    /**
+     * Null if the setting applies to the current session.
+     */
+    private final String tableName;
+
+    /**
+     * True if the write quorum is being changed, false if the read consistency is being changed.
+     */
+    private boolean changeWriteQuorum;
+
+    private Integer writeQuorum;
+
+    private ReadConsistency readConsistency;
+
+    public SetConsistencyLevel(final Session session, final Schema schema, final String tableName) {
+
+        super(session, true);
+
+        this.schema = schema;
+        this.tableName = tableName;
+    }
+
+    /**
+     * @param writeQuorum the number of replicas that must acknowledge an update, {@link ConsistencyLevel#ALL_REPLICAS}, or null to restore the default.
+     */
+    public void setWriteQuorum(final Integer writeQuorum) {
+
+        changeWriteQuorum = true;
+        this.writeQuorum = writeQuorum;
+    }
+
+    /**
+     * @param readConsistency the read consistency, or null to restore the default.
+     */
+    public void setReadConsistency(final ReadConsistency readConsistency) {
+
+        changeWriteQuorum = false;
+        this.readConsistency = readConsistency;
+    }
+
+    @Override
+    public int update() throws SQLException, RPCException {
+
+        if (tableName == null) {
+            if (changeWriteQuorum) {
+                session.setWriteQuorum(writeQuorum);
+            }
+            else {
+                session.setReadConsistency(readConsistency);
+            }
+
+            return 0;
+        }
+
+        final String schemaName = schema == null ? "PUBLIC" : schema.getName();
+        final ISystemTableReference systemTableReference = session.getDatabase().getSystemTableReference();
+
+        ITableManagerRemote tableManager = systemTableReference.lookup(new TableInfo(tableName, schemaName), true);
+
+        if (tableManager == null) { throw Message.getSQLException(ErrorCode.TABLE_OR_VIEW_NOT_FOUND_1, schemaName + "." + tableName); }
+
+        try {
+            try {
+                setConsistencyLevel(tableManager);
+            }
+            catch (final MovedException e) {
+                tableManager = systemTableReference.lookup(new TableInfo(tableName, schemaName), false);
+                setConsistencyLevel(tableManager);
+            }
+        }
+        catch (final MovedException e) {
+            throw new SQLException("The Table Manager for " + schemaName + "." + tableName + " has moved and can't be accessed at this location.");
+        }
+
+        return 0;
+    }
+
+    private void setConsistencyLevel(final ITableManagerRemote tableManager) throws RPCException, MovedException, SQLException {
+
+        final ConsistencyLevel current = tableManager.getConsistencyLevel();
+        final ConsistencyLevel defaults = ConsistencyLevel.getDefault(session.getDatabase().getDatabaseSettings());
+
+        final ConsistencyLevel updated;
+
+        if (changeWriteQuorum) {
+            updated = new ConsistencyLevel(writeQuorum == null ? defaults.getWriteQuorum() : writeQuorum, current.getReadConsistency());
+        }
+        else {
+            updated = new ConsistencyLevel(current.getWriteQuorum(), readConsistency == null ? defaults.getReadConsistency() : readConsistency);
+        }
+
+        tableManager.setConsistencyLevel(updated);
+    }
+
+    @Override
+    public void acquireLocks(final TableProxyManager tableProxyManager) throws SQLException {
+
+        //No lock required.
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.h2.command.Prepared#isTransactionCommand()
+     */
+    @Override
+    public boolean isTransactionCommand() {
+
+        return true;
+    }
+
+    @Override
+    public boolean isTransactional() {
+
+        return false;
+    }
+
+    @Override
+    public LocalResult queryMeta() throws SQLException {
+
+        return null;
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2004-2009 H2 Group. Multiple-Licensed under the H2 License, Version 1.0, and under the Eclipse Public License, Version 1.0
+ * (http://h2database.com/html/license.html). Initial Developer: H2 Group
+ */
+package org.h2.compress;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.SQLException;
+
+import org.h2.util.ByteUtils;
+
+/**
+ * An input stream to read blocks written by a {@link CompressedBlockOutputStream}. The data is automatically expanded.
+ */
+public class CompressedBlockInputStream extends InputStream {
+
+    private final InputStream in;
+
+    private final Compressor decompress;
+
+    private int pos;
+
+    private int bufferLength;
+
+    private byte[] inBuffer;
+
+    private byte[] buffer;
+
+    private boolean eof;
+
+    public CompressedBlockInputStream(InputStream in, Compressor decompress) {
+
+        this.in = in;
+        this.decompress = decompress;
+    }
+
+    private byte[] ensureSize(byte[] buff, int len) {
+
+        return buff == null || buff.length < len ? ByteUtils.newBytes(len) : buff;
+    }
+
+    /**
+     * Read the next block if the current one has been used up.
+     * 
+     * @return false if the end of the stream has been reached
+     */
+    private boolean fillBuffer() throws IOException {
+
+        while (pos >= bufferLength) {
+            if (eof) { return false; }
+            int len;
+            try {
+                len = readInt();
+            }
+            catch (EOFException e) {
+                eof = true;
+                return false;
+            }
+            if (len < 0) {
+                len = -len;
+                buffer = ensureSize(buffer, len);
+                readFully(buffer, len);
+                bufferLength = len;
+            }
+            else {
+                int size = readInt();
+                inBuffer = ensureSize(inBuffer, len);
+                readFully(inBuffer, len);
+                buffer = ensureSize(buffer, size);
+                long start = CompressionStatistics.now();
+                try {
+                    decompress.expand(inBuffer, 0, len, buffer, 0, size);
+                }
+                catch (SQLException e) {
+                    IOException io = new IOException("Couldn't expand a compressed block: " + e.getMessage());
+                    io.initCause(e);
+                    throw io;
+                }
+                CompressionStatistics.expanded(start);
+                bufferLength = size;
+            }
+            pos = 0;
+        }
+        return true;
+    }
+
+    private void readFully(byte[] buff, int len) throws IOException {
+
+        int off = 0;
+        while (len > 0) {
+            int l = in.read(buff, off, len);
+            if (l < 0) { throw new EOFException(); }
+            len -= l;
+            off += l;
+        }
+    }
+
+    private int readInt() throws IOException {
+
+        int ch1 = in.read();
+        int ch2 = in.read();
+        int ch3 = in.read();
+        int ch4 = in.read();
+        if ((ch1 | ch2 | ch3 | ch4) < 0) { throw new EOFException(); }
+        return (ch1 << 24) + (ch2 << 16) + (ch3 << 8) + ch4;
+    }
+
+    public int read() throws IOException {
+
+        if (!fillBuffer()) { return -1; }
+        return buffer[pos++] & 255;
+    }
+
+    public int read(byte[] b, int off, int len) throws IOException {
+
+        if (len == 0) { return 0; }
+        if (!fillBuffer()) { return -1; }
+        int copy = Math.min(len, bufferLength - pos);
+        System.arraycopy(buffer, pos, b, off, copy);
+        pos += copy;
+        return copy;
+    }
+
+    public int available() {
+
+        return bufferLength - pos;
+    }
+
+    public void close() throws IOException {
+
+        in.close();
+    }
+
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2004-2009 H2 Group. Multiple-Licensed under the H2 License, Version 1.0, and under the Eclipse Public License, Version 1.0
+ * (http://h2database.com/html/license.html). Initial Developer: H2 Group
+ */
+package org.h2.compress;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * An output stream that compresses the data written to it in blocks, using any compression algorithm. Unlike {@link LZFOutputStream},
+ * flushing the stream writes the block collected so far and flushes the underlying stream, so it can be used for requests and responses
+ * sent over a network connection. Blocks shorter than the threshold, and blocks that don't get smaller, are written uncompressed.
+ * 
+ * <p>Each block is written as the length of the compressed data followed by the length of the original data and the compressed data, or
+ * as the negated length of the data followed by the data if it isn't compressed. It is read by {@link CompressedBlockInputStream}.
+ */
+public class CompressedBlockOutputStream extends OutputStream {
+
+    private final OutputStream out;
+
+    private final Compressor compress;
+
+    private final int threshold;
+
+    private final byte[] buffer;
+
+    private final byte[] outBuffer;
+
+    private int pos;
+
+    /**
+     * @param out
+     *            the stream to write the blocks to
+     * @param compress
+     *            the compression algorithm
+     * @param threshold
+     *            the length below which blocks aren't compressed
+     * @param blockSize
+     *            the maximum length of a block
+     */
+    public CompressedBlockOutputStream(OutputStream out, Compressor compress, int threshold, int blockSize) {
+
+        this.out = out;
+        this.compress = compress;
+        this.threshold = threshold;
+        buffer = new byte[blockSize];
+        outBuffer = new byte[(blockSize < 100 ? blockSize + 100 : blockSize) * 2];
+    }
+
+    public void write(int b) throws IOException {
+
+        if (pos >= buffer.length) {
+            writeBlock();
+        }
+        buffer[pos++] = (byte) b;
+    }
+
+    public void write(byte[] buff, int off, int len) throws IOException {
+
+        while (len > 0) {
+            int copy = Math.min(buffer.length - pos, len);
+            System.arraycopy(buff, off, buffer, pos, copy);
+            pos += copy;
+            if (pos >= buffer.length) {
+                writeBlock();
+            }
+            off += copy;
+            len -= copy;
+        }
+    }
+
+    private void writeBlock() throws IOException {
+
+        if (pos == 0) { return; }
+
+        long start = CompressionStatistics.now();
+        int compressed = pos < threshold ? pos : compress.compress(buffer, pos, outBuffer, 0);
+        if (pos < threshold || compressed <= 0 || compressed >= pos) {
+            writeInt(-pos);
+            out.write(buffer, 0, pos);
+            CompressionStatistics.compressed(pos, pos, start);
+        }
+        else {
+            writeInt(compressed);
+            writeInt(pos);
+            out.write(outBuffer, 0, compressed);
+            CompressionStatistics.compressed(pos, compressed, start);
+        }
+        pos = 0;
+    }
+
+    private void writeInt(int x) throws IOException {
+
+        out.write((byte) (x >> 24));
+        out.write((byte) (x >> 16));
+        out.write((byte) (x >> 8));
+        out.write((byte) x);
+    }
+
+    public void flush() throws IOException {
+
+        writeBlock();
+        out.flush();
+    }
+
+    public void close() throws IOException {
+
+        flush();
+        out.close();
+    }
+
+}
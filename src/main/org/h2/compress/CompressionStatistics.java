@@ -0,0 +1,98 @@
+/*
+ * Copyright 2004-2009 H2 Group. Multiple-Licensed under the H2 License, Version 1.0, and under the Eclipse Public License, Version 1.0
+ * (http://h2database.com/html/license.html). Initial Developer: H2 Group
+ */
+package org.h2.compress;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the data compressed and expanded before being sent between processes, so that the bandwidth saved can be weighed against the
+ * processor time spent. The counters cover every compressed connection and message in this process, and are shown in
+ * INFORMATION_SCHEMA.SETTINGS.
+ */
+public class CompressionStatistics {
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private static final AtomicLong BYTES_BEFORE_COMPRESSION = new AtomicLong();
+
+    private static final AtomicLong BYTES_AFTER_COMPRESSION = new AtomicLong();
+
+    private static final AtomicLong COMPRESSION_TIME = new AtomicLong();
+
+    private static final AtomicLong EXPANSION_TIME = new AtomicLong();
+
+    private CompressionStatistics() {
+
+        // utility class
+    }
+
+    /**
+     * Get the processor time used by the current thread, or the elapsed time if the JVM doesn't measure it.
+     * 
+     * @return the time in nanoseconds
+     */
+    public static long now() {
+
+        if (THREADS.isCurrentThreadCpuTimeSupported()) { return THREADS.getCurrentThreadCpuTime(); }
+
+        return System.nanoTime();
+    }
+
+    /**
+     * Record that data was prepared for sending.
+     * 
+     * @param before
+     *            the number of bytes before compression
+     * @param after
+     *            the number of bytes sent, which is the same as before if the data was sent uncompressed
+     * @param start
+     *            the time given by {@link #now()} when compression started
+     */
+    public static void compressed(int before, int after, long start) {
+
+        BYTES_BEFORE_COMPRESSION.addAndGet(before);
+        BYTES_AFTER_COMPRESSION.addAndGet(after);
+        COMPRESSION_TIME.addAndGet(now() - start);
+    }
+
+    /**
+     * Record that received data was expanded.
+     * 
+     * @param start
+     *            the time given by {@link #now()} when expansion started
+     */
+    public static void expanded(long start) {
+
+        EXPANSION_TIME.addAndGet(now() - start);
+    }
+
+    public static long getBytesBeforeCompression() {
+
+        return BYTES_BEFORE_COMPRESSION.get();
+    }
+
+    public static long getBytesAfterCompression() {
+
+        return BYTES_AFTER_COMPRESSION.get();
+    }
+
+    /**
+     * @return the time spent compressing data, in milliseconds
+     */
+    public static long getCompressionTime() {
+
+        return COMPRESSION_TIME.get() / 1000000;
+    }
+
+    /**
+     * @return the time spent expanding data, in milliseconds
+     */
+    public static long getExpansionTime() {
+
+        return EXPANSION_TIME.get() / 1000000;
+    }
+}
@@ -207,12 +207,38 @@ public class SysProperties {
      */
     public static final int ESTIMATED_FUNCTION_TABLE_ROWS = getIntSetting("h2.estimatedFunctionTableRows", 1000);
 
+    /**
+     * System property <code>h2.groupCommitMaxDelay</code> (default: 0).<br />
+     * The maximum time in milliseconds a commit waits for other commits before the transaction log is flushed, if the log is flushed on
+     * each commit. Commits that arrive while the log is being flushed are always flushed together, even if this is 0.
+     */
+    public static final int GROUP_COMMIT_MAX_DELAY = getIntSetting("h2.groupCommitMaxDelay", 0);
+
+    /**
+     * System property <code>h2.groupCommitMaxSize</code> (default: 64).<br />
+     * The number of waiting commits at which the transaction log is flushed without waiting for the rest of the group commit delay.
+     */
+    public static final int GROUP_COMMIT_MAX_SIZE = getIntSetting("h2.groupCommitMaxSize", 64);
+
     /**
      * System property <code>h2.largeResultBufferSize</code> (default: 4096).<br />
      * Buffer size for large result sets. Set this value to 0 to disable the buffer.
      */
     public static final int LARGE_RESULT_BUFFER_SIZE = getIntSetting("h2.largeResultBufferSize", 4 * 1024);
 
+    /**
+     * System property <code>h2.linkedJoinBatchSize</code> (default: 500).<br />
+     * The number of join keys sent to a linked table in each query when it is joined by semi-join.
+     */
+    public static final int LINKED_JOIN_BATCH_SIZE = getIntSetting("h2.linkedJoinBatchSize", 500);
+
+    /**
+     * System property <code>h2.linkedJoinMaxRows</code> (default: 100000).<br />
+     * The largest estimated number of rows that are read into memory to join a linked table without a remote query for each row of the
+     * other table: the rows of the linked table for a broadcast join, or the rows of the other table for a semi-join.
+     */
+    public static final int LINKED_JOIN_MAX_ROWS = getIntSetting("h2.linkedJoinMaxRows", 100000);
+
     /**
      * System property <code>h2.lobCloseBetweenReads</code> (default: false).<br />
      * Close LOB files between read operations.
@@ -547,6 +573,21 @@ public class SysProperties {
      */
     public static final boolean TRACE_IO = getBooleanSetting("h2.traceIO", false);
 
+    /**
+     * System property <code>h2.transferCompression</code> (default: NO).<br />
+     * The algorithm (NO, LZF or DEFLATE) used to compress data sent over client/server connections, such as those used to copy the
+     * contents of tables when replicas are created, and the statements sent to replicas of tables. Connections are only compressed if the
+     * server supports it.
+     */
+    public static final String TRANSFER_COMPRESSION = getStringSetting("h2.transferCompression", "NO");
+
+    /**
+     * System property <code>h2.transferCompressionThreshold</code> (default: 1024).<br />
+     * Data sent over a compressed connection, and statements sent to replicas, are only compressed if they are at least this many bytes
+     * long.
+     */
+    public static final int TRANSFER_COMPRESSION_THRESHOLD = getIntSetting("h2.transferCompressionThreshold", 1024);
+
     /**
      * System property <code>h2.webMaxValueLength</code> (default: 10000).<br />
      * The H2 Console will abbreviate result values larger than this size.
@@ -101,6 +101,7 @@ import org.h2o.autonomic.numonic.interfaces.INumonic;
 import org.h2o.autonomic.numonic.threshold.Threshold;
 import org.h2o.autonomic.settings.Settings;
 import org.h2o.autonomic.settings.TestingSettings;
+import org.h2o.db.DatabaseInstanceProxy;
 import org.h2o.db.DatabaseInstanceServer;
 import org.h2o.db.id.DatabaseID;
 import org.h2o.db.interfaces.IDatabaseInstanceRemote;
@@ -111,10 +112,16 @@ import org.h2o.db.manager.TableManager;
 import org.h2o.db.manager.TableManagerInstanceServer;
 import org.h2o.db.manager.interfaces.ISystemTableMigratable;
 import org.h2o.db.manager.interfaces.ISystemTableReference;
+import org.h2o.db.manager.monitorthreads.FailureDetector;
 import org.h2o.db.manager.monitorthreads.MetaDataReplicationThread;
 import org.h2o.db.manager.recovery.LocatorException;
+import org.h2o.db.query.ReplicaSetCache;
+import org.h2o.db.query.StickyLockCache;
+import org.h2o.db.query.TableProxy;
+import org.h2o.db.query.TableProxyCache;
 import org.h2o.db.query.TableProxyManager;
 import org.h2o.db.query.asynchronous.AsynchronousQueryManager;
+import org.h2o.db.query.locking.ReadLockReleaser;
 import org.h2o.db.remote.ChordRemote;
 import org.h2o.db.remote.IChordInterface;
 import org.h2o.db.remote.IDatabaseRemote;
@@ -123,6 +130,7 @@ import org.h2o.db.wrappers.DatabaseInstanceWrapper;
 import org.h2o.locator.client.H2OLocatorInterface;
 import org.h2o.util.H2ONetUtils;
 import org.h2o.util.H2OPropertiesWrapper;
+import org.h2o.util.PhaseTimer;
 import org.h2o.util.TransactionNameGenerator;
 import org.h2o.util.exceptions.MovedException;
 import org.h2o.util.exceptions.StartupException;
@@ -300,6 +308,11 @@ public class Database implements DataHandler, Observer, ISystemStatus {
 
     private HashMap<TableLinkConnection, TableLinkConnection> linkConnections;
 
+    /**
+     * H2O. Incremented each time the link connection cache is cleared, so that anything keeping a linked table can tell that it may be stale.
+     */
+    private volatile int tableLinkCacheVersion = 0;
+
     private final TempFileDeleter tempFileDeleter = TempFileDeleter.getInstance();
 
     private PageStore pageStore;
@@ -316,6 +329,33 @@ public class Database implements DataHandler, Observer, ISystemStatus {
 
     private MetaDataReplicationThread metaDataReplicationThread;
 
+    private FailureDetector failureDetector;
+
+    /**
+     * H2O. The state of the replicas of tables recently updated by this instance, used to update tables without a lock.
+     */
+    private final TableProxyCache tableProxyCache = new TableProxyCache();
+
+    /**
+     * H2O. The last replica snapshot received from the Table Manager of each table.
+     */
+    private final ReplicaSetCache replicaSetCache = new ReplicaSetCache();
+
+    /**
+     * H2O. Write locks this instance has kept after the transactions that acquired them committed.
+     */
+    private final StickyLockCache stickyLockCache = new StickyLockCache();
+
+    /**
+     * H2O. The hot standby of the System Table on this instance, or null if there isn't one.
+     */
+    private SystemTable systemTableStandby = null;
+
+    /**
+     * H2O. The time taken by each phase of starting this instance.
+     */
+    private final PhaseTimer startupTimer = new PhaseTimer("Database startup");
+
     private volatile boolean running = false;
 
     public MetaDataReplicaManager getMetaDataReplicaManager() {
@@ -330,6 +370,11 @@ public class Database implements DataHandler, Observer, ISystemStatus {
 
     private final AsynchronousQueryManager asynchronousQueryManager;
 
+    /**
+     * Releases the read locks of auto-committed queries in the background.
+     */
+    private final ReadLockReleaser readLockReleaser;
+
     private User h2oSchemaUser;
 
     private Session h2oSession;
@@ -378,6 +423,7 @@ public class Database implements DataHandler, Observer, ISystemStatus {
 
         transactionNameGenerator = new TransactionNameGenerator(localMachineLocation);
         asynchronousQueryManager = new AsynchronousQueryManager(this);
+        readLockReleaser = new ReadLockReleaser();
 
         compareMode = new CompareMode(null, null, 0);
         systemTableRef = new SystemTableReference(this);
@@ -395,6 +441,8 @@ public class Database implements DataHandler, Observer, ISystemStatus {
             if (Constants.DO_LOCK_LOGGING) {
                 ErrorHandling.errorNoEvent("WARNING: LOGGING OF LOCK REQUESTS IS ENABLED. This uses massive amounts of memory and should only be used when debugging.");
             }
+            startupTimer.startPhase("settings");
+
             /*
              * Get Settings for Database.
              */
@@ -473,6 +521,8 @@ public class Database implements DataHandler, Observer, ISystemStatus {
         openDatabase(traceLevelFile, traceLevelSystemOut, closeAtVmShutdown, ci, localMachineLocation);
 
         if (!isManagementDB()) {
+            startupTimer.startPhase("monitoring");
+
             final boolean metaDataReplicationEnabled = Boolean.parseBoolean(databaseSettings.get("METADATA_REPLICATION_ENABLED"));
 
             if (!Constants.IS_NON_SM_TEST && metaDataReplicationEnabled) {
@@ -495,6 +545,10 @@ public class Database implements DataHandler, Observer, ISystemStatus {
             }
         }
 
+        if (!isManagementDB()) {
+            startupTimer.finish();
+        }
+
         running = true;
         connected = true;
         Diagnostic.traceNoEvent(DiagnosticLevel.FULL, "Database " + getID() + " started.");
@@ -838,6 +892,8 @@ public class Database implements DataHandler, Observer, ISystemStatus {
         // on disk. i.e. with .db.data files,
         // etc.
 
+        startupTimer.startPhase("local storage");
+
         if (persistent) {
 
             if (SysProperties.PAGE_STORE) {
@@ -974,6 +1030,7 @@ public class Database implements DataHandler, Observer, ISystemStatus {
          */
         if (!isManagementDB()) { // don't run this code with the TCP server management DB
 
+            startupTimer.startPhase("connect to database system");
             databaseRemote.connectToDatabaseSystem(h2oSystemSession, databaseSettings);
 
             // Establish Proxies
@@ -990,6 +1047,8 @@ public class Database implements DataHandler, Observer, ISystemStatus {
          * ######
          */
 
+        startupTimer.startPhase("meta-records");
+
         final Cursor cursor = metaIdIndex.find(systemSession, null, null);
         // first, create all function aliases and sequences because
         // they might be used in create table / view / constraints and so on
@@ -1055,6 +1114,8 @@ public class Database implements DataHandler, Observer, ISystemStatus {
         systemSession.commit(true);
         traceSystem.getTrace(Trace.DATABASE).info("opened " + databaseName);
 
+        startupTimer.startPhase("System Table state");
+
         if (!isManagementDB() && (!databaseExists || !systemTableRef.isSystemTableLocal())) {
             // don't run this code with the TCP server management DB
 
@@ -1177,6 +1238,47 @@ public class Database implements DataHandler, Observer, ISystemStatus {
         Diagnostic.traceNoEvent(DiagnosticLevel.INIT, "Obtained reference to existing System Table.");
     }
 
+    /**
+     * H2O. Start a hot standby of the System Table on this instance, or bring the existing one up to date, by copying the state of the
+     * active System Table.
+     *
+     * @param activeSystemTableLocation
+     *            the location of the active System Table
+     * @return the standby
+     * @throws SQLException
+     *             if the state of the active System Table couldn't be copied
+     */
+    public synchronized ISystemTableMigratable startSystemTableStandby(final DatabaseID activeSystemTableLocation) throws SQLException {
+
+        try {
+            if (systemTableStandby == null || !systemTableStandby.isStandby()) {
+                systemTableStandby = new SystemTable(this, activeSystemTableLocation);
+                startSystemTableServer(systemTableStandby);
+            }
+
+            systemTableStandby.copyStateOfActiveSystemTable(DatabaseInstanceProxy.getProxy(activeSystemTableLocation).getSystemTable());
+        }
+        catch (final SQLException e) {
+            throw e;
+        }
+        catch (final Exception e) {
+            ErrorHandling.exceptionError(e, "Failed to start hot standby of the System Table.");
+            throw new SQLException("Failed to start hot standby of the System Table: " + e.getMessage());
+        }
+
+        return systemTableStandby;
+    }
+
+    /**
+     * H2O.
+     *
+     * @return the hot standby of the System Table on this instance, or null if there isn't one
+     */
+    public synchronized SystemTable getSystemTableStandby() {
+
+        return systemTableStandby != null && systemTableStandby.isStandby() ? systemTableStandby : null;
+    }
+
     public void startSystemTableServer(final ISystemTableMigratable newSystemTable) {
 
         int preferredSystemTablePort = Integer.parseInt(databaseSettings.get("SYSTEM_TABLE_SERVER_PORT"));
@@ -1666,6 +1768,17 @@ public class Database implements DataHandler, Observer, ISystemStatus {
             H2OEventBus.publish(new H2OEvent(getID().getURL(), DatabaseStates.DATABASE_SHUTDOWN, null));
 
             metaDataReplicationThread.setRunning(false);
+            if (failureDetector != null) {
+                failureDetector.setRunning(false);
+            }
+            asynchronousQueryManager.shutdownPipelines();
+            readLockReleaser.shutdown();
+
+            // Locks kept between transactions would otherwise be held by the Table Managers until this instance is suspected of failure.
+            for (final TableProxy kept : stickyLockCache.surrenderAll()) {
+                TableProxy.releaseKeptLock(kept);
+            }
+
             running = false;
             removeLocalDatabaseInstance();
 
@@ -2919,6 +3032,15 @@ public class Database implements DataHandler, Observer, ISystemStatus {
     public void clearTableLinkCache() {
 
         linkConnections = new HashMap<TableLinkConnection, TableLinkConnection>();
+        tableLinkCacheVersion++;
+    }
+
+    /**
+     * H2O. Get the number of times the link connection cache has been cleared.
+     */
+    public int getTableLinkCacheVersion() {
+
+        return tableLinkCacheVersion;
     }
 
     @Override
@@ -3311,6 +3433,64 @@ public class Database implements DataHandler, Observer, ISystemStatus {
         return databaseSettings;
     }
 
+    /**
+     * H2O. Get the failure detector that monitors the other instances in the database system, starting it if necessary.
+     *
+     * @return the failure detector
+     */
+    public synchronized FailureDetector getFailureDetector() {
+
+        if (failureDetector == null) {
+            final int heartbeatInterval = Integer.parseInt(databaseSettings.get("FAILURE_DETECTOR_HEARTBEAT_INTERVAL"));
+            final double phiThreshold = Double.parseDouble(databaseSettings.get("FAILURE_DETECTOR_PHI_THRESHOLD"));
+
+            failureDetector = new FailureDetector(this, heartbeatInterval, phiThreshold);
+            failureDetector.start();
+        }
+
+        return failureDetector;
+    }
+
+    /**
+     * H2O.
+     *
+     * @return the state of the replicas of tables recently updated by this instance
+     */
+    public TableProxyCache getTableProxyCache() {
+
+        return tableProxyCache;
+    }
+
+    /**
+     * H2O.
+     *
+     * @return the last replica snapshot received from the Table Manager of each table
+     */
+    public ReplicaSetCache getReplicaSetCache() {
+
+        return replicaSetCache;
+    }
+
+    /**
+     * H2O.
+     *
+     * @return the write locks this instance has kept after the transactions that acquired them committed
+     */
+    public StickyLockCache getStickyLockCache() {
+
+        return stickyLockCache;
+    }
+
+    /**
+     * H2O.
+     *
+     * @return the time taken by each phase of starting this instance
+     */
+    public PhaseTimer getStartupTimer() {
+
+        return startupTimer;
+    }
+
     public TransactionNameGenerator getTransactionNameGenerator() {
 
         return transactionNameGenerator;
@@ -3413,6 +3593,11 @@ public class Database implements DataHandler, Observer, ISystemStatus {
         return asynchronousQueryManager;
     }
 
+    public ReadLockReleaser getReadLockReleaser() {
+
+        return readLockReleaser;
+    }
+
     public TableManagerInstanceServer getTableManagerServer() {
 
         return table_manager_instance_server;
@@ -64,6 +64,7 @@ import org.h2.value.ValueNull;
 import org.h2.value.ValueString;
 import org.h2o.db.query.TableProxyManager;
 import org.h2o.db.remote.IDatabaseRemote;
+import org.h2o.db.replication.ReadConsistency;
 
 import uk.ac.standrews.cs.nds.util.Diagnostic;
 import uk.ac.standrews.cs.nds.util.DiagnosticLevel;
@@ -100,6 +101,21 @@ public class Session extends SessionWithState {
 
     private final UndoLog undoLog;
 
+    /**
+     * H2O. The changes logged since {@link #startCapturingRowChanges(int)} was called, or null if they aren't being captured.
+     */
+    private ObjectArray capturedRowChanges = null;
+
+    /**
+     * H2O. The most changes to capture, after which capturing stops and {@link #stopCapturingRowChanges()} returns null.
+     */
+    private int rowChangeCaptureLimit = 0;
+
+    /**
+     * H2O. Whether more changes were logged than could be captured.
+     */
+    private boolean rowChangeCaptureLimitExceeded = false;
+
     private Random random;
 
     private final LogSystem logSystem;
@@ -175,6 +191,22 @@ public class Session extends SessionWithState {
      */
     private boolean applicationAutoCommit = true;
 
+    /*
+     * The write quorum requested for updates made in this session, overriding that of each table. Null if the table's quorum is used.
+     */
+    private Integer writeQuorum = null;
+
+    /*
+     * The read consistency requested for queries made in this session, overriding that of each table. Null if the table's setting is used.
+     */
+    private ReadConsistency readConsistency = null;
+
+    /*
+     * Whether updates made in this session are executed without first acquiring a lock from the Table Manager. Null if the
+     * OPTIMISTIC_CONCURRENCY setting of the database is used.
+     */
+    private Boolean optimisticConcurrency = null;
+
     // Just used for debugging.
     private static Set<Session> sessions = new HashSet<Session>();
 
@@ -713,9 +745,48 @@ public class Session extends SessionWithState {
      */
     public void log(final Table table, final short type, final Row row) throws SQLException {
 
+        if (capturedRowChanges != null) {
+            if (capturedRowChanges.size() < rowChangeCaptureLimit) {
+                // A record of its own, because the undo log may write its records to disk and discard their rows.
+                capturedRowChanges.add(new UndoLogRecord(table, type, row));
+            }
+            else {
+                capturedRowChanges = null;
+                rowChangeCaptureLimitExceeded = true;
+            }
+        }
+
         log(new UndoLogRecord(table, type, row));
     }
 
+    /**
+     * H2O. Start keeping a copy of each change added to the undo log, so that the rows changed by a statement can be sent to the other
+     * replicas of a table.
+     * 
+     * @param limit
+     *            the most changes to keep
+     */
+    public void startCapturingRowChanges(final int limit) {
+
+        capturedRowChanges = new ObjectArray();
+        rowChangeCaptureLimit = limit;
+        rowChangeCaptureLimitExceeded = false;
+    }
+
+    /**
+     * H2O. Stop keeping a copy of the changes added to the undo log.
+     * 
+     * @return the changes logged since {@link #startCapturingRowChanges(int)} was called, in order, as {@link UndoLogRecord}s, or null if
+     *         there were more than the limit.
+     */
+    public ObjectArray stopCapturingRowChanges() {
+
+        final ObjectArray changes = rowChangeCaptureLimitExceeded ? null : capturedRowChanges == null ? new ObjectArray() : capturedRowChanges;
+        capturedRowChanges = null;
+        rowChangeCaptureLimitExceeded = false;
+        return changes;
+    }
+
     private void log(final UndoLogRecord log) throws SQLException {
 
         // TODO don't understand comment below - why the reference to row insertion?
@@ -1403,4 +1474,67 @@ public class Session extends SessionWithState {
 
         proxyManagerForCurrentTransaction = new TableProxyManager(getDatabase(), this);
     }
+
+    /**
+     * @return the write quorum this session has requested, or null if the quorum of each table is to be used.
+     */
+    public Integer getWriteQuorum() {
+
+        return writeQuorum;
+    }
+
+    /**
+     * Override the write quorum of every table updated by this session.
+     * @param writeQuorum the number of replicas that must acknowledge an update, {@link org.h2o.db.replication.ConsistencyLevel#ALL_REPLICAS}, or null
+     * to use the quorum of each table.
+     */
+    public void setWriteQuorum(final Integer writeQuorum) {
+
+        this.writeQuorum = writeQuorum;
+    }
+
+    /**
+     * @return the read consistency this session has requested, or null if the setting of each table is to be used.
+     */
+    public ReadConsistency getReadConsistency() {
+
+        return readConsistency;
+    }
+
+    /**
+     * Override the read consistency of every table queried by this session.
+     * @param readConsistency the read consistency, or null to use the setting of each table.
+     */
+    public void setReadConsistency(final ReadConsistency readConsistency) {
+
+        this.readConsistency = readConsistency;
+    }
+
+    /**
+     * @return whether updates made in this session are executed without first acquiring a lock from the Table Manager of each table. They
+     *         are checked by the Table Manager when the transaction commits instead.
+     */
+    public boolean isOptimisticConcurrency() {
+
+        if (optimisticConcurrency != null) { return optimisticConcurrency; }
+
+        return database.getDatabaseSettings() != null && Boolean.parseBoolean(database.getDatabaseSettings().get("OPTIMISTIC_CONCURRENCY"));
+    }
+
+    /**
+     * @return whether this session has overridden the OPTIMISTIC_CONCURRENCY setting of the database, or null if it hasn't.
+     */
+    public Boolean getOptimisticConcurrency() {
+
+        return optimisticConcurrency;
+    }
+
+    /**
+     * Override the OPTIMISTIC_CONCURRENCY setting of the database for updates made by this session.
+     * @param optimisticConcurrency whether updates are to be executed without a lock, or null to use the setting of the database.
+     */
+    public void setOptimisticConcurrency(final Boolean optimisticConcurrency) {
+
+        this.optimisticConcurrency = optimisticConcurrency;
+    }
 }
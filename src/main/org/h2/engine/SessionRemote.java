@@ -70,6 +70,8 @@ public class SessionRemote extends SessionWithState implements SessionFactory, D
 
     public static final int SESSION_CHECK_KEY = 14;
 
+    public static final int SESSION_SET_COMPRESSION = 15;
+
     public static final int STATUS_ERROR = 0;
 
     public static final int STATUS_OK = 1;
@@ -406,6 +408,7 @@ public class SessionRemote extends SessionWithState implements SessionFactory, D
             throw e;
         }
         upgradeClientVersionIfPossible();
+        compressIfPossible();
     }
 
     private void upgradeClientVersionIfPossible() {
@@ -450,6 +453,45 @@ public class SessionRemote extends SessionWithState implements SessionFactory, D
         }
     }
 
+    /**
+     * Compress the connections to the servers if requested by the h2.transferCompression system property. Servers that don't support
+     * compression close the session when asked for it, so they are checked first.
+     */
+    private void compressIfPossible() {
+
+        final String algorithm = SysProperties.TRANSFER_COMPRESSION;
+        if (algorithm == null || "NO".equalsIgnoreCase(algorithm)) { return; }
+        try {
+            final CommandInterface command = prepareCommand("SELECT VALUE FROM INFORMATION_SCHEMA.SETTINGS WHERE NAME=?", 1);
+            final ParameterInterface param = (ParameterInterface) command.getParameters().get(0);
+            param.setValue(ValueString.get("info.TRANSFER_COMPRESSION"), false);
+            final ResultInterface result = command.executeQuery(1, false);
+            final boolean supported = result.next();
+            result.close();
+            if (!supported) { return; }
+        }
+        catch (final Exception e) {
+            trace.error("Error trying to find out whether the server supports compression", e);
+            return;
+        }
+        synchronized (this) {
+            for (int i = 0; i < transferList.size(); i++) {
+                final Transfer transfer = (Transfer) transferList.get(i);
+                try {
+                    traceOperation("SESSION_SET_COMPRESSION", 0);
+                    transfer.writeInt(SessionRemote.SESSION_SET_COMPRESSION);
+                    transfer.writeString(algorithm);
+                    transfer.writeInt(SysProperties.TRANSFER_COMPRESSION_THRESHOLD);
+                    done(transfer);
+                    transfer.setCompression(algorithm, SysProperties.TRANSFER_COMPRESSION_THRESHOLD);
+                }
+                catch (final Exception e) {
+                    trace.error("sessionSetCompression", e);
+                }
+            }
+        }
+    }
+
     private void switchOffCluster() throws SQLException {
 
         final CommandInterface ci = prepareCommand("SET CLUSTER ''", Integer.MAX_VALUE);
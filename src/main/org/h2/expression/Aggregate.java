@@ -559,6 +559,63 @@ public class Aggregate extends Expression {
         return text + StringUtils.enclose(on.getSQL());
     }
 
+    /**
+     * H2O. Get the expression this aggregate is computed over.
+     *
+     * @return the expression, or null for COUNT(*)
+     */
+    public Expression getExpression() {
+
+        return on;
+    }
+
+    /**
+     * H2O. Get the aggregates that compute a partial result for this aggregate over part of the data. The partial results from each part
+     * are combined with {@link #mergePartialResult(Session, HashMap, Value[], int)}.
+     *
+     * @return the SQL of the partial aggregates, or null if this aggregate can't be computed from partial results
+     */
+    public String[] getPartialResultSQL() {
+
+        if (distinct) { return null; }
+        switch (type) {
+            case COUNT_ALL:
+                return new String[]{"COUNT(*)"};
+            case COUNT:
+            case SUM:
+            case MIN:
+            case MAX:
+                return new String[]{getSQL()};
+            case AVG:
+                return new String[]{"SUM" + StringUtils.enclose(on.getSQL()), "COUNT" + StringUtils.enclose(on.getSQL())};
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * H2O. Merge a partial result computed by the aggregates returned by {@link #getPartialResultSQL()} into the given group.
+     *
+     * @param session
+     *            the session
+     * @param group
+     *            the group the partial result belongs to
+     * @param row
+     *            the row holding the partial result
+     * @param offset
+     *            the position of the first partial result for this aggregate in the row
+     */
+    public void mergePartialResult(Session session, HashMap group, Value[] row, int offset) throws SQLException {
+
+        AggregateData data = (AggregateData) group.get(this);
+        if (data == null) {
+            data = new AggregateData(type, dataType);
+            group.put(this, data);
+        }
+        Value count = type == AVG ? row[offset + 1] : null;
+        data.merge(session.getDatabase(), row[offset], count);
+    }
+
     private Index getColumnIndex(boolean first) {
 
         if (on instanceof ExpressionColumn) {
@@ -159,6 +159,45 @@ class AggregateData {
         }
     }
 
+    /**
+     * H2O. Merge a partial result, computed over part of the data, into this aggregate.
+     *
+     * @param database
+     *            the database
+     * @param v
+     *            the partial result (for AVG, the sum of the values)
+     * @param partialCount
+     *            for AVG, the number of values in the partial sum
+     */
+    void merge(Database database, Value v, Value partialCount) throws SQLException {
+
+        switch (aggregateType) {
+            case Aggregate.COUNT_ALL:
+            case Aggregate.COUNT:
+                count += v.getLong();
+                return;
+            case Aggregate.SUM:
+            case Aggregate.MIN:
+            case Aggregate.MAX:
+                if (v != ValueNull.INSTANCE) {
+                    add(database, false, v);
+                }
+                return;
+            case Aggregate.AVG:
+                if (v == ValueNull.INSTANCE) { return; }
+                if (value == null) {
+                    value = v.convertTo(DataType.getAddProofType(dataType));
+                }
+                else {
+                    value = value.add(v.convertTo(value.getType()));
+                }
+                count += partialCount.getLong();
+                return;
+            default:
+                Message.throwInternalError("type=" + aggregateType);
+        }
+    }
+
     ObjectArray getList() {
 
         return list;
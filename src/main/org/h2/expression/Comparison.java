@@ -474,4 +474,14 @@ public class Comparison extends Condition {
         return left ? this.left : right;
     }
 
+    /**
+     * Get the comparison type.
+     * 
+     * @return the type, for example EQUAL
+     */
+    public int getCompareType() {
+
+        return compareType;
+    }
+
 }
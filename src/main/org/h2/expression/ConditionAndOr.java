@@ -253,4 +253,14 @@ public class ConditionAndOr extends Condition {
         return left ? this.left : right;
     }
 
+    /**
+     * Get the type of this condition.
+     * 
+     * @return AND or OR
+     */
+    public int getAndOrType() {
+
+        return andOrType;
+    }
+
 }
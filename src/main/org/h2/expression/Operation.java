@@ -108,6 +108,14 @@ public class Operation extends Expression {
 
     }
 
+    /**
+     * H2O. Get the left operand.
+     */
+    public Expression getLeftExpression() {
+
+        return left;
+    }
+
     @Override
     public Value getValue(final Session session) throws SQLException {
 
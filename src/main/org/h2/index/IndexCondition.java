@@ -191,6 +191,26 @@ public class IndexCondition {
         return column;
     }
 
+    /**
+     * H2O. Get the comparison type.
+     * 
+     * @return the type, for example Comparison.EQUAL
+     */
+    public int getCompareType() {
+
+        return compareType;
+    }
+
+    /**
+     * H2O. Get the expression the column is compared with.
+     * 
+     * @return the expression
+     */
+    public Expression getExpression() {
+
+        return expression;
+    }
+
     /**
      * Check if the expression can be evaluated.
      * 
@@ -0,0 +1,379 @@
+/*
+ * Copyright 2004-2009 H2 Group. Multiple-Licensed under the H2 License, Version 1.0, and under the Eclipse Public License, Version 1.0
+ * (http://h2database.com/html/license.html). Initial Developer: H2 Group
+ */
+package org.h2.index;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.h2.constant.SysProperties;
+import org.h2.engine.Constants;
+import org.h2.engine.Database;
+import org.h2.engine.Session;
+import org.h2.expression.Comparison;
+import org.h2.expression.Expression;
+import org.h2.expression.ExpressionColumn;
+import org.h2.expression.ExpressionVisitor;
+import org.h2.result.Row;
+import org.h2.result.SearchRow;
+import org.h2.result.SortOrder;
+import org.h2.table.Column;
+import org.h2.table.IndexColumn;
+import org.h2.table.Table;
+import org.h2.table.TableData;
+import org.h2.table.TableFilter;
+import org.h2.table.TableLink;
+import org.h2.util.ObjectArray;
+import org.h2.util.ValueHashMap;
+import org.h2.value.Value;
+import org.h2.value.ValueNull;
+
+import uk.ac.standrews.cs.nds.util.ErrorHandling;
+
+/**
+ * H2O. Reads the rows of a linked table that is joined to another table, without a remote query for each row of the other table.
+ *
+ * <p>A nested loop join reads the inner table once for each row of the outer table, which is a remote query for each row if the inner
+ * table is linked. Instead, the rows of the linked table that are needed are read once for each query, and kept in memory by the value
+ * of the join column. One of two strategies is used, depending on the estimated row counts of the tables:
+ * <ul>
+ * <li>Broadcast: the linked table is no larger than the outer table, so all of its rows are read with a single query.</li>
+ * <li>Semi-join: the outer table is a local table, joined to the linked table on a column of each. The distinct values of the outer
+ * table's join column are sent to the linked table's instance in batches, and only the rows that match them are returned.</li>
+ * </ul>
+ * If neither applies, or more rows than {@link SysProperties#LINKED_JOIN_MAX_ROWS} would be kept in memory, the nested loop join is used.
+ *
+ * <p>The rows returned for each row of the outer table are those with a matching join column, or all rows if there is no join column.
+ * This may include rows that don't satisfy other conditions on the linked table, but these are checked by the table filter.
+ *
+ * @author Angus Macdonald (angus@cs.st-andrews.ac.uk)
+ */
+public class LinkedJoin {
+
+    /**
+     * All rows of the linked table are read.
+     */
+    public static final int BROADCAST = 0;
+
+    /**
+     * The rows of the linked table matching the join keys of the outer table are read.
+     */
+    public static final int SEMI_JOIN = 1;
+
+    private static final ObjectArray NO_ROWS = new ObjectArray();
+
+    private final int strategy;
+
+    private final TableLink link;
+
+    private final TableFilter outer;
+
+    /**
+     * The condition joining a column of the linked table to the outer table, or null if the rows aren't read by join key.
+     */
+    private final IndexCondition joinCondition;
+
+    /**
+     * The rows read in this query, by the value of the join column, or null if they haven't been read yet.
+     */
+    private ValueHashMap rowsByKey;
+
+    /**
+     * The rows read in this query, if there is no join column.
+     */
+    private ObjectArray rows;
+
+    private LinkedJoin(final int strategy, final TableLink link, final TableFilter outer, final IndexCondition joinCondition) {
+
+        this.strategy = strategy;
+        this.link = link;
+        this.outer = outer;
+        this.joinCondition = joinCondition;
+    }
+
+    /**
+     * Choose how to read a linked table that is joined to the table before it in the query plan.
+     *
+     * @param outer
+     *            the filter of the table before it in the plan
+     * @param inner
+     *            the filter of the linked table
+     * @param indexConditions
+     *            the index conditions of the inner filter
+     * @return the join, or null if a nested loop join should be used
+     */
+    public static LinkedJoin choose(final TableFilter outer, final TableFilter inner, final ObjectArray indexConditions) {
+
+        if (!(inner.getTable() instanceof TableLink)) { return null; }
+        final TableLink link = (TableLink) inner.getTable();
+
+        IndexCondition joinCondition = null;
+        for (int i = 0; i < indexConditions.size() && joinCondition == null; i++) {
+            final IndexCondition condition = (IndexCondition) indexConditions.get(i);
+            if (condition.getCompareType() == Comparison.EQUAL && isColumnOf(condition.getExpression(), outer)) {
+                joinCondition = condition;
+            }
+        }
+
+        final long innerRows = link.getRowCountApproximation();
+        final long outerRows = outer.getTable().getRowCountApproximation();
+
+        if (innerRows <= outerRows && innerRows <= SysProperties.LINKED_JOIN_MAX_ROWS) { return new LinkedJoin(BROADCAST, link, outer, joinCondition); }
+
+        if (joinCondition != null && outer.getTable() instanceof TableData && outerRows <= SysProperties.LINKED_JOIN_MAX_ROWS) { return new LinkedJoin(SEMI_JOIN, link, outer, joinCondition); }
+
+        return null;
+    }
+
+    private static boolean isColumnOf(final Expression expression, final TableFilter filter) {
+
+        return expression instanceof ExpressionColumn && ((ExpressionColumn) expression).getTableFilter() == filter;
+    }
+
+    /**
+     * Forget the rows read by the last query, so that they are read again.
+     */
+    public void reset() {
+
+        rowsByKey = null;
+        rows = null;
+    }
+
+    /**
+     * Find the rows of the linked table for the current row of the outer table.
+     *
+     * @param session
+     *            the session
+     * @return the cursor
+     */
+    public Cursor find(final Session session) throws SQLException {
+
+        if (rowsByKey == null) {
+            read(session);
+        }
+
+        if (joinCondition == null) { return new MetaCursor(rows); }
+
+        final Value key = joinCondition.getCurrentValue(session).convertTo(joinCondition.getColumn().getType());
+        final ObjectArray matching = key == ValueNull.INSTANCE ? null : (ObjectArray) rowsByKey.get(key);
+
+        return new MetaCursor(matching == null ? NO_ROWS : matching);
+    }
+
+    private void read(final Session session) throws SQLException {
+
+        rowsByKey = new ValueHashMap(session.getDatabase());
+        rows = new ObjectArray();
+
+        final String select = "SELECT * FROM " + link.getQualifiedTable() + " T";
+
+        if (strategy == BROADCAST) {
+            // Every row of the linked table has been read, so its row count is known until the next time it is read.
+            link.setRowCountApproximation(read(session, select, null));
+        }
+        else {
+            final Column keyColumn = joinCondition.getColumn();
+            final ObjectArray keys = getOuterKeys(session);
+
+            for (int start = 0; start < keys.size(); start += SysProperties.LINKED_JOIN_BATCH_SIZE) {
+                final int end = Math.min(keys.size(), start + SysProperties.LINKED_JOIN_BATCH_SIZE);
+
+                final StringBuilder sql = new StringBuilder(select);
+                sql.append(" WHERE ").append(keyColumn.getSQL()).append(" IN(");
+                for (int i = start; i < end; i++) {
+                    if (i > start) {
+                        sql.append(", ");
+                    }
+                    sql.append('?');
+                }
+                sql.append(')');
+
+                final Value[] batch = new Value[end - start];
+                for (int i = start; i < end; i++) {
+                    batch[i - start] = (Value) keys.get(i);
+                }
+
+                read(session, sql.toString(), batch);
+            }
+        }
+    }
+
+    /**
+     * Run a query on the linked table, and keep the rows it returns.
+     *
+     * @return the number of rows returned
+     */
+    private int read(final Session session, final String sql, final Value[] parameters) throws SQLException {
+
+        final String statement = sql + Constants.INTERNAL_FLAG;
+
+        synchronized (link.getConnection()) {
+            try {
+                final PreparedStatement prep = link.getPreparedStatement(statement, true);
+                for (int i = 0; parameters != null && i < parameters.length; i++) {
+                    parameters[i].set(prep, i + 1);
+                }
+                final ResultSet rs = prep.executeQuery();
+
+                // The cursor returns the statement to the link when it reaches the end of the result set.
+                final LinkedCursor cursor = new LinkedCursor(link, rs, session, statement, prep);
+                int count = 0;
+                while (cursor.next()) {
+                    add(cursor.get());
+                    count++;
+                }
+                return count;
+            }
+            catch (final SQLException e) {
+                ErrorHandling.exceptionError(e, "Failed to read joined rows via linked table from " + link.getUrl());
+                session.getDatabase().clearTableLinkCache();
+                throw link.wrapException(sql, e);
+            }
+        }
+    }
+
+    private void add(final Row row) throws SQLException {
+
+        if (joinCondition == null) {
+            rows.add(row);
+            return;
+        }
+
+        final Value key = row.getValue(joinCondition.getColumn().getColumnId());
+        if (key == ValueNull.INSTANCE) { return; }
+
+        ObjectArray matching = (ObjectArray) rowsByKey.get(key);
+        if (matching == null) {
+            matching = new ObjectArray();
+            rowsByKey.put(key, matching);
+        }
+        matching.add(row);
+    }
+
+    /**
+     * Get the distinct values of the outer table's join column, converted to the type of the linked table's join column. Only the rows
+     * of the outer table that satisfy its index conditions are read, if those conditions don't depend on other tables in the query.
+     */
+    private ObjectArray getOuterKeys(final Session session) throws SQLException {
+
+        final Column outerColumn = ((ExpressionColumn) joinCondition.getExpression()).getColumn();
+        final int type = joinCondition.getColumn().getType();
+
+        final Index index = outer.getIndex();
+        final Table table = outer.getTable();
+        final Database database = session.getDatabase();
+
+        final ObjectArray conditions = new ObjectArray();
+        final ObjectArray values = new ObjectArray();
+        SearchRow first = null, last = null;
+
+        final ObjectArray indexConditions = outer.getIndexConditions();
+        for (int i = 0; i < indexConditions.size(); i++) {
+            final IndexCondition condition = (IndexCondition) indexConditions.get(i);
+
+            if (condition.isAlwaysFalse()) { return new ObjectArray(); }
+
+            // A condition on a column of another table in the query would change with each of its rows.
+            if (!condition.getExpression().isEverything(ExpressionVisitor.INDEPENDENT)) {
+                continue;
+            }
+
+            final Column column = condition.getColumn();
+            final Value value = condition.getCurrentValue(session).convertTo(column.getType());
+            if (value == ValueNull.INSTANCE) { return new ObjectArray(); }
+
+            conditions.add(condition);
+            values.add(value);
+
+            // Only ascending index columns are used as bounds. The other conditions are checked on each row.
+            final int id = column.getColumnId();
+            final IndexColumn indexColumn = index.getIndexColumns()[index.getColumnIndex(column)];
+            if ((indexColumn.sortType & SortOrder.DESCENDING) != 0) {
+                continue;
+            }
+            if (condition.isStart() && (first == null || first.getValue(id) == null)) {
+                if (first == null) {
+                    first = table.getTemplateRow();
+                }
+                first.setValue(id, value);
+            }
+            if (condition.isEnd() && (last == null || last.getValue(id) == null)) {
+                if (last == null) {
+                    last = table.getTemplateRow();
+                }
+                last.setValue(id, value);
+            }
+        }
+
+        final ValueHashMap keys = new ValueHashMap(database);
+        final Cursor cursor = index.find(session, first, last);
+
+        while (cursor.next()) {
+            final SearchRow row = cursor.getSearchRow();
+
+            if (!matches(database, row, conditions, values)) {
+                continue;
+            }
+
+            Value key = row.getValue(outerColumn.getColumnId());
+            if (key == null) {
+                key = cursor.get().getValue(outerColumn.getColumnId());
+            }
+            if (key != ValueNull.INSTANCE) {
+                keys.put(key.convertTo(type), key);
+            }
+        }
+
+        return keys.keys();
+    }
+
+    /**
+     * Check whether a row of the outer table satisfies the given index conditions.
+     */
+    private static boolean matches(final Database database, final SearchRow row, final ObjectArray conditions, final ObjectArray values) throws SQLException {
+
+        for (int i = 0; i < conditions.size(); i++) {
+            final IndexCondition condition = (IndexCondition) conditions.get(i);
+            final Value value = row.getValue(condition.getColumn().getColumnId());
+
+            if (value == null || value == ValueNull.INSTANCE) { return false; }
+
+            final int compare = database.compareTypeSave(value, (Value) values.get(i));
+
+            switch (condition.getCompareType()) {
+                case Comparison.EQUAL:
+                    if (compare != 0) { return false; }
+                    break;
+                case Comparison.BIGGER_EQUAL:
+                    if (compare < 0) { return false; }
+                    break;
+                case Comparison.BIGGER:
+                    if (compare <= 0) { return false; }
+                    break;
+                case Comparison.SMALLER_EQUAL:
+                    if (compare > 0) { return false; }
+                    break;
+                case Comparison.SMALLER:
+                    if (compare >= 0) { return false; }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Get the query plan text for this join.
+     *
+     * @return the plan text
+     */
+    public String getPlanSQL() {
+
+        final String plan = strategy == BROADCAST ? "broadcast join" : "semi-join";
+        return joinCondition == null ? plan : plan + ": " + joinCondition.getSQL();
+    }
+}
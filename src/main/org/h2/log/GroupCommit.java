@@ -0,0 +1,207 @@
+/*
+ * Copyright 2004-2009 H2 Group. Multiple-Licensed under the H2 License, Version 1.0, and under the Eclipse Public License, Version 1.0
+ * (http://h2database.com/html/license.html). Initial Developer: H2 Group
+ */
+package org.h2.log;
+
+import java.sql.SQLException;
+
+/**
+ * Makes commit and prepare-commit log records durable in groups. Each session appends its record to the log buffer while holding the
+ * database lock, then waits outside the lock until the record has been flushed. The first session to wait becomes the leader of a group:
+ * it optionally waits (up to a maximum delay) for more records to be appended, then flushes the log once on behalf of every record appended
+ * so far. Sessions that arrive while a flush is in progress form the next group.
+ */
+public class GroupCommit {
+
+    private final Object database;
+
+    private final LogSystem logSystem;
+
+    private final long maxDelay;
+
+    private final int maxSize;
+
+    /**
+     * The number of commit records appended to the log buffer.
+     */
+    private long appended;
+
+    /**
+     * All commit records up to and including this number have been flushed.
+     */
+    private long flushed;
+
+    /**
+     * Whether a leader is currently collecting or flushing a group.
+     */
+    private boolean leaderActive;
+
+    private long groups;
+
+    private long groupedRecords;
+
+    private int maxGroupSize;
+
+    private long totalFlushNanos;
+
+    private long maxFlushNanos;
+
+    /**
+     * Create a new group commit object.
+     *
+     * @param database
+     *            the object on which log writes are synchronized
+     * @param logSystem
+     *            the log system to flush
+     * @param maxDelay
+     *            the maximum time in milliseconds a leader waits for more records before flushing (0 for no delay)
+     * @param maxSize
+     *            the number of outstanding records at which a leader stops waiting and flushes immediately
+     */
+    public GroupCommit(Object database, LogSystem logSystem, long maxDelay, int maxSize) {
+
+        this.database = database;
+        this.logSystem = logSystem;
+        this.maxDelay = maxDelay;
+        this.maxSize = Math.max(1, maxSize);
+    }
+
+    /**
+     * Register a commit record that has just been written to the log buffer. This method must be called while holding the database lock,
+     * directly after the record was written.
+     *
+     * @return the ticket to pass to {@link #waitUntilFlushed(long)}
+     */
+    public synchronized long recordAppended() {
+
+        appended++;
+        if (leaderActive && appended - flushed >= maxSize) {
+            notifyAll();
+        }
+        return appended;
+    }
+
+    /**
+     * Wait until the record with the given ticket has been flushed, flushing the log if this thread becomes the leader of a group. This
+     * method must not be called while holding the database lock.
+     *
+     * @param ticket
+     *            the ticket returned by {@link #recordAppended()}
+     */
+    public void waitUntilFlushed(long ticket) throws SQLException {
+
+        synchronized (this) {
+            while (flushed < ticket && leaderActive) {
+                try {
+                    wait();
+                }
+                catch (InterruptedException e) {
+                    // ignore
+                }
+            }
+            if (flushed >= ticket) { return; }
+            leaderActive = true;
+            waitForGroup();
+        }
+
+        long target = ticket;
+        try {
+            long start = System.nanoTime();
+            synchronized (database) {
+                synchronized (this) {
+                    target = appended;
+                }
+                logSystem.flush();
+            }
+            long time = System.nanoTime() - start;
+            synchronized (this) {
+                int size = (int) (target - flushed);
+                groups++;
+                groupedRecords += size;
+                maxGroupSize = Math.max(maxGroupSize, size);
+                totalFlushNanos += time;
+                maxFlushNanos = Math.max(maxFlushNanos, time);
+                flushed = target;
+            }
+        }
+        finally {
+            synchronized (this) {
+                leaderActive = false;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Wait up to the maximum delay for more records to be appended. Must be called by the leader while synchronized on this object.
+     */
+    private void waitForGroup() {
+
+        if (maxDelay <= 0) { return; }
+        long end = System.currentTimeMillis() + maxDelay;
+        while (appended - flushed < maxSize) {
+            long remaining = end - System.currentTimeMillis();
+            if (remaining <= 0) {
+                break;
+            }
+            try {
+                wait(remaining);
+            }
+            catch (InterruptedException e) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Get the number of flushes made on behalf of a group of commits.
+     *
+     * @return the number of groups
+     */
+    public synchronized long getGroupCount() {
+
+        return groups;
+    }
+
+    /**
+     * Get the average number of commit records made durable by a single flush.
+     *
+     * @return the average group size, or 0 if there has been no group yet
+     */
+    public synchronized double getAverageGroupSize() {
+
+        return groups == 0 ? 0 : (double) groupedRecords / groups;
+    }
+
+    /**
+     * Get the largest number of commit records made durable by a single flush.
+     *
+     * @return the maximum group size
+     */
+    public synchronized int getMaxGroupSize() {
+
+        return maxGroupSize;
+    }
+
+    /**
+     * Get the average time taken to flush a group, in microseconds.
+     *
+     * @return the average flush latency
+     */
+    public synchronized long getAverageFlushMicros() {
+
+        return groups == 0 ? 0 : totalFlushNanos / groups / 1000;
+    }
+
+    /**
+     * Get the longest time taken to flush a group, in microseconds.
+     *
+     * @return the maximum flush latency
+     */
+    public synchronized long getMaxFlushMicros() {
+
+        return maxFlushNanos / 1000;
+    }
+
+}
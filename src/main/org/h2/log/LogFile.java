@@ -202,9 +202,7 @@ public class LogFile {
         buff.writeByte((byte) 'C');
         buff.writeInt(session.getSessionId());
         writeBuffer(buff, null);
-        if (logSystem.getFlushOnEachCommit()) {
-            flush();
-        }
+        // if required, the log system flushes the record (see GroupCommit)
     }
 
     /**
@@ -224,9 +222,7 @@ public class LogFile {
         buff.writeInt(session.getSessionId());
         buff.writeString(transaction);
         writeBuffer(buff, null);
-        if (logSystem.getFlushOnEachCommit()) {
-            flush();
-        }
+        // if required, the log system flushes the record (see GroupCommit)
     }
 
     private DataPage readPage() throws SQLException {
@@ -9,6 +9,7 @@ import java.util.Comparator;
 import java.util.HashMap;
 
 import org.h2.api.DatabaseEventListener;
+import org.h2.constant.SysProperties;
 import org.h2.engine.Constants;
 import org.h2.engine.Database;
 import org.h2.engine.Session;
@@ -72,6 +73,8 @@ public class LogSystem {
 
     private PageStore pageStore;
 
+    private GroupCommit groupCommit;
+
     /**
      * Create new transaction log object. This will not open or create files yet.
      * 
@@ -95,6 +98,7 @@ public class LogSystem {
         if (database == null) { return; }
         this.fileNamePrefix = fileNamePrefix;
         rowBuff = DataPage.create(database, Constants.DEFAULT_DATA_PAGE_SIZE);
+        groupCommit = new GroupCommit(database, this, SysProperties.GROUP_COMMIT_MAX_DELAY, SysProperties.GROUP_COMMIT_MAX_SIZE);
     }
 
     /**
@@ -492,10 +496,14 @@ public class LogSystem {
     public void prepareCommit(Session session, String transaction) throws SQLException {
 
         if (database == null || readOnly) { return; }
+        long ticket;
         synchronized (database) {
             if (closed) { return; }
             currentLog.prepareCommit(session, transaction);
+            if (!flushOnEachCommit) { return; }
+            ticket = groupCommit.recordAppended();
         }
+        flushCommitRecord(ticket);
     }
 
     /**
@@ -507,6 +515,7 @@ public class LogSystem {
     public void commit(Session session) throws SQLException {
 
         if (database == null || readOnly) { return; }
+        long ticket;
         synchronized (database) {
             if (closed) { return; }
             if (pageStore != null) {
@@ -514,7 +523,37 @@ public class LogSystem {
             }
             currentLog.commit(session);
             session.setAllCommitted();
+            if (!flushOnEachCommit) { return; }
+            ticket = groupCommit.recordAppended();
+        }
+        flushCommitRecord(ticket);
+    }
+
+    /**
+     * Make sure a commit or prepare commit record is flushed. Concurrent commits are flushed together (group commit), unless the caller
+     * holds the database lock, in which case no other session can add a record and the log is flushed immediately.
+     *
+     * @param ticket
+     *            the ticket of the record
+     */
+    private void flushCommitRecord(long ticket) throws SQLException {
+
+        if (Thread.holdsLock(database)) {
+            flush();
         }
+        else {
+            groupCommit.waitUntilFlushed(ticket);
+        }
+    }
+
+    /**
+     * Get the group commit statistics of this log system.
+     *
+     * @return the group commit object, or null if the database is not persistent
+     */
+    public GroupCommit getGroupCommit() {
+
+        return groupCommit;
     }
 
     /**
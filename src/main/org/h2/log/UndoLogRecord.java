@@ -248,4 +248,14 @@ public class UndoLogRecord {
 
         return row;
     }
+
+    /**
+     * Get the operation type.
+     * 
+     * @return the operation type ({@link #INSERT} or {@link #DELETE})
+     */
+    public short getOperation() {
+
+        return operation;
+    }
 }
@@ -11,7 +11,10 @@ import org.h2.engine.DbObject;
 import org.h2.engine.Session;
 import org.h2.message.Message;
 import org.h2.message.Trace;
+import org.h2.table.Column;
 import org.h2.table.Table;
+import org.h2.util.ObjectArray;
+import org.h2o.autonomic.settings.Settings;
 
 /**
  * A sequence is created using the statement CREATE SEQUENCE
@@ -33,6 +36,12 @@ public class Sequence extends SchemaObjectBase {
 
     private boolean belongsToTable;
 
+    /**
+     * The name identifying this sequence throughout the database system when it is shared by every instance (see the DISTRIBUTED_SEQUENCES
+     * setting), or null if it hasn't been worked out yet.
+     */
+    private String distributedName;
+
     public Sequence(Schema schema, int id, String name, boolean belongsToTable) {
 
         initSchemaObjectBase(schema, id, name, Trace.SEQUENCE);
@@ -103,7 +112,12 @@ public class Sequence extends SchemaObjectBase {
     public synchronized long getNext(Session session) throws SQLException {
 
         if ((increment > 0 && value >= valueWithMargin) || (increment < 0 && value <= valueWithMargin)) {
-            valueWithMargin += increment * cacheSize;
+            if (isDistributed()) {
+                allocateBlock();
+            }
+            else {
+                valueWithMargin += increment * cacheSize;
+            }
             flush(session);
         }
         long v = value;
@@ -111,6 +125,61 @@ public class Sequence extends SchemaObjectBase {
         return v;
     }
 
+    /**
+     * Whether values are taken from the System Table in blocks, so that they are unique across every instance. Only sequences in replicated
+     * schemas that count upwards are shared.
+     */
+    private boolean isDistributed() {
+
+        if (increment < 0 || database.isManagementDB() || database.isTableLocal(getSchema()) || database.getSystemTableReference() == null) { return false; }
+
+        final Settings settings = database.getDatabaseSettings();
+
+        return settings != null && Boolean.parseBoolean(settings.get("DISTRIBUTED_SEQUENCES"));
+    }
+
+    /**
+     * Take the next block of values from the System Table. Any values left in the current block are never used.
+     */
+    private void allocateBlock() throws SQLException {
+
+        final String blockSize = database.getDatabaseSettings().get("SEQUENCE_BLOCK_SIZE");
+        final long blockLength = increment * Math.max(1, blockSize == null ? cacheSize : Long.parseLong(blockSize));
+
+        value = database.getSystemTableReference().allocateSequenceBlock(getDistributedName(), value, blockLength);
+        valueWithMargin = value + blockLength;
+    }
+
+    /**
+     * The name of a sequence created for an IDENTITY or AUTO_INCREMENT column is generated randomly on each replica of its table, so such
+     * sequences are identified by the column they belong to.
+     */
+    private String getDistributedName() {
+
+        if (distributedName != null) { return distributedName; }
+
+        if (belongsToTable) {
+            final ObjectArray tables = getSchema().getAll(DbObject.TABLE_OR_VIEW);
+
+            for (int i = 0; i < tables.size() && distributedName == null; i++) {
+                final Table table = (Table) tables.get(i);
+
+                for (final Column column : table.getColumns()) {
+                    if (column.getSequence() == this) {
+                        distributedName = table.getSQL() + "." + column.getSQL();
+                        break;
+                    }
+                }
+            }
+        }
+
+        if (distributedName == null) {
+            distributedName = getSQL();
+        }
+
+        return distributedName;
+    }
+
     /**
      * Flush the current value, including the margin, to disk.
      * 
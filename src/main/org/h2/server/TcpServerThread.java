@@ -24,6 +24,7 @@ import org.h2.jdbc.JdbcSQLException;
 import org.h2.message.Message;
 import org.h2.result.LocalResult;
 import org.h2.result.ResultColumn;
+import org.h2.tools.CompressTool;
 import org.h2.util.ObjectArray;
 import org.h2.util.SmallMap;
 import org.h2.util.StringUtils;
@@ -392,6 +393,16 @@ public class TcpServerThread implements Runnable {
                 transfer.writeInt(SessionRemote.STATUS_OK).flush();
                 break;
             }
+            case SessionRemote.SESSION_SET_COMPRESSION: {
+                final String algorithm = transfer.readString();
+                final int threshold = transfer.readInt();
+                // Checks that the algorithm is supported before agreeing to it.
+                CompressTool.getInstance().getCompressor(algorithm);
+                transfer.writeInt(SessionRemote.STATUS_OK).flush();
+                transfer.setCompression(algorithm, threshold);
+                trace("Compressed with " + algorithm);
+                break;
+            }
             default:
                 trace("Unknown operation: " + operation);
                 closeSession();
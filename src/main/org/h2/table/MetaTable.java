@@ -19,6 +19,7 @@ import java.util.Locale;
 import java.util.Set;
 
 import org.h2.command.Command;
+import org.h2.compress.CompressionStatistics;
 import org.h2.constant.SysProperties;
 import org.h2.constraint.Constraint;
 import org.h2.constraint.ConstraintCheck;
@@ -40,6 +41,7 @@ import org.h2.expression.ValueExpression;
 import org.h2.index.Index;
 import org.h2.index.IndexType;
 import org.h2.index.MetaIndex;
+import org.h2.log.GroupCommit;
 import org.h2.log.InDoubtTransaction;
 import org.h2.message.Message;
 import org.h2.result.Row;
@@ -632,6 +634,11 @@ public class MetaTable extends Table {
                 add(rows, new String[]{"info.VERSION_MAJOR", "" + Constants.VERSION_MAJOR});
                 add(rows, new String[]{"info.VERSION_MINOR", "" + Constants.VERSION_MINOR});
                 add(rows, new String[]{"info.VERSION", "" + Constants.getFullVersion()});
+                add(rows, new String[]{"info.TRANSFER_COMPRESSION", SysProperties.TRANSFER_COMPRESSION});
+                add(rows, new String[]{"info.COMPRESSION_BYTES_BEFORE", "" + CompressionStatistics.getBytesBeforeCompression()});
+                add(rows, new String[]{"info.COMPRESSION_BYTES_AFTER", "" + CompressionStatistics.getBytesAfterCompression()});
+                add(rows, new String[]{"info.COMPRESSION_TIME_MS", "" + CompressionStatistics.getCompressionTime()});
+                add(rows, new String[]{"info.EXPANSION_TIME_MS", "" + CompressionStatistics.getExpansionTime()});
                 if (session.getUser().getAdmin()) {
                     final String[] settings = new String[]{"java.runtime.version", "java.vm.name", "java.vendor", "os.name", "os.arch", "os.version", "sun.os.patch.level", "file.separator", "path.separator", "line.separator", "user.country", "user.language", "user.variant", "file.encoding"};
                     for (final String s : settings) {
@@ -652,6 +659,8 @@ public class MetaTable extends Table {
                 add(rows, new String[]{"h2.clientTraceDirectory", SysProperties.CLIENT_TRACE_DIRECTORY});
                 add(rows, new String[]{SysProperties.H2_COLLATOR_CACHE_SIZE, "" + SysProperties.getCollatorCacheSize()});
                 add(rows, new String[]{"h2.defaultMaxMemoryUndo", "" + SysProperties.DEFAULT_MAX_MEMORY_UNDO});
+                add(rows, new String[]{"h2.groupCommitMaxDelay", "" + SysProperties.GROUP_COMMIT_MAX_DELAY});
+                add(rows, new String[]{"h2.groupCommitMaxSize", "" + SysProperties.GROUP_COMMIT_MAX_SIZE});
                 add(rows, new String[]{"h2.lobFilesInDirectories", "" + SysProperties.LOB_FILES_IN_DIRECTORIES});
                 add(rows, new String[]{"h2.lobFilesPerDirectory", "" + SysProperties.LOB_FILES_PER_DIRECTORY});
                 add(rows, new String[]{"h2.logAllErrors", "" + SysProperties.LOG_ALL_ERRORS});
@@ -689,6 +698,14 @@ public class MetaTable extends Table {
                         add(rows, new String[]{"info.CACHE_INDEX_SIZE", "" + indexFile.getCache().getSize()});
                     }
                 }
+                final GroupCommit groupCommit = database.getLog() == null ? null : database.getLog().getGroupCommit();
+                if (groupCommit != null && session.getUser().getAdmin()) {
+                    add(rows, new String[]{"info.LOG_COMMIT_GROUPS", "" + groupCommit.getGroupCount()});
+                    add(rows, new String[]{"info.LOG_COMMIT_GROUP_SIZE_AVG", "" + groupCommit.getAverageGroupSize()});
+                    add(rows, new String[]{"info.LOG_COMMIT_GROUP_SIZE_MAX", "" + groupCommit.getMaxGroupSize()});
+                    add(rows, new String[]{"info.LOG_FLUSH_MICROS_AVG", "" + groupCommit.getAverageFlushMicros()});
+                    add(rows, new String[]{"info.LOG_FLUSH_MICROS_MAX", "" + groupCommit.getMaxFlushMicros()});
+                }
                 break;
             }
             case TYPE_INFO: {
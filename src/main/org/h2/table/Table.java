@@ -826,6 +826,16 @@ public abstract class Table extends SchemaObjectBase {
         return constraints != null && constraints.size() > 0 || triggers != null && triggers.size() > 0;
     }
 
+    /**
+     * H2O. Check if any triggers are defined on this table.
+     * 
+     * @return true if there are triggers
+     */
+    public boolean hasTriggers() {
+
+        return triggers != null && triggers.size() > 0;
+    }
+
     /**
      * Fire all triggers that need to be called before a row is updated.
      * 
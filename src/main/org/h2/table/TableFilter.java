@@ -17,6 +17,7 @@ import org.h2.expression.ExpressionColumn;
 import org.h2.index.Cursor;
 import org.h2.index.Index;
 import org.h2.index.IndexCondition;
+import org.h2.index.LinkedJoin;
 import org.h2.message.Message;
 import org.h2.result.Row;
 import org.h2.result.SearchRow;
@@ -80,6 +81,11 @@ public class TableFilter implements ColumnResolver {
 
     private Expression fullCondition;
 
+    /**
+     * H2O. Set if this filter reads a linked table joined to the filter before it without a remote query for each row of that filter.
+     */
+    private LinkedJoin linkedJoin;
+
     /**
      * Create a new table filter object.
      * 
@@ -225,6 +231,8 @@ public class TableFilter implements ColumnResolver {
             if (SysProperties.CHECK && join == this) {
                 Message.throwInternalError("self join");
             }
+            // H2O. Choose the join strategy before unused index conditions are removed, as the join column may not be indexed.
+            join.linkedJoin = LinkedJoin.choose(this, join, join.indexConditions);
             join.prepare();
         }
         if (filterCondition != null) {
@@ -245,6 +253,9 @@ public class TableFilter implements ColumnResolver {
 
         this.session = session;
         scanCount = 0;
+        if (linkedJoin != null) {
+            linkedJoin.reset();
+        }
         if (join != null) {
             join.startQuery(session);
         }
@@ -334,7 +345,7 @@ public class TableFilter implements ColumnResolver {
                     }
                 }
                 if (!alwaysFalse) {
-                    cursor = index.find(session, start, end);
+                    cursor = linkedJoin != null ? linkedJoin.find(session) : index.find(session, start, end);
                     if (join != null) {
                         join.reset();
                     }
@@ -608,6 +619,11 @@ public class TableFilter implements ColumnResolver {
             buff.append(plan);
             buff.append(" */");
         }
+        if (linkedJoin != null) {
+            buff.append(" /* ");
+            buff.append(StringUtils.quoteRemarkSQL(linkedJoin.getPlanSQL()));
+            buff.append(" */");
+        }
         if (join) {
             buff.append(" ON ");
             if (joinCondition == null) {
@@ -642,6 +658,16 @@ public class TableFilter implements ColumnResolver {
         }
     }
 
+    /**
+     * H2O. Get the conditions used to find rows in the index of this filter.
+     *
+     * @return the index conditions
+     */
+    public ObjectArray getIndexConditions() {
+
+        return indexConditions;
+    }
+
     public Index getIndex() {
 
         return index;
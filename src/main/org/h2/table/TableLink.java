@@ -15,6 +15,7 @@ import java.util.HashMap;
 
 import org.h2.command.Prepared;
 import org.h2.constant.ErrorCode;
+import org.h2.constant.SysProperties;
 import org.h2.engine.Session;
 import org.h2.index.Index;
 import org.h2.index.IndexType;
@@ -68,6 +69,11 @@ public class TableLink extends Table {
 
     private boolean readOnly;
 
+    /**
+     * H2O. The number of rows in the remote table when they were last counted or all read, or -1 if that hasn't happened yet.
+     */
+    private long rowCountApproximation = -1;
+
     public TableLink(final Schema schema, final int id, final String name, final String driver, final String url, final String user, final String password, final String originalSchema, final String originalTable, final boolean emitUpdates, final boolean force) throws SQLException {
 
         super(schema, id, name, false);
@@ -442,6 +448,7 @@ public class TableLink extends Table {
             rs.next();
             final long count = rs.getLong(1);
             rs.close();
+            rowCountApproximation = count;
             return count;
         }
         catch (final SQLException e) {
@@ -617,10 +624,25 @@ public class TableLink extends Table {
         return conn;
     }
 
+    /**
+     * H2O. The estimate is the number of rows seen the last time the remote table was counted or read in full, so that the optimizer can
+     * choose how to join linked tables without a remote query while the plan is prepared.
+     */
     @Override
     public long getRowCountApproximation() {
 
-        return ROW_COUNT_APPROXIMATION;
+        return rowCountApproximation < 0 ? ROW_COUNT_APPROXIMATION : rowCountApproximation;
+    }
+
+    /**
+     * H2O. Record the number of rows in the remote table, after all of its rows have been read.
+     *
+     * @param rowCount
+     *            the number of rows read
+     */
+    public void setRowCountApproximation(final long rowCount) {
+
+        rowCountApproximation = rowCount;
     }
 
     /**
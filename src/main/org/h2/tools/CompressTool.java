@@ -220,7 +220,10 @@ public class CompressTool {
         }
     }
 
-    private Compressor getCompressor(String algorithm) throws SQLException {
+    /**
+     * INTERNAL
+     */
+    public Compressor getCompressor(String algorithm) throws SQLException {
 
         if (algorithm == null) {
             algorithm = "LZF";
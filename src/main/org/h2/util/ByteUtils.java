@@ -16,6 +16,19 @@ public class ByteUtils {
 
     private static final char[] HEX = "0123456789abcdef".toCharArray();
 
+    private static final char[] BASE64 = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+    private static final int[] BASE64_DECODE = new int[128];
+
+    static {
+        for (int i = 0; i < BASE64_DECODE.length; i++) {
+            BASE64_DECODE[i] = -1;
+        }
+        for (int i = 0; i < BASE64.length; i++) {
+            BASE64_DECODE[BASE64[i]] = i;
+        }
+    }
+
     private ByteUtils() {
 
         // utility class
@@ -166,6 +179,63 @@ public class ByteUtils {
         return new String(buff);
     }
 
+    /**
+     * Convert a byte array to a Base64 encoded string (RFC 4648, with padding).
+     * 
+     * @param value
+     *            the byte array
+     * @return the Base64 encoded string
+     */
+    public static String convertBytesToBase64(byte[] value) {
+
+        char[] buff = new char[(value.length + 2) / 3 * 4];
+        int j = 0;
+        for (int i = 0; i < value.length; i += 3) {
+            int remaining = value.length - i;
+            int bits = (value[i] & 0xff) << 16;
+            if (remaining > 1) {
+                bits |= (value[i + 1] & 0xff) << 8;
+            }
+            if (remaining > 2) {
+                bits |= value[i + 2] & 0xff;
+            }
+            buff[j++] = BASE64[(bits >> 18) & 0x3f];
+            buff[j++] = BASE64[(bits >> 12) & 0x3f];
+            buff[j++] = remaining > 1 ? BASE64[(bits >> 6) & 0x3f] : '=';
+            buff[j++] = remaining > 2 ? BASE64[bits & 0x3f] : '=';
+        }
+        return new String(buff);
+    }
+
+    /**
+     * Convert a Base64 encoded string, as created by {@link #convertBytesToBase64(byte[])}, to a byte array.
+     * 
+     * @param s
+     *            the Base64 encoded string
+     * @return the byte array
+     */
+    public static byte[] convertBase64ToBytes(String s) throws SQLException {
+
+        int len = s.length();
+        if (len % 4 != 0) { throw Message.getSQLException(ErrorCode.DATA_CONVERSION_ERROR_1, s); }
+        int padding = len > 0 && s.charAt(len - 1) == '=' ? (s.charAt(len - 2) == '=' ? 2 : 1) : 0;
+        byte[] buff = newBytes(len / 4 * 3 - padding);
+        int j = 0;
+        for (int i = 0; i < len; i += 4) {
+            int bits = 0;
+            for (int k = 0; k < 4; k++) {
+                char c = s.charAt(i + k);
+                int d = c == '=' ? 0 : c < 128 ? BASE64_DECODE[c] : -1;
+                if (d < 0) { throw Message.getSQLException(ErrorCode.DATA_CONVERSION_ERROR_1, s); }
+                bits = (bits << 6) | d;
+            }
+            for (int k = 2; k >= 0 && j < buff.length; k--) {
+                buff[j++] = (byte) (bits >> (k * 8));
+            }
+        }
+        return buff;
+    }
+
     /**
      * Compare two byte arrays. This method will always loop over all bytes and doesn't use conditional operations in the loop to make sure
      * an attacker can not use a timing attack when trying out passwords.
@@ -24,12 +24,15 @@ import java.sql.SQLException;
 import java.sql.Time;
 import java.sql.Timestamp;
 
+import org.h2.compress.CompressedBlockInputStream;
+import org.h2.compress.CompressedBlockOutputStream;
 import org.h2.constant.ErrorCode;
 import org.h2.constant.SysProperties;
 import org.h2.engine.Constants;
 import org.h2.engine.SessionInterface;
 import org.h2.message.Message;
 import org.h2.message.TraceSystem;
+import org.h2.tools.CompressTool;
 import org.h2.tools.SimpleResultSet;
 import org.h2.util.ByteUtils;
 import org.h2.util.ExactUTF8InputStreamReader;
@@ -87,6 +90,23 @@ public class Transfer {
         out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), Transfer.BUFFER_SIZE));
     }
 
+    /**
+     * Compress the data sent from now on, and expand the data received. Both ends of the connection must switch to compression at the
+     * same point in the conversation.
+     * 
+     * @param algorithm
+     *            the compression algorithm
+     * @param threshold
+     *            the length below which blocks of data are sent uncompressed
+     */
+    public void setCompression(String algorithm, int threshold) throws IOException, SQLException {
+
+        CompressTool compressTool = CompressTool.getInstance();
+        out.flush();
+        in = new DataInputStream(new CompressedBlockInputStream(in, compressTool.getCompressor(algorithm)));
+        out = new DataOutputStream(new CompressedBlockOutputStream(out, compressTool.getCompressor(algorithm), threshold, Transfer.BUFFER_SIZE));
+    }
+
     /**
      * Write pending changes.
      */
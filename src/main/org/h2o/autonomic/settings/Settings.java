@@ -45,12 +45,6 @@ public class Settings {
 
     public static final String JDBC_PORT = "JDBC_PORT";
 
-    /**
-     * Whether to monitor the types of queries being made to the Table Manager, and the location these queries are
-     * coming from.
-     */
-    public static final boolean QUERY_MONITORING_ENABLED = false; //TODO make into setting in properties file.
-
     /**
      * Whether, when parsing a query, to check if the reference to the given table locally (possibly a linked table) is still valid, or if
      * it contains outdated information.
@@ -59,10 +53,26 @@ public class Settings {
      */
     public static final boolean CHECK_LOCAL_TABLE_VALIDITY_AT_TABLE_MANAGER = false;
     /**
-     * The maximum number of samples that a Table Manager may take while query monitoring before monitoring data must be trimmed.
+     * The maximum number of user sessions that a Table Manager may hold query monitoring data for before the least active sessions are
+     * trimmed.
      */
     public static final int MAX_NUMBER_OF_TABLE_MANAGER_SAMPLES = 1000;
 
+    /**
+     * The number of time slots in the sliding window over which a Table Manager's query monitoring data is kept.
+     */
+    public static final int TABLE_MANAGER_MONITORING_SLOTS = 32;
+
+    /**
+     * The length (in milliseconds) of each time slot in a Table Manager's query monitoring window.
+     */
+    public static final long TABLE_MANAGER_MONITORING_SLOT_LENGTH = 5000;
+
+    /**
+     * The weight given to query monitoring data for each time slot by which it is older than the current slot.
+     */
+    public static final double TABLE_MANAGER_MONITORING_DECAY = 0.9;
+
     static {
         reservedTableNames.add("SYSTEM_RANGE");
         reservedTableNames.add("TABLE");
@@ -128,9 +138,118 @@ public class Settings {
         // The number of copies required for individual relations in the system.
         defaults.setProperty("RELATION_REPLICATION_FACTOR", "3");
 
+        /*
+         * Whether Table Managers monitor the types of lock requests made on their table, and the instances they come from. Always on when
+         * ADAPTIVE_REPLICATION is on, as the replication factor is decided from this data.
+         */
+        defaults.setProperty("QUERY_MONITORING", "false");
+
+        /*
+         * Whether Table Managers change the replication factor of their table as its workload changes. A busy table that is mostly read is
+         * given more replicas, created on the instances reading it; one that is mostly written is given fewer, since every replica must be
+         * updated.
+         */
+        defaults.setProperty("ADAPTIVE_REPLICATION", "false");
+
+        // The bounds within which an adaptive replication factor is kept.
+        defaults.setProperty("MIN_RELATION_REPLICATION_FACTOR", "1");
+        defaults.setProperty("MAX_RELATION_REPLICATION_FACTOR", "5");
+
+        /*
+         * The ratio of read locks to write locks at or above which a table's adaptive replication factor is raised, and at or below which it
+         * is lowered.
+         */
+        defaults.setProperty("READ_DOMINATED_RATIO", "4");
+        defaults.setProperty("WRITE_DOMINATED_RATIO", "1");
+
+        /*
+         * The number of recent lock requests a table must have had before its adaptive replication factor is changed, so that the factor of
+         * tables that are rarely used isn't changed on the strength of a few queries.
+         */
+        defaults.setProperty("ADAPTIVE_REPLICATION_MIN_REQUESTS", "100");
+
+        // The minimum time, in milliseconds, between changes to a table's adaptive replication factor.
+        defaults.setProperty("ADAPTIVE_REPLICATION_INTERVAL", "30000");
+
+        /*
+         * The number of new replicas of a table that are created at once. Each existing replica is copied from by one new replica at a
+         * time, and new replicas are copied from as soon as they are created.
+         */
+        defaults.setProperty("REPLICA_CREATION_PARALLELISM", "3");
+
+        /*
+         * The rate, in bytes per second, at which an instance creating a new replica reads the table's data from the existing replica it is
+         * copied from, so that replica creation doesn't take the bandwidth the source needs for queries. 0 means no limit.
+         */
+        defaults.setProperty("REPLICA_CREATION_BANDWIDTH", "0");
+
+        /*
+         * The number of instances holding the table directory, the record of which instance holds each table's Table Manager. Lookups of
+         * Table Managers are spread across these instances by table name, each of which only asks the System Table about the tables it
+         * hasn't been asked about before. 0 means every lookup goes to the System Table. Only lookups are spread: registrations and removals
+         * of tables still go to the System Table, which holds the single persisted copy of the directory that recovery and the hot standby
+         * rely on.
+         */
+        defaults.setProperty("TABLE_DIRECTORY_SHARDS", "0");
+
+        /*
+         * How long, in milliseconds, an instance holding part of the table directory keeps a Table Manager it has looked up. The System
+         * Table tells it when the Table Manager changes, so this only bounds how long a stale entry is handed out if that message is lost.
+         */
+        defaults.setProperty("TABLE_DIRECTORY_EXPIRY", "60000");
+
+        /*
+         * The maximum number of replica copies and Table Manager migrations the System Table makes to spread replicas and Table Managers
+         * evenly across the instances each time an instance joins or leaves the database system. 0 means they aren't rebalanced.
+         */
+        defaults.setProperty("REBALANCE_TRANSFER_BUDGET", "0");
+
+        /*
+         * How long, in milliseconds, the System Table waits after an instance joins or leaves before rebalancing, so that several membership
+         * changes in quick succession are dealt with together.
+         */
+        defaults.setProperty("REBALANCE_DELAY", "5000");
+
+        /*
+         * Whether sequences, including those generating the values of IDENTITY and AUTO_INCREMENT columns, are shared by every instance in
+         * the database system. Each instance takes blocks of values from the System Table and hands them out locally, so values are unique
+         * across the system but may have gaps and aren't issued in order across instances.
+         */
+        defaults.setProperty("DISTRIBUTED_SEQUENCES", "false");
+
+        // The number of values in each block of a shared sequence taken from the System Table.
+        defaults.setProperty("SEQUENCE_BLOCK_SIZE", "100");
+
+        /*
+         * When sequences are shared, the values an INSERT generates are taken on the instance executing it and sent to the other replicas as
+         * literals. This is the most rows of an INSERT ... SELECT that are sent this way. A query returning more is sent as it is, and each
+         * replica takes its own values, so that a large statement isn't built in memory.
+         */
+        defaults.setProperty("GENERATED_VALUES_LIMIT", "1000");
+
+        /*
+         * Whether INSERT, UPDATE and DELETE statements on a replicated table are executed only on the local replica, with the rows they
+         * changed sent to the other replicas and applied directly to their tables, rather than the statement being executed on every
+         * replica. Only used when the instance executing the statement holds a replica of the table, and not for tables with BLOB or CLOB
+         * columns or without a primary key or unique index.
+         */
+        defaults.setProperty("ROW_BASED_REPLICATION", "false");
+
+        /*
+         * The most rows a statement may change and still have them sent to the other replicas when ROW_BASED_REPLICATION is used. A statement
+         * that changes more is undone and replicated by statement instead, so large changes aren't held in memory and sent in one message.
+         */
+        defaults.setProperty("ROW_BASED_REPLICATION_LIMIT", "1000");
+
         // Number of copies required of the System Table's state.
         defaults.setProperty("SYSTEM_TABLE_REPLICATION_FACTOR", "3");
 
+        /*
+         * Whether the System Table keeps a hot standby on one of the instances holding a replica of its state. The standby receives every
+         * change made to the System Table, so it can take over without rebuilding the System Table's state.
+         */
+        defaults.setProperty("SYSTEM_TABLE_HOT_STANDBY", "false");
+
         // Number of copies required of Table Manager state.
         defaults.setProperty("TABLE_MANAGER_REPLICATION_FACTOR", "3");
 
@@ -158,9 +277,20 @@ public class Settings {
         defaults.setProperty("METADATA_REPLICATION_THREAD_SLEEP_TIME", "2500");
 
         /*
-         * The time between checks to ensure that Table Managers are still running.
+         * The time after which an instance that hasn't been heard from is sent a heartbeat by the failure detector.
+         */
+        defaults.setProperty("FAILURE_DETECTOR_HEARTBEAT_INTERVAL", "1000");
+
+        /*
+         * The suspicion (phi) at which the failure detector declares an instance to have failed. With the default heartbeat interval, an
+         * instance that stops responding is declared to have failed after about 18 seconds.
+         */
+        defaults.setProperty("FAILURE_DETECTOR_PHI_THRESHOLD", "8");
+
+        /*
+         * The maximum number of Table Managers that are recreated, or contacted while loading System Table state, at the same time.
          */
-        defaults.setProperty("TABLE_MANAGER_LIVENESS_CHECKER_THREAD_SLEEP_TIME", "10000");
+        defaults.setProperty("TABLE_MANAGER_RECREATION_THREADS", "8");
 
         /*
          * Whether diagnostic events are to be consumed and sent to an event monitor.
@@ -183,6 +313,41 @@ public class Settings {
          */
         defaults.setProperty("ASYNCHRONOUS_REPLICATION_ENABLED", "false");
 
+        /*
+         * The maximum number of updates to a single replica location that can be queued or being sent at once. Writers wait when this
+         * many updates to a replica are outstanding.
+         */
+        defaults.setProperty("REPLICATION_PIPELINE_WINDOW", "64");
+
+        /*
+         * The maximum number of updates to a single replica location that can be being sent at once. The replica applies them in the
+         * order they were submitted.
+         */
+        defaults.setProperty("REPLICATION_PIPELINE_DEPTH", "4");
+
+        /*
+         * The time, in milliseconds, an update received from another instance's pipeline waits for the updates submitted before it. If
+         * they don't arrive in time, it is rejected, and the sender starts a new pipeline.
+         */
+        defaults.setProperty("REPLICATION_ORDER_TIMEOUT", "30000");
+
+        /*
+         * Whether updates are executed on the replicas of a table without first acquiring a lock from its Table Manager. The Table Manager
+         * checks that the table hasn't been changed by another instance when the transaction commits, and the transaction is rolled back
+         * (and retried, if it is a single auto-committed statement) if it has. Only auto-committed updates to tables whose writes wait for
+         * every replica are made this way. This saves a call to the Table Manager on every update when conflicting updates are rare.
+         */
+        defaults.setProperty("OPTIMISTIC_CONCURRENCY", "false");
+
+        /*
+         * Whether an instance keeps the write lock on a table after a transaction that updated it commits, so that its next transaction on
+         * the table doesn't have to ask the Table Manager for a lock or report the replica state to it. The lock is released when the Table
+         * Manager asks for it back because another instance wants to lock the table. This saves two calls to the Table Manager per
+         * transaction when a table is only updated from one instance. It must also be set on the System Table's instance, which tells the
+         * others to give up their locks when a Table Manager moves or is recreated.
+         */
+        defaults.setProperty("STICKY_LOCKS", "false");
+
         /*
          * If true this delays the commit of an insert query. This should always be false unless you are testing asynchronous updates.
          */
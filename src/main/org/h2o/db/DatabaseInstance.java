@@ -27,18 +27,32 @@ package org.h2o.db;
 
 import java.net.InetSocketAddress;
 import java.sql.SQLException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.h2.command.Command;
 import org.h2.command.Parser;
+import org.h2.command.h2o.RecreateTableManager;
 import org.h2.engine.Database;
 import org.h2.engine.Session;
 import org.h2o.db.id.DatabaseID;
 import org.h2o.db.id.TableInfo;
 import org.h2o.db.interfaces.IDatabaseInstanceRemote;
 import org.h2o.db.interfaces.ITableManagerRemote;
+import org.h2o.db.manager.TableManager;
 import org.h2o.db.manager.interfaces.ISystemTableMigratable;
 import org.h2o.db.manager.interfaces.ISystemTableReference;
 import org.h2o.db.manager.recovery.SystemTableAccessException;
+import org.h2o.db.query.TableProxy;
+import org.h2o.db.query.asynchronous.UpdateSequencer;
+import org.h2o.db.query.locking.LockRequest;
 
 import uk.ac.standrews.cs.nds.rpc.RPCException;
 import uk.ac.standrews.cs.nds.util.Diagnostic;
@@ -110,6 +124,21 @@ public class DatabaseInstance implements IDatabaseInstanceRemote {
         }
     }
 
+    @Override
+    public int executeInOrder(final String query, final String transactionName, final boolean commitOperation, final String stream, final long sequence) throws SQLException, RPCException {
+
+        final UpdateSequencer sequencer = database.getAsynchronousQueryManager().getUpdateSequencer();
+
+        sequencer.awaitTurn(stream, sequence);
+
+        try {
+            return execute(query, transactionName, commitOperation);
+        }
+        finally {
+            sequencer.finished(stream, sequence);
+        }
+    }
+
     @Override
     public int prepare(final String transactionName) throws SQLException {
 
@@ -182,6 +211,14 @@ public class DatabaseInstance implements IDatabaseInstanceRemote {
         return systemTableReference.migrateSystemTableToLocalInstance(true, true, false);
     }
 
+    @Override
+    public ISystemTableMigratable startSystemTableStandby(final DatabaseID activeSystemTableLocation) throws SQLException {
+
+        Diagnostic.traceNoEvent(DiagnosticLevel.INIT, "Responding to request to start a hot standby of the System Table on '" + database.getDatabaseLocation() + "'.");
+
+        return database.startSystemTableStandby(activeSystemTableLocation);
+    }
+
     @Override
     public boolean recreateTableManager(final TableInfo tableInfo, final DatabaseID previousLocation) throws RPCException {
 
@@ -196,6 +233,61 @@ public class DatabaseInstance implements IDatabaseInstanceRemote {
         return success;
     }
 
+    @Override
+    public Set<TableInfo> recreateTableManagers(final Set<TableInfo> tables, final DatabaseID previousLocation) throws RPCException {
+
+        final Set<TableInfo> recreated = Collections.synchronizedSet(new HashSet<TableInfo>());
+        final String oldPrimaryLocation = previousLocation.sanitizedLocation();
+
+        Map<TableInfo, List<DatabaseID>> replicaState = null;
+        try {
+            replicaState = TableManager.loadReplicaState(database, oldPrimaryLocation);
+        }
+        catch (final SQLException e) {
+            ErrorHandling.exceptionError(e, "Failed to read replicated Table Manager state of " + previousLocation + ". It will be read for each table.");
+        }
+
+        final int threads = Integer.parseInt(database.getDatabaseSettings().get("TABLE_MANAGER_RECREATION_THREADS"));
+        final ExecutorService exec = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, tables.size())));
+
+        final List<Callable<Object>> tasks = new LinkedList<Callable<Object>>();
+        for (final TableInfo tableInfo : tables) {
+
+            final List<DatabaseID> replicaLocations = replicaState == null ? null : replicaState.get(tableInfo.getGenericTableInfo());
+
+            tasks.add(Executors.callable(new Runnable() {
+
+                @Override
+                public void run() {
+
+                    try {
+                        final TableInfo ti = new TableInfo(tableInfo, databaseURL);
+                        if (RecreateTableManager.recreate(database, ti, oldPrimaryLocation, replicaLocations)) {
+                            recreated.add(tableInfo);
+                        }
+                    }
+                    catch (final Exception e) {
+                        Diagnostic.trace(DiagnosticLevel.FULL, "Error re-creating table manager for " + tableInfo);
+                    }
+                }
+            }));
+        }
+
+        try {
+            exec.invokeAll(tasks);
+        }
+        catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        finally {
+            exec.shutdown();
+        }
+
+        Diagnostic.traceNoEvent(DiagnosticLevel.INIT, "Recreated " + recreated.size() + " of " + tables.size() + " Table Managers from " + previousLocation + " on " + databaseURL + ".");
+
+        return recreated;
+    }
+
     @Override
     public void setSystemTableLocation(final IChordRemoteReference systemTableLocation, final DatabaseID databaseURL) throws RPCException {
 
@@ -278,4 +370,30 @@ public class DatabaseInstance implements IDatabaseInstanceRemote {
 
         return database.isReplicating();
     }
+
+    @Override
+    public boolean releaseKeptLock(final TableInfo tableInfo, final LockRequest lockRequest) {
+
+        return database.getStickyLockCache().revoke(tableInfo.getFullTableName(), lockRequest);
+    }
+
+    @Override
+    public ITableManagerRemote lookupInTableDirectory(final TableInfo tableInfo) throws RPCException {
+
+        try {
+            return database.getSystemTableReference().lookupInTableDirectory(tableInfo);
+        }
+        catch (final SQLException e) {
+            throw new RPCException(e.getMessage());
+        }
+    }
+
+    @Override
+    public void invalidateTableDirectoryEntry(final TableInfo tableInfo) {
+
+        database.getSystemTableReference().invalidateTableDirectoryEntry(tableInfo);
+
+        // The Table Manager that granted a lock kept on the table no longer holds it.
+        TableProxy.invalidateKeptLocks(database, tableInfo == null ? null : tableInfo.getFullTableName());
+    }
 }
@@ -4,6 +4,7 @@ import java.net.InetSocketAddress;
 import java.sql.SQLException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 import org.h2o.db.id.DatabaseID;
 import org.h2o.db.id.TableInfo;
@@ -11,6 +12,7 @@ import org.h2o.db.interfaces.IDatabaseInstanceRemote;
 import org.h2o.db.interfaces.ITableManagerRemote;
 import org.h2o.db.manager.interfaces.ISystemTableMigratable;
 import org.h2o.db.manager.recovery.SystemTableAccessException;
+import org.h2o.db.query.locking.LockRequest;
 import org.h2o.util.exceptions.MovedException;
 import org.json.JSONWriter;
 
@@ -99,7 +101,7 @@ public class DatabaseInstanceProxy extends StreamProxy implements IDatabaseInsta
 
             final JSONWriter jw = connection.getJSONwriter();
 
-            jw.value(query);
+            marshaller.serializeStatement(query, jw);
             jw.value(transactionName);
             jw.value(commitOperation);
 
@@ -120,6 +122,37 @@ public class DatabaseInstanceProxy extends StreamProxy implements IDatabaseInsta
         }
     }
 
+    @Override
+    public int executeInOrder(final String query, final String transactionName, final boolean commitOperation, final String stream, final long sequence) throws RPCException, SQLException {
+
+        try {
+            final Connection connection = (Connection) startCall("executeInOrder");
+
+            final JSONWriter jw = connection.getJSONwriter();
+
+            marshaller.serializeStatement(query, jw);
+            jw.value(transactionName);
+            jw.value(commitOperation);
+            jw.value(stream);
+            jw.value(sequence);
+
+            final JSONReader reader = makeCall(connection);
+
+            final int result = reader.intValue();
+
+            finishCall(connection);
+
+            return result;
+        }
+        catch (final SQLException e) {
+            throw e;
+        }
+        catch (final Exception e) {
+            dealWithException(e);
+            return -1; //not reached
+        }
+    }
+
     @Override
     public int prepare(final String transactionName) throws RPCException, SQLException {
 
@@ -214,7 +247,7 @@ public class DatabaseInstanceProxy extends StreamProxy implements IDatabaseInsta
             final Connection connection = (Connection) startCall("executeUpdate");
             final JSONWriter jw = connection.getJSONwriter();
 
-            jw.value(sql);
+            marshaller.serializeStatement(sql, jw);
             jw.value(systemTableCommand);
 
             final JSONReader reader = makeCall(connection);
@@ -322,6 +355,32 @@ public class DatabaseInstanceProxy extends StreamProxy implements IDatabaseInsta
         }
     }
 
+    @Override
+    public ISystemTableMigratable startSystemTableStandby(final DatabaseID activeSystemTableLocation) throws RPCException, SQLException {
+
+        try {
+            final Connection connection = (Connection) startCall("startSystemTableStandby");
+
+            final JSONWriter jw = connection.getJSONwriter();
+            marshaller.serializeDatabaseID(activeSystemTableLocation, jw);
+
+            final JSONReader reader = makeCall(connection);
+
+            final ISystemTableMigratable result = marshaller.deserializeISystemTableMigratable(reader);
+
+            finishCall(connection);
+
+            return result;
+        }
+        catch (final SQLException e) {
+            throw e;
+        }
+        catch (final Exception e) {
+            dealWithException(e);
+            return null; // not reached
+        }
+    }
+
     @Override
     public boolean recreateTableManager(final TableInfo tableInfo, final DatabaseID databaseURL) throws RPCException {
 
@@ -346,6 +405,30 @@ public class DatabaseInstanceProxy extends StreamProxy implements IDatabaseInsta
         }
     }
 
+    @Override
+    public Set<TableInfo> recreateTableManagers(final Set<TableInfo> tables, final DatabaseID databaseURL) throws RPCException {
+
+        try {
+            final Connection connection = (Connection) startCall("recreateTableManagers");
+
+            final JSONWriter jw = connection.getJSONwriter();
+            marshaller.serializeSetTableInfo(tables, jw);
+            marshaller.serializeDatabaseID(databaseURL, jw);
+
+            final JSONReader reader = makeCall(connection);
+
+            final Set<TableInfo> result = marshaller.deserializeSetTableInfo(reader);
+
+            finishCall(connection);
+
+            return result;
+        }
+        catch (final Exception e) {
+            dealWithException(e);
+            return null; // not reached
+        }
+    }
+
     @Override
     public boolean isSystemTable() throws RPCException {
 
@@ -429,4 +512,68 @@ public class DatabaseInstanceProxy extends StreamProxy implements IDatabaseInsta
             return false; // not reached
         }
     }
+
+    @Override
+    public boolean releaseKeptLock(final TableInfo tableInfo, final LockRequest lockRequest) throws RPCException {
+
+        try {
+            final Connection connection = (Connection) startCall("releaseKeptLock");
+
+            final JSONWriter jw = connection.getJSONwriter();
+            marshaller.serializeTableInfo(tableInfo, jw);
+            marshaller.serializeLockRequest(lockRequest, jw);
+
+            final JSONReader reader = makeCall(connection);
+
+            final boolean result = reader.booleanValue();
+
+            finishCall(connection);
+            return result;
+        }
+        catch (final Exception e) {
+            dealWithException(e);
+            return false; // not reached
+        }
+    }
+
+    @Override
+    public ITableManagerRemote lookupInTableDirectory(final TableInfo tableInfo) throws RPCException {
+
+        try {
+            final Connection connection = (Connection) startCall("lookupInTableDirectory");
+
+            final JSONWriter jw = connection.getJSONwriter();
+            marshaller.serializeTableInfo(tableInfo, jw);
+
+            final JSONReader reader = makeCall(connection);
+
+            final ITableManagerRemote result = marshaller.deserializeITableManagerRemote(reader);
+
+            finishCall(connection);
+
+            return result;
+        }
+        catch (final Exception e) {
+            dealWithException(e);
+            return null; // not reached
+        }
+    }
+
+    @Override
+    public void invalidateTableDirectoryEntry(final TableInfo tableInfo) throws RPCException {
+
+        try {
+            final Connection connection = (Connection) startCall("invalidateTableDirectoryEntry");
+
+            final JSONWriter jw = connection.getJSONwriter();
+            marshaller.serializeTableInfo(tableInfo, jw);
+
+            handleVoidCall(makeCall(connection));
+
+            finishCall(connection);
+        }
+        catch (final Exception e) {
+            dealWithException(e);
+        }
+    }
 }
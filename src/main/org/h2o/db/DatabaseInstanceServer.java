@@ -1,11 +1,13 @@
 package org.h2o.db;
 
 import java.net.UnknownHostException;
+import java.util.Set;
 
 import org.h2o.db.id.DatabaseID;
 import org.h2o.db.id.TableInfo;
 import org.h2o.db.interfaces.IDatabaseInstanceRemote;
 import org.h2o.db.manager.interfaces.ISystemTableMigratable;
+import org.h2o.db.query.locking.LockRequest;
 import org.json.JSONWriter;
 
 import uk.ac.standrews.cs.nds.rpc.stream.ApplicationServer;
@@ -109,7 +111,7 @@ public class DatabaseInstanceServer extends ApplicationServer {
             @Override
             public void execute(final JSONReader args, final JSONWriter response) throws Exception {
 
-                final String p0 = args.stringValue();
+                final String p0 = marshaller.deserializeStatement(args);
                 final boolean p1 = args.booleanValue();
                 response.value(instance.executeUpdate(p0, p1));
             }
@@ -166,6 +168,18 @@ public class DatabaseInstanceServer extends ApplicationServer {
             }
         });
 
+        // ISystemTableMigratable startSystemTableStandby(DatabaseID activeSystemTableLocation) throws RPCException, SQLException;
+
+        handler_map.put("startSystemTableStandby", new IHandler() {
+
+            @Override
+            public void execute(final JSONReader args, final JSONWriter response) throws Exception {
+
+                final DatabaseID p0 = marshaller.deserializeDatabaseID(args);
+                marshaller.serializeISystemTableMigratable(instance.startSystemTableStandby(p0), response);
+            }
+        });
+
         // boolean recreateTableManager(TableInfo tableInfo, DatabaseID databaseURL) throws RPCException;
 
         handler_map.put("recreateTableManager", new IHandler() {
@@ -179,6 +193,19 @@ public class DatabaseInstanceServer extends ApplicationServer {
             }
         });
 
+        // Set<TableInfo> recreateTableManagers(Set<TableInfo> tables, DatabaseID databaseURL) throws RPCException;
+
+        handler_map.put("recreateTableManagers", new IHandler() {
+
+            @Override
+            public void execute(final JSONReader args, final JSONWriter response) throws Exception {
+
+                final Set<TableInfo> p0 = marshaller.deserializeSetTableInfo(args);
+                final DatabaseID p1 = marshaller.deserializeDatabaseID(args);
+                marshaller.serializeSetTableInfo(instance.recreateTableManagers(p0, p1), response);
+            }
+        });
+
         // boolean isSystemTable() throws RPCException;
 
         handler_map.put("isSystemTable", new IHandler() {
@@ -223,13 +250,27 @@ public class DatabaseInstanceServer extends ApplicationServer {
             @Override
             public void execute(final JSONReader args, final JSONWriter response) throws Exception {
 
-                final String p0 = args.stringValue();
+                final String p0 = marshaller.deserializeStatement(args);
                 final String p1 = args.stringValue();
                 final boolean p2 = args.booleanValue();
                 response.value(instance.execute(p0, p1, p2));
             }
         });
 
+        handler_map.put("executeInOrder", new IHandler() {
+
+            @Override
+            public void execute(final JSONReader args, final JSONWriter response) throws Exception {
+
+                final String p0 = marshaller.deserializeStatement(args);
+                final String p1 = args.stringValue();
+                final boolean p2 = args.booleanValue();
+                final String p3 = args.stringValue();
+                final long p4 = args.longValue();
+                response.value(instance.executeInOrder(p0, p1, p2, p3, p4));
+            }
+        });
+
         handler_map.put("getChordPort", new IHandler() {
 
             @Override
@@ -247,5 +288,43 @@ public class DatabaseInstanceServer extends ApplicationServer {
                 response.value(instance.isReplicating());
             }
         });
+
+        // boolean releaseKeptLock(TableInfo tableInfo, LockRequest lockRequest) throws RPCException;
+
+        handler_map.put("releaseKeptLock", new IHandler() {
+
+            @Override
+            public void execute(final JSONReader args, final JSONWriter response) throws Exception {
+
+                final TableInfo p0 = marshaller.deserializeTableInfo(args);
+                final LockRequest p1 = marshaller.deserializeLockRequest(args);
+                response.value(instance.releaseKeptLock(p0, p1));
+            }
+        });
+
+        // ITableManagerRemote lookupInTableDirectory(TableInfo tableInfo) throws RPCException;
+
+        handler_map.put("lookupInTableDirectory", new IHandler() {
+
+            @Override
+            public void execute(final JSONReader args, final JSONWriter response) throws Exception {
+
+                final TableInfo p0 = marshaller.deserializeTableInfo(args);
+                marshaller.serializeITableManagerRemote(instance.lookupInTableDirectory(p0), response);
+            }
+        });
+
+        // void invalidateTableDirectoryEntry(TableInfo tableInfo) throws RPCException;
+
+        handler_map.put("invalidateTableDirectoryEntry", new IHandler() {
+
+            @Override
+            public void execute(final JSONReader args, final JSONWriter response) throws Exception {
+
+                final TableInfo p0 = marshaller.deserializeTableInfo(args);
+                instance.invalidateTableDirectoryEntry(p0);
+                response.value("");
+            }
+        });
     }
 }
@@ -1,6 +1,7 @@
 package org.h2o.db;
 
 import java.net.InetSocketAddress;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -15,6 +16,11 @@ import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
 
+import org.h2.compress.CompressionStatistics;
+import org.h2.constant.SysProperties;
+import org.h2.tools.CompressTool;
+import org.h2.util.ByteUtils;
+import org.h2.util.StringUtils;
 import org.h2o.autonomic.numonic.metric.IMetric;
 import org.h2o.autonomic.numonic.metric.Metric;
 import org.h2o.autonomic.numonic.ranking.MachineMonitoringData;
@@ -26,10 +32,14 @@ import org.h2o.db.interfaces.ITableManagerRemote;
 import org.h2o.db.manager.SystemTableProxy;
 import org.h2o.db.manager.TableManagerProxy;
 import org.h2o.db.manager.interfaces.ISystemTableMigratable;
+import org.h2o.db.partitioning.PartitionMethod;
+import org.h2o.db.partitioning.PartitionScheme;
 import org.h2o.db.query.TableProxy;
 import org.h2o.db.query.asynchronous.CommitResult;
 import org.h2o.db.query.locking.LockRequest;
 import org.h2o.db.query.locking.LockType;
+import org.h2o.db.replication.ConsistencyLevel;
+import org.h2o.db.replication.ReadConsistency;
 import org.h2o.db.replication.ReplicaManager;
 import org.h2o.db.wrappers.DatabaseInstanceWrapper;
 import org.h2o.db.wrappers.TableManagerWrapper;
@@ -125,6 +135,20 @@ public class H2OMarshaller extends Marshaller {
     private static final String NETWORK_WRITE = "networkWrite";
     private static final String DEFAULT_GATEWAY_IP = "DEFAULT_GATEWAY_IP";
     private static final String DEFAULT_GATEWAY_MAC = "DEFAULT_GATEWAY_MAC";
+    private static final String CONSISTENCY_LEVEL = "consistencyLevel";
+    private static final String WRITE_QUORUM = "writeQuorum";
+    private static final String READ_CONSISTENCY = "readConsistency";
+    private static final String PARTITION_COLUMN = "partitionColumn";
+    private static final String PARTITION_METHOD = "partitionMethod";
+    private static final String NUMBER_OF_PARTITIONS = "numberOfPartitions";
+    private static final String UPPER_BOUNDS = "upperBounds";
+    private static final String REPLICA_SET_VERSION = "replicaSetVersion";
+
+    /**
+     * The prefix of a compressed statement. No statement starts with a NUL character, so an uncompressed statement is never mistaken for a
+     * compressed one.
+     */
+    private static final String COMPRESSED_STATEMENT = "\u0000";
 
     private final ChordRemoteMarshaller chord_marshaller;
 
@@ -147,6 +171,59 @@ public class H2OMarshaller extends Marshaller {
 
     // -------------------------------------------------------------------------------------------------------
 
+    /**
+     * Statements at least as long as the h2.transferCompressionThreshold system property are compressed with the algorithm given by the
+     * h2.transferCompression system property. A compressed statement is sent as Base64 text, so it is only sent compressed if that is
+     * shorter than the statement.
+     */
+    public void serializeStatement(final String sql, final JSONWriter writer) throws JSONException {
+
+        final String algorithm = SysProperties.TRANSFER_COMPRESSION;
+
+        if (sql != null && sql.length() >= SysProperties.TRANSFER_COMPRESSION_THRESHOLD && !"NO".equalsIgnoreCase(algorithm)) {
+            final long start = CompressionStatistics.now();
+
+            try {
+                final byte[] bytes = StringUtils.utf8Encode(sql);
+                final String compressed = COMPRESSED_STATEMENT + ByteUtils.convertBytesToBase64(CompressTool.getInstance().compress(bytes, algorithm));
+
+                if (compressed.length() < bytes.length) {
+                    CompressionStatistics.compressed(bytes.length, compressed.length(), start);
+                    writer.value(compressed);
+                    return;
+                }
+
+                CompressionStatistics.compressed(bytes.length, bytes.length, start);
+            }
+            catch (final SQLException e) {
+                ErrorHandling.errorNoEvent("Couldn't compress a statement with " + algorithm + ", so it was sent uncompressed: " + e.getMessage());
+            }
+        }
+
+        writer.value(sql);
+    }
+
+    public String deserializeStatement(final JSONReader reader) throws DeserializationException {
+
+        try {
+            final String sql = reader.stringValue();
+
+            if (sql == null || !sql.startsWith(COMPRESSED_STATEMENT)) { return sql; }
+
+            final long start = CompressionStatistics.now();
+            final byte[] compressed = ByteUtils.convertBase64ToBytes(sql.substring(COMPRESSED_STATEMENT.length()));
+            final String expanded = StringUtils.utf8Decode(CompressTool.getInstance().expand(compressed));
+            CompressionStatistics.expanded(start);
+
+            return expanded;
+        }
+        catch (final Exception e) {
+            throw new DeserializationException(e);
+        }
+    }
+
+    // -------------------------------------------------------------------------------------------------------
+
     public void serializeITableManagerRemote(final ITableManagerRemote source, final JSONWriter writer) throws JSONException {
 
         if (source == null) {
@@ -344,6 +421,186 @@ public class H2OMarshaller extends Marshaller {
 
     // -------------------------------------------------------------------------------------------------------
 
+    public void serializeConsistencyLevel(final ConsistencyLevel source, final JSONWriter writer) throws JSONException {
+
+        if (source == null) {
+            writer.value(null);
+        }
+        else {
+
+            writer.object();
+
+            writer.key(WRITE_QUORUM);
+            writer.value(source.getWriteQuorum());
+            writer.key(READ_CONSISTENCY);
+            writer.value(source.getReadConsistency().toString());
+            writer.endObject();
+        }
+    }
+
+    public ConsistencyLevel deserializeConsistencyLevel(final JSONReader reader) throws DeserializationException {
+
+        try {
+            if (reader.checkNull()) { return null; }
+            reader.object();
+            reader.key(WRITE_QUORUM);
+            final int writeQuorum = reader.intValue();
+
+            reader.key(READ_CONSISTENCY);
+            final ReadConsistency readConsistency = ReadConsistency.valueOf(reader.stringValue());
+
+            reader.endObject();
+
+            return new ConsistencyLevel(writeQuorum, readConsistency);
+        }
+        catch (final Exception e) {
+            throw new DeserializationException(e);
+        }
+    }
+
+    // -------------------------------------------------------------------------------------------------------
+
+    public void serializePartitionScheme(final PartitionScheme source, final JSONWriter writer) throws JSONException {
+
+        if (source == null) {
+            writer.value(null);
+        }
+        else {
+
+            writer.object();
+
+            writer.key(TABLE_INFO);
+            serializeTableInfo(source.getTableInfo(), writer);
+            writer.key(PARTITION_COLUMN);
+            writer.value(source.getColumnName());
+            writer.key(PARTITION_METHOD);
+            writer.value(source.getMethod().toString());
+            writer.key(NUMBER_OF_PARTITIONS);
+            writer.value(source.getNumberOfPartitions());
+            writer.key(UPPER_BOUNDS);
+            writer.array();
+            for (final String upperBound : source.getUpperBounds()) {
+                writer.value(upperBound);
+            }
+            writer.endArray();
+            writer.endObject();
+        }
+    }
+
+    public PartitionScheme deserializePartitionScheme(final JSONReader reader) throws DeserializationException {
+
+        try {
+            if (reader.checkNull()) { return null; }
+            reader.object();
+            reader.key(TABLE_INFO);
+            final TableInfo tableInfo = deserializeTableInfo(reader);
+
+            reader.key(PARTITION_COLUMN);
+            final String columnName = reader.stringValue();
+
+            reader.key(PARTITION_METHOD);
+            final PartitionMethod method = PartitionMethod.valueOf(reader.stringValue());
+
+            reader.key(NUMBER_OF_PARTITIONS);
+            final int numberOfPartitions = reader.intValue();
+
+            reader.key(UPPER_BOUNDS);
+            reader.array();
+            final List<String> upperBounds = new LinkedList<String>();
+            while (!reader.have(JSONReader.ENDARRAY)) {
+                upperBounds.add(reader.stringValue());
+            }
+            reader.endArray();
+
+            reader.endObject();
+
+            return new PartitionScheme(tableInfo, columnName, method, numberOfPartitions, upperBounds.toArray(new String[upperBounds.size()]));
+        }
+        catch (final Exception e) {
+            throw new DeserializationException(e);
+        }
+    }
+
+    public void serializeMapTableInfoPartitionScheme(final Map<TableInfo, PartitionScheme> source, final JSONWriter writer) throws JSONException {
+
+        if (source == null) {
+            writer.value(null);
+        }
+        else {
+            writer.array();
+            for (final PartitionScheme partitionScheme : source.values()) {
+                serializePartitionScheme(partitionScheme, writer);
+            }
+            writer.endArray();
+        }
+    }
+
+    /**
+     * The keys of the map are not sent, because each is the table name held by the partition scheme.
+     */
+    public Map<TableInfo, PartitionScheme> deserializeMapTableInfoPartitionScheme(final JSONReader reader) throws DeserializationException {
+
+        try {
+            if (reader.checkNull()) { return null; }
+
+            reader.array();
+            final Map<TableInfo, PartitionScheme> result = new HashMap<TableInfo, PartitionScheme>();
+            while (!reader.have(JSONReader.ENDARRAY)) {
+                final PartitionScheme partitionScheme = deserializePartitionScheme(reader);
+                result.put(partitionScheme.getTableInfo(), partitionScheme);
+            }
+
+            reader.endArray();
+            return result;
+        }
+        catch (final Exception e) {
+            throw new DeserializationException(e);
+        }
+    }
+
+    // -------------------------------------------------------------------------------------------------------
+
+    /**
+     * Each entry is sent as a pair of array elements: the key followed by its value.
+     */
+    public void serializeMapStringLong(final Map<String, Long> source, final JSONWriter writer) throws JSONException {
+
+        if (source == null) {
+            writer.value(null);
+        }
+        else {
+            writer.array();
+            for (final Entry<String, Long> entry : source.entrySet()) {
+                writer.value(entry.getKey());
+                writer.value(entry.getValue().longValue());
+            }
+            writer.endArray();
+        }
+    }
+
+    public Map<String, Long> deserializeMapStringLong(final JSONReader reader) throws DeserializationException {
+
+        try {
+            if (reader.checkNull()) { return null; }
+
+            reader.array();
+            final Map<String, Long> result = new HashMap<String, Long>();
+            while (!reader.have(JSONReader.ENDARRAY)) {
+                final String key = reader.stringValue();
+                final long value = reader.longValue();
+                result.put(key, value);
+            }
+
+            reader.endArray();
+            return result;
+        }
+        catch (final Exception e) {
+            throw new DeserializationException(e);
+        }
+    }
+
+    // -------------------------------------------------------------------------------------------------------
+
     public void serializeLockRequest(final LockRequest source, final JSONWriter writer) throws JSONException, RPCException {
 
         if (source == null) {
@@ -357,6 +614,13 @@ public class H2OMarshaller extends Marshaller {
             serializeDatabaseInstanceWrapper(source.getRequestLocation(), writer);
             writer.key(SESSION_ID);
             writer.value(source.getSessionID());
+            writer.key(WRITE_QUORUM);
+            if (source.getWriteQuorum() == null) {
+                writer.value(null);
+            }
+            else {
+                writer.value(source.getWriteQuorum().intValue());
+            }
             writer.endObject();
         }
     }
@@ -372,9 +636,15 @@ public class H2OMarshaller extends Marshaller {
             reader.key(SESSION_ID);
             final int sessionID = reader.intValue();
 
+            reader.key(WRITE_QUORUM);
+            Integer writeQuorum = null;
+            if (!reader.checkNull()) {
+                writeQuorum = reader.intValue();
+            }
+
             reader.endObject();
 
-            return new LockRequest(databaseMakingRequest, sessionID);
+            return new LockRequest(databaseMakingRequest, sessionID, writeQuorum);
         }
         catch (final Exception e) {
             throw new DeserializationException(e);
@@ -545,6 +815,10 @@ public class H2OMarshaller extends Marshaller {
             serializeLockRequest(source.getRequestingDatabase(), writer);
             writer.key(UPDATE_ID);
             writer.value(source.getUpdateID());
+            writer.key(CONSISTENCY_LEVEL);
+            serializeConsistencyLevel(source.getConsistencyLevel(), writer);
+            writer.key(REPLICA_SET_VERSION);
+            writer.value(source.getReplicaSetVersion());
             writer.endObject();
         }
     }
@@ -568,10 +842,17 @@ public class H2OMarshaller extends Marshaller {
             final LockRequest requestingDatabase = deserializeLockRequest(reader);
             reader.key(UPDATE_ID);
             final int updateID = reader.intValue();
+            reader.key(CONSISTENCY_LEVEL);
+            final ConsistencyLevel consistencyLevel = deserializeConsistencyLevel(reader);
+            reader.key(REPLICA_SET_VERSION);
+            final long replicaSetVersion = reader.longValue();
 
             reader.endObject();
 
-            return new TableProxy(lockGranted, tableName, allReplicas, tableManager, requestingDatabase, updateID, lockRequested);
+            final TableProxy proxy = new TableProxy(lockGranted, tableName, allReplicas, tableManager, requestingDatabase, updateID, lockRequested, consistencyLevel);
+            proxy.setReplicaSetVersion(replicaSetVersion);
+
+            return proxy;
         }
         catch (final Exception e) {
             throw new DeserializationException(e);
@@ -1040,6 +1321,78 @@ public class H2OMarshaller extends Marshaller {
 
     // -------------------------------------------------------------------------------------------------------
 
+    public void serializeCollectionLockRequest(final Collection<LockRequest> source, final JSONWriter writer) throws JSONException, RPCException {
+
+        if (source == null) {
+            writer.value(null);
+        }
+        else {
+
+            writer.array();
+            for (final LockRequest lockRequest : source) {
+                serializeLockRequest(lockRequest, writer);
+            }
+            writer.endArray();
+        }
+    }
+
+    public Set<LockRequest> deserializeCollectionLockRequest(final JSONReader reader) throws DeserializationException {
+
+        try {
+            if (reader.checkNull()) { return null; }
+            reader.array();
+
+            final Set<LockRequest> result = new HashSet<LockRequest>();
+            while (!reader.have(JSONReader.ENDARRAY)) {
+                result.add(deserializeLockRequest(reader));
+            }
+            reader.endArray();
+            return result;
+        }
+        catch (final Exception e) {
+            throw new DeserializationException(e);
+        }
+    }
+
+    // -------------------------------------------------------------------------------------------------------
+
+    public void serializeSetTableInfo(final Set<TableInfo> source, final JSONWriter writer) throws JSONException {
+
+        if (source == null) {
+            writer.value(null);
+        }
+        else {
+
+            writer.array();
+            for (final TableInfo tableInfo : source) {
+                serializeTableInfo(tableInfo, writer);
+            }
+            writer.endArray();
+        }
+    }
+
+    public Set<TableInfo> deserializeSetTableInfo(final JSONReader reader) throws DeserializationException {
+
+        try {
+
+            if (reader.checkNull()) { return null; }
+            reader.array();
+
+            final Set<TableInfo> result = new HashSet<TableInfo>();
+            while (!reader.have(JSONReader.ENDARRAY)) {
+                result.add(deserializeTableInfo(reader));
+            }
+
+            reader.endArray();
+            return result;
+        }
+        catch (final Exception e) {
+            throw new DeserializationException(e);
+        }
+    }
+
+    // -------------------------------------------------------------------------------------------------------
+
     public void serializeSetString(final Set<String> source, final JSONWriter writer) throws JSONException {
 
         if (source == null) {
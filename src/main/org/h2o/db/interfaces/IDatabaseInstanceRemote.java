@@ -9,11 +9,13 @@
 package org.h2o.db.interfaces;
 
 import java.sql.SQLException;
+import java.util.Set;
 
 import org.h2o.db.id.DatabaseID;
 import org.h2o.db.id.TableInfo;
 import org.h2o.db.manager.interfaces.ISystemTableMigratable;
 import org.h2o.db.manager.recovery.SystemTableAccessException;
+import org.h2o.db.query.locking.LockRequest;
 
 import uk.ac.standrews.cs.nds.rpc.RPCException;
 import uk.ac.standrews.cs.stachord.interfaces.IChordRemoteReference;
@@ -123,6 +125,33 @@ public interface IDatabaseInstanceRemote extends IH2ORemote, TwoPhaseCommit {
      */
     boolean recreateTableManager(TableInfo tableInfo, DatabaseID databaseURL) throws RPCException;
 
+    /**
+     * Recreate a number of Table Managers on this machine, which were all previously held on the same machine. Their state is read from
+     * the replicated meta-tables in a single query, and they are recreated concurrently.
+     * 
+     * @param tables
+     *            The tables whose Table Managers are to be recreated.
+     * @param databaseURL
+     *            The location on which the table managers were previously held. Used to find the correct meta-table.
+     * @return The tables whose Table Managers were successfully recreated (or were found to be running already).
+     * @throws RPCException
+     */
+    Set<TableInfo> recreateTableManagers(Set<TableInfo> tables, DatabaseID databaseURL) throws RPCException;
+
+    /**
+     * Start a hot standby of the System Table on this machine, which copies the state of the active System Table and then records the
+     * changes made to it. This machine must hold a replica of the System Table's persisted state.
+     * 
+     * @param activeSystemTableLocation
+     *            The location of the active System Table.
+     * @return Reference to the standby, to which changes are to be sent.
+     * @throws RPCException
+     *             Thrown if there were problems connecting to the instance.
+     * @throws SQLException
+     *             Thrown if the standby couldn't be started.
+     */
+    ISystemTableMigratable startSystemTableStandby(DatabaseID activeSystemTableLocation) throws RPCException, SQLException;
+
     /**
      * Checks if this instance is running the System Table.
      * 
@@ -151,4 +180,39 @@ public interface IDatabaseInstanceRemote extends IH2ORemote, TwoPhaseCommit {
      * @throws RPCException 
      */
     boolean isReplicating() throws RPCException;
+
+    /**
+     * Called by a Table Manager to ask this instance to give up a write lock that it kept after the transaction that acquired it committed
+     * (see the STICKY_LOCKS setting).
+     * 
+     * @param tableInfo
+     *            The table whose lock is wanted by another instance.
+     * @param lockRequest
+     *            The lock request under which the Table Manager holds the lock.
+     * @return True if the lock was unused and has been given up, so the Table Manager can release it. False if the lock wasn't kept, or is
+     *         in use, in which case it will be released when the transactions using it finish.
+     * @throws RPCException
+     */
+    boolean releaseKeptLock(TableInfo tableInfo, LockRequest lockRequest) throws RPCException;
+
+    /**
+     * Called by another instance to look up the Table Manager of a table in the part of the table directory held by this instance (see the
+     * TABLE_DIRECTORY_SHARDS setting). The System Table is asked if this instance doesn't know the table.
+     * 
+     * @param tableInfo
+     *            The table.
+     * @return The table's Table Manager, or null if the System Table doesn't know the table.
+     * @throws RPCException
+     */
+    ITableManagerRemote lookupInTableDirectory(TableInfo tableInfo) throws RPCException;
+
+    /**
+     * Called by the System Table when the Table Manager of a table changes, so that this instance forgets it in its part of the table
+     * directory, and gives up any write lock it kept on the table (see the STICKY_LOCKS setting), which the new Table Manager doesn't hold.
+     * 
+     * @param tableInfo
+     *            The table, or null if every table is to be forgotten.
+     * @throws RPCException
+     */
+    void invalidateTableDirectoryEntry(TableInfo tableInfo) throws RPCException;
 }
@@ -36,6 +36,7 @@ import org.h2o.db.query.TableProxy;
 import org.h2o.db.query.asynchronous.CommitResult;
 import org.h2o.db.query.locking.LockRequest;
 import org.h2o.db.query.locking.LockType;
+import org.h2o.db.replication.ConsistencyLevel;
 import org.h2o.db.wrappers.DatabaseInstanceWrapper;
 import org.h2o.util.exceptions.MovedException;
 import org.h2o.util.exceptions.StartupException;
@@ -51,6 +52,15 @@ public interface ITableManagerRemote extends IH2ORemote, IMigratable {
 
     public TableProxy getTableProxy(LockType lockType, LockRequest lockRequest) throws RPCException, SQLException, MovedException;
 
+    /**
+     * Request a lock on this table, leaving the replica locations out of the proxy that is returned if they are the same as the version
+     * of the replica snapshot the requesting instance already holds.
+     * 
+     * @param knownReplicaSetVersion
+     *            the version of the snapshot held by the requesting instance, or {@link TableProxy#NO_REPLICA_SET_VERSION}.
+     */
+    public TableProxy getTableProxy(LockType lockType, LockRequest lockRequest, long knownReplicaSetVersion) throws RPCException, SQLException, MovedException;
+
     public boolean addTableInformation(DatabaseID tableManagerURL, TableInfo tableDetails) throws RPCException, MovedException, SQLException;
 
     public void addReplicaInformation(TableInfo tableDetails) throws RPCException, MovedException, SQLException;
@@ -86,6 +96,33 @@ public interface ITableManagerRemote extends IH2ORemote, IMigratable {
      */
     public void releaseLockAndUpdateReplicaState(boolean commit, LockRequest requestingDatabase, Collection<CommitResult> committedQueries, boolean asynchronousCommit) throws RPCException, MovedException, SQLException;
 
+    /**
+     * Check a transaction that updated this table without holding a lock, before it commits. The transaction may only commit if no other
+     * transaction holds a lock on the table, and every active replica of the table was updated, starting from its current update ID. If
+     * so, the transaction is given a WRITE lock, and is then committed and finished with
+     * {@link #releaseLockAndUpdateReplicaState(boolean, LockRequest, Collection, boolean)} like any other locked update, which records the
+     * replicas that committed.
+     * 
+     * @param requestingDatabase
+     *            The session which made the update.
+     * @param committedQueries
+     *            The replicas that were updated, and the update ID each had when it was updated.
+     * @return true if the transaction now holds a WRITE lock and can commit; false if it must be rolled back, in which case no lock is held.
+     * @throws MovedException
+     * @throws SQLException
+     */
+    public boolean lockForOptimisticCommit(LockRequest requestingDatabase, Collection<CommitResult> committedQueries) throws RPCException, MovedException, SQLException;
+
+    /**
+     * Release the read locks held by the given sessions. These are locks taken out by auto-committed queries, which don't change the
+     * replica state, so the locks of many queries can be released in a single call. Requests that don't hold a read lock are ignored.
+     * 
+     * @param readLocks
+     *            The sessions whose read locks are to be released.
+     * @throws MovedException
+     */
+    public void releaseReadLocks(Collection<LockRequest> readLocks) throws RPCException, MovedException;
+
     /**
      * Deconstructs this Table Manager. This is required for testing where a remote reference to a Table Manager may not completely die when
      * expected - this method should essentially render the Table Manager unusable.
@@ -189,4 +226,23 @@ public interface ITableManagerRemote extends IH2ORemote, IMigratable {
      */
     public void notifyOfFailure(DatabaseID failedMachine) throws RPCException;
 
+    /**
+     * Get the write quorum and read consistency of this table.
+     */
+    public ConsistencyLevel getConsistencyLevel() throws RPCException, MovedException;
+
+    /**
+     * Get the number of replicas this table should have, which changes with its workload if the ADAPTIVE_REPLICATION setting is on.
+     */
+    public int getReplicationFactor() throws RPCException, MovedException;
+
+    /**
+     * Change the write quorum and read consistency of this table. The new consistency level is persisted in the Table Manager's meta-data
+     * and applies to all transactions that obtain locks after this call.
+     * 
+     * @throws SQLException
+     *             Thrown if the consistency level could not be persisted.
+     */
+    public void setConsistencyLevel(ConsistencyLevel consistencyLevel) throws RPCException, MovedException, SQLException;
+
 }
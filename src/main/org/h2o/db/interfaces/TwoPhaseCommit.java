@@ -37,6 +37,21 @@ public interface TwoPhaseCommit {
      */
     public int execute(String query, String transactionName, boolean commitOperation) throws RPCException, SQLException;
 
+    /**
+     * Execute a query as in {@link #execute(String, String, boolean)}, as part of an ordered stream of updates. The query is only executed
+     * once every earlier update in the stream has been executed, whatever order they arrive in.
+     * 
+     * @param stream
+     *            The ID of the stream, which is unique to the sending pipeline.
+     * @param sequence
+     *            The position of this update in the stream, starting from 0.
+     * @return Result of the prepare, as for {@link #execute(String, String, boolean)}.
+     * @throws RPCException
+     * @throws SQLException
+     *             Also thrown if the query can't be executed in order, because an earlier update in the stream was lost.
+     */
+    public int executeInOrder(String query, String transactionName, boolean commitOperation, String stream, long sequence) throws RPCException, SQLException;
+
     /**
      * Prepare the given machine to commit a set of queries that have already been executed.
      * 
@@ -1,12 +1,21 @@
 package org.h2o.db.manager;
 
 import java.sql.SQLException;
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
 import java.util.Queue;
-import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.h2o.autonomic.numonic.metric.CreateReplicaMetric;
 import org.h2o.autonomic.numonic.ranking.Requirements;
+import org.h2o.autonomic.settings.Settings;
 import org.h2o.db.id.DatabaseID;
 import org.h2o.db.id.TableInfo;
 import org.h2o.db.interfaces.IDatabaseInstanceRemote;
@@ -21,22 +30,45 @@ import uk.ac.standrews.cs.nds.util.DiagnosticLevel;
 import uk.ac.standrews.cs.nds.util.ErrorHandling;
 import uk.ac.standrews.cs.nds.util.PrettyPrinter;
 
+/**
+ * Creates new replicas of a table until it reaches its desired replication factor.
+ *
+ * <p>Replicas are created concurrently, up to the number given by the REPLICA_CREATION_PARALLELISM setting. Each existing replica is the
+ * source of one copy at a time, and each new replica becomes a source as soon as it has been created, so copies spread out as a tree rather
+ * than all being taken from the same instance. The rate at which each copy reads from its source is limited by the
+ * REPLICA_CREATION_BANDWIDTH setting of the instance making the copy (see {@link org.h2.command.h2o.CreateReplica}).
+ */
 public class CreateNewReplicasAsync implements Runnable {
 
+    /**
+     * The number of replicas created at once if the REPLICA_CREATION_PARALLELISM setting isn't available.
+     */
+    private static final int DEFAULT_PARALLELISM = 3;
+
     private final TableManager tableManager;
     private final ReplicaManager replicaManager;
     private final int desiredRelationReplicationFactor;
     private final ISystemTableReference iSystemTableReference;
     private final DatabaseID databaseID;
 
+    /**
+     * Instances on which new replicas are created before any others, if the System Table ranks them as able to hold a replica.
+     */
+    private final List<DatabaseInstanceWrapper> preferredLocations;
+
     public CreateNewReplicasAsync(final TableManager tableManager, final ReplicaManager replicaManager, final ISystemTableReference iSystemTableReference, final int desiredRelationReplicationFactor, final DatabaseID databaseID) {
 
+        this(tableManager, replicaManager, iSystemTableReference, desiredRelationReplicationFactor, databaseID, Collections.<DatabaseInstanceWrapper> emptyList());
+    }
+
+    public CreateNewReplicasAsync(final TableManager tableManager, final ReplicaManager replicaManager, final ISystemTableReference iSystemTableReference, final int desiredRelationReplicationFactor, final DatabaseID databaseID, final List<DatabaseInstanceWrapper> preferredLocations) {
+
         this.tableManager = tableManager;
         this.replicaManager = replicaManager;
         this.iSystemTableReference = iSystemTableReference;
         this.desiredRelationReplicationFactor = desiredRelationReplicationFactor;
         this.databaseID = databaseID;
-
+        this.preferredLocations = preferredLocations;
     }
 
     @Override
@@ -49,15 +81,18 @@ public class CreateNewReplicasAsync implements Runnable {
             Diagnostic.traceNoEvent(DiagnosticLevel.FINAL, "Deciding whether to create new replicas. Current replication factor is " + currentReplicationFactor + " and the desired replication factor is " + desiredRelationReplicationFactor + ".");
 
             if (newReplicasNeeded > 0) {
-                final Queue<DatabaseInstanceWrapper> potentialReplicaLocations = iSystemTableReference.getRankedListOfInstances(new CreateReplicaMetric(), Requirements.NO_FILTERING);
+                final Queue<DatabaseInstanceWrapper> potentialReplicaLocations = preferLocations(iSystemTableReference.getRankedListOfInstances(new CreateReplicaMetric(), Requirements.NO_FILTERING));
 
                 Diagnostic.traceNoEvent(DiagnosticLevel.FULL, "Table Manager for " + tableManager.getFullTableName() + " (on " + databaseID + ") will attempt to replicate to " + newReplicasNeeded + " of these machines: " + PrettyPrinter.toString(potentialReplicaLocations));
 
-                DatabaseInstanceWrapper primaryLocation = null;
+                final Map<DatabaseInstanceWrapper, Integer> existingReplicas = replicaManager.getAllReplicasOnActiveMachines();
 
-                Diagnostic.traceNoEvent(DiagnosticLevel.FINAL, "** " + PrettyPrinter.toString(replicaManager.getAllReplicasOnActiveMachines()));
+                Diagnostic.traceNoEvent(DiagnosticLevel.FINAL, "** " + PrettyPrinter.toString(existingReplicas));
 
-                for (final DatabaseInstanceWrapper wrapper : replicaManager.getAllReplicasOnActiveMachines().keySet()) {
+                // Replicas that can be copied from and aren't being copied from at the moment.
+                final Queue<DatabaseInstanceWrapper> idleSources = new LinkedList<DatabaseInstanceWrapper>();
+
+                for (final DatabaseInstanceWrapper wrapper : existingReplicas.keySet()) {
 
                     try {
 
@@ -67,84 +102,203 @@ public class CreateNewReplicasAsync implements Runnable {
                         continue;
                     }
 
-                    primaryLocation = wrapper;
-                    break;
+                    idleSources.add(wrapper);
                 }
 
-                final String createReplicaSQL = "CREATE  REPLICA " + tableManager.getFullTableName() + " FROM '" + primaryLocation.getURL().getURL() + "'";
+                if (idleSources.isEmpty()) {
+                    ErrorHandling.errorNoEvent("No replica of " + tableManager.getFullTableName() + " could be contacted to create new replicas from.");
+                    return;
+                }
 
-                final Set<DatabaseInstanceWrapper> locationOfNewReplicas = new HashSet<DatabaseInstanceWrapper>();
+                createReplicas(newReplicasNeeded, potentialReplicaLocations, idleSources);
+            }
+        }
+        catch (final RPCException e) {
+            // TODO Auto-generated catch block
+            e.printStackTrace();
+        }
+        catch (final MovedException e) {
+            // TODO Auto-generated catch block
+            e.printStackTrace();
+        }
 
-                DatabaseInstanceWrapper wrapper = null;
-                while ((wrapper = potentialReplicaLocations.poll()) != null) {
+    }
 
-                    if (!replicaManager.contains(wrapper)) {
-                        Diagnostic.traceNoEvent(DiagnosticLevel.FULL, "Attempting to replicate table state of " + tableManager.getFullTableName() + " to " + wrapper.getURL());
+    private void createReplicas(final int newReplicasNeeded, final Queue<DatabaseInstanceWrapper> potentialReplicaLocations, final Queue<DatabaseInstanceWrapper> idleSources) throws RPCException {
 
-                        final IDatabaseInstanceRemote instance = wrapper.getDatabaseInstance();
+        final int parallelism = Math.max(1, Math.min(getParallelism(), newReplicasNeeded));
 
-                        try {
+        final ExecutorService copiers = Executors.newFixedThreadPool(parallelism);
+        final CompletionService<ReplicaCopy> completedCopies = new ExecutorCompletionService<ReplicaCopy>(copiers);
 
-                            Diagnostic.traceNoEvent(DiagnosticLevel.FULL, "Executing " + createReplicaSQL + " on " + instance.getAddress() + ".");
-                            final int result = instance.executeUpdate(createReplicaSQL, true);
+        int created = 0;
+        int inProgress = 0;
 
-                            if (result == 0) {
-                                Diagnostic.traceNoEvent(DiagnosticLevel.FULL, "Successfully replicated " + tableManager.getFullTableName() + " onto " + wrapper.getURL());
-                                locationOfNewReplicas.add(wrapper);
-                            }
-                        }
-                        catch (final RPCException e) {
-                            ErrorHandling.errorNoEvent("Tried to create replica of " + tableManager.getFullTableName() + " onto " + wrapper.getURL() + ", but couldn't connnect: " + e.getMessage());
+        try {
+            while (true) {
 
-                            iSystemTableReference.suspectInstanceOfFailure(wrapper.getURL());
-                        }
-                        catch (final SQLException e) {
-                            ErrorHandling.errorNoEvent("Tried to create replica of " + tableManager.getFullTableName() + " onto " + wrapper.getURL() + ", but couldn't connnect: " + e.getMessage());
+                // Start as many copies as there are idle sources, up to the limit.
+                while (created + inProgress < newReplicasNeeded && inProgress < parallelism && !idleSources.isEmpty()) {
 
-                        }
-                    }
-                    else {
-                        Diagnostic.traceNoEvent(DiagnosticLevel.FULL, "There is already a replica on " + wrapper.getURL() + ", so we won't replicate here.");
+                    final DatabaseInstanceWrapper target = nextLocation(potentialReplicaLocations);
+
+                    if (target == null) {
+                        break;
                     }
-                } //end of while loop attempting replication.
 
-                // Update meta-data to reflect new replica locations.
+                    completedCopies.submit(new ReplicaCopy(idleSources.poll(), target));
+                    inProgress++;
+                }
 
-                Diagnostic.traceNoEvent(DiagnosticLevel.FINAL, "New replicas created at: " + locationOfNewReplicas);
+                if (inProgress == 0) {
+                    break;
+                }
 
-                for (final DatabaseInstanceWrapper databaseInstanceWrapper : locationOfNewReplicas) {
-                    // Update Table Manager meta-data.
+                final ReplicaCopy copy = completedCopies.take().get();
+                inProgress--;
 
-                    final TableInfo tableDetails = new TableInfo(tableManager.getTableInfo(), databaseInstanceWrapper.getURL());
-                    try {
-                        tableManager.addReplicaInformation(tableDetails);
-                    }
-                    catch (final SQLException e) {
-                        ErrorHandling.errorNoEvent("Failed to add information regarding new replicas for " + tableManager.getFullTableName() + " on " + databaseID + ".");
-
-                    }
-                    catch (final RPCException e) {
-                        // TODO Auto-generated catch block
-                        e.printStackTrace();
-                    }
-                    catch (final MovedException e) {
-                        // TODO Auto-generated catch block
-                        e.printStackTrace();
-                    }
+                idleSources.add(copy.source);
 
+                if (copy.succeeded && addReplicaInformation(copy.target)) {
+                    created++;
+                    idleSources.add(copy.target);
                 }
+            }
+        }
+        catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        catch (final ExecutionException e) {
+            ErrorHandling.exceptionErrorNoEvent(e, "Failed to create replicas of " + tableManager.getFullTableName() + ".");
+        }
+        finally {
+            copiers.shutdown();
+        }
+
+        Diagnostic.traceNoEvent(DiagnosticLevel.FINAL, created + " new replicas of " + tableManager.getFullTableName() + " created.");
+    }
 
+    /**
+     * @return the ranked instances, with the preferred locations among them moved to the front.
+     */
+    private Queue<DatabaseInstanceWrapper> preferLocations(final Queue<DatabaseInstanceWrapper> rankedInstances) {
+
+        if (preferredLocations.isEmpty()) { return rankedInstances; }
+
+        final Queue<DatabaseInstanceWrapper> locations = new LinkedList<DatabaseInstanceWrapper>();
+
+        for (final DatabaseInstanceWrapper preferred : preferredLocations) {
+            if (rankedInstances.remove(preferred)) {
+                locations.add(preferred);
             }
         }
+
+        locations.addAll(rankedInstances);
+
+        return locations;
+    }
+
+    /**
+     * @return the next potential replica location that doesn't already hold a replica, or null if there are none left.
+     */
+    private DatabaseInstanceWrapper nextLocation(final Queue<DatabaseInstanceWrapper> potentialReplicaLocations) throws RPCException {
+
+        DatabaseInstanceWrapper wrapper = null;
+        while ((wrapper = potentialReplicaLocations.poll()) != null) {
+
+            if (!replicaManager.contains(wrapper)) { return wrapper; }
+
+            Diagnostic.traceNoEvent(DiagnosticLevel.FULL, "There is already a replica on " + wrapper.getURL() + ", so we won't replicate here.");
+        }
+
+        return null;
+    }
+
+    /**
+     * Update the Table Manager's meta-data to record a new replica. This is done as soon as the replica is created, so that it receives
+     * later updates before it is used as the source of another copy.
+     */
+    private boolean addReplicaInformation(final DatabaseInstanceWrapper databaseInstanceWrapper) {
+
+        final TableInfo tableDetails = new TableInfo(tableManager.getTableInfo(), databaseInstanceWrapper.getURL());
+        try {
+            tableManager.addReplicaInformation(tableDetails);
+            return true;
+        }
+        catch (final SQLException e) {
+            ErrorHandling.errorNoEvent("Failed to add information regarding new replicas for " + tableManager.getFullTableName() + " on " + databaseID + ".");
+        }
         catch (final RPCException e) {
-            // TODO Auto-generated catch block
             e.printStackTrace();
         }
         catch (final MovedException e) {
-            // TODO Auto-generated catch block
             e.printStackTrace();
         }
 
+        return false;
     }
 
+    private int getParallelism() {
+
+        final Settings settings = tableManager.getDB().getDatabaseSettings();
+
+        if (settings == null) { return DEFAULT_PARALLELISM; }
+
+        return Integer.parseInt(settings.get("REPLICA_CREATION_PARALLELISM"));
+    }
+
+    /**
+     * Copies the table from one replica to a new location.
+     */
+    private final class ReplicaCopy implements Callable<ReplicaCopy> {
+
+        private final DatabaseInstanceWrapper source;
+
+        private final DatabaseInstanceWrapper target;
+
+        private boolean succeeded = false;
+
+        private ReplicaCopy(final DatabaseInstanceWrapper source, final DatabaseInstanceWrapper target) {
+
+            this.source = source;
+            this.target = target;
+        }
+
+        @Override
+        public ReplicaCopy call() {
+
+            Diagnostic.traceNoEvent(DiagnosticLevel.FULL, "Attempting to replicate table state of " + tableManager.getFullTableName() + " to " + target.getURL() + " from " + source.getURL());
+
+            final String createReplicaSQL = "CREATE  REPLICA " + tableManager.getFullTableName() + " FROM '" + source.getURL().getURL() + "'";
+
+            final IDatabaseInstanceRemote instance = target.getDatabaseInstance();
+
+            try {
+
+                Diagnostic.traceNoEvent(DiagnosticLevel.FULL, "Executing " + createReplicaSQL + " on " + instance.getAddress() + ".");
+                final int result = instance.executeUpdate(createReplicaSQL, true);
+
+                if (result == 0) {
+                    Diagnostic.traceNoEvent(DiagnosticLevel.FULL, "Successfully replicated " + tableManager.getFullTableName() + " onto " + target.getURL());
+                    succeeded = true;
+                }
+            }
+            catch (final RPCException e) {
+                ErrorHandling.errorNoEvent("Tried to create replica of " + tableManager.getFullTableName() + " onto " + target.getURL() + ", but couldn't connnect: " + e.getMessage());
+
+                try {
+                    iSystemTableReference.suspectInstanceOfFailure(target.getURL());
+                }
+                catch (final Exception e1) {
+                    ErrorHandling.errorNoEvent("Couldn't report the failure of " + target.getURL() + ": " + e1.getMessage());
+                }
+            }
+            catch (final SQLException e) {
+                ErrorHandling.errorNoEvent("Tried to create replica of " + tableManager.getFullTableName() + " onto " + target.getURL() + ", but couldn't connnect: " + e.getMessage());
+
+            }
+
+            return this;
+        }
+    }
 }
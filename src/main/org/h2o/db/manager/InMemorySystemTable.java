@@ -12,24 +12,43 @@ import java.sql.SQLException;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.h2.engine.Database;
+import org.h2o.autonomic.numonic.metric.CreateReplicaMetric;
+import org.h2o.autonomic.numonic.ranking.Requirements;
+import org.h2o.autonomic.settings.Settings;
 import org.h2o.db.DatabaseInstanceProxy;
 import org.h2o.db.id.DatabaseID;
 import org.h2o.db.id.TableInfo;
 import org.h2o.db.interfaces.IDatabaseInstanceRemote;
 import org.h2o.db.interfaces.ITableManagerRemote;
 import org.h2o.db.manager.interfaces.ISystemTable;
-import org.h2o.db.manager.monitorthreads.TableManagerLivenessCheckerThread;
+import org.h2o.db.manager.monitorthreads.FailureDetector;
+import org.h2o.db.manager.monitorthreads.IFailureListener;
+import org.h2o.db.partitioning.PartitionScheme;
 import org.h2o.db.wrappers.DatabaseInstanceWrapper;
 import org.h2o.db.wrappers.TableManagerWrapper;
+import org.h2o.util.PhaseTimer;
 import org.h2o.util.exceptions.MovedException;
 import org.h2o.util.filter.CollectionFilter;
 import org.h2o.util.filter.PredicateWithParameter;
@@ -43,7 +62,18 @@ import uk.ac.standrews.cs.nds.util.DiagnosticLevel;
 import uk.ac.standrews.cs.nds.util.ErrorHandling;
 import uk.ac.standrews.cs.nds.util.PrettyPrinter;
 
-public final class InMemorySystemTable implements ISystemTable {
+public final class InMemorySystemTable implements ISystemTable, IFailureListener {
+
+    /**
+     * The number of times an instance is told to invalidate its table directory entry before it is given up on.
+     */
+    private static final int INVALIDATION_ATTEMPTS = 3;
+
+    /**
+     * The time, in milliseconds, before an instance that couldn't be told to invalidate its table directory entry is told again. It doubles
+     * after each attempt.
+     */
+    private static final long INVALIDATION_RETRY_INTERVAL = 200;
 
     private final Database database;
 
@@ -56,7 +86,7 @@ public final class InMemorySystemTable implements ISystemTable {
      * <li>Value: reference to the table's Table Manager</li>
      * </ul>
      */
-    private Map<TableInfo, TableManagerWrapper> tableManagers;
+    private volatile ConcurrentMap<TableInfo, TableManagerWrapper> tableManagers;
 
     /**
      * Where replicas for table manager state are stored in the database system.
@@ -67,25 +97,47 @@ public final class InMemorySystemTable implements ISystemTable {
      * <li>Value: reference to the location of a table manager state replica for that table.</li>
      * </ul>
      */
-    private Map<TableInfo, Set<DatabaseID>> tmReplicaLocations;
+    private volatile ConcurrentMap<TableInfo, Set<DatabaseID>> tmReplicaLocations;
+
+    private volatile ConcurrentMap<DatabaseID, DatabaseInstanceWrapper> databasesInSystem;
+
+    /**
+     * How each partitioned table in the database system is partitioned.
+     * 
+     * <p>
+     * <ul>
+     * <li>Key: name of the partitioned table (incl. schema name)</li>
+     * <li>Value: its partition scheme</li>
+     * </ul>
+     */
+    private volatile ConcurrentMap<TableInfo, PartitionScheme> partitionSchemes;
 
-    private Map<DatabaseID, DatabaseInstanceWrapper> databasesInSystem = new HashMap<DatabaseID, DatabaseInstanceWrapper>();
+    /**
+     * The next value to be allocated from each sequence shared by the instances in the system (see the DISTRIBUTED_SEQUENCES setting).
+     * 
+     * <p>
+     * <ul>
+     * <li>Key: name of the sequence</li>
+     * <li>Value: the first value of the next block to be allocated from it</li>
+     * </ul>
+     */
+    private volatile ConcurrentMap<String, Long> sequenceValues;
 
     /**
      * The next valid table set number which can be assigned by the System Table.
      */
-    private int tableSetNumber = 1;
+    private final AtomicInteger tableSetNumber = new AtomicInteger(1);
 
     /**
      * Where table managers are located.
      * XXX this duplicates the {@link #tableManagers} field, so it should probably be removed to prevent inconsistencies.
      */
-    private Map<TableInfo, DatabaseID> primaryLocations;
+    private volatile ConcurrentMap<TableInfo, DatabaseID> primaryLocations;
 
     /**
-     * A thread which periodically checks that Table Managers are still alive.
+     * Tells the System Table when a database instance fails, so that the Table Managers it held can be recreated.
      */
-    private final TableManagerLivenessCheckerThread tableManagerPingerThread;
+    private final FailureDetector failureDetector;
 
     /**
      * The set of table managers that are currently being recreated via the {@link #recreateTableManagerIfNotAlive(TableManagerWrapper)} method. This prevents
@@ -95,30 +147,148 @@ public final class InMemorySystemTable implements ISystemTable {
 
     private boolean started = false;
 
-    private final Set<DatabaseInstanceWrapper> noReplicateInstances = new HashSet<DatabaseInstanceWrapper>();
+    private final Set<DatabaseInstanceWrapper> noReplicateInstances = Collections.newSetFromMap(new ConcurrentHashMap<DatabaseInstanceWrapper, Boolean>());
+
+    private final AtomicInteger recreateCount = new AtomicInteger(0);
 
-    private int recreateCount = 0;
+    /**
+     * Recreations of Table Managers running in the background, by table. Requests to recreate a Table Manager that is already being
+     * recreated wait for the running recreation.
+     */
+    private final ConcurrentMap<TableInfo, Future<?>> pendingRecreations = new ConcurrentHashMap<TableInfo, Future<?>>();
+
+    /**
+     * Runs recreations of Table Managers started by lookups and by instances that couldn't contact a Table Manager.
+     */
+    private final ThreadPoolExecutor tableManagerRecreator;
+
+    /**
+     * True if this is the state of a hot standby, which only records changes made to the active System Table. A standby doesn't contact
+     * Table Managers or act on failures until it is promoted.
+     */
+    private volatile boolean standby;
+
+    /**
+     * Tells the instances holding the table directory when the Table Manager of a table changes (see the TABLE_DIRECTORY_SHARDS setting).
+     */
+    private final ThreadPoolExecutor tableDirectoryInvalidator;
+
+    /**
+     * Spreads replicas and Table Managers across the instances after the membership changes (see the REBALANCE_TRANSFER_BUDGET setting).
+     */
+    private final ThreadPoolExecutor rebalancer;
+
+    /**
+     * True while a rebalance is waiting to start. Membership changes made before it starts are dealt with by it.
+     */
+    private final AtomicBoolean rebalanceScheduled = new AtomicBoolean(false);
 
     public InMemorySystemTable(final Database database) throws Exception {
 
+        this(database, false);
+    }
+
+    public InMemorySystemTable(final Database database, final boolean standby) throws Exception {
+
         this.database = database;
-        databasesInSystem = Collections.synchronizedMap(new HashMap<DatabaseID, DatabaseInstanceWrapper>());
-        tableManagers = Collections.synchronizedMap(new HashMap<TableInfo, TableManagerWrapper>());
-        tmReplicaLocations = Collections.synchronizedMap(new HashMap<TableInfo, Set<DatabaseID>>());
+        this.standby = standby;
+        databasesInSystem = new ConcurrentHashMap<DatabaseID, DatabaseInstanceWrapper>();
+        tableManagers = new ConcurrentHashMap<TableInfo, TableManagerWrapper>();
+        tmReplicaLocations = new ConcurrentHashMap<TableInfo, Set<DatabaseID>>();
+        partitionSchemes = new ConcurrentHashMap<TableInfo, PartitionScheme>();
+        sequenceValues = new ConcurrentHashMap<String, Long>();
 
-        primaryLocations = new HashMap<TableInfo, DatabaseID>();
+        primaryLocations = new ConcurrentHashMap<TableInfo, DatabaseID>();
 
-        final int replicationThreadSleepTime = Integer.parseInt(database.getDatabaseSettings().get("TABLE_MANAGER_LIVENESS_CHECKER_THREAD_SLEEP_TIME"));
+        failureDetector = database.getFailureDetector();
 
-        tableManagerPingerThread = new TableManagerLivenessCheckerThread(this, replicationThreadSleepTime);
-        tableManagerPingerThread.setName("TableManagerLivenessCheckerThread");
-        tableManagerPingerThread.start();
+        tableDirectoryInvalidator = newBackgroundExecutor("h2o-table-directory-invalidator", 1);
+        tableManagerRecreator = newBackgroundExecutor("h2o-table-manager-recreator", getTableManagerRecreationThreads());
+        rebalancer = newBackgroundExecutor("h2o-rebalancer", 1);
 
         started = true;
 
+        if (!standby) {
+            failureDetector.addListener(this);
+            H2OEventBus.publish(new H2OEvent(database.getID().getURL(), DatabaseStates.SYSTEM_TABLE_CREATION));
+        }
+    }
+
+    /**
+     * Promote a hot standby to be the active System Table. From now on it acts on failures and contacts Table Managers.
+     */
+    public void promote() {
+
+        if (!standby) { return; }
+
+        standby = false;
+
+        for (final DatabaseID databaseID : getDatabaseIDs()) {
+            failureDetector.monitor(databaseID);
+        }
+        failureDetector.addListener(this);
+
         H2OEventBus.publish(new H2OEvent(database.getID().getURL(), DatabaseStates.SYSTEM_TABLE_CREATION));
     }
 
+    private DatabaseID[] getDatabaseIDs() {
+
+        return databasesInSystem.keySet().toArray(new DatabaseID[0]);
+    }
+
+    private static ThreadPoolExecutor newBackgroundExecutor(final String threadName, final int threads) {
+
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+
+            @Override
+            public Thread newThread(final Runnable r) {
+
+                final Thread thread = new Thread(r, threadName);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+
+        return executor;
+    }
+
+    private int getTableManagerRecreationThreads() {
+
+        final Settings settings = database.getDatabaseSettings();
+
+        if (settings == null || settings.get("TABLE_MANAGER_RECREATION_THREADS") == null) { return 1; }
+
+        return Math.max(1, Integer.parseInt(settings.get("TABLE_MANAGER_RECREATION_THREADS")));
+    }
+
+    /**
+     * @return a set of replica locations that can be read while it is updated.
+     */
+    private static Set<DatabaseID> newReplicaLocationSet() {
+
+        return Collections.newSetFromMap(new ConcurrentHashMap<DatabaseID, Boolean>());
+    }
+
+    /**
+     * @return a concurrent copy of a map received from another System Table, leaving out null keys and values, which a concurrent map can't
+     *         hold.
+     */
+    private static <K, V> ConcurrentMap<K, V> concurrentCopyOf(final Map<K, V> map) {
+
+        final ConcurrentMap<K, V> copy = new ConcurrentHashMap<K, V>();
+
+        if (map != null) {
+            for (final Entry<K, V> entry : map.entrySet()) {
+                if (entry.getKey() != null && entry.getValue() != null) {
+                    copy.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+
+        return copy;
+    }
+
     /******************************************************************
      **** Methods which involve updating the System Table's state.
      ******************************************************************/
@@ -136,21 +306,18 @@ public final class InMemorySystemTable implements ISystemTable {
         //        }
 
         tableManagers.put(basicTableInfo, tableManagerWrapper);
+        invalidateTableDirectories(basicTableInfo);
 
-        primaryLocations.put(basicTableInfo, tableDetails.getDatabaseID());
-
-        Set<DatabaseID> replicas = tmReplicaLocations.get(basicTableInfo);
-
-        if (replicas == null) {
-            replicas = new HashSet<DatabaseID>();
+        if (tableDetails.getDatabaseID() != null) {
+            primaryLocations.put(basicTableInfo, tableDetails.getDatabaseID());
         }
 
+        final Set<DatabaseID> replicas = getTableManagerReplicaLocations(basicTableInfo);
+
         for (final DatabaseInstanceWrapper wrapper : replicaLocations) {
             replicas.add(wrapper.getURL());
         }
 
-        tmReplicaLocations.put(basicTableInfo, replicas);
-
         Diagnostic.traceNoEvent(DiagnosticLevel.FINAL, "New table successfully created: " + tableDetails);
 
         return true;
@@ -176,20 +343,59 @@ public final class InMemorySystemTable implements ISystemTable {
 
             for (final TableInfo key : toRemove) {
                 final TableManagerWrapper tmw = tableManagers.remove(key);
+                invalidateTableDirectories(key);
 
-                setTableManagerAsShutdown(tmw);
+                if (!standby) {
+                    setTableManagerAsShutdown(tmw);
+                }
             }
 
         }
         else { // Just remove the single table.
 
             final TableManagerWrapper tmw = tableManagers.remove(ti.getGenericTableInfo());
-            setTableManagerAsShutdown(tmw);
+            invalidateTableDirectories(ti.getGenericTableInfo());
+
+            if (!standby) {
+                setTableManagerAsShutdown(tmw);
+            }
         }
 
         return true;
     }
 
+    @Override
+    public boolean addPartitionScheme(final PartitionScheme partitionScheme) throws RPCException {
+
+        partitionSchemes.put(partitionScheme.getTableInfo(), partitionScheme);
+
+        Diagnostic.traceNoEvent(DiagnosticLevel.FINAL, "New partitioned table successfully created: " + partitionScheme);
+
+        return true;
+    }
+
+    @Override
+    public boolean removePartitionScheme(final TableInfo ti) throws RPCException {
+
+        return partitionSchemes.remove(ti.getGenericTableInfo()) != null;
+    }
+
+    @Override
+    public long allocateSequenceBlock(final String sequenceName, final long startValue, final long blockLength) throws RPCException {
+
+        if (sequenceName == null) { throw new RPCException("The sequence name provided was null."); }
+
+        while (true) {
+            final Long next = sequenceValues.putIfAbsent(sequenceName, startValue + blockLength);
+
+            if (next == null) { return startValue; }
+
+            final long first = Math.max(next, startValue);
+
+            if (sequenceValues.replace(sequenceName, next, first + blockLength)) { return first; }
+        }
+    }
+
     /**
      * Specify that the Table Manager is no longer in use. This ensures that if any remote instances have cached references of the manager,
      * they will become aware that it is no longer active.
@@ -217,7 +423,11 @@ public final class InMemorySystemTable implements ISystemTable {
         databasesInSystem.remove(databaseURL);
         databasesInSystem.put(databaseURL, databaseInstanceRemote);
 
-        informTableManagersOfMachineStartupOrFailure(null);
+        if (!standby) {
+            failureDetector.monitor(databaseURL);
+            informTableManagersOfMachineStartupOrFailure(null);
+            scheduleRebalance();
+        }
 
         return 1;
     }
@@ -226,41 +436,47 @@ public final class InMemorySystemTable implements ISystemTable {
      **** Methods which involve querying the System Table.
      ******************************************************************/
 
+    /**
+     * Look up the Table Manager of a table. This never contacts another instance, so lookups aren't held up by instances that have failed.
+     * 
+     * <p>If the table is known but its Table Manager reference is null (because the Table Manager couldn't be found when this System Table
+     * was recreated) the Table Manager is recreated in the background, and the wrapper is returned without a reference. The caller should
+     * look the table up again.
+     */
     @Override
-    public TableManagerWrapper lookup(TableInfo ti) throws RPCException {
+    public TableManagerWrapper lookup(final TableInfo ti) throws RPCException {
 
         if (ti == null) { throw new RPCException("The table information provided was null."); }
 
-        ti = ti.getGenericTableInfo();
-        TableManagerWrapper tableManagerWrapper = tableManagers.get(ti);
-        ITableManagerRemote tm = null;
+        final TableManagerWrapper tableManagerWrapper = tableManagers.get(ti.getGenericTableInfo());
 
-        if (tableManagerWrapper != null) {
-            tm = tableManagerWrapper.getTableManager();
-        }
+        if (tableManagerWrapper != null && tableManagerWrapper.getTableManager() == null && !standby) {
+            recreateInBackground(tableManagerWrapper, new Runnable() {
 
-        /*
-         * If there is a null reference to a Table Manager we can try to reinstantiate it, but if there is no reference at all just return
-         * null for the lookup.
-         */
-        final boolean containsTableManager = tableManagers.containsKey(ti);
-        if (tm != null || !containsTableManager) {
-            if (!containsTableManager) { return null; }
+                @Override
+                public void run() {
 
-            return tableManagerWrapper;
+                    recreateMissingTableManager(tableManagerWrapper);
+                }
+            });
         }
 
-        /*
-         * The DM reference is null so we must look to create a new DM. XXX is it possible that a data manager is running and the SM doesn't
-         * know of it?
-         */
+        return tableManagerWrapper;
+    }
 
-        final Set<DatabaseID> replicaLocations = tmReplicaLocations.get(tableManagerWrapper.getTableInfo());
+    /**
+     * Recreate a Table Manager whose reference is null.
+     */
+    private void recreateMissingTableManager(final TableManagerWrapper tableManagerWrapper) {
+
+        final TableInfo ti = tableManagerWrapper.getTableInfo();
+        final Set<DatabaseID> replicaLocations = tmReplicaLocations.get(ti);
 
-        if (tableManagerWrapper != null && (database.getID().equals(tableManagerWrapper.getURL()) || replicaLocations.contains(database.getID()))) {
+        if (database.getID().equals(tableManagerWrapper.getURL()) || replicaLocations != null && replicaLocations.contains(database.getID())) {
             /*
              * It is okay to re-instantiate the Table Manager here.
              */
+            ITableManagerRemote tm = null;
             try {
                 tm = new TableManager(ti, database, true);
                 tm.recreateReplicaManagerState(tableManagerWrapper.getURL().sanitizedLocation());
@@ -276,19 +492,20 @@ public final class InMemorySystemTable implements ISystemTable {
 
             database.getTableManagerServer().exportObject(tm);
 
+            tableManagers.put(ti, new TableManagerWrapper(ti, tm, tableManagerWrapper.getURL()));
+            invalidateTableDirectories(ti);
         }
-        else if (tableManagerWrapper != null) {
+        else {
             // Try to create the data manager at whereever it is meant to be. It
-            // may already be active.
+            // may already be active. The instance that recreates it registers it with changeTableManagerLocation.
             // RECREATE TABLEMANAGER <tableName>
             try {
                 IDatabaseInstanceRemote dir = getDatabaseInstance(tableManagerWrapper.getURL());
                 final DatabaseID url = tableManagerWrapper.getURL();
-                ti = tableManagerWrapper.getTableInfo();
                 if (dir != null) {
                     dir.executeUpdate("RECREATE TABLEMANAGER " + ti.getFullTableName() + " FROM '" + url.sanitizedLocation() + "';", false);
                 }
-                else {
+                else if (replicaLocations != null) {
                     // Remove location we know isn't active, then try to
                     // instantiate the table manager elsewhere.
                     replicaLocations.remove(tableManagerWrapper.getURL());
@@ -296,37 +513,75 @@ public final class InMemorySystemTable implements ISystemTable {
                     for (final DatabaseID replicaLocation : replicaLocations) {
 
                         dir = getDatabaseInstance(replicaLocation);
-                        if (dir != null && recreateCount < 20) {
-                            Diagnostic.traceNoEvent(DiagnosticLevel.INIT, "Attempting to recreate table manager for " + tableManagerWrapper.getTableInfo() + " on " + replicaLocation);
+                        if (dir != null && recreateCount.incrementAndGet() <= 20) {
+                            Diagnostic.traceNoEvent(DiagnosticLevel.INIT, "Attempting to recreate table manager for " + ti + " on " + replicaLocation);
 
-                            recreateCount++;
                             dir.executeUpdate("RECREATE TABLEMANAGER " + ti.getFullTableName() + " FROM '" + url.sanitizedLocation() + "';", false);
                         }
                     }
                 }
             }
-            catch (final SQLException e) {
+            catch (final Exception e) {
                 e.printStackTrace();
             }
-            catch (final MovedException e) {
-                e.printStackTrace();
+        }
+
+        final TableManagerWrapper recreated = tableManagers.get(ti);
+        if (recreated != null && recreated.getTableManager() != null) {
+            Diagnostic.traceNoEvent(DiagnosticLevel.INIT, ti.getFullTableName() + "'s table manager has been recreated on " + recreated.getURL() + ".");
+        }
+    }
+
+    /**
+     * Run a recreation of a table's Table Manager in the background, unless one is already running for the table.
+     * 
+     * @return the recreation that is running for the table, which is complete when the Table Manager has been recreated or couldn't be.
+     */
+    private Future<?> recreateInBackground(final TableManagerWrapper tableManagerWrapper, final Runnable recreation) {
+
+        final TableInfo ti = tableManagerWrapper.getTableInfo();
+
+        final FutureTask<Object> task = new FutureTask<Object>(new Runnable() {
+
+            @Override
+            public void run() {
+
+                try {
+                    recreation.run();
+                }
+                finally {
+                    pendingRecreations.remove(ti);
+                }
             }
+        }, null);
 
-            tableManagerWrapper = tableManagers.get(ti);
-            tm = tableManagerWrapper.getTableManager();
+        final Future<?> pending = pendingRecreations.putIfAbsent(ti, task);
 
-        }
-        else {
-            // Table Manager location is not known.
-            ErrorHandling.errorNoEvent("Couldn't find the location of the table manager for table " + ti + ". This should never happen - the relevant information" + " should be found in persisted state.");
-        }
+        if (pending != null) { return pending; }
 
-        Diagnostic.traceNoEvent(DiagnosticLevel.INIT, ti.getFullTableName() + "'s table manager has been recreated on " + tableManagerWrapper.getURL() + ".");
+        tableManagerRecreator.execute(task);
 
-        tableManagerWrapper.setTableManager(tm);
-        tableManagers.put(ti, tableManagerWrapper);
+        return task;
+    }
 
-        return tableManagerWrapper;
+    @Override
+    public PartitionScheme getPartitionScheme(final TableInfo ti) throws RPCException {
+
+        if (ti == null) { throw new RPCException("The table information provided was null."); }
+
+        return partitionSchemes.get(ti.getGenericTableInfo());
+    }
+
+    @Override
+    public Map<TableInfo, PartitionScheme> getPartitionSchemes() {
+
+        return new HashMap<TableInfo, PartitionScheme>(partitionSchemes);
+    }
+
+    @Override
+    public Map<String, Long> getSequenceValues() {
+
+        return new HashMap<String, Long>(sequenceValues);
     }
 
     @Override
@@ -352,7 +607,17 @@ public final class InMemorySystemTable implements ISystemTable {
     @Override
     public int getNewTableSetNumber() throws RPCException {
 
-        return tableSetNumber++;
+        return tableSetNumber.getAndIncrement();
+    }
+
+    @Override
+    public void tableSetNumberIssued(final int issued) throws RPCException {
+
+        int next = tableSetNumber.get();
+
+        while (next <= issued && !tableSetNumber.compareAndSet(next, issued + 1)) {
+            next = tableSetNumber.get();
+        }
     }
 
     @Override
@@ -366,7 +631,7 @@ public final class InMemorySystemTable implements ISystemTable {
 
         if (connectedMachines == null || connectedMachines.size() == 0) { throw new RPCException("No connected machines were found in the remote (old) System Table. There should be at least two."); }
 
-        databasesInSystem = new HashMap<DatabaseID, DatabaseInstanceWrapper>();
+        databasesInSystem = new ConcurrentHashMap<DatabaseID, DatabaseInstanceWrapper>();
 
         // Make sure this contains remote references for each URL
 
@@ -409,6 +674,10 @@ public final class InMemorySystemTable implements ISystemTable {
             final DatabaseInstanceWrapper da = new DatabaseInstanceWrapper(remoteDB.getKey(), dir, active);
             databasesInSystem.put(remoteDB.getKey(), da);
 
+            if (active && !standby) {
+                failureDetector.monitor(remoteDB.getKey());
+            }
+
             if (!isReplicating) {
                 Diagnostic.traceNoEvent(DiagnosticLevel.FINAL, "The database " + da + " is not to be used for replication.");
                 noReplicateInstances.add(da);
@@ -420,17 +689,30 @@ public final class InMemorySystemTable implements ISystemTable {
         /*
          * Obtain references to Table Managers, though not necessarily references to active TM proxies.
          */
-        tableManagers = otherSystemTable.getTableManagers();
+        tableManagers = concurrentCopyOf(otherSystemTable.getTableManagers());
 
         Diagnostic.traceNoEvent(DiagnosticLevel.FULL, "Received Table Managers");
 
-        tmReplicaLocations = otherSystemTable.getReplicaLocations();
+        final ConcurrentMap<TableInfo, Set<DatabaseID>> replicaLocations = new ConcurrentHashMap<TableInfo, Set<DatabaseID>>();
+        for (final Entry<TableInfo, Set<DatabaseID>> entry : concurrentCopyOf(otherSystemTable.getReplicaLocations()).entrySet()) {
+            final Set<DatabaseID> replicas = newReplicaLocationSet();
+            replicas.addAll(entry.getValue());
+            replicaLocations.put(entry.getKey(), replicas);
+        }
+        tmReplicaLocations = replicaLocations;
 
         Diagnostic.traceNoEvent(DiagnosticLevel.FULL, "Received Replica Locations");
 
-        primaryLocations = otherSystemTable.getPrimaryLocations();
+        primaryLocations = concurrentCopyOf(otherSystemTable.getPrimaryLocations());
         Diagnostic.traceNoEvent(DiagnosticLevel.FULL, "Received Primary Locations");
 
+        final Map<TableInfo, PartitionScheme> otherPartitionSchemes = otherSystemTable.getPartitionSchemes();
+        partitionSchemes = concurrentCopyOf(otherPartitionSchemes);
+        Diagnostic.traceNoEvent(DiagnosticLevel.FULL, "Received Partition Schemes");
+
+        sequenceValues = concurrentCopyOf(otherSystemTable.getSequenceValues());
+        Diagnostic.traceNoEvent(DiagnosticLevel.FULL, "Received Sequence Values");
+
         /*
          * At this point some of the Table Manager references will be null if the Table Managers could not be found at their old location.
          * BUT, a new Table Manager cannot be created at this point because it would require contact with the System Table, which is not yet
@@ -442,9 +724,12 @@ public final class InMemorySystemTable implements ISystemTable {
         started = true;
     }
 
-    public void removeTableManagerCheckerThread() {
+    /**
+     * Stop acting on failures reported by the failure detector, because the System Table has moved to another instance.
+     */
+    public void removeFailureListener() {
 
-        tableManagerPingerThread.setRunning(false);
+        failureDetector.removeListener(this);
     }
 
     /**
@@ -457,27 +742,199 @@ public final class InMemorySystemTable implements ISystemTable {
     }
 
     /**
-     * Check whether table managers are accessible on the given database instance.
+     * Check whether table managers are accessible on the given database instance, and recreate those that aren't.
+     * 
+     * <p>Table Managers are checked concurrently. Those that can't be reached are recreated in batches: one call to each instance that
+     * will hold recreated Table Managers, for all of the Table Managers previously held on the same instance, so that their state is read
+     * from the replicated meta-tables in a single query. Any that can't be recreated in a batch are then recreated individually, which
+     * tries each replica location in turn.
+     * 
      * @param databaseID if 'null' this will perform a check for all table managers.
-     * @return
+     * @return true if any Table Manager was recreated.
      */
     public boolean checkTableManagerAccessibility(final DatabaseID databaseID) {
 
-        boolean anyTableManagerRecreated = false;
-        if (started) {
+        if (!started) { return false; }
+
+        final PhaseTimer timer = new PhaseTimer("Table Manager recovery" + (databaseID == null ? "" : " for " + databaseID));
+        final ExecutorService exec = Executors.newFixedThreadPool(Integer.parseInt(database.getDatabaseSettings().get("TABLE_MANAGER_RECREATION_THREADS")));
+
+        try {
+            timer.startPhase("liveness checks");
+            final List<TableManagerWrapper> inaccessible = findInaccessibleTableManagers(databaseID, exec);
+
+            if (inaccessible.isEmpty()) { return false; }
+
+            timer.startPhase("batch recreation");
+            final List<TableManagerWrapper> remaining = recreateTableManagersInBatches(inaccessible, exec);
+
+            timer.startPhase("individual recreation");
+            final Set<TableManagerWrapper> recreatedIndividually = Collections.synchronizedSet(new HashSet<TableManagerWrapper>());
 
-            final TableManagerWrapper[] tableManagerArray = tableManagers.values().toArray(new TableManagerWrapper[0]); // Note: done this way to avoid concurrent modification exceptions when a table manager entry is updated.
-            for (final TableManagerWrapper tableManagerWrapper : tableManagerArray) {
-                if (databaseID == null || tableManagerWrapper.isLocalTo(databaseID)) {
-                    final boolean thisTableManagerRecreated = recreateTableManagerIfNotAlive(tableManagerWrapper);
+            final List<Callable<Object>> tasks = new LinkedList<Callable<Object>>();
+            for (final TableManagerWrapper tableManagerWrapper : remaining) {
+                tasks.add(Executors.callable(new Runnable() {
 
-                    if (thisTableManagerRecreated) {
-                        anyTableManagerRecreated = true;
+                    @Override
+                    public void run() {
+
+                        if (recreateTableManagerIfNotAlive(tableManagerWrapper)) {
+                            recreatedIndividually.add(tableManagerWrapper);
+                        }
+                    }
+                }));
+            }
+            invokeAll(exec, tasks);
+
+            return remaining.size() < inaccessible.size() || !recreatedIndividually.isEmpty();
+        }
+        finally {
+            exec.shutdown();
+            timer.finish();
+        }
+    }
+
+    /**
+     * @param databaseID if 'null' all Table Managers are checked, otherwise only those held on this instance.
+     * @return the Table Managers that couldn't be contacted.
+     */
+    private List<TableManagerWrapper> findInaccessibleTableManagers(final DatabaseID databaseID, final ExecutorService exec) {
+
+        final List<TableManagerWrapper> inaccessible = Collections.synchronizedList(new LinkedList<TableManagerWrapper>());
+
+        final TableManagerWrapper[] tableManagerArray = tableManagers.values().toArray(new TableManagerWrapper[0]); // Note: done this way to avoid concurrent modification exceptions when a table manager entry is updated.
+
+        final List<Callable<Object>> tasks = new LinkedList<Callable<Object>>();
+        for (final TableManagerWrapper tableManagerWrapper : tableManagerArray) {
+            if (databaseID == null || tableManagerWrapper.isLocalTo(databaseID)) {
+                tasks.add(Executors.callable(new Runnable() {
+
+                    @Override
+                    public void run() {
+
+                        if (!isAlive(tableManagerWrapper.getTableManager())) {
+                            inaccessible.add(tableManagerWrapper);
+                        }
                     }
+                }));
+            }
+        }
+        invokeAll(exec, tasks);
+
+        return inaccessible;
+    }
+
+    /**
+     * Recreate Table Managers with one call to each instance that will hold them, for each instance they were previously held on.
+     * 
+     * @return the Table Managers that weren't recreated, and should be recreated individually.
+     */
+    private List<TableManagerWrapper> recreateTableManagersInBatches(final List<TableManagerWrapper> inaccessible, final ExecutorService exec) {
+
+        /*
+         * Group the tables by the instance that will recreate their Table Managers, then by the instance that previously held them.
+         */
+        final Map<DatabaseInstanceWrapper, Map<DatabaseID, Set<TableInfo>>> batches = new HashMap<DatabaseInstanceWrapper, Map<DatabaseID, Set<TableInfo>>>();
+        final List<TableManagerWrapper> batched = new LinkedList<TableManagerWrapper>();
+        final List<TableManagerWrapper> remaining = new LinkedList<TableManagerWrapper>();
+
+        for (final TableManagerWrapper tableManagerWrapper : inaccessible) {
+
+            final DatabaseInstanceWrapper instance = findRecreationLocation(tableManagerWrapper);
+
+            if (instance == null || !managersBeingRecreated.add(tableManagerWrapper)) {
+                remaining.add(tableManagerWrapper);
+                continue;
+            }
+
+            Map<DatabaseID, Set<TableInfo>> batchesForInstance = batches.get(instance);
+            if (batchesForInstance == null) {
+                batchesForInstance = new HashMap<DatabaseID, Set<TableInfo>>();
+                batches.put(instance, batchesForInstance);
+            }
+
+            Set<TableInfo> batch = batchesForInstance.get(tableManagerWrapper.getURL());
+            if (batch == null) {
+                batch = new HashSet<TableInfo>();
+                batchesForInstance.put(tableManagerWrapper.getURL(), batch);
+            }
+
+            batch.add(tableManagerWrapper.getTableInfo());
+            batched.add(tableManagerWrapper);
+        }
+
+        final Set<TableInfo> recreated = Collections.synchronizedSet(new HashSet<TableInfo>());
+
+        final List<Callable<Object>> tasks = new LinkedList<Callable<Object>>();
+        for (final Entry<DatabaseInstanceWrapper, Map<DatabaseID, Set<TableInfo>>> batchesForInstance : batches.entrySet()) {
+            for (final Entry<DatabaseID, Set<TableInfo>> batch : batchesForInstance.getValue().entrySet()) {
+
+                final DatabaseInstanceWrapper instance = batchesForInstance.getKey();
+
+                tasks.add(Executors.callable(new Runnable() {
+
+                    @Override
+                    public void run() {
+
+                        try {
+                            final Set<TableInfo> result = instance.getDatabaseInstance().recreateTableManagers(batch.getValue(), batch.getKey());
+
+                            Diagnostic.traceNoEvent(DiagnosticLevel.FULL, "Recreated " + result.size() + " of " + batch.getValue().size() + " Table Managers from " + batch.getKey() + " on " + instance.getURL() + ".");
+
+                            recreated.addAll(result);
+                        }
+                        catch (final Exception e) {
+                            // May fail on some nodes.
+                            instance.setActive(false);
+                        }
+                    }
+                }));
+            }
+        }
+
+        try {
+            invokeAll(exec, tasks);
+        }
+        finally {
+            for (final TableManagerWrapper tableManagerWrapper : batched) {
+                managersBeingRecreated.remove(tableManagerWrapper);
+
+                if (!recreated.contains(tableManagerWrapper.getTableInfo())) {
+                    remaining.add(tableManagerWrapper);
                 }
             }
         }
-        return anyTableManagerRecreated;
+
+        return remaining;
+    }
+
+    /**
+     * @return the first active instance holding a replica of the Table Manager's state, or null if there isn't one.
+     */
+    private DatabaseInstanceWrapper findRecreationLocation(final TableManagerWrapper tableManagerWrapper) {
+
+        final Set<DatabaseID> tableManagerReplicaLocations = tmReplicaLocations.get(tableManagerWrapper.getTableInfo());
+
+        if (tableManagerReplicaLocations == null) { return null; }
+
+        for (final DatabaseID replicaLocation : tableManagerReplicaLocations.toArray(new DatabaseID[0])) {
+
+            final DatabaseInstanceWrapper instance = databasesInSystem.get(replicaLocation);
+
+            if (instance != null && instance.isActive() && instance.getDatabaseInstance() != null) { return instance; }
+        }
+
+        return null;
+    }
+
+    private static void invokeAll(final ExecutorService exec, final List<Callable<Object>> tasks) {
+
+        try {
+            exec.invokeAll(tasks);
+        }
+        catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 
     /**
@@ -504,37 +961,60 @@ public final class InMemorySystemTable implements ISystemTable {
         return alive;
     }
 
+    /**
+     * Recreate a table's Table Manager if it can't be contacted. Instances that ask for the same Table Manager to be recreated while it is
+     * being recreated wait for the same recreation, rather than each checking it again.
+     */
     @Override
     public ITableManagerRemote recreateTableManager(final TableInfo tableInfo) {
 
-        final TableManagerWrapper tableManager = tableManagers.get(tableInfo);
+        final TableManagerWrapper tableManager = tableManagers.get(tableInfo.getGenericTableInfo());
+
+        if (tableManager == null) { return null; }
 
         final DatabaseID oldLocation = tableManager.getURL();
 
-        recreateTableManagerIfNotAlive(tableManager);
+        final Future<?> recreation = recreateInBackground(tableManager, new Runnable() {
+
+            @Override
+            public void run() {
+
+                recreateTableManagerIfNotAlive(tableManager);
+
+                try {
+                    suspectInstanceOfFailure(oldLocation);
+                }
+                catch (final Exception e) {
+                    //Won't throw an exception because this is a local call.
+                    e.printStackTrace();
+                }
+            }
+        });
 
         try {
-            suspectInstanceOfFailure(oldLocation);
+            recreation.get();
         }
-        catch (final Exception e) {
-            //Won't throw an exception because this is a local call.
-            e.printStackTrace();
+        catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        catch (final ExecutionException e) {
+            ErrorHandling.exceptionError(e, "Failed to recreate the Table Manager for " + tableInfo + ".");
         }
 
-        return tableManagers.get(tableInfo).getTableManager();
+        final TableManagerWrapper recreated = tableManagers.get(tableInfo.getGenericTableInfo());
+        return recreated == null ? null : recreated.getTableManager();
     }
 
-    public synchronized boolean recreateTableManagerIfNotAlive(final TableManagerWrapper tableManagerWrapper) {
+    public boolean recreateTableManagerIfNotAlive(final TableManagerWrapper tableManagerWrapper) {
 
         if (isAlive(tableManagerWrapper.getTableManager())) { return false; // check that it isn't already active.
         }
 
         //Diagnostic.traceNoEvent(DiagnosticLevel.FULL, "Beginning attempt to recreate Table Manager for " + tableManagerWrapper.getTableInfo() + " on " + database.getID());
 
-        if (!managersBeingRecreated.contains(tableManagerWrapper)) { //Prevent this being called in quick succession on a single table manager.
+        if (managersBeingRecreated.add(tableManagerWrapper)) { //Prevent this being called in quick succession on a single table manager.
 
             try {
-                managersBeingRecreated.add(tableManagerWrapper);
 
                 final Set<DatabaseID> tableManagerReplicaLocations = tmReplicaLocations.get(tableManagerWrapper.getTableInfo());
 
@@ -608,25 +1088,28 @@ public final class InMemorySystemTable implements ISystemTable {
     @Override
     public void removeAllTableInformation() throws RPCException {
 
-        for (final TableManagerWrapper dmw : tableManagers.values()) {
-            try {
+        if (!standby) {
+            for (final TableManagerWrapper dmw : tableManagers.values()) {
+                try {
 
-                ITableManagerRemote dm = null;
+                    ITableManagerRemote dm = null;
 
-                if (dmw != null) {
-                    dm = dmw.getTableManager();
-                }
+                    if (dmw != null) {
+                        dm = dmw.getTableManager();
+                    }
 
-                if (dm != null) {
-                    dm.remove(true);
+                    if (dm != null) {
+                        dm.remove(true);
 
+                    }
+                }
+                catch (final Exception e) {
                 }
-            }
-            catch (final Exception e) {
             }
         }
 
         tableManagers.clear();
+        invalidateTableDirectories(null);
     }
 
     @Override
@@ -666,6 +1149,88 @@ public final class InMemorySystemTable implements ISystemTable {
         final TableManagerWrapper tableManagerWrapper = new TableManagerWrapper(tableInfo, stub, tableInfo.getDatabaseID());
 
         tableManagers.put(tableInfo.getGenericTableInfo(), tableManagerWrapper);
+        invalidateTableDirectories(tableInfo.getGenericTableInfo());
+    }
+
+    /**
+     * Tell every active instance to forget the Table Manager of a table in its part of the table directory, in case it holds it, and to give
+     * up any write lock it kept on the table. This is done in the background: an instance that is told late only hands out a reference that
+     * has stopped working, which is found out when it is used, as with references cached by the instance using them. An instance that can't
+     * be told is told again a few times; if it still can't be, its entry is dropped when it expires (the TABLE_DIRECTORY_EXPIRY setting) or
+     * when an instance finds that the reference has stopped working.
+     * 
+     * @param tableInfo
+     *            the table whose Table Manager has changed, or null if every table's has.
+     */
+    private void invalidateTableDirectories(final TableInfo tableInfo) {
+
+        if (standby || getNumberOfTableDirectoryShards() <= 0 && !isKeepingLocks()) { return; }
+
+        final Set<DatabaseInstanceWrapper> instances = new HashSet<DatabaseInstanceWrapper>(databasesInSystem.values());
+
+        tableDirectoryInvalidator.execute(new Runnable() {
+
+            @Override
+            public void run() {
+
+                long interval = INVALIDATION_RETRY_INTERVAL;
+
+                for (int attempt = 1; !instances.isEmpty(); attempt++) {
+
+                    final Iterator<DatabaseInstanceWrapper> iterator = instances.iterator();
+                    while (iterator.hasNext()) {
+                        final DatabaseInstanceWrapper instance = iterator.next();
+
+                        if (!instance.isActive() || instance.getDatabaseInstance() == null) {
+                            iterator.remove();
+                            continue;
+                        }
+
+                        try {
+                            instance.getDatabaseInstance().invalidateTableDirectoryEntry(tableInfo);
+                            iterator.remove();
+                        }
+                        catch (final RPCException e) {
+                            if (attempt == INVALIDATION_ATTEMPTS) {
+                                ErrorHandling.errorNoEvent("Couldn't invalidate the table directory entry of " + tableInfo + " on " + instance.getURL() + " after " + attempt + " attempts: " + e.getMessage());
+                                iterator.remove();
+                            }
+                        }
+                    }
+
+                    if (instances.isEmpty()) { return; }
+
+                    try {
+                        Thread.sleep(interval);
+                    }
+                    catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+
+                    interval *= 2;
+                }
+            }
+        });
+    }
+
+    /**
+     * @return true if instances keep write locks between transactions (the STICKY_LOCKS setting).
+     */
+    private boolean isKeepingLocks() {
+
+        final Settings settings = database.getDatabaseSettings();
+
+        return settings != null && Boolean.parseBoolean(settings.get("STICKY_LOCKS"));
+    }
+
+    private int getNumberOfTableDirectoryShards() {
+
+        final Settings settings = database.getDatabaseSettings();
+
+        if (settings == null || settings.get("TABLE_DIRECTORY_SHARDS") == null) { return 0; }
+
+        return Integer.parseInt(settings.get("TABLE_DIRECTORY_SHARDS"));
     }
 
     @Override
@@ -691,17 +1256,26 @@ public final class InMemorySystemTable implements ISystemTable {
     @Override
     public void addTableManagerStateReplica(final TableInfo table, final DatabaseID replicaLocation, final DatabaseID primaryLocation, final boolean active) throws RPCException, MovedException {
 
-        Set<DatabaseID> replicas = tmReplicaLocations.get(table.getGenericTableInfo());
+        if (primaryLocation != null) {
+            primaryLocations.put(table.getGenericTableInfo(), primaryLocation);
+        }
 
-        primaryLocations.put(table.getGenericTableInfo(), primaryLocation);
+        getTableManagerReplicaLocations(table.getGenericTableInfo()).add(replicaLocation);
+    }
 
-        if (replicas == null) {
-            replicas = new HashSet<DatabaseID>();
-        }
+    /**
+     * @return the locations of the replicas of a table's Table Manager state, which are added to if the table doesn't have any yet.
+     */
+    private Set<DatabaseID> getTableManagerReplicaLocations(final TableInfo genericTableInfo) {
+
+        final Set<DatabaseID> replicas = tmReplicaLocations.get(genericTableInfo);
+
+        if (replicas != null) { return replicas; }
 
-        replicas.add(replicaLocation);
+        final Set<DatabaseID> newReplicas = newReplicaLocationSet();
+        final Set<DatabaseID> existing = tmReplicaLocations.putIfAbsent(genericTableInfo, newReplicas);
 
-        tmReplicaLocations.put(table.getGenericTableInfo(), replicas);
+        return existing != null ? existing : newReplicas;
     }
 
     @Override
@@ -711,6 +1285,7 @@ public final class InMemorySystemTable implements ISystemTable {
 
         if (replicas == null) {
             ErrorHandling.errorNoEvent("Failed to remove Table Manager Replica state for a replica because it wasn't recorded. Table " + table + ".");
+            return;
         }
 
         final boolean removed = replicas.remove(replicaLocation);
@@ -740,15 +1315,101 @@ public final class InMemorySystemTable implements ISystemTable {
 
             }
             catch (final RPCException e) {
-                Diagnostic.traceNoEvent(DiagnosticLevel.FULL, "The database instance " + suspectedDbURL + " is no longer active. Removing from membership set.");
-                databasesInSystem.remove(suspectedDbURL);
-                checkTableManagerAccessibility(suspectedDbURL);
-                informTableManagersOfMachineStartupOrFailure(suspectedDbURL);
+                failureDetector.stopMonitoring(suspectedDbURL);
+                instanceFailed(suspectedDbURL);
             }
         }
 
     }
 
+    /**
+     * Called by the failure detector when a database instance has failed. The Table Managers it held are recreated, and every Table
+     * Manager is told, so that replicas on the instance are marked as inactive.
+     */
+    @Override
+    public void instanceFailed(final DatabaseID failedMachine) {
+
+        if (databasesInSystem.remove(failedMachine) == null) { return; }
+
+        Diagnostic.traceNoEvent(DiagnosticLevel.FULL, "The database instance " + failedMachine + " is no longer active. Removing from membership set.");
+
+        checkTableManagerAccessibility(failedMachine);
+        informTableManagersOfMachineStartupOrFailure(failedMachine);
+        scheduleRebalance();
+    }
+
+    /**
+     * Spread replicas and Table Managers evenly across the active instances in the background, after waiting for further membership
+     * changes (see the REBALANCE_DELAY setting). Does nothing if a rebalance is already waiting to start.
+     */
+    private void scheduleRebalance() {
+
+        final int budget = getIntegerSetting("REBALANCE_TRANSFER_BUDGET", 0);
+
+        if (standby || budget <= 0 || !rebalanceScheduled.compareAndSet(false, true)) { return; }
+
+        final long delay = getIntegerSetting("REBALANCE_DELAY", 0);
+
+        rebalancer.execute(new Runnable() {
+
+            @Override
+            public void run() {
+
+                try {
+                    Thread.sleep(delay);
+                }
+                catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    rebalanceScheduled.set(false);
+                    return;
+                }
+
+                rebalanceScheduled.set(false);
+
+                if (!standby) {
+                    new ReplicaRebalancer(getRankedActiveInstances(), noReplicateInstances, new LinkedList<TableManagerWrapper>(tableManagers.values()), budget).run();
+                }
+            }
+        });
+    }
+
+    /**
+     * @return the active instances, in the order they are ranked by the System Table for holding new replicas, followed by any that
+     *         aren't ranked.
+     */
+    private List<DatabaseInstanceWrapper> getRankedActiveInstances() {
+
+        final List<DatabaseInstanceWrapper> ranked = new LinkedList<DatabaseInstanceWrapper>();
+
+        try {
+            for (final DatabaseInstanceWrapper instance : database.getSystemTableReference().getRankedListOfInstances(new CreateReplicaMetric(), Requirements.NO_FILTERING)) {
+                if (instance.isActive() && databasesInSystem.containsKey(instance.getURL()) && !ranked.contains(instance)) {
+                    ranked.add(instance);
+                }
+            }
+        }
+        catch (final Exception e) {
+            Diagnostic.traceNoEvent(DiagnosticLevel.FULL, "Couldn't rank instances for rebalancing: " + e.getMessage());
+        }
+
+        for (final DatabaseInstanceWrapper instance : databasesInSystem.values()) {
+            if (instance.isActive() && !ranked.contains(instance)) {
+                ranked.add(instance);
+            }
+        }
+
+        return ranked;
+    }
+
+    private int getIntegerSetting(final String key, final int defaultValue) {
+
+        final Settings settings = database.getDatabaseSettings();
+
+        if (settings == null || settings.get(key) == null) { return defaultValue; }
+
+        return Integer.parseInt(settings.get(key));
+    }
+
     /**
      * Send a message to every table manager informing them that a machine (which possibly holds one of their replicas) has failed.
      * @param failedMachine The machine that has failed. null if a new machine has started.
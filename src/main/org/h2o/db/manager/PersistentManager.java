@@ -9,13 +9,24 @@
 package org.h2o.db.manager;
 
 import java.sql.SQLException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.h2.command.Command;
 import org.h2.command.Parser;
 import org.h2.engine.Database;
 import org.h2.engine.Session;
+import org.h2.expression.Parameter;
 import org.h2.result.LocalResult;
+import org.h2.util.ObjectArray;
+import org.h2.value.Value;
+import org.h2.value.ValueInt;
+import org.h2.value.ValueString;
 import org.h2o.db.id.DatabaseID;
 import org.h2o.db.id.TableInfo;
 import org.h2o.db.interfaces.IDatabaseInstanceRemote;
@@ -61,6 +72,29 @@ public abstract class PersistentManager {
 
     private boolean isSystemTable;
 
+    /**
+     * The IDs of the connections listed in the connection relation, so that they aren't looked up for every update. Rows of the connection
+     * relation are never deleted, so entries stay valid.
+     */
+    private final Map<DatabaseID, Integer> connectionIDs = new ConcurrentHashMap<DatabaseID, Integer>();
+
+    /**
+     * The IDs of the tables listed in the table relation, by generic table info. Entries are removed when the tables are removed.
+     */
+    private final Map<TableInfo, Integer> tableIDs = new ConcurrentHashMap<TableInfo, Integer>();
+
+    /**
+     * Replicas known to be listed in the replica relation, as table ID and connection ID.
+     */
+    private final Set<String> listedReplicas = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    /**
+     * Parameterised queries used to look up IDs that aren't yet known, by SQL, prepared once for {@link #preparedQuerySession}.
+     */
+    private final Map<String, Command> preparedQueries = new HashMap<String, Command>();
+
+    private Session preparedQuerySession = null;
+
     /**
      * @param db
      * @param tables
@@ -162,6 +196,18 @@ public abstract class PersistentManager {
      */
     public boolean addTableInformation(final DatabaseID tableManagerURL, final TableInfo tableDetails, final boolean addReplicaInfo) throws RPCException, MovedException, SQLException {
 
+        return addTableInformation(tableManagerURL, tableDetails, addReplicaInfo, new LinkedList<String>());
+    }
+
+    /**
+     * Add a new table, along with any further updates, in a single meta-data update.
+     * 
+     * @param furtherUpdates
+     *            updates executed after the table has been added. They can refer to the table's ID with {@link #getTableIDExpression(TableInfo)}.
+     * @see #addTableInformation(DatabaseID, TableInfo, boolean)
+     */
+    protected boolean addTableInformation(final DatabaseID tableManagerURL, final TableInfo tableDetails, final boolean addReplicaInfo, final List<String> furtherUpdates) throws RPCException, MovedException, SQLException {
+
         getNewQueryParser();
 
         DatabaseID dbID = tableDetails.getDatabaseID();
@@ -178,18 +224,22 @@ public abstract class PersistentManager {
 
             assert connectionID != -1 : "Connection ID was -1 for database " + dbID;
 
-            if (!isTableListed(tableDetails)) { // the table doesn't already
-                // exist in the System Table.
-                addTableInformation(tableDetails, connectionID);
+            final List<String> updates = new LinkedList<String>();
+
+            final int tableID = findTableID(tableDetails);
+
+            if (tableID == -1) { // the table doesn't already exist in the System Table.
+                updates.add(constructAddTableInformationQuery(tableDetails, connectionID));
             }
 
-            if (addReplicaInfo) {
-                final int tableID = metaDataReplicaManager.getTableID(tableDetails, isSystemTable);
-                if (!isReplicaListed(tableDetails, connectionID)) { // the table  doesn't already exist in the manager.
-                    addReplicaInformation(tableDetails, tableID, connectionID);
-                }
+            if (addReplicaInfo && (tableID == -1 || !isReplicaListed(tableDetails, connectionID))) { // the table  doesn't already exist in the manager.
+                updates.add(constructAddReplicaInformationQuery(tableDetails, tableID == -1 ? getTableIDExpression(tableDetails) : String.valueOf(tableID), connectionID));
             }
 
+            updates.addAll(furtherUpdates);
+
+            executeUpdate(updates);
+
             return true;
         }
         catch (final SQLException e) {
@@ -219,7 +269,7 @@ public abstract class PersistentManager {
 
         try {
             final int connectionID = getConnectionID(tableDetails.getDatabaseID());
-            final int tableID = metaDataReplicaManager.getTableID(tableDetails, isSystemTable);
+            final int tableID = getTableID(tableDetails);
 
             if (!isReplicaListed(tableDetails, connectionID)) { // the table doesn't already exist in the System Table.
                 addReplicaInformation(tableDetails, tableID, connectionID);
@@ -252,17 +302,18 @@ public abstract class PersistentManager {
 
         if (newlyInactiveReplicas.size() == 0) { return; }
 
-        for (final DatabaseInstanceWrapper wrapper : newlyInactiveReplicas) {
-            try {
-                final int connectionID = getConnectionID(wrapper.getURL());
-                final int tableID = metaDataReplicaManager.getTableID(tableDetails, isSystemTable);
-
-                toggleReplicasActive(tableID, connectionID, active);
+        try {
+            final int tableID = getTableID(tableDetails);
 
+            final List<String> updates = new LinkedList<String>();
+            for (final DatabaseInstanceWrapper wrapper : newlyInactiveReplicas) {
+                updates.add(constructToggleReplicasActiveQuery(tableID, getConnectionID(wrapper.getURL()), active));
             }
-            catch (final SQLException e) {
-                e.printStackTrace();
-            }
+
+            executeUpdate(updates);
+        }
+        catch (final SQLException e) {
+            e.printStackTrace();
         }
     }
 
@@ -358,26 +409,22 @@ public abstract class PersistentManager {
      */
     public int getConnectionID(final DatabaseID dbID) {
 
-        final Session s = db.getSystemSession();
-        queryParser = new Parser(s, true);
+        final Integer cached = connectionIDs.get(dbID);
 
-        final String machine_name = dbID.getHostname();
-        final int connection_port = dbID.getPort();
-        final String connection_type = dbID.getConnectionType();
+        if (cached != null) { return cached; }
 
-        final String sql = "SELECT connection_id FROM " + connectionRelation + " WHERE machine_name='" + machine_name + "' AND connection_port=" + connection_port + " AND connection_type='" + connection_type + "' AND db_location = '" + dbID.getDbLocation() + "';";
+        final String sql = "SELECT connection_id FROM " + connectionRelation + " WHERE machine_name=? AND connection_port=? AND connection_type=? AND db_location=?;";
 
-        LocalResult result = null;
         try {
-            sqlQuery = queryParser.prepareCommand(sql);
-
-            result = sqlQuery.executeQueryLocal(1);
+            final LocalResult result = executePreparedQuery(sql, ValueString.get(dbID.getHostname()), ValueInt.get(dbID.getPort()), ValueString.get(dbID.getConnectionType()), ValueString.get(dbID.getDbLocation()));
 
             if (result.next()) {
-                return result.currentRow()[0].getInt();
+                final int connectionID = result.currentRow()[0].getInt();
+                connectionIDs.put(dbID, connectionID);
+                return connectionID;
             }
             else {
-                ErrorHandling.errorNoEvent("No connection ID was found - this shouldn't happen if the system has started correctly. Query: " + sql);
+                ErrorHandling.errorNoEvent("No connection ID was found - this shouldn't happen if the system has started correctly. Connection: " + dbID);
                 return -1;
             }
 
@@ -386,9 +433,69 @@ public abstract class PersistentManager {
             e.printStackTrace();
             return -1;
         }
-        finally {
-            sqlQuery.close();
+    }
+
+    /**
+     * @return the ID of the given table in the table relation, or -1 if the table isn't listed.
+     */
+    private int findTableID(final TableInfo ti) throws SQLException {
+
+        final TableInfo key = ti.getGenericTableInfo();
+
+        final Integer cached = tableIDs.get(key);
+
+        if (cached != null) { return cached; }
+
+        final LocalResult result = executePreparedQuery("SELECT table_id FROM " + tableRelation + " WHERE tablename=? AND schemaname=?;", ValueString.get(ti.getTableName()), ValueString.get(ti.getSchemaName()));
+
+        if (!result.next()) { return -1; }
+
+        final int tableID = result.currentRow()[0].getInt();
+        tableIDs.put(key, tableID);
+
+        return tableID;
+    }
+
+    /**
+     * @return an SQL expression that evaluates to the ID of the given table in the table relation, for updates that are batched with the
+     *         insertion of the table.
+     */
+    protected String getTableIDExpression(final TableInfo ti) {
+
+        return "(SELECT table_id FROM " + tableRelation + " WHERE tablename='" + ti.getTableName() + "' AND schemaname='" + ti.getSchemaName() + "')";
+    }
+
+    /**
+     * Execute a query that has been prepared before, if it has. Used for the look ups made while updating meta-data, which would otherwise
+     * each be parsed.
+     * 
+     * @param sql
+     *            the query, with a parameter for each value.
+     * @param parameters
+     *            the values of the parameters.
+     */
+    private synchronized LocalResult executePreparedQuery(final String sql, final Value... parameters) throws SQLException {
+
+        final Session session = db.getSystemSession();
+
+        if (session != preparedQuerySession) {
+            preparedQueries.clear();
+            preparedQuerySession = session;
+        }
+
+        Command command = preparedQueries.get(sql);
+
+        if (command == null) {
+            command = new Parser(session, true).prepareCommand(sql);
+            preparedQueries.put(sql, command);
+        }
+
+        final ObjectArray commandParameters = command.getParameters();
+        for (int i = 0; i < parameters.length; i++) {
+            ((Parameter) commandParameters.get(i)).setValue(parameters[i]);
         }
+
+        return command.executeQueryLocal(0);
     }
 
     /**
@@ -402,9 +509,7 @@ public abstract class PersistentManager {
      */
     public boolean isTableListed(final TableInfo ti) throws SQLException {
 
-        final String sql = "SELECT count(*) FROM " + tableRelation + " WHERE tablename='" + ti.getTableName() + "' AND schemaname='" + ti.getSchemaName() + "';";
-
-        return countCheck(sql);
+        return findTableID(ti) != -1;
     }
 
     /**
@@ -419,10 +524,21 @@ public abstract class PersistentManager {
      */
     public boolean isReplicaListed(final TableInfo ti, final int connectionID) throws SQLException {
 
-        final String sql = "SELECT count(*) FROM " + replicaRelation + ", " + tableRelation + ", " + connectionRelation + " WHERE tablename='" + ti.getTableName() + "' AND schemaname='" + ti.getSchemaName() + "' AND " + tableRelation + ".table_id=" + replicaRelation + ".table_id AND "
-                        + replicaRelation + ".connection_id = " + connectionRelation + ".connection_id AND " + connectionRelation + ".connection_id = " + connectionID + ";";
+        final int tableID = findTableID(ti);
 
-        return countCheck(sql);
+        if (tableID == -1) { return false; }
+
+        if (listedReplicas.contains(tableID + "/" + connectionID)) { return true; }
+
+        final LocalResult result = executePreparedQuery("SELECT count(*) FROM " + replicaRelation + " WHERE table_id=? AND connection_id=?;", ValueInt.get(tableID), ValueInt.get(connectionID));
+
+        final boolean listed = result.next() && result.currentRow()[0].getInt() > 0;
+
+        if (listed) {
+            listedReplicas.add(tableID + "/" + connectionID);
+        }
+
+        return listed;
     }
 
     /**
@@ -470,10 +586,9 @@ public abstract class PersistentManager {
      * @return Result of the update.
      * @throws SQLException
      */
-    private int addTableInformation(final TableInfo tableInfo, final int connectionID) throws SQLException {
+    private String constructAddTableInformationQuery(final TableInfo tableInfo, final int connectionID) {
 
-        final String sql = "INSERT INTO " + tableRelation + " VALUES (null, '" + tableInfo.getSchemaName() + "', '" + tableInfo.getTableName() + "', " + tableInfo.getModificationID() + ", " + connectionID + ");";
-        return executeUpdate(sql);
+        return "INSERT INTO " + tableRelation + " VALUES (null, '" + tableInfo.getSchemaName() + "', '" + tableInfo.getTableName() + "', " + tableInfo.getModificationID() + ", " + connectionID + ");";
     }
 
     protected int addTableManagerReplicaInformation(final int tableID, final int connectionID, final int primaryLocationConnectionID, final boolean active) throws SQLException {
@@ -481,13 +596,22 @@ public abstract class PersistentManager {
         return metaDataReplicaManager.addTableManagerReplicaInformation(tableID, connectionID, primaryLocationConnectionID, active);
     }
 
-    protected void addTableManagerReplicaInformationOnCreateTable(final int tableID, final int connectionID, final boolean active, final Set<DatabaseInstanceWrapper> replicaLocations) throws SQLException {
+    /**
+     * @param tableID
+     *            the table's ID, or an SQL expression that evaluates to it.
+     * @return the updates that record the replicas of a new table's Table Manager state.
+     */
+    protected List<String> constructAddTableManagerReplicaInformationQueries(final String tableID, final int connectionID, final boolean active, final Set<DatabaseInstanceWrapper> replicaLocations) {
+
+        final List<String> updates = new LinkedList<String>();
 
         for (final DatabaseInstanceWrapper replicaLocation : replicaLocations) {
             final int replicaConnectionID = getConnectionID(replicaLocation.getURL());
 
-            addTableManagerReplicaInformation(tableID, replicaConnectionID, connectionID, active);
+            updates.add(MetaDataReplicaManager.constructAddTableManagerReplicaQuery(tableID, replicaConnectionID, connectionID, active));
         }
+
+        return updates;
     }
 
     protected int removeTableManagerReplicaInformation(final int tableID, final int connectionID) throws SQLException {
@@ -508,8 +632,20 @@ public abstract class PersistentManager {
      */
     private int addReplicaInformation(final TableInfo ti, final int tableID, final int connectionID) throws SQLException {
 
-        final String sql = "INSERT INTO " + replicaRelation + " VALUES (null, " + tableID + ", " + connectionID + ", '" + ti.getTableType() + "', true, " + ti.getTableSet() + ");\n";
-        return executeUpdate(sql);
+        final int result = executeUpdate(constructAddReplicaInformationQuery(ti, String.valueOf(tableID), connectionID));
+
+        listedReplicas.add(tableID + "/" + connectionID);
+
+        return result;
+    }
+
+    /**
+     * @param tableID
+     *            the table's ID, or an SQL expression that evaluates to it.
+     */
+    private String constructAddReplicaInformationQuery(final TableInfo ti, final String tableID, final int connectionID) {
+
+        return "INSERT INTO " + replicaRelation + " VALUES (null, " + tableID + ", " + connectionID + ", '" + ti.getTableType() + "', true, " + ti.getTableSet() + ");";
     }
 
     /**
@@ -526,7 +662,7 @@ public abstract class PersistentManager {
      */
     protected int toggleReplicasActive(final int tableID, final int connectionID, final boolean active) throws SQLException {
 
-        final String sql = "UPDATE " + replicaRelation + " SET active=" + active + " WHERE table_id=" + tableID + " AND connection_id=" + connectionID + ";\n";
+        final String sql = constructToggleReplicasActiveQuery(tableID, connectionID, active);
 
         Diagnostic.traceNoEvent(DiagnosticLevel.FINAL, "|| " + db.getID() + "|| " + sql);
 
@@ -541,6 +677,11 @@ public abstract class PersistentManager {
         }
     }
 
+    private String constructToggleReplicasActiveQuery(final int tableID, final int connectionID, final boolean active) {
+
+        return "UPDATE " + replicaRelation + " SET active=" + active + " WHERE table_id=" + tableID + " AND connection_id=" + connectionID + ";";
+    }
+
     protected LocalResult executeQuery(final String query) throws SQLException {
 
         sqlQuery = queryParser.prepareCommand(query);
@@ -553,6 +694,27 @@ public abstract class PersistentManager {
         return metaDataReplicaManager.executeUpdate(query, isSystemTable, getTableInfo());
     }
 
+    /**
+     * Execute several meta-data updates as one. They are sent to each replica of the meta-data in one message, and executed there in one
+     * transaction.
+     * 
+     * @param updates
+     *            the updates, each ending in a semi-colon.
+     * @return the result of the first update, or 0 if there were none.
+     */
+    protected int executeUpdate(final List<String> updates) throws SQLException {
+
+        if (updates.isEmpty()) { return 0; }
+
+        final StringBuilder sql = new StringBuilder();
+        for (final String update : updates) {
+            sql.append(update);
+            sql.append("\n");
+        }
+
+        return executeUpdate(sql.toString());
+    }
+
     /**
      * @return
      * @throws MovedException
@@ -584,10 +746,12 @@ public abstract class PersistentManager {
             final int connectionID = getConnectionID(ti.getDatabaseID());
             int tableID;
 
-            tableID = metaDataReplicaManager.getTableID(ti, isSystemTable);
+            tableID = getTableID(ti);
 
             final String sql = "DELETE FROM " + replicaRelation + " WHERE table_id=" + tableID + " AND connection_id=" + connectionID + "; ";
 
+            listedReplicas.remove(tableID + "/" + connectionID);
+
             executeUpdate(sql);
 
         }
@@ -611,6 +775,16 @@ public abstract class PersistentManager {
         try {
 
             final String sql = metaDataReplicaManager.constructRemoveReplicaQuery(ti, removeReplicaInfo, isSystemTable);
+
+            // Replica rows are deleted with the table rows they refer to.
+            if (ti == null || ti.getTableName() == null) {
+                tableIDs.clear();
+            }
+            else {
+                tableIDs.remove(ti.getGenericTableInfo());
+            }
+            listedReplicas.clear();
+
             executeUpdate(sql);
 
             return true;
@@ -647,7 +821,11 @@ public abstract class PersistentManager {
 
     public int getTableID(final TableInfo ti) throws SQLException {
 
-        return metaDataReplicaManager.getTableID(ti, isSystemTable);
+        final int tableID = findTableID(ti);
+
+        if (tableID == -1) { throw new SQLException("Internal problem: tableID not found in System Table."); }
+
+        return tableID;
     }
 
     public void removeConnectionInformation(final IDatabaseInstanceRemote databaseInstance) throws RPCException, MovedException {
@@ -9,14 +9,21 @@
 package org.h2o.db.manager;
 
 import java.sql.SQLException;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.h2.engine.Database;
 import org.h2.result.LocalResult;
+import org.h2.util.StringUtils;
 import org.h2.value.Value;
 import org.h2o.db.DatabaseInstanceProxy;
 import org.h2o.db.DefaultSettings;
@@ -26,6 +33,8 @@ import org.h2o.db.id.TableInfo;
 import org.h2o.db.interfaces.IDatabaseInstanceRemote;
 import org.h2o.db.interfaces.ITableManagerRemote;
 import org.h2o.db.manager.interfaces.ISystemTable;
+import org.h2o.db.partitioning.PartitionMethod;
+import org.h2o.db.partitioning.PartitionScheme;
 import org.h2o.db.wrappers.DatabaseInstanceWrapper;
 import org.h2o.db.wrappers.TableManagerWrapper;
 import org.h2o.util.exceptions.MovedException;
@@ -62,6 +71,16 @@ public class PersistentSystemTable extends PersistentManager implements ISystemT
      */
     public static final String TABLEMANAGERSTATE = SCHEMA + "H2O_TABLEMANAGER_STATE";;
 
+    /**
+     * Name of the table which stores the partition scheme of each partitioned table.
+     */
+    public static final String PARTITIONS = SCHEMA + "H2O_PARTITION";
+
+    /**
+     * Name of the table which stores the next value of each sequence shared by the instances in the system.
+     */
+    public static final String SEQUENCES = SCHEMA + "H2O_SEQUENCE";
+
     /**
      * The database username used to communicate with System Table tables.
      */
@@ -86,6 +105,9 @@ public class PersistentSystemTable extends PersistentManager implements ISystemT
                 sql = createSQL(TABLES, CONNECTIONS);
                 sql += "\n\nCREATE TABLE IF NOT EXISTS " + TABLEMANAGERSTATE + "(" + "table_id INTEGER NOT NULL, " + "connection_id INTEGER NOT NULL, " + "primary_location_connection_id INTEGER NOT NULL, " + "active BOOLEAN, " + "FOREIGN KEY (table_id) REFERENCES " + TABLES
                                 + " (table_id) ON DELETE CASCADE , " + " FOREIGN KEY (connection_id) REFERENCES " + CONNECTIONS + " (connection_id)); ";
+                sql += "\n\nCREATE TABLE IF NOT EXISTS " + PARTITIONS + "(" + "schemaname VARCHAR(255) NOT NULL, " + "tablename VARCHAR(255) NOT NULL, " + "partition_column VARCHAR(255) NOT NULL, " + "partition_method VARCHAR(16) NOT NULL, " + "partition_count INTEGER NOT NULL, "
+                                + "upper_bounds VARCHAR, " + "PRIMARY KEY (schemaname, tablename)); ";
+                sql += "\n\nCREATE TABLE IF NOT EXISTS " + SEQUENCES + "(" + "sequence_name VARCHAR(255) NOT NULL, " + "next_value BIGINT NOT NULL, " + "PRIMARY KEY (sequence_name)); ";
 
                 boolean success = getNewQueryParser();
 
@@ -152,6 +174,15 @@ public class PersistentSystemTable extends PersistentManager implements ISystemT
         return 1;
     }
 
+    /**
+     * Table set numbers are not persisted, so this does nothing.
+     */
+    @Override
+    public void tableSetNumberIssued(final int tableSetNumber) {
+
+        // Not implemented in PersistentSystemTable.
+    }
+
     @Override
     public boolean exists(final TableInfo ti) throws RPCException {
 
@@ -231,6 +262,30 @@ public class PersistentSystemTable extends PersistentManager implements ISystemT
                     addTableManagerStateReplica(databaseEntry.getKey(), tableInfo, primaryLocations.get(databaseEntry.getKey()), false);
                 }
             }
+
+            /*
+             * Get the partition schemes of partitioned tables.
+             */
+
+            final Map<TableInfo, PartitionScheme> partitionSchemes = otherSystemTable.getPartitionSchemes();
+
+            if (partitionSchemes != null) {
+                for (final PartitionScheme partitionScheme : partitionSchemes.values()) {
+                    addPartitionScheme(partitionScheme);
+                }
+            }
+
+            /*
+             * Get the next values of shared sequences.
+             */
+
+            final Map<String, Long> sequenceValues = otherSystemTable.getSequenceValues();
+
+            if (sequenceValues != null) {
+                for (final Entry<String, Long> sequenceValue : sequenceValues.entrySet()) {
+                    setSequenceValue(sequenceValue.getKey(), sequenceValue.getValue());
+                }
+            }
         }
         catch (final MovedException e) {
             e.printStackTrace(); //Moved exception shouldn't happen TODO even so, this handling is lazy.
@@ -307,7 +362,7 @@ public class PersistentSystemTable extends PersistentManager implements ISystemT
     @Override
     public Map<TableInfo, TableManagerWrapper> getTableManagers() throws RPCException {
 
-        final Map<TableInfo, TableManagerWrapper> tableManagers = new HashMap<TableInfo, TableManagerWrapper>();
+        final Map<TableInfo, TableManagerWrapper> tableManagers = Collections.synchronizedMap(new HashMap<TableInfo, TableManagerWrapper>());
 
         /*
          * Parse the query resultset to find the primary location of every table.
@@ -323,6 +378,11 @@ public class PersistentSystemTable extends PersistentManager implements ISystemT
 
         LocalResult result = null;
 
+        /*
+         * Remote references to the Table Managers are found concurrently, because each one is a call to the instance holding it.
+         */
+        final List<Callable<Object>> lookups = new LinkedList<Callable<Object>>();
+
         try {
             sqlQuery = getParser().prepareCommand(sql);
 
@@ -343,44 +403,65 @@ public class PersistentSystemTable extends PersistentManager implements ISystemT
                 final DatabaseID dbID = new DatabaseID(new DatabaseURL(connectionType, machineName, Integer.parseInt(connectionPort), dbLocation, false, chord_port));
                 final TableInfo ti = new TableInfo(tableName, schemaName);
 
-                /*
-                 * Perform lookups to get remote references to every Table Manager.
-                 */
-                IDatabaseInstanceRemote dir = null;
-
-                Diagnostic.traceNoEvent(DiagnosticLevel.FULL, "Finding database instance at : " + dbID);
+                lookups.add(Executors.callable(new Runnable() {
 
-                dir = DatabaseInstanceProxy.getProxy(dbID);
+                    @Override
+                    public void run() {
 
-                Diagnostic.traceNoEvent(DiagnosticLevel.FULL, "Found database instance at : " + dbID);
-
-                if (dir != null) {
-                    Diagnostic.traceNoEvent(DiagnosticLevel.FULL, "Finding table manager reference.");
-                    ITableManagerRemote tmReference = null;
-                    try {
-                        tmReference = dir.findTableManagerReference(ti, true);
+                        tableManagers.put(ti, findTableManager(ti, dbID));
                     }
-                    catch (final RPCException e1) {//thrown if dir is not accessible.
-                        ErrorHandling.errorNoEvent("Failed to find Table Manager reference for " + ti + " when recreating System Table state.");
-                    }
-                    Diagnostic.traceNoEvent(DiagnosticLevel.FULL, "Found table manager reference.");
-
-                    final TableManagerWrapper dmw = new TableManagerWrapper(ti, tmReference, dbID);
-                    tableManagers.put(ti, dmw);
-                }
-                else {
-                    final TableManagerWrapper dmw = new TableManagerWrapper(ti, null, dbID);
-                    tableManagers.put(ti, dmw);
-                }
-
-                Diagnostic.traceNoEvent(DiagnosticLevel.FULL, "Created new Table Manager");
+                }));
             }
         }
         catch (final SQLException e1) {
             e1.printStackTrace();
         }
 
-        return tableManagers;
+        final int threads = Integer.parseInt(getDB().getDatabaseSettings().get("TABLE_MANAGER_RECREATION_THREADS"));
+        final ExecutorService exec = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, lookups.size())));
+
+        try {
+            exec.invokeAll(lookups);
+        }
+        catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        finally {
+            exec.shutdown();
+        }
+
+        return new HashMap<TableInfo, TableManagerWrapper>(tableManagers);
+    }
+
+    /**
+     * Perform a lookup to get a remote reference to a Table Manager.
+     */
+    private TableManagerWrapper findTableManager(final TableInfo ti, final DatabaseID dbID) {
+
+        IDatabaseInstanceRemote dir = null;
+
+        Diagnostic.traceNoEvent(DiagnosticLevel.FULL, "Finding database instance at : " + dbID);
+
+        dir = DatabaseInstanceProxy.getProxy(dbID);
+
+        Diagnostic.traceNoEvent(DiagnosticLevel.FULL, "Found database instance at : " + dbID);
+
+        if (dir != null) {
+            Diagnostic.traceNoEvent(DiagnosticLevel.FULL, "Finding table manager reference.");
+            ITableManagerRemote tmReference = null;
+            try {
+                tmReference = dir.findTableManagerReference(ti, true);
+            }
+            catch (final RPCException e1) {//thrown if dir is not accessible.
+                ErrorHandling.errorNoEvent("Failed to find Table Manager reference for " + ti + " when recreating System Table state.");
+            }
+            Diagnostic.traceNoEvent(DiagnosticLevel.FULL, "Found table manager reference.");
+
+            return new TableManagerWrapper(ti, tmReference, dbID);
+        }
+        else {
+            return new TableManagerWrapper(ti, null, dbID);
+        }
     }
 
     @Override
@@ -486,6 +567,120 @@ public class PersistentSystemTable extends PersistentManager implements ISystemT
         removeTableInformation(null);
     }
 
+    @Override
+    public boolean addPartitionScheme(final PartitionScheme partitionScheme) throws RPCException {
+
+        final TableInfo ti = partitionScheme.getTableInfo();
+        final String upperBounds = partitionScheme.getMethod() == PartitionMethod.RANGE ? StringUtils.quoteStringSQL(StringUtils.arrayCombine(partitionScheme.getUpperBounds(), ',')) : "NULL";
+
+        final String sql = "MERGE INTO " + PARTITIONS + " VALUES ('" + ti.getSchemaName() + "', '" + ti.getTableName() + "', '" + partitionScheme.getColumnName() + "', '" + partitionScheme.getMethod() + "', " + partitionScheme.getNumberOfPartitions() + ", " + upperBounds + ");";
+
+        try {
+            executeUpdate(sql);
+            return true;
+        }
+        catch (final SQLException e) {
+            throw new RPCException(e.getMessage());
+        }
+    }
+
+    @Override
+    public PartitionScheme getPartitionScheme(final TableInfo ti) throws RPCException {
+
+        final Map<TableInfo, PartitionScheme> partitionSchemes = getPartitionSchemes("SELECT * FROM " + PARTITIONS + " WHERE schemaname='" + ti.getSchemaName() + "' AND tablename='" + ti.getTableName() + "';");
+
+        return partitionSchemes.get(ti.getGenericTableInfo());
+    }
+
+    @Override
+    public boolean removePartitionScheme(final TableInfo ti) throws RPCException {
+
+        try {
+            return executeUpdate("DELETE FROM " + PARTITIONS + " WHERE schemaname='" + ti.getSchemaName() + "' AND tablename='" + ti.getTableName() + "';") > 0;
+        }
+        catch (final SQLException e) {
+            throw new RPCException(e.getMessage());
+        }
+    }
+
+    @Override
+    public Map<TableInfo, PartitionScheme> getPartitionSchemes() throws RPCException {
+
+        return getPartitionSchemes("SELECT * FROM " + PARTITIONS + ";");
+    }
+
+    @Override
+    public long allocateSequenceBlock(final String sequenceName, final long startValue, final long blockLength) throws RPCException {
+
+        try {
+            final LocalResult result = executeQuery("SELECT next_value FROM " + SEQUENCES + " WHERE sequence_name=" + StringUtils.quoteStringSQL(sequenceName) + ";");
+
+            final long first = result.next() ? Math.max(result.currentRow()[0].getLong(), startValue) : startValue;
+
+            setSequenceValue(sequenceName, first + blockLength);
+
+            return first;
+        }
+        catch (final SQLException e) {
+            throw new RPCException(e.getMessage());
+        }
+    }
+
+    @Override
+    public Map<String, Long> getSequenceValues() throws RPCException {
+
+        final Map<String, Long> sequenceValues = new HashMap<String, Long>();
+
+        try {
+            final LocalResult result = executeQuery("SELECT sequence_name, next_value FROM " + SEQUENCES + ";");
+
+            while (result.next()) {
+                final Value[] row = result.currentRow();
+
+                sequenceValues.put(row[0].getString(), row[1].getLong());
+            }
+        }
+        catch (final SQLException e) {
+            throw new RPCException(e.getMessage());
+        }
+
+        return sequenceValues;
+    }
+
+    private void setSequenceValue(final String sequenceName, final long nextValue) throws RPCException {
+
+        try {
+            executeUpdate("MERGE INTO " + SEQUENCES + " VALUES (" + StringUtils.quoteStringSQL(sequenceName) + ", " + nextValue + ");");
+        }
+        catch (final SQLException e) {
+            throw new RPCException(e.getMessage());
+        }
+    }
+
+    private Map<TableInfo, PartitionScheme> getPartitionSchemes(final String sql) throws RPCException {
+
+        final Map<TableInfo, PartitionScheme> partitionSchemes = new HashMap<TableInfo, PartitionScheme>();
+
+        try {
+            final LocalResult result = executeQuery(sql);
+
+            while (result.next()) {
+                final Value[] row = result.currentRow();
+
+                final TableInfo ti = new TableInfo(row[1].getString(), row[0].getString());
+                final PartitionMethod method = PartitionMethod.valueOf(row[3].getString());
+                final String[] upperBounds = StringUtils.arraySplit(row[5].getString(), ',', false);
+
+                partitionSchemes.put(ti, new PartitionScheme(ti, row[2].getString(), method, row[4].getInt(), upperBounds));
+            }
+        }
+        catch (final SQLException e) {
+            throw new RPCException(e.getMessage());
+        }
+
+        return partitionSchemes;
+    }
+
     @Override
     public IDatabaseInstanceRemote getDatabaseInstance(final DatabaseID databaseURL) throws RPCException, MovedException {
 
@@ -509,14 +704,10 @@ public class PersistentSystemTable extends PersistentManager implements ISystemT
     @Override
     public boolean addTableInformation(final ITableManagerRemote tableManager, final TableInfo tableDetails, final Set<DatabaseInstanceWrapper> replicaLocations) throws RPCException, MovedException, SQLException {
 
-        final boolean added = super.addTableInformation(tableManager.getDatabaseURL(), tableDetails, false);
-
-        if (added) {
-            final int connectionID = getConnectionID(tableDetails.getDatabaseID());
-            addTableManagerReplicaInformationOnCreateTable(getTableID(tableDetails), connectionID, true, replicaLocations);
-        }
+        // The locations of the Table Manager's state are recorded in the same update as the table.
+        final List<String> tableManagerReplicas = constructAddTableManagerReplicaInformationQueries(getTableIDExpression(tableDetails), getConnectionID(tableDetails.getDatabaseID()), true, replicaLocations);
 
-        return added;
+        return super.addTableInformation(tableManager.getDatabaseURL(), tableDetails, false, tableManagerReplicas);
     }
 
     @Override
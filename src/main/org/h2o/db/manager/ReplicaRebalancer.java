@@ -0,0 +1,405 @@
+/*
+ * Copyright (C) 2009-2010 School of Computer Science, University of St Andrews. All rights reserved. Project Homepage:
+ * http://blogs.cs.st-andrews.ac.uk/h2o H2O is free software: you can redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version. H2O
+ * is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details. You should have received a copy of the GNU General
+ * Public License along with H2O. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.h2o.db.manager;
+
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.h2o.db.id.DatabaseID;
+import org.h2o.db.wrappers.DatabaseInstanceWrapper;
+import org.h2o.db.wrappers.TableManagerWrapper;
+
+import uk.ac.standrews.cs.nds.rpc.RPCException;
+import uk.ac.standrews.cs.nds.util.Diagnostic;
+import uk.ac.standrews.cs.nds.util.DiagnosticLevel;
+import uk.ac.standrews.cs.nds.util.ErrorHandling;
+
+/**
+ * Spreads replicas and Table Managers evenly across the active instances after an instance has joined or left the database system.
+ *
+ * <p>The placement is worked out from the replicas each Table Manager reports and the System Table's ranking of instances. Each pass:
+ * <ol>
+ * <li>moves replicas from the instance holding the most to the instance holding the fewest, until no two instances differ by more than
+ * one, or no more can be moved;</li>
+ * <li>migrates Table Managers in the same way, preferring an instance that holds a replica of the table.</li>
+ * </ol>
+ * Where instances are otherwise equal, the one ranked higher by the System Table is given new replicas first.
+ *
+ * <p>Replicas lost with an instance that has left the system aren't replaced here: each Table Manager already restores its table's
+ * replication factor when it finds a replica has failed (see {@link CreateNewReplicasAsync}), and doing it twice would over-replicate the
+ * table. Replicas on instances that have left are not counted.
+ *
+ * <p>Only active replicas are counted and copied from, because an inactive replica may be missing committed updates, and a copy made from
+ * it would be registered as up to date. The replica on the instance holding a table's Table Manager (its primary copy) is never moved or
+ * dropped.
+ *
+ * <p>Each copy or migration counts against a transfer budget (the REBALANCE_TRANSFER_BUDGET setting), so a membership change doesn't cause
+ * the whole database to be moved at once. The rate at which each copy reads from its source is limited by the REPLICA_CREATION_BANDWIDTH
+ * setting of the instance making the copy (see {@link org.h2.command.h2o.CreateReplica}).
+ */
+public class ReplicaRebalancer implements Runnable {
+
+    /**
+     * Active instances in the System Table's ranking order, highest first.
+     */
+    private final List<DatabaseInstanceWrapper> instances;
+
+    /**
+     * Instances that mustn't be given new replicas.
+     */
+    private final Set<DatabaseInstanceWrapper> noReplicateInstances;
+
+    private final Collection<TableManagerWrapper> tableManagers;
+
+    private int budget;
+
+    private final Map<TableManagerWrapper, Set<DatabaseInstanceWrapper>> replicas = new HashMap<TableManagerWrapper, Set<DatabaseInstanceWrapper>>();
+
+    private final Map<DatabaseInstanceWrapper, Integer> replicaCounts = new HashMap<DatabaseInstanceWrapper, Integer>();
+
+    private final Map<DatabaseInstanceWrapper, List<TableManagerWrapper>> managersByInstance = new HashMap<DatabaseInstanceWrapper, List<TableManagerWrapper>>();
+
+    /**
+     * @param rankedInstances
+     *            the active instances, in the System Table's ranking order.
+     * @param noReplicateInstances
+     *            instances that mustn't be given new replicas.
+     * @param tableManagers
+     *            every Table Manager in the system.
+     * @param budget
+     *            the maximum number of replica copies and Table Manager migrations to make.
+     */
+    public ReplicaRebalancer(final List<DatabaseInstanceWrapper> rankedInstances, final Set<DatabaseInstanceWrapper> noReplicateInstances, final Collection<TableManagerWrapper> tableManagers, final int budget) {
+
+        instances = rankedInstances;
+        this.noReplicateInstances = noReplicateInstances;
+        this.tableManagers = tableManagers;
+        this.budget = budget;
+    }
+
+    @Override
+    public void run() {
+
+        if (instances.size() < 2 || budget <= 0) { return; }
+
+        final int initialBudget = budget;
+
+        findCurrentPlacement();
+
+        balanceReplicas();
+        balanceTableManagers();
+
+        Diagnostic.traceNoEvent(DiagnosticLevel.FINAL, "Rebalancing finished after " + (initialBudget - budget) + " transfers across " + instances.size() + " instances.");
+    }
+
+    private void findCurrentPlacement() {
+
+        final Map<DatabaseID, DatabaseInstanceWrapper> instancesByID = new HashMap<DatabaseID, DatabaseInstanceWrapper>();
+
+        for (final DatabaseInstanceWrapper instance : instances) {
+            instancesByID.put(instance.getURL(), instance);
+            replicaCounts.put(instance, 0);
+            managersByInstance.put(instance, new LinkedList<TableManagerWrapper>());
+        }
+
+        for (final TableManagerWrapper wrapper : tableManagers) {
+
+            final Set<DatabaseInstanceWrapper> tableReplicas;
+
+            try {
+                tableReplicas = findReplicas(wrapper);
+            }
+            catch (final Exception e) {
+                Diagnostic.traceNoEvent(DiagnosticLevel.FULL, "Couldn't find the replicas of " + wrapper.getTableInfo() + ", so it won't be rebalanced: " + e.getMessage());
+                continue;
+            }
+
+            if (tableReplicas == null) {
+                continue;
+            }
+
+            replicas.put(wrapper, tableReplicas);
+
+            for (final DatabaseInstanceWrapper replica : tableReplicas) {
+                if (replicaCounts.containsKey(replica)) {
+                    replicaCounts.put(replica, replicaCounts.get(replica) + 1);
+                }
+            }
+
+            final DatabaseInstanceWrapper managerLocation = instancesByID.get(wrapper.getURL());
+            if (managerLocation != null) {
+                managersByInstance.get(managerLocation).add(wrapper);
+            }
+        }
+    }
+
+    /**
+     * Move replicas from the instance holding the most to those holding the fewest, until their counts differ by at most one.
+     */
+    private void balanceReplicas() {
+
+        while (budget > 0) {
+
+            final DatabaseInstanceWrapper leastLoaded = leastLoadedReplicaTarget();
+
+            if (leastLoaded == null) { return; }
+
+            // The lowest ranked of the instances holding the most replicas that can be moved to the least loaded instance.
+            DatabaseInstanceWrapper mostLoaded = null;
+            TableManagerWrapper table = null;
+
+            for (final DatabaseInstanceWrapper instance : instances) {
+
+                if (mostLoaded != null && replicaCounts.get(instance) < replicaCounts.get(mostLoaded)) {
+                    continue;
+                }
+
+                final TableManagerWrapper movable = findTableToMove(instance, leastLoaded);
+
+                if (movable != null) {
+                    mostLoaded = instance;
+                    table = movable;
+                }
+            }
+
+            if (mostLoaded == null || replicaCounts.get(mostLoaded) - replicaCounts.get(leastLoaded) <= 1) { return; }
+
+            if (!moveReplica(table, mostLoaded, leastLoaded)) { return; }
+        }
+    }
+
+    /**
+     * Migrate Table Managers from the instance holding the most to those holding the fewest, until their counts differ by at most one.
+     */
+    private void balanceTableManagers() {
+
+        final Map<DatabaseInstanceWrapper, Integer> managerCounts = new HashMap<DatabaseInstanceWrapper, Integer>();
+
+        for (final Map.Entry<DatabaseInstanceWrapper, List<TableManagerWrapper>> entry : managersByInstance.entrySet()) {
+            managerCounts.put(entry.getKey(), entry.getValue().size());
+        }
+
+        while (budget > 0) {
+
+            final DatabaseInstanceWrapper mostLoaded = mostLoaded(managerCounts);
+            final DatabaseInstanceWrapper leastLoaded = leastLoaded(managerCounts);
+
+            if (mostLoaded == null || leastLoaded == null || managerCounts.get(mostLoaded) - managerCounts.get(leastLoaded) <= 1) { return; }
+
+            // Prefer a table with a replica on the new location, so that the Table Manager's table stays local to it.
+            TableManagerWrapper toMigrate = null;
+            for (final TableManagerWrapper wrapper : managersByInstance.get(mostLoaded)) {
+
+                final Set<DatabaseInstanceWrapper> tableReplicas = replicas.get(wrapper);
+
+                if (toMigrate == null || tableReplicas != null && tableReplicas.contains(leastLoaded)) {
+                    toMigrate = wrapper;
+                }
+
+                if (tableReplicas != null && tableReplicas.contains(leastLoaded)) {
+                    break;
+                }
+            }
+
+            if (toMigrate == null) { return; }
+
+            budget--;
+
+            if (!migrateTableManager(toMigrate.getTableInfo().getFullTableName(), leastLoaded)) { return; }
+
+            managersByInstance.get(mostLoaded).remove(toMigrate);
+            managersByInstance.get(leastLoaded).add(toMigrate);
+            managerCounts.put(mostLoaded, managerCounts.get(mostLoaded) - 1);
+            managerCounts.put(leastLoaded, managerCounts.get(leastLoaded) + 1);
+        }
+    }
+
+    /**
+     * @return a table with a replica on the first instance and none on the second, whose Table Manager isn't on the first instance, or null
+     *         if there isn't one.
+     */
+    private TableManagerWrapper findTableToMove(final DatabaseInstanceWrapper from, final DatabaseInstanceWrapper to) {
+
+        for (final Map.Entry<TableManagerWrapper, Set<DatabaseInstanceWrapper>> entry : replicas.entrySet()) {
+
+            if (isPrimaryCopy(entry.getKey(), from)) {
+                continue;
+            }
+
+            if (entry.getValue().contains(from) && !entry.getValue().contains(to)) { return entry.getKey(); }
+        }
+
+        return null;
+    }
+
+    /**
+     * @return true if the given instance holds the Table Manager of the table, and so its primary copy.
+     */
+    private static boolean isPrimaryCopy(final TableManagerWrapper table, final DatabaseInstanceWrapper instance) {
+
+        return instance.getURL().equals(table.getURL());
+    }
+
+    /**
+     * Copy a replica to a new location, then drop the original.
+     */
+    private boolean moveReplica(final TableManagerWrapper table, final DatabaseInstanceWrapper from, final DatabaseInstanceWrapper to) {
+
+        if (isPrimaryCopy(table, from) || !copyReplica(table, from, to)) { return false; }
+
+        // If the drop fails the table is left with an extra replica, which is safe.
+        if (!dropReplica(table.getTableInfo().getFullTableName(), from)) { return true; }
+
+        replicas.get(table).remove(from);
+        replicaCounts.put(from, replicaCounts.get(from) - 1);
+
+        return true;
+    }
+
+    private boolean copyReplica(final TableManagerWrapper table, final DatabaseInstanceWrapper source, final DatabaseInstanceWrapper target) {
+
+        budget--;
+
+        if (!createReplica(table.getTableInfo().getFullTableName(), source, target)) { return false; }
+
+        replicas.get(table).add(target);
+        replicaCounts.put(target, replicaCounts.get(target) + 1);
+
+        return true;
+    }
+
+    /**
+     * @return the instances holding active replicas of the given table, or null if the table has no Table Manager.
+     * @throws Exception
+     *             if the Table Manager couldn't be asked.
+     */
+    protected Set<DatabaseInstanceWrapper> findReplicas(final TableManagerWrapper wrapper) throws Exception {
+
+        if (wrapper.getTableManager() == null) { return null; }
+
+        return new HashSet<DatabaseInstanceWrapper>(wrapper.getTableManager().getActiveReplicas().keySet());
+    }
+
+    /**
+     * Copy a replica of a table from one instance to another.
+     *
+     * @return true if the copy was made.
+     */
+    protected boolean createReplica(final String tableName, final DatabaseInstanceWrapper source, final DatabaseInstanceWrapper target) {
+
+        final String createReplicaSQL = "CREATE REPLICA " + tableName + " FROM '" + source.getURL().getURL() + "'";
+
+        Diagnostic.traceNoEvent(DiagnosticLevel.FINAL, "Rebalancing: copying " + tableName + " from " + source.getURL() + " to " + target.getURL() + ".");
+
+        try {
+            return target.getDatabaseInstance().executeUpdate(createReplicaSQL, true) == 0;
+        }
+        catch (final RPCException e) {
+            ErrorHandling.errorNoEvent("Failed to copy " + tableName + " to " + target.getURL() + ": " + e.getMessage());
+            return false;
+        }
+        catch (final SQLException e) {
+            ErrorHandling.errorNoEvent("Failed to copy " + tableName + " to " + target.getURL() + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Drop the replica of a table held by an instance.
+     *
+     * @return true if the replica was dropped.
+     */
+    protected boolean dropReplica(final String tableName, final DatabaseInstanceWrapper from) {
+
+        try {
+            from.getDatabaseInstance().executeUpdate("DROP REPLICA " + tableName, true);
+            return true;
+        }
+        catch (final Exception e) {
+            ErrorHandling.errorNoEvent("Couldn't drop the replica of " + tableName + " on " + from.getURL() + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Migrate the Table Manager of a table to an instance.
+     *
+     * @return true if the Table Manager was migrated.
+     */
+    protected boolean migrateTableManager(final String tableName, final DatabaseInstanceWrapper to) {
+
+        try {
+            to.getDatabaseInstance().executeUpdate("MIGRATE TABLEMANAGER " + tableName, false);
+            return true;
+        }
+        catch (final Exception e) {
+            ErrorHandling.errorNoEvent("Failed to migrate the Table Manager of " + tableName + " to " + to.getURL() + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * @return the highest ranked of the instances holding the fewest replicas that can be given a new replica, or null if there are none.
+     */
+    private DatabaseInstanceWrapper leastLoadedReplicaTarget() {
+
+        DatabaseInstanceWrapper leastLoaded = null;
+
+        for (final DatabaseInstanceWrapper instance : instances) {
+
+            if (noReplicateInstances.contains(instance)) {
+                continue;
+            }
+
+            if (leastLoaded == null || replicaCounts.get(instance) < replicaCounts.get(leastLoaded)) {
+                leastLoaded = instance;
+            }
+        }
+
+        return leastLoaded;
+    }
+
+    /**
+     * @return the highest ranked of the instances with the lowest count.
+     */
+    private DatabaseInstanceWrapper leastLoaded(final Map<DatabaseInstanceWrapper, Integer> counts) {
+
+        DatabaseInstanceWrapper leastLoaded = null;
+
+        for (final DatabaseInstanceWrapper instance : instances) {
+            if (leastLoaded == null || counts.get(instance) < counts.get(leastLoaded)) {
+                leastLoaded = instance;
+            }
+        }
+
+        return leastLoaded;
+    }
+
+    /**
+     * @return the lowest ranked of the instances with the highest count.
+     */
+    private DatabaseInstanceWrapper mostLoaded(final Map<DatabaseInstanceWrapper, Integer> counts) {
+
+        DatabaseInstanceWrapper mostLoaded = null;
+
+        for (final DatabaseInstanceWrapper instance : instances) {
+            if (mostLoaded == null || counts.get(instance) >= counts.get(mostLoaded)) {
+                mostLoaded = instance;
+            }
+        }
+
+        return mostLoaded;
+    }
+}
@@ -15,6 +15,8 @@ import java.util.LinkedList;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.h2.engine.Database;
 import org.h2o.autonomic.numonic.SystemTableDataCollector;
@@ -22,13 +24,16 @@ import org.h2o.autonomic.numonic.interfaces.ICentralDataCollector;
 import org.h2o.autonomic.numonic.metric.IMetric;
 import org.h2o.autonomic.numonic.ranking.MachineMonitoringData;
 import org.h2o.autonomic.numonic.ranking.Requirements;
+import org.h2o.db.DatabaseInstanceProxy;
 import org.h2o.db.id.DatabaseID;
 import org.h2o.db.id.TableInfo;
 import org.h2o.db.interfaces.IDatabaseInstanceRemote;
 import org.h2o.db.interfaces.ITableManagerRemote;
 import org.h2o.db.manager.interfaces.ISystemTable;
 import org.h2o.db.manager.interfaces.ISystemTableMigratable;
+import org.h2o.db.manager.monitorthreads.IFailureListener;
 import org.h2o.db.manager.util.SystemTableMigrationState;
+import org.h2o.db.partitioning.PartitionScheme;
 import org.h2o.db.wrappers.DatabaseInstanceWrapper;
 import org.h2o.db.wrappers.TableManagerWrapper;
 import org.h2o.util.exceptions.MigrationException;
@@ -37,13 +42,14 @@ import org.h2o.util.exceptions.MovedException;
 import uk.ac.standrews.cs.nds.rpc.RPCException;
 import uk.ac.standrews.cs.nds.util.Diagnostic;
 import uk.ac.standrews.cs.nds.util.DiagnosticLevel;
+import uk.ac.standrews.cs.nds.util.ErrorHandling;
 import uk.ac.standrews.cs.nds.util.PrettyPrinter;
 import uk.ac.standrews.cs.stachord.interfaces.IChordRemoteReference;
 
 /**
  * @author Angus Macdonald (angus@cs.st-andrews.ac.uk)
  */
-public class SystemTable implements ISystemTableMigratable {
+public class SystemTable implements ISystemTableMigratable, IFailureListener {
 
     /**
      * Interface to the in-memory state of the System Table.
@@ -52,9 +58,19 @@ public class SystemTable implements ISystemTableMigratable {
 
     /**
      * Interface to the persisted state of this System Table. This object interacts with the database to store the state of the System Table
-     * on disk.
+     * on disk. Null while this System Table is a hot standby, because the persisted state is replicated to it by the active System Table.
      */
-    private final ISystemTable persisted;
+    private ISystemTable persisted;
+
+    /**
+     * Sends changes to this System Table to a hot standby, or null if hot standbys aren't enabled.
+     */
+    private SystemTableStandby standby;
+
+    /**
+     * The location of the active System Table if this is a hot standby of it, or null if this System Table is active.
+     */
+    private volatile DatabaseID standbyFor = null;
 
     private final ICentralDataCollector monitoring = new SystemTableDataCollector();
 
@@ -85,6 +101,174 @@ public class SystemTable implements ISystemTableMigratable {
 
         excludedMachines = new HashSet<DatabaseInstanceWrapper>();
 
+        standby = createStandby();
+    }
+
+    /**
+     * Create a hot standby of the System Table at the given location. It records the changes sent to it by the active System Table, but
+     * doesn't answer any other requests until the active System Table fails and it is promoted.
+     *
+     * @param db the local database.
+     * @param activeSystemTableLocation the location of the active System Table.
+     */
+    public SystemTable(final Database db, final DatabaseID activeSystemTableLocation) throws Exception {
+
+        database = db;
+        inMemory = new InMemorySystemTable(db, true);
+        persisted = null;
+        standbyFor = activeSystemTableLocation;
+
+        migrationState = new SystemTableMigrationState(db.getChordInterface().getLocalChordReference());
+
+        excludedMachines = new HashSet<DatabaseInstanceWrapper>();
+
+        db.getFailureDetector().monitor(activeSystemTableLocation);
+        db.getFailureDetector().addListener(this);
+    }
+
+    private SystemTableStandby createStandby() {
+
+        if (!Boolean.parseBoolean(database.getDatabaseSettings().get("SYSTEM_TABLE_HOT_STANDBY"))) { return null; }
+
+        return new SystemTableStandby(database, Long.parseLong(database.getDatabaseSettings().get("METADATA_REPLICATION_THREAD_SLEEP_TIME")));
+    }
+
+    /******************************************************************
+     **** Methods related to the hot standby.
+     ******************************************************************/
+
+    /**
+     * @return true if this System Table is a hot standby, which only records the changes made to the active System Table.
+     */
+    public boolean isStandby() {
+
+        return standbyFor != null;
+    }
+
+    /**
+     * Copy the in-memory state of the active System Table, so that this standby can apply the changes made to it from now on.
+     */
+    public void copyStateOfActiveSystemTable(final ISystemTable activeSystemTable) throws RPCException, MovedException, SQLException {
+
+        inMemory.recreateSystemTable(activeSystemTable);
+
+        // Taking a number from the active System Table means this standby continues after every number given out before the copy.
+        inMemory.tableSetNumberIssued(activeSystemTable.getNewTableSetNumber());
+    }
+
+    /**
+     * Make this hot standby the active System Table. Its in-memory state is already up to date, so it can answer lookups straight away.
+     * The Table Managers that were on the failed System Table's instance are recreated in the background.
+     *
+     * <p>The active System Table is fenced first (see {@link #fenceActiveSystemTable()}), because it may only have been suspected of failing.
+     *
+     * @return false if this System Table was already active.
+     * @throws MigrationException if another System Table has already taken over from the active System Table.
+     */
+    public synchronized boolean promote() throws Exception {
+
+        if (!isStandby()) { return false; }
+
+        final DatabaseID failedSystemTableLocation = standbyFor;
+
+        fenceActiveSystemTable();
+
+        persisted = new PersistentSystemTable(database, false);
+        database.getFailureDetector().removeListener(this);
+        ((InMemorySystemTable) inMemory).promote();
+        standby = createStandby();
+
+        standbyFor = null;
+
+        Diagnostic.traceNoEvent(DiagnosticLevel.INIT, database.getID() + ": hot standby promoted to active System Table.");
+
+        final ExecutorService exec = Executors.newSingleThreadExecutor();
+        exec.submit(new Runnable() {
+
+            @Override
+            public void run() {
+
+                try {
+                    inMemory.suspectInstanceOfFailure(failedSystemTableLocation);
+                }
+                catch (final Exception e) {
+                    ErrorHandling.exceptionError(e, "Failed to recover Table Managers held by the failed System Table's instance.");
+                }
+            }
+        });
+        exec.shutdown();
+
+        return true;
+    }
+
+    /**
+     * Stop the active System Table from accepting requests before this standby takes over, so there is never more than one active System
+     * Table. The failure detector only suspects the active System Table of failing, so it may still be running. If it can be contacted it is
+     * handed over to this standby, as in a migration: from then on it refers every request here. If it can't be contacted it has failed or
+     * is unreachable.
+     *
+     * @throws MigrationException if the active System Table has already been handed over to another instance.
+     */
+    private void fenceActiveSystemTable() throws MigrationException {
+
+        ISystemTableMigratable active = null;
+
+        try {
+            active = DatabaseInstanceProxy.getProxy(standbyFor).getSystemTable();
+        }
+        catch (final Exception e) {
+            Diagnostic.traceNoEvent(DiagnosticLevel.FULL, "The active System Table's instance at " + standbyFor + " can't be contacted: " + e.getMessage());
+        }
+
+        if (active == null) { return; }
+
+        try {
+            active.prepareForMigration(database.getID().getURLwithRMIPort());
+            active.completeMigration();
+
+            Diagnostic.traceNoEvent(DiagnosticLevel.INIT, database.getID() + ": the System Table at " + standbyFor + " was still running, and has handed over to this standby.");
+        }
+        catch (final MovedException e) {
+            throw new MigrationException("The System Table at " + standbyFor + " has already moved to " + e.getMessage() + ", so this standby won't take over.");
+        }
+        catch (final Exception e) {
+            // The call failed part way, so the active System Table has failed or become unreachable since it was contacted.
+            Diagnostic.traceNoEvent(DiagnosticLevel.FULL, "Failed to hand over the System Table at " + standbyFor + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Called by the failure detector of a hot standby's instance. If the active System Table's instance has failed, this standby takes
+     * over.
+     */
+    @Override
+    public void instanceFailed(final DatabaseID failedMachine) {
+
+        if (!failedMachine.equals(standbyFor)) { return; }
+
+        try {
+            database.getSystemTableReference().migrateSystemTableToLocalInstance(true, true, false);
+        }
+        catch (final Exception e) {
+            ErrorHandling.exceptionError(e, "Failed to promote the hot standby of the System Table.");
+        }
+    }
+
+    /**
+     * Start a hot standby on another instance if there should be one and there isn't.
+     */
+    public void checkStandby() {
+
+        if (standby != null && !isStandby()) {
+            standby.check();
+        }
+    }
+
+    private void appendToStandbyLog(final SystemTableStandby.Mutation mutation) {
+
+        if (standby != null && !isStandby()) {
+            standby.append(mutation);
+        }
     }
 
     /******************************************************************
@@ -92,12 +276,23 @@ public class SystemTable implements ISystemTableMigratable {
      ******************************************************************/
 
     @Override
-    public int addConnectionInformation(final DatabaseID databaseURL, final DatabaseInstanceWrapper remoteDatabase) throws RPCException, MovedException {
+    public synchronized int addConnectionInformation(final DatabaseID databaseURL, final DatabaseInstanceWrapper remoteDatabase) throws RPCException, MovedException {
 
-        preMethodTest();
+        preMutationTest();
 
         try {
             inMemory.addConnectionInformation(databaseURL, remoteDatabase);
+            if (isStandby()) { return 1; }
+
+            appendToStandbyLog(new SystemTableStandby.Mutation() {
+
+                @Override
+                public void apply(final ISystemTable standbySystemTable) throws Exception {
+
+                    standbySystemTable.addConnectionInformation(databaseURL, remoteDatabase);
+                }
+            });
+
             return persisted.addConnectionInformation(databaseURL, remoteDatabase);
         }
         catch (final SQLException e) {
@@ -109,10 +304,25 @@ public class SystemTable implements ISystemTableMigratable {
     @Override
     public synchronized boolean addTableInformation(final ITableManagerRemote tableManager, final TableInfo tableDetails, final Set<DatabaseInstanceWrapper> replicaLocations) throws RPCException, MovedException {
 
-        preMethodTest();
+        preMutationTest();
 
         try {
-            return persisted.addTableInformation(tableManager, tableDetails, replicaLocations) && inMemory.addTableInformation(tableManager, tableDetails, replicaLocations);
+            if (isStandby()) { return inMemory.addTableInformation(tableManager, tableDetails, replicaLocations); }
+
+            final boolean added = persisted.addTableInformation(tableManager, tableDetails, replicaLocations) && inMemory.addTableInformation(tableManager, tableDetails, replicaLocations);
+
+            if (added) {
+                appendToStandbyLog(new SystemTableStandby.Mutation() {
+
+                    @Override
+                    public void apply(final ISystemTable standbySystemTable) throws Exception {
+
+                        standbySystemTable.addTableInformation(tableManager, tableDetails, replicaLocations);
+                    }
+                });
+            }
+
+            return added;
         }
         catch (final SQLException e) {
             System.err.println("Failed to add table information::");
@@ -122,15 +332,94 @@ public class SystemTable implements ISystemTableMigratable {
     }
 
     @Override
-    public boolean removeTableInformation(final TableInfo ti) throws RPCException, MovedException {
+    public synchronized boolean removeTableInformation(final TableInfo ti) throws RPCException, MovedException {
 
-        preMethodTest();
+        preMutationTest();
         final boolean result = inMemory.removeTableInformation(ti);
+        if (isStandby()) { return result; }
+
         persisted.removeTableInformation(ti);
 
+        appendToStandbyLog(new SystemTableStandby.Mutation() {
+
+            @Override
+            public void apply(final ISystemTable standbySystemTable) throws Exception {
+
+                standbySystemTable.removeTableInformation(ti);
+            }
+        });
+
+        return result;
+    }
+
+    @Override
+    public synchronized boolean addPartitionScheme(final PartitionScheme partitionScheme) throws RPCException, MovedException {
+
+        preMutationTest();
+
+        if (isStandby()) { return inMemory.addPartitionScheme(partitionScheme); }
+
+        if (inMemory.getPartitionScheme(partitionScheme.getTableInfo()) != null) { return false; }
+
+        final boolean added = persisted.addPartitionScheme(partitionScheme) && inMemory.addPartitionScheme(partitionScheme);
+
+        if (added) {
+            appendToStandbyLog(new SystemTableStandby.Mutation() {
+
+                @Override
+                public void apply(final ISystemTable standbySystemTable) throws Exception {
+
+                    standbySystemTable.addPartitionScheme(partitionScheme);
+                }
+            });
+        }
+
+        return added;
+    }
+
+    @Override
+    public synchronized boolean removePartitionScheme(final TableInfo ti) throws RPCException, MovedException {
+
+        preMutationTest();
+        final boolean result = inMemory.removePartitionScheme(ti);
+        if (isStandby()) { return result; }
+
+        persisted.removePartitionScheme(ti);
+
+        appendToStandbyLog(new SystemTableStandby.Mutation() {
+
+            @Override
+            public void apply(final ISystemTable standbySystemTable) throws Exception {
+
+                standbySystemTable.removePartitionScheme(ti);
+            }
+        });
+
         return result;
     }
 
+    @Override
+    public synchronized long allocateSequenceBlock(final String sequenceName, final long startValue, final long blockLength) throws RPCException, MovedException {
+
+        preMutationTest();
+
+        final long first = inMemory.allocateSequenceBlock(sequenceName, startValue, blockLength);
+        if (isStandby()) { return first; }
+
+        persisted.allocateSequenceBlock(sequenceName, startValue, blockLength);
+
+        appendToStandbyLog(new SystemTableStandby.Mutation() {
+
+            @Override
+            public void apply(final ISystemTable standbySystemTable) throws Exception {
+
+                standbySystemTable.allocateSequenceBlock(sequenceName, startValue, blockLength);
+            }
+        });
+
+        return first;
+    }
+
     /******************************************************************
      **** Methods which only require checking in memory data structures.
      ******************************************************************/
@@ -142,6 +431,25 @@ public class SystemTable implements ISystemTableMigratable {
         return inMemory.exists(ti);
     }
 
+    @Override
+    public PartitionScheme getPartitionScheme(final TableInfo ti) throws RPCException, MovedException {
+
+        preMethodTest();
+        return inMemory.getPartitionScheme(ti);
+    }
+
+    @Override
+    public Map<TableInfo, PartitionScheme> getPartitionSchemes() throws RPCException, MovedException {
+
+        return inMemory.getPartitionSchemes();
+    }
+
+    @Override
+    public Map<String, Long> getSequenceValues() throws RPCException, MovedException {
+
+        return inMemory.getSequenceValues();
+    }
+
     @Override
     public Set<String> getAllTablesInSchema(final String schemaName) throws RPCException, MovedException {
 
@@ -150,10 +458,28 @@ public class SystemTable implements ISystemTableMigratable {
     }
 
     @Override
-    public int getNewTableSetNumber() throws RPCException, MovedException {
+    public synchronized int getNewTableSetNumber() throws RPCException, MovedException {
 
         preMethodTest();
-        return inMemory.getNewTableSetNumber();
+        final int tableSetNumber = inMemory.getNewTableSetNumber();
+
+        appendToStandbyLog(new SystemTableStandby.Mutation() {
+
+            @Override
+            public void apply(final ISystemTable standbySystemTable) throws Exception {
+
+                standbySystemTable.tableSetNumberIssued(tableSetNumber);
+            }
+        });
+
+        return tableSetNumber;
+    }
+
+    @Override
+    public synchronized void tableSetNumberIssued(final int tableSetNumber) throws RPCException, MovedException {
+
+        preMutationTest();
+        inMemory.tableSetNumberIssued(tableSetNumber);
     }
 
     @Override
@@ -204,12 +530,23 @@ public class SystemTable implements ISystemTableMigratable {
     }
 
     @Override
-    public void removeAllTableInformation() throws RPCException, MovedException, MovedException, MovedException {
+    public synchronized void removeAllTableInformation() throws RPCException, MovedException, MovedException, MovedException {
 
-        preMethodTest();
+        preMutationTest();
         try {
             inMemory.removeAllTableInformation();
+            if (isStandby()) { return; }
+
             persisted.removeAllTableInformation();
+
+            appendToStandbyLog(new SystemTableStandby.Mutation() {
+
+                @Override
+                public void apply(final ISystemTable standbySystemTable) throws Exception {
+
+                    standbySystemTable.removeAllTableInformation();
+                }
+            });
         }
         catch (final RPCException e) {
             e.printStackTrace();
@@ -231,15 +568,37 @@ public class SystemTable implements ISystemTableMigratable {
     }
 
     @Override
-    public void removeConnectionInformation(final IDatabaseInstanceRemote localDatabaseInstance) throws RPCException, MovedException {
+    public synchronized void removeConnectionInformation(final IDatabaseInstanceRemote localDatabaseInstance) throws RPCException, MovedException {
 
-        preMethodTest();
+        preMutationTest();
         inMemory.removeConnectionInformation(localDatabaseInstance);
+        if (isStandby()) { return; }
+
         persisted.removeConnectionInformation(localDatabaseInstance);
+
+        appendToStandbyLog(new SystemTableStandby.Mutation() {
+
+            @Override
+            public void apply(final ISystemTable standbySystemTable) throws Exception {
+
+                standbySystemTable.removeConnectionInformation(localDatabaseInstance);
+            }
+        });
     }
 
     private void preMethodTest() throws RPCException, MovedException {
 
+        final DatabaseID activeLocation = standbyFor;
+        if (activeLocation != null) { throw new MovedException(activeLocation.getURLwithRMIPort()); }
+
+        preMutationTest();
+    }
+
+    /**
+     * Check that this System Table can be changed. Unlike other requests, a hot standby accepts changes.
+     */
+    private void preMutationTest() throws RPCException, MovedException {
+
         if (migrationState.shutdown) {
             throw new RPCException("");
         }
@@ -281,7 +640,11 @@ public class SystemTable implements ISystemTableMigratable {
         migrationState.hasMoved = true;
         migrationState.inMigration = false;
 
-        ((InMemorySystemTable) inMemory).removeTableManagerCheckerThread();
+        ((InMemorySystemTable) inMemory).removeFailureListener();
+
+        if (standby != null) {
+            standby.stop();
+        }
     }
 
     @Override
@@ -291,18 +654,33 @@ public class SystemTable implements ISystemTableMigratable {
     }
 
     @Override
-    public void changeTableManagerLocation(final ITableManagerRemote stub, final TableInfo tableInfo) throws RPCException, MovedException {
+    public synchronized void changeTableManagerLocation(final ITableManagerRemote stub, final TableInfo tableInfo) throws RPCException, MovedException {
 
-        preMethodTest();
+        preMutationTest();
 
         inMemory.changeTableManagerLocation(stub, tableInfo);
+        if (isStandby()) { return; }
+
         persisted.changeTableManagerLocation(stub, tableInfo);
+
+        appendToStandbyLog(new SystemTableStandby.Mutation() {
+
+            @Override
+            public void apply(final ISystemTable standbySystemTable) throws Exception {
+
+                standbySystemTable.changeTableManagerLocation(stub, tableInfo);
+            }
+        });
     }
 
     @Override
     public void shutdown(final boolean shutdown) throws RPCException, MovedException {
 
         migrationState.shutdown = shutdown;
+
+        if (shutdown && standby != null) {
+            standby.stop();
+        }
     }
 
     @Override
@@ -319,19 +697,41 @@ public class SystemTable implements ISystemTableMigratable {
     }
 
     @Override
-    public void addTableManagerStateReplica(final TableInfo table, final DatabaseID replicaLocation, final DatabaseID primaryLocation, final boolean active) throws RPCException, MovedException {
+    public synchronized void addTableManagerStateReplica(final TableInfo table, final DatabaseID replicaLocation, final DatabaseID primaryLocation, final boolean active) throws RPCException, MovedException {
 
-        preMethodTest();
+        preMutationTest();
         inMemory.addTableManagerStateReplica(table, replicaLocation, primaryLocation, active);
+        if (isStandby()) { return; }
+
         persisted.addTableManagerStateReplica(table, replicaLocation, primaryLocation, active);
+
+        appendToStandbyLog(new SystemTableStandby.Mutation() {
+
+            @Override
+            public void apply(final ISystemTable standbySystemTable) throws Exception {
+
+                standbySystemTable.addTableManagerStateReplica(table, replicaLocation, primaryLocation, active);
+            }
+        });
     }
 
     @Override
-    public void removeTableManagerStateReplica(final TableInfo table, final DatabaseID replicaLocation) throws RPCException, MovedException {
+    public synchronized void removeTableManagerStateReplica(final TableInfo table, final DatabaseID replicaLocation) throws RPCException, MovedException {
 
-        preMethodTest();
+        preMutationTest();
         inMemory.removeTableManagerStateReplica(table, replicaLocation);
+        if (isStandby()) { return; }
+
         persisted.removeTableManagerStateReplica(table, replicaLocation);
+
+        appendToStandbyLog(new SystemTableStandby.Mutation() {
+
+            @Override
+            public void apply(final ISystemTable standbySystemTable) throws Exception {
+
+                standbySystemTable.removeTableManagerStateReplica(table, replicaLocation);
+            }
+        });
     }
 
     @Override
@@ -465,7 +865,7 @@ public class SystemTable implements ISystemTableMigratable {
     @Override
     public int getCurrentSystemTableReplication() throws RPCException, MovedException {
 
-        if (database.isClosing() || !database.isConnected()) { return 0; }
+        if (database.isClosing() || !database.isConnected() || isStandby()) { return 0; }
 
         return persisted.getCurrentSystemTableReplication();
     }
@@ -17,6 +17,7 @@ import org.h2o.db.interfaces.IDatabaseInstanceRemote;
 import org.h2o.db.interfaces.ITableManagerRemote;
 import org.h2o.db.manager.interfaces.ISystemTable;
 import org.h2o.db.manager.interfaces.ISystemTableMigratable;
+import org.h2o.db.partitioning.PartitionScheme;
 import org.h2o.db.wrappers.DatabaseInstanceWrapper;
 import org.h2o.db.wrappers.TableManagerWrapper;
 import org.h2o.util.exceptions.MigrationException;
@@ -165,6 +166,130 @@ public class SystemTableProxy extends StreamProxy implements ISystemTableMigrata
         }
     }
 
+    @Override
+    public boolean addPartitionScheme(final PartitionScheme partitionScheme) throws RPCException, MovedException {
+
+        try {
+            final Connection connection = (Connection) startCall("addPartitionScheme");
+            final JSONWriter jw = connection.getJSONwriter();
+            marshaller.serializePartitionScheme(partitionScheme, jw);
+            final JSONReader reader = makeCall(connection);
+            final boolean result = reader.booleanValue();
+            finishCall(connection);
+            return result;
+        }
+        catch (final MovedException e) {
+            throw e;
+        }
+        catch (final Exception e) {
+            dealWithException(e);
+            return false; // not reached
+        }
+    }
+
+    @Override
+    public PartitionScheme getPartitionScheme(final TableInfo ti) throws RPCException, MovedException {
+
+        try {
+            final Connection connection = (Connection) startCall("getPartitionScheme");
+            final JSONWriter jw = connection.getJSONwriter();
+            marshaller.serializeTableInfo(ti, jw);
+            final JSONReader reader = makeCall(connection);
+            final PartitionScheme result = marshaller.deserializePartitionScheme(reader);
+            finishCall(connection);
+            return result;
+        }
+        catch (final MovedException e) {
+            throw e;
+        }
+        catch (final Exception e) {
+            dealWithException(e);
+            return null; // not reached
+        }
+    }
+
+    @Override
+    public boolean removePartitionScheme(final TableInfo ti) throws RPCException, MovedException {
+
+        try {
+            final Connection connection = (Connection) startCall("removePartitionScheme");
+            final JSONWriter jw = connection.getJSONwriter();
+            marshaller.serializeTableInfo(ti, jw);
+            final JSONReader reader = makeCall(connection);
+            final boolean result = reader.booleanValue();
+            finishCall(connection);
+            return result;
+        }
+        catch (final MovedException e) {
+            throw e;
+        }
+        catch (final Exception e) {
+            dealWithException(e);
+            return false; // not reached
+        }
+    }
+
+    @Override
+    public Map<TableInfo, PartitionScheme> getPartitionSchemes() throws RPCException, MovedException {
+
+        try {
+            final Connection connection = (Connection) startCall("getPartitionSchemes");
+            final JSONReader reader = makeCall(connection);
+            final Map<TableInfo, PartitionScheme> result = marshaller.deserializeMapTableInfoPartitionScheme(reader);
+            finishCall(connection);
+            return result;
+        }
+        catch (final MovedException e) {
+            throw e;
+        }
+        catch (final Exception e) {
+            dealWithException(e);
+            return null; // not reached
+        }
+    }
+
+    @Override
+    public long allocateSequenceBlock(final String sequenceName, final long startValue, final long blockLength) throws RPCException, MovedException {
+
+        try {
+            final Connection connection = (Connection) startCall("allocateSequenceBlock");
+            final JSONWriter jw = connection.getJSONwriter();
+            jw.value(sequenceName);
+            jw.value(startValue);
+            jw.value(blockLength);
+            final JSONReader reader = makeCall(connection);
+            final long result = reader.longValue();
+            finishCall(connection);
+            return result;
+        }
+        catch (final MovedException e) {
+            throw e;
+        }
+        catch (final Exception e) {
+            dealWithException(e);
+            return 0; // not reached
+        }
+    }
+
+    @Override
+    public Map<String, Long> getSequenceValues() throws RPCException, MovedException {
+
+        try {
+            final Connection connection = (Connection) startCall("getSequenceValues");
+            final JSONReader reader = makeCall(connection);
+            final Map<String, Long> result = marshaller.deserializeMapStringLong(reader);
+            finishCall(connection);
+            return result;
+        }
+        catch (final MovedException e) {
+            throw e;
+        }
+        catch (final Exception e) {
+            dealWithException(e);
+            return null; // not reached
+        }
+    }
+
     @Override
     public int addConnectionInformation(final DatabaseID databaseID, final DatabaseInstanceWrapper databaseInstanceWrapper) throws RPCException, MovedException, SQLException {
 
@@ -209,6 +334,25 @@ public class SystemTableProxy extends StreamProxy implements ISystemTableMigrata
         }
     }
 
+    @Override
+    public void tableSetNumberIssued(final int tableSetNumber) throws RPCException, MovedException {
+
+        try {
+            final Connection connection = (Connection) startCall("tableSetNumberIssued");
+            final JSONWriter jw = connection.getJSONwriter();
+            jw.value(tableSetNumber);
+            handleVoidCall(makeCall(connection));
+
+            finishCall(connection);
+        }
+        catch (final MovedException e) {
+            throw e;
+        }
+        catch (final Exception e) {
+            dealWithException(e);
+        }
+    }
+
     @Override
     public Set<String> getAllTablesInSchema(final String schemaName) throws RPCException, MovedException {
 
@@ -25,11 +25,14 @@
 
 package org.h2o.db.manager;
 
+import java.math.BigInteger;
 import java.sql.SQLException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Queue;
 import java.util.Set;
+import java.util.TreeMap;
 
 import org.h2.engine.Database;
 import org.h2.table.ReplicaSet;
@@ -38,14 +41,17 @@ import org.h2o.autonomic.numonic.SystemTableDataCollector.CacheKey;
 import org.h2o.autonomic.numonic.SystemTableDataCollector.CacheValue;
 import org.h2o.autonomic.numonic.metric.IMetric;
 import org.h2o.autonomic.numonic.ranking.Requirements;
+import org.h2o.autonomic.settings.Settings;
 import org.h2o.db.id.DatabaseID;
 import org.h2o.db.id.TableInfo;
+import org.h2o.db.interfaces.IDatabaseInstanceRemote;
 import org.h2o.db.interfaces.ITableManagerRemote;
 import org.h2o.db.manager.interfaces.ISystemTableMigratable;
 import org.h2o.db.manager.interfaces.ISystemTableReference;
 import org.h2o.db.manager.recovery.LocatorException;
 import org.h2o.db.manager.recovery.SystemTableAccessException;
 import org.h2o.db.manager.recovery.SystemTableFailureRecovery;
+import org.h2o.db.partitioning.PartitionScheme;
 import org.h2o.db.wrappers.DatabaseInstanceWrapper;
 import org.h2o.db.wrappers.SystemTableWrapper;
 import org.h2o.db.wrappers.TableManagerWrapper;
@@ -83,6 +89,30 @@ public class SystemTableReference implements ISystemTableReference {
 
     private final Map<TableInfo, TableManager> localTableManagers = new HashMap<TableInfo, TableManager>();
 
+    /**
+     * Partition schemes of tables known to be partitioned. Partition schemes never change once created, so entries are only removed when
+     * the table is dropped.
+     */
+    private final Map<TableInfo, PartitionScheme> cachedPartitionSchemes = new HashMap<TableInfo, PartitionScheme>();
+
+    /**
+     * The part of the table directory held by this instance: Table Managers looked up in the System Table on behalf of other instances
+     * (see the TABLE_DIRECTORY_SHARDS setting). The System Table invalidates entries when the Table Manager of a table changes, and entries
+     * expire after TABLE_DIRECTORY_EXPIRY milliseconds in case an invalidation doesn't arrive. This is a read-only cache of the System
+     * Table's record: tables are registered and removed only at the System Table.
+     */
+    private final Map<TableInfo, TableDirectoryEntry> tableDirectory = new HashMap<TableInfo, TableDirectoryEntry>();
+
+    /**
+     * The number of invalidations of the table directory, used to avoid caching a lookup that raced with an invalidation.
+     */
+    private long tableDirectoryInvalidations = 0;
+
+    /**
+     * The instances holding the table directory, by key. Null if they haven't been found yet.
+     */
+    private TreeMap<BigInteger, IDatabaseInstanceRemote> tableDirectoryShards = null;
+
     /**
      * Whether the System Table is running on this node.
      */
@@ -126,6 +156,16 @@ public class SystemTableReference implements ISystemTableReference {
 
     private static final long MAXIMUM_AGE_OF_CACHE_CONTENTS = 0;
 
+    /**
+     * The time, in milliseconds, for which a lookup waits for the System Table to recreate a table's Table Manager.
+     */
+    private static final long RECREATION_WAIT_TIME = 10000;
+
+    /**
+     * The initial time, in milliseconds, between lookups while the System Table recreates a table's Table Manager.
+     */
+    private static final long RECREATION_POLL_INTERVAL = 50;
+
     /*
      * GENERAL DATABASE.
      */
@@ -367,8 +407,8 @@ public class SystemTableReference implements ISystemTableReference {
         /*
          * The Table Manager may exist in one of two local caches, or it may have to be found via the Schema Manager. The caches are tested
          * first, in the following order: CHECK ONE: Look in cache of Local Table Managers. CHECK TWO: The Table Manager is not local. Look
-         * in the cache of Remote Table Manager References. CHECK THREE: The Table Manager proxy is not known. Contact the System Table for
-         * the managers location.
+         * in the cache of Remote Table Manager References. CHECK THREE: The Table Manager proxy is not known. Ask the instance holding
+         * the table's part of the table directory. CHECK FOUR: Contact the System Table for the managers location.
          */
 
         if (useCache) {
@@ -388,71 +428,303 @@ public class SystemTableReference implements ISystemTableReference {
         }
 
         if (!searchOnlyCache) {
-            int lookupCount = 0;
-
-            while (lookupCount < 2) {
-                lookupCount++;
 
+            if (useCache && !isLocal) {
                 /*
-                 * CHECK THREE: The Table Manager proxy is not known. Contact the System Table for the managers location.
+                 * CHECK THREE: Ask the instance holding the part of the table directory that the table falls into. It only contacts the
+                 * System Table if it doesn't already know the table's manager.
                  */
-                try {
-                    if (systemTableWrapper.getSystemTable() == null) {
-                        systemTableWrapper = systemTableRecovery.get();
-                        forceResendMonitoringData();
-                    }
-                    else {
+                final IDatabaseInstanceRemote shard = getTableDirectoryShard(tableInfo);
 
-                        final TableManagerWrapper tableManagerWrapper = systemTableWrapper.getSystemTable().lookup(tableInfo);
+                if (shard != null) {
+                    try {
+                        final ITableManagerRemote tableManager = shard.lookupInTableDirectory(tableInfo);
 
-                        if (tableManagerWrapper == null) { return null; // During a create table operation it is expected that the lookup will return null here.
+                        if (tableManager != null) {
+                            cachedTableManagerReferences.put(tableInfo, tableManager);
                         }
 
-                        // Put this Table Manager in the local cache then return it.
-                        final ITableManagerRemote tableManager = tableManagerWrapper.getTableManager();
-                        cachedTableManagerReferences.put(tableInfo, tableManager);
-
                         return tableManager;
                     }
+                    catch (final Exception e) {
+                        ErrorHandling.errorNoEvent("Couldn't look up " + tableInfo + " in the table directory: " + e.getMessage());
+                        resetTableDirectoryShards();
+                    }
                 }
-                catch (final MovedException e) {
-                    ErrorHandling.errorNoEvent("Current System Table reference points to System Table that has moved to: " + e.getMessage());
-                    handleMovedException(e);
+            }
+
+            if (!useCache && !isLocal) {
+                /*
+                 * The cache is bypassed when a cached reference has stopped working, for example because the Table Manager has moved. The
+                 * entry held in the table directory may be just as stale, so it is dropped too.
+                 */
+                invalidateTableDirectoryShardEntry(tableInfo);
+            }
+
+            /*
+             * CHECK FOUR: Contact the System Table for the manager's location.
+             */
+            final ITableManagerRemote tableManager = lookupInSystemTable(tableInfo);
+
+            if (tableManager != null) {
+                // Put this Table Manager in the local cache then return it.
+                cachedTableManagerReferences.put(tableInfo, tableManager);
+            }
+
+            return tableManager;
+        }
+
+        //only using local cache so we haven't looked at the System Table.
+        return null;
+
+    }
+
+    /**
+     * Look up the Table Manager of a table in the System Table.
+     * 
+     * @return the Table Manager, or null if the System Table doesn't know the table.
+     */
+    private ITableManagerRemote lookupInSystemTable(final TableInfo tableInfo) throws SQLException {
+
+        int lookupCount = 0;
+
+        while (lookupCount < 2) {
+            lookupCount++;
+
+            try {
+                if (systemTableWrapper.getSystemTable() == null) {
+                    systemTableWrapper = systemTableRecovery.get();
+                    forceResendMonitoringData();
                 }
-                catch (final RPCException e) {
-                    ErrorHandling.errorNoEvent("Error trying to connect to existing System Table reference at " + systemTableWrapper.getURL());
+                else {
 
-                    try {
-                        systemTableWrapper = systemTableRecovery.get();
-                    }
-                    catch (final LocatorException e1) {
-                        ErrorHandling.errorNoEvent("Couldn't find locator servers.");
-                        db.setConnected(false);
-                        throw new SQLException("Couldn't find locator servers.");
-                    }
-                    catch (final SystemTableAccessException e1) {
+                    final TableManagerWrapper tableManagerWrapper = lookupWaitingForRecreation(tableInfo);
 
-                        ErrorHandling.errorNoEvent("Failed to create System Table.");
-                        throw new SQLException("Failed to create System Table.");
+                    if (tableManagerWrapper == null) { return null; // During a create table operation it is expected that the lookup will return null here.
                     }
+
+                    return tableManagerWrapper.getTableManager();
+                }
+            }
+            catch (final MovedException e) {
+                ErrorHandling.errorNoEvent("Current System Table reference points to System Table that has moved to: " + e.getMessage());
+                handleMovedException(e);
+            }
+            catch (final RPCException e) {
+                ErrorHandling.errorNoEvent("Error trying to connect to existing System Table reference at " + systemTableWrapper.getURL());
+
+                try {
+                    systemTableWrapper = systemTableRecovery.get();
                 }
-                catch (final LocatorException e) {
+                catch (final LocatorException e1) {
+                    ErrorHandling.errorNoEvent("Couldn't find locator servers.");
                     db.setConnected(false);
                     throw new SQLException("Couldn't find locator servers.");
                 }
-                catch (final SystemTableAccessException e) {
-                    db.setConnected(false);
+                catch (final SystemTableAccessException e1) {
+
+                    ErrorHandling.errorNoEvent("Failed to create System Table.");
                     throw new SQLException("Failed to create System Table.");
                 }
             }
+            catch (final LocatorException e) {
+                db.setConnected(false);
+                throw new SQLException("Couldn't find locator servers.");
+            }
+            catch (final SystemTableAccessException e) {
+                db.setConnected(false);
+                throw new SQLException("Failed to create System Table.");
+            }
+        }
+
+        db.setConnected(false);
+        throw new SQLException("Failed to find System Table.");
+    }
+
+    /**
+     * Look up a table in the System Table. If the System Table is recreating the table's Table Manager the lookup is repeated, backing off,
+     * until the Table Manager has been recreated or {@link #RECREATION_WAIT_TIME} has passed.
+     */
+    private TableManagerWrapper lookupWaitingForRecreation(final TableInfo tableInfo) throws RPCException, MovedException {
+
+        final long deadline = System.currentTimeMillis() + RECREATION_WAIT_TIME;
+        long interval = RECREATION_POLL_INTERVAL;
+
+        TableManagerWrapper tableManagerWrapper = systemTableWrapper.getSystemTable().lookup(tableInfo);
+
+        while (tableManagerWrapper != null && tableManagerWrapper.getTableManager() == null && System.currentTimeMillis() < deadline) {
+
+            try {
+                Thread.sleep(interval);
+            }
+            catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
 
-            db.setConnected(false);
-            throw new SQLException("Failed to find System Table.");
+            interval = Math.min(interval * 2, 1000);
+            tableManagerWrapper = systemTableWrapper.getSystemTable().lookup(tableInfo);
         }
 
-        //only using local cache so we haven't looked at the System Table.
-        return null;
+        return tableManagerWrapper;
+    }
+
+    @Override
+    public ITableManagerRemote lookupInTableDirectory(final TableInfo tableInfo) throws SQLException {
+
+        final TableInfo key = tableInfo.getGenericTableInfo();
+        final long invalidationsBeforeLookup;
+
+        synchronized (tableDirectory) {
+            final TableDirectoryEntry entry = tableDirectory.get(key);
+
+            if (entry != null) {
+                if (System.currentTimeMillis() < entry.expiry) { return entry.tableManager; }
+
+                tableDirectory.remove(key);
+            }
+
+            invalidationsBeforeLookup = tableDirectoryInvalidations;
+        }
+
+        final ITableManagerRemote tableManager = lookupInSystemTable(key);
+
+        synchronized (tableDirectory) {
+            // Don't cache the result if the System Table changed the entry while it was being looked up.
+            if (tableManager != null && invalidationsBeforeLookup == tableDirectoryInvalidations) {
+                tableDirectory.put(key, new TableDirectoryEntry(tableManager, System.currentTimeMillis() + getTableDirectoryExpiry()));
+            }
+        }
 
+        return tableManager;
+    }
+
+    @Override
+    public void invalidateTableDirectoryEntry(final TableInfo tableInfo) {
+
+        synchronized (tableDirectory) {
+            tableDirectoryInvalidations++;
+
+            if (tableInfo == null) {
+                tableDirectory.clear();
+            }
+            else {
+                tableDirectory.remove(tableInfo.getGenericTableInfo());
+            }
+        }
+    }
+
+    /**
+     * Tell the instance holding the part of the table directory that the given table falls into to forget the table's Table Manager.
+     */
+    private void invalidateTableDirectoryShardEntry(final TableInfo tableInfo) {
+
+        final IDatabaseInstanceRemote shard = getTableDirectoryShard(tableInfo);
+
+        if (shard == null) { return; }
+
+        try {
+            shard.invalidateTableDirectoryEntry(tableInfo);
+        }
+        catch (final Exception e) {
+            ErrorHandling.errorNoEvent("Couldn't invalidate the table directory entry of " + tableInfo + ": " + e.getMessage());
+            resetTableDirectoryShards();
+        }
+    }
+
+    /**
+     * @return the instance holding the part of the table directory that the given table falls into, or null if the table directory isn't
+     *         used or its instances can't be found.
+     */
+    private synchronized IDatabaseInstanceRemote getTableDirectoryShard(final TableInfo tableInfo) {
+
+        final int numberOfShards = getNumberOfTableDirectoryShards();
+
+        if (numberOfShards <= 0 || tableInfo.getFullTableName() == null) { return null; }
+
+        if (tableDirectoryShards == null) {
+            tableDirectoryShards = findTableDirectoryShards(numberOfShards);
+        }
+
+        if (tableDirectoryShards.isEmpty()) { return null; }
+
+        final Entry<BigInteger, IDatabaseInstanceRemote> shard = tableDirectoryShards.ceilingEntry(toBigInteger(keyFactory.generateKey(tableInfo.getGenericTableInfo().getFullTableName())));
+
+        return shard != null ? shard.getValue() : tableDirectoryShards.firstEntry().getValue();
+    }
+
+    /**
+     * Choose the instances holding the table directory: the given number of active instances whose keys follow the System Table's key.
+     * Every instance makes the same choice from the same membership, but a different choice only means that a lookup is answered by an
+     * instance that has to ask the System Table, because any instance can answer for any table.
+     */
+    private TreeMap<BigInteger, IDatabaseInstanceRemote> findTableDirectoryShards(final int numberOfShards) {
+
+        final TreeMap<BigInteger, IDatabaseInstanceRemote> instances = new TreeMap<BigInteger, IDatabaseInstanceRemote>();
+
+        try {
+            for (final DatabaseInstanceWrapper wrapper : systemTableWrapper.getSystemTable().getConnectionInformation().values()) {
+
+                if (!wrapper.isActive() || wrapper.getDatabaseInstance() == null) {
+                    continue;
+                }
+
+                final IDatabaseInstanceRemote instance = wrapper.getURL().equals(db.getID()) ? db.getLocalDatabaseInstance() : wrapper.getDatabaseInstance();
+
+                instances.put(toBigInteger(keyFactory.generateKey(wrapper.getURL().getURL())), instance);
+            }
+        }
+        catch (final Exception e) {
+            ErrorHandling.errorNoEvent("Couldn't find the instances holding the table directory: " + e.getMessage());
+        }
+
+        final TreeMap<BigInteger, IDatabaseInstanceRemote> shards = new TreeMap<BigInteger, IDatabaseInstanceRemote>();
+
+        final BigInteger start = toBigInteger(systemTableKey);
+        for (final Entry<BigInteger, IDatabaseInstanceRemote> instance : instances.tailMap(start).entrySet()) {
+            if (shards.size() < numberOfShards) {
+                shards.put(instance.getKey(), instance.getValue());
+            }
+        }
+        for (final Entry<BigInteger, IDatabaseInstanceRemote> instance : instances.headMap(start).entrySet()) {
+            if (shards.size() < numberOfShards) {
+                shards.put(instance.getKey(), instance.getValue());
+            }
+        }
+
+        return shards;
+    }
+
+    /**
+     * Forget the instances holding the table directory, so they are found again on the next lookup. Called when one of them can't be
+     * contacted.
+     */
+    private synchronized void resetTableDirectoryShards() {
+
+        tableDirectoryShards = null;
+    }
+
+    private int getNumberOfTableDirectoryShards() {
+
+        final Settings settings = db.getDatabaseSettings();
+
+        if (settings == null || settings.get("TABLE_DIRECTORY_SHARDS") == null) { return 0; }
+
+        return Integer.parseInt(settings.get("TABLE_DIRECTORY_SHARDS"));
+    }
+
+    private long getTableDirectoryExpiry() {
+
+        final Settings settings = db.getDatabaseSettings();
+
+        if (settings == null || settings.get("TABLE_DIRECTORY_EXPIRY") == null) { return 0; }
+
+        return Long.parseLong(settings.get("TABLE_DIRECTORY_EXPIRY"));
+    }
+
+    private static BigInteger toBigInteger(final IKey key) {
+
+        return new BigInteger(key.toString(16), 16);
     }
 
     @Override
@@ -519,6 +791,78 @@ public class SystemTableReference implements ISystemTableReference {
         systemTableWrapper.getSystemTable().removeAllTableInformation();
     }
 
+    @Override
+    public PartitionScheme lookupPartitionScheme(final TableInfo tableInfo, final boolean useCache) throws RPCException, MovedException {
+
+        final TableInfo key = tableInfo.getGenericTableInfo();
+
+        if (useCache) {
+            synchronized (cachedPartitionSchemes) {
+                final PartitionScheme cached = cachedPartitionSchemes.get(key);
+                if (cached != null) { return cached; }
+            }
+        }
+
+        final PartitionScheme scheme = systemTableWrapper.getSystemTable().getPartitionScheme(key);
+
+        if (scheme != null) {
+            synchronized (cachedPartitionSchemes) {
+                cachedPartitionSchemes.put(key, scheme);
+            }
+        }
+
+        return scheme;
+    }
+
+    @Override
+    public boolean addPartitionScheme(final PartitionScheme partitionScheme) throws RPCException, MovedException {
+
+        final boolean added = systemTableWrapper.getSystemTable().addPartitionScheme(partitionScheme);
+
+        if (added) {
+            synchronized (cachedPartitionSchemes) {
+                cachedPartitionSchemes.put(partitionScheme.getTableInfo(), partitionScheme);
+            }
+        }
+
+        return added;
+    }
+
+    @Override
+    public void removePartitionScheme(final TableInfo tableInfo) throws RPCException, MovedException {
+
+        synchronized (cachedPartitionSchemes) {
+            cachedPartitionSchemes.remove(tableInfo.getGenericTableInfo());
+        }
+
+        systemTableWrapper.getSystemTable().removePartitionScheme(tableInfo);
+    }
+
+    @Override
+    public long allocateSequenceBlock(final String sequenceName, final long startValue, final long blockLength) throws SQLException {
+
+        for (int attempt = 1;; attempt++) {
+            try {
+                return systemTableWrapper.getSystemTable().allocateSequenceBlock(sequenceName, startValue, blockLength);
+            }
+            catch (final MovedException e) {
+                if (attempt == 2) { throw new SQLException("System Table has moved, so a block of sequence " + sequenceName + " couldn't be allocated."); }
+
+                handleMovedException(e);
+            }
+            catch (final RPCException e) {
+                if (attempt == 2) { throw new SQLException("Couldn't contact the System Table to allocate a block of sequence " + sequenceName + ": " + e.getMessage()); }
+
+                try {
+                    systemTableWrapper = systemTableRecovery.get();
+                }
+                catch (final Exception e1) {
+                    throw new SQLException("Couldn't find the System Table to allocate a block of sequence " + sequenceName + ".");
+                }
+            }
+        }
+    }
+
     @Override
     public Map<TableInfo, TableManager> getLocalTableManagers() {
 
@@ -582,4 +926,22 @@ public class SystemTableReference implements ISystemTableReference {
         return timeOfLastUpdate + MAXIMUM_AGE_OF_CACHE_CONTENTS > System.currentTimeMillis();
     }
 
+    /**
+     * A Table Manager held in this instance's part of the table directory.
+     */
+    private static final class TableDirectoryEntry {
+
+        private final ITableManagerRemote tableManager;
+
+        /**
+         * The time after which the entry is looked up in the System Table again.
+         */
+        private final long expiry;
+
+        private TableDirectoryEntry(final ITableManagerRemote tableManager, final long expiry) {
+
+            this.tableManager = tableManager;
+            this.expiry = expiry;
+        }
+    }
 }
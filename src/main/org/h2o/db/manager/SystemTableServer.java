@@ -12,6 +12,7 @@ import org.h2o.db.id.TableInfo;
 import org.h2o.db.interfaces.IDatabaseInstanceRemote;
 import org.h2o.db.interfaces.ITableManagerRemote;
 import org.h2o.db.manager.interfaces.ISystemTableMigratable;
+import org.h2o.db.partitioning.PartitionScheme;
 import org.h2o.db.wrappers.DatabaseInstanceWrapper;
 import org.json.JSONException;
 import org.json.JSONWriter;
@@ -186,6 +187,78 @@ public class SystemTableServer extends ApplicationServer {
             }
         });
 
+        // public boolean addPartitionScheme(PartitionScheme partitionScheme) throws RPCException, MovedException;
+
+        handler_map.put("addPartitionScheme", new IHandler() {
+
+            @Override
+            public void execute(final JSONReader args, final JSONWriter response) throws Exception {
+
+                final PartitionScheme p0 = marshaller.deserializePartitionScheme(args);
+                response.value(system_table.addPartitionScheme(p0));
+            }
+        });
+
+        // public PartitionScheme getPartitionScheme(TableInfo ti) throws RPCException, MovedException;
+
+        handler_map.put("getPartitionScheme", new IHandler() {
+
+            @Override
+            public void execute(final JSONReader args, final JSONWriter response) throws Exception {
+
+                final TableInfo p0 = marshaller.deserializeTableInfo(args);
+                marshaller.serializePartitionScheme(system_table.getPartitionScheme(p0), response);
+            }
+        });
+
+        // public boolean removePartitionScheme(TableInfo ti) throws RPCException, MovedException;
+
+        handler_map.put("removePartitionScheme", new IHandler() {
+
+            @Override
+            public void execute(final JSONReader args, final JSONWriter response) throws Exception {
+
+                final TableInfo p0 = marshaller.deserializeTableInfo(args);
+                response.value(system_table.removePartitionScheme(p0));
+            }
+        });
+
+        // public Map<TableInfo, PartitionScheme> getPartitionSchemes() throws RPCException, MovedException;
+
+        handler_map.put("getPartitionSchemes", new IHandler() {
+
+            @Override
+            public void execute(final JSONReader args, final JSONWriter response) throws Exception {
+
+                marshaller.serializeMapTableInfoPartitionScheme(system_table.getPartitionSchemes(), response);
+            }
+        });
+
+        // public long allocateSequenceBlock(String sequenceName, long startValue, long blockLength) throws RPCException, MovedException;
+
+        handler_map.put("allocateSequenceBlock", new IHandler() {
+
+            @Override
+            public void execute(final JSONReader args, final JSONWriter response) throws Exception {
+
+                final String p0 = args.stringValue();
+                final long p1 = args.longValue();
+                final long p2 = args.longValue();
+                response.value(system_table.allocateSequenceBlock(p0, p1, p2));
+            }
+        });
+
+        // public Map<String, Long> getSequenceValues() throws RPCException, MovedException;
+
+        handler_map.put("getSequenceValues", new IHandler() {
+
+            @Override
+            public void execute(final JSONReader args, final JSONWriter response) throws Exception {
+
+                marshaller.serializeMapStringLong(system_table.getSequenceValues(), response);
+            }
+        });
+
         // public int addConnectionInformation(DatabaseID databaseURL, DatabaseInstanceWrapper databaseInstanceWrapper) throws RPCException, MovedException, SQLException;
 
         handler_map.put("addConnectionInformation", new IHandler() {
@@ -210,6 +283,19 @@ public class SystemTableServer extends ApplicationServer {
             }
         });
 
+        // public void tableSetNumberIssued(int tableSetNumber) throws RPCException, MovedException;
+
+        handler_map.put("tableSetNumberIssued", new IHandler() {
+
+            @Override
+            public void execute(final JSONReader args, final JSONWriter response) throws Exception {
+
+                final int p0 = args.intValue();
+                system_table.tableSetNumberIssued(p0);
+                completeVoidResponse(response);
+            }
+        });
+
         //      public Set<String> getAllTablesInSchema(String schemaName) throws RPCException, MovedException;
 
         handler_map.put("getAllTablesInSchema", new IHandler() {
@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2009-2010 School of Computer Science, University of St Andrews. All rights reserved. Project Homepage:
+ * http://blogs.cs.st-andrews.ac.uk/h2o H2O is free software: you can redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version. H2O
+ * is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details. You should have received a copy of the GNU General
+ * Public License along with H2O. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.h2o.db.manager;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.h2.engine.Database;
+import org.h2o.db.DatabaseInstanceProxy;
+import org.h2o.db.id.DatabaseID;
+import org.h2o.db.manager.interfaces.ISystemTable;
+
+import uk.ac.standrews.cs.nds.util.Diagnostic;
+import uk.ac.standrews.cs.nds.util.DiagnosticLevel;
+import uk.ac.standrews.cs.nds.util.ErrorHandling;
+
+/**
+ * Streams the changes made to the active System Table to a hot standby on another instance.
+ *
+ * <p>The standby is started on an instance which holds a replica of the System Table's persisted state, so that it is one of the
+ * locations given by the locator server. It copies the in-memory state of the System Table when it starts, and then applies every change
+ * in the order it was made. Changes are sent by a single thread, so the active System Table never waits for the standby. If the standby
+ * can't be contacted it is dropped, and a new one is started (with a fresh copy of the state) when the next change is made.
+ *
+ * <p>Each change is applied to the active System Table and added to the log while holding the System Table's lock, so the log is in the
+ * order the changes were applied. Re-applying a change is harmless, so a change made while the standby is copying the state may be
+ * applied twice but is never lost.
+ */
+public class SystemTableStandby {
+
+    /**
+     * A change to the state of the System Table.
+     */
+    interface Mutation {
+
+        void apply(ISystemTable standby) throws Exception;
+    }
+
+    private final Database database;
+
+    /**
+     * The minimum time between attempts to start a standby.
+     */
+    private final long retryInterval;
+
+    /**
+     * The thread which sends changes to the standby, in order. Null if there is no standby.
+     */
+    private ExecutorService log = null;
+
+    /**
+     * The standby, which is null until it has been started on the log thread.
+     */
+    private volatile ISystemTable standby = null;
+
+    private long lastStartAttempt = 0;
+
+    private boolean stopped = false;
+
+    public SystemTableStandby(final Database database, final long retryInterval) {
+
+        this.database = database;
+        this.retryInterval = retryInterval;
+    }
+
+    /**
+     * Start a standby if there isn't one and an attempt hasn't been made recently.
+     */
+    public synchronized void check() {
+
+        if (stopped || log != null || System.currentTimeMillis() - lastStartAttempt < retryInterval) { return; }
+
+        lastStartAttempt = System.currentTimeMillis();
+
+        final ExecutorService newLog = Executors.newSingleThreadExecutor();
+        newLog.submit(new Runnable() {
+
+            @Override
+            public void run() {
+
+                start(newLog);
+            }
+        });
+
+        log = newLog;
+    }
+
+    /**
+     * Add a change to the log of changes sent to the standby.
+     */
+    public synchronized void append(final Mutation mutation) {
+
+        check();
+
+        if (log == null) { return; } // no standby, and it is too soon to try to start one. The next one will copy this change.
+
+        final ExecutorService thisLog = log;
+        thisLog.submit(new Runnable() {
+
+            @Override
+            public void run() {
+
+                final ISystemTable target = standby;
+                if (target == null) { return; }
+
+                try {
+                    mutation.apply(target);
+                }
+                catch (final Exception e) {
+                    ErrorHandling.exceptionError(e, "Failed to send a System Table change to the hot standby. The standby will be restarted.");
+                    drop(thisLog);
+                }
+            }
+        });
+    }
+
+    /**
+     * Stop sending changes to the standby.
+     */
+    public synchronized void stop() {
+
+        stopped = true;
+
+        if (log != null) {
+            log.shutdownNow();
+            log = null;
+        }
+        standby = null;
+    }
+
+    /**
+     * Called on the log thread to start the standby on one of the instances holding a replica of System Table state.
+     */
+    private void start(final ExecutorService thisLog) {
+
+        for (final String location : database.getMetaDataReplicaManager().getReplicaLocations(true)) {
+
+            final DatabaseID standbyLocation = DatabaseID.parseURL(location);
+            if (standbyLocation.equals(database.getID())) {
+                continue;
+            }
+
+            try {
+                standby = DatabaseInstanceProxy.getProxy(standbyLocation).startSystemTableStandby(database.getID());
+
+                Diagnostic.traceNoEvent(DiagnosticLevel.FINAL, database.getID() + ": started hot standby of the System Table on " + standbyLocation);
+                return;
+            }
+            catch (final Exception e) {
+                Diagnostic.traceNoEvent(DiagnosticLevel.FULL, "Failed to start hot standby of the System Table on " + standbyLocation + ": " + e.getMessage());
+            }
+        }
+
+        // There is nowhere to start a standby yet. Try again later.
+        drop(thisLog);
+    }
+
+    private synchronized void drop(final ExecutorService failedLog) {
+
+        if (log != failedLog) { return; }
+
+        log.shutdownNow();
+        log = null;
+        standby = null;
+    }
+}
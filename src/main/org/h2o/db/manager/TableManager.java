@@ -46,12 +46,13 @@ import org.h2.command.Parser;
 import org.h2.engine.Database;
 import org.h2.engine.Session;
 import org.h2.result.LocalResult;
+import org.h2.value.Value;
+import org.h2.value.ValueNull;
 import org.h2o.autonomic.numonic.ThresholdChecker;
 import org.h2o.autonomic.numonic.metric.CreateReplicaMetric;
 import org.h2o.autonomic.numonic.metric.IMetric;
 import org.h2o.autonomic.numonic.ranking.Requirements;
 import org.h2o.autonomic.numonic.threshold.Threshold;
-import org.h2o.autonomic.settings.Settings;
 import org.h2o.db.id.DatabaseID;
 import org.h2o.db.id.DatabaseURL;
 import org.h2o.db.id.TableInfo;
@@ -59,13 +60,18 @@ import org.h2o.db.interfaces.IDatabaseInstanceRemote;
 import org.h2o.db.interfaces.ITableManagerRemote;
 import org.h2o.db.manager.interfaces.ISystemTableMigratable;
 import org.h2o.db.manager.monitoring.tablemanager.ITableManagerMonitor;
+import org.h2o.db.manager.monitoring.tablemanager.LockRequestPercentagesPerInstance;
+import org.h2o.db.manager.monitoring.tablemanager.ReplicationFactorPolicy;
 import org.h2o.db.manager.monitoring.tablemanager.TableManagerMonitor;
+import org.h2o.db.manager.monitorthreads.IFailureListener;
 import org.h2o.db.query.TableProxy;
 import org.h2o.db.query.asynchronous.CommitResult;
 import org.h2o.db.query.locking.ILockingTable;
 import org.h2o.db.query.locking.LockRequest;
 import org.h2o.db.query.locking.LockType;
 import org.h2o.db.query.locking.LockingTable;
+import org.h2o.db.replication.ConsistencyLevel;
+import org.h2o.db.replication.ReadConsistency;
 import org.h2o.db.replication.ReplicaManager;
 import org.h2o.db.wrappers.DatabaseInstanceWrapper;
 import org.h2o.util.exceptions.MigrationException;
@@ -94,7 +100,7 @@ import uk.ac.standrews.cs.stachord.interfaces.IChordRemoteReference;
  * 
  * @author Angus Macdonald (angus@cs.st-andrews.ac.uk)
  */
-public class TableManager extends PersistentManager implements ITableManagerRemote, Observer {
+public class TableManager extends PersistentManager implements ITableManagerRemote, Observer, IFailureListener {
 
     private static final long serialVersionUID = 3347740231310946286L;
 
@@ -120,6 +126,11 @@ public class TableManager extends PersistentManager implements ITableManagerRemo
 
     public static final String TABLEMANAGERSTATE = "H2O_TM_TABLEMANAGERS";
 
+    /**
+     * Name of the table storing the consistency level of each table, where it differs from the database default.
+     */
+    public static final String CONSISTENCY = "H2O_TM_CONSISTENCY";
+
     /**
      * The name of the table that this Table Manager is responsible for.
      */
@@ -170,16 +181,50 @@ public class TableManager extends PersistentManager implements ITableManagerRemo
      */
     private static final int MIGRATION_TIMEOUT = 10000;
 
+    /**
+     * The session ID of the lock taken by this Table Manager while it drops replicas. Sessions are numbered from 1, so it can't be mistaken
+     * for a session of this instance.
+     */
+    private static final int MAINTENANCE_SESSION_ID = -1;
+
+    /**
+     * The number of times, and the interval in milliseconds between them, that the lock needed to drop replicas is requested before the
+     * drop is abandoned.
+     */
+    private static final int MAINTENANCE_LOCK_ATTEMPTS = 20;
+
+    private static final long MAINTENANCE_LOCK_INTERVAL = 500;
+
     private final IChordRemoteReference location;
 
     private final String fullName;
 
-    private final int desiredRelationReplicationFactor;
+    /**
+     * The number of replicas the table should have. This is given by the RELATION_REPLICATION_FACTOR setting, and is changed as the table's
+     * workload changes if the ADAPTIVE_REPLICATION setting is on. A changed factor is persisted with the consistency level, so it is kept
+     * when the Table Manager is migrated or recreated.
+     */
+    private volatile int desiredRelationReplicationFactor;
 
     private final TableInfo tableInfo;
 
     private final ITableManagerMonitor queryMonitor;
 
+    /**
+     * Decides how the replication factor of the table changes with its workload, or null if it is fixed.
+     */
+    private final ReplicationFactorPolicy replicationFactorPolicy;
+
+    /**
+     * Whether lock requests are recorded by the query monitor (see the QUERY_MONITORING setting).
+     */
+    private final boolean queryMonitoringEnabled;
+
+    /**
+     * The write quorum and read consistency of this table.
+     */
+    private ConsistencyLevel consistencyLevel;
+
     /**
      * True if the table has already been created and this new instance is being created as part of a Table
      * Manager migration or recreation. False if this is being created as part of a CREATE TABLE operation.
@@ -241,11 +286,19 @@ public class TableManager extends PersistentManager implements ITableManagerRemo
 
         queryMonitor = new TableManagerMonitor();
 
+        replicationFactorPolicy = ReplicationFactorPolicy.fromSettings(database.getDatabaseSettings());
+
+        queryMonitoringEnabled = replicationFactorPolicy != null || Boolean.parseBoolean(database.getDatabaseSettings().get("QUERY_MONITORING"));
+
+        consistencyLevel = ConsistencyLevel.getDefault(database.getDatabaseSettings());
+
         getDB().getTableManagerServer().exportObject(this);
 
         if (getDB().getNumonic() != null) {
             getDB().getNumonic().addObserver(this);
         }
+
+        getDB().getFailureDetector().addListener(this);
     }
 
     public static String getMetaTableName(final String databaseName, final String tablePostfix) {
@@ -280,6 +333,10 @@ public class TableManager extends PersistentManager implements ITableManagerRemo
             super.addConnectionInformation(tableDetails.getDatabaseID(), true);
             super.addReplicaInformation(tableDetails);
             replicaManager.add(getDatabaseInstance(tableDetails.getDatabaseID()));
+            db.getFailureDetector().monitor(tableDetails.getDatabaseID());
+
+            // An instance that has kept the write lock doesn't know about the new replica, so it must request the lock again.
+            revokeKeptLock(null);
         }
         catch (final SQLException e) {
             ErrorHandling.exceptionError(e, "Adding replica info failed because of this, for table " + tableDetails.getDatabaseID());
@@ -345,6 +402,11 @@ public class TableManager extends PersistentManager implements ITableManagerRemo
         builder.append(" (table_id) ON DELETE CASCADE ,  FOREIGN KEY (connection_id) REFERENCES ");
         builder.append(getMetaTableName(databaseName, TableManager.CONNECTIONS));
         builder.append(" (connection_id));");
+        builder.append("\n\nCREATE TABLE IF NOT EXISTS ");
+        builder.append(getMetaTableName(databaseName, TableManager.CONSISTENCY));
+        builder.append("(table_id INTEGER NOT NULL, write_quorum INT NOT NULL, read_consistency VARCHAR(16) NOT NULL, replication_factor INT, PRIMARY KEY (table_id), FOREIGN KEY (table_id) REFERENCES ");
+        builder.append(getMetaTableName(databaseName, TableManager.TABLES));
+        builder.append(" (table_id) ON DELETE CASCADE);");
         sql += builder.toString();
 
         final Parser parser = new Parser(session, true);
@@ -414,7 +476,26 @@ public class TableManager extends PersistentManager implements ITableManagerRemo
     }
 
     @Override
-    public synchronized TableProxy getTableProxy(LockType lockTypeRequested, final LockRequest lockRequest) throws RPCException, SQLException, MovedException {
+    public TableProxy getTableProxy(final LockType lockTypeRequested, final LockRequest lockRequest) throws RPCException, SQLException, MovedException {
+
+        return getTableProxy(lockTypeRequested, lockRequest, TableProxy.NO_REPLICA_SET_VERSION);
+    }
+
+    @Override
+    public TableProxy getTableProxy(final LockType lockTypeRequested, final LockRequest lockRequest, final long knownReplicaSetVersion) throws RPCException, SQLException, MovedException {
+
+        final TableProxy proxy = grantLock(lockTypeRequested, lockRequest, knownReplicaSetVersion);
+
+        /*
+         * The lock may be held by an instance that kept it after its last transaction. Asking it to give the lock up is a remote call, so it
+         * isn't made while this Table Manager is locked.
+         */
+        if (proxy.getLockGranted() == LockType.NONE && lockTypeRequested != LockType.NONE && revokeKeptLock(lockRequest)) { return grantLock(lockTypeRequested, lockRequest, knownReplicaSetVersion); }
+
+        return proxy;
+    }
+
+    private synchronized TableProxy grantLock(LockType lockTypeRequested, final LockRequest lockRequest, final long knownReplicaSetVersion) throws RPCException, SQLException, MovedException {
 
         preMethodTest();
 
@@ -434,13 +515,64 @@ public class TableManager extends PersistentManager implements ITableManagerRemo
             lockTypeRequested = LockType.WRITE;
         }
 
-        if (Settings.QUERY_MONITORING_ENABLED) {
+        if (queryMonitoringEnabled) {
             queryMonitor.addQueryInformation(lockRequest, lockTypeRequested); //Query Monitoring.
         }
 
         final LockType lockGranted = lockingTable.requestLock(lockTypeRequested, lockRequest);
 
-        return new TableProxy(lockGranted, tableInfo, selectReplicaLocations(lockTypeRequested, lockRequest, isDrop), this, lockRequest, currentUpdateID, lockTypeRequested);
+        if (queryMonitoringEnabled) {
+            queryMonitor.addLockOutcomeInformation(lockRequest, lockGranted);
+        }
+
+        if (isDrop || lockTypeRequested == LockType.CREATE) { return new TableProxy(lockGranted, tableInfo, selectReplicaLocations(lockTypeRequested, lockRequest, isDrop), this, lockRequest, currentUpdateID, lockTypeRequested, consistencyLevel); }
+
+        /*
+         * Other requests are given one of the replica manager's snapshots. If the requesting instance already has the current version it
+         * isn't sent again.
+         */
+        final long replicaSetVersion = replicaManager.getSnapshotVersion();
+        final Map<DatabaseInstanceWrapper, Integer> replicaLocations = knownReplicaSetVersion == replicaSetVersion ? null : selectReplicaLocations(lockTypeRequested, lockRequest, false);
+
+        final TableProxy proxy = new TableProxy(lockGranted, tableInfo, replicaLocations, this, lockRequest, currentUpdateID, lockTypeRequested, consistencyLevel);
+        proxy.setReplicaSetVersion(replicaSetVersion);
+
+        return proxy;
+    }
+
+    /**
+     * Ask the instance holding the write lock on this table to give it up, if it kept the lock after its last transaction committed (see
+     * the STICKY_LOCKS setting). If the lock is in use the instance releases it when the transactions using it finish.
+     * 
+     * @param lockRequest
+     *            the request that couldn't be granted, or null if the lock is being revoked for another reason. Locks held by the same
+     *            instance aren't revoked.
+     * @return true if the lock was given up and has been released.
+     */
+    private boolean revokeKeptLock(final LockRequest lockRequest) {
+
+        final LockRequest holder = lockingTable.getWriteLockHolder();
+
+        if (holder == null || lockRequest != null && holder.getRequestLocation().equals(lockRequest.getRequestLocation())) { return false; }
+
+        try {
+            if (holder.getRequestLocation().getDatabaseInstance().releaseKeptLock(tableInfo, holder)) {
+                synchronized (lockingTable) {
+                    if (holder.equals(lockingTable.getWriteLockHolder())) {
+                        lockingTable.releaseLock(holder);
+                    }
+                }
+                return true;
+            }
+        }
+        catch (final RPCException e) {
+            ErrorHandling.errorNoEvent("Couldn't ask " + holder.getRequestLocation().getURL() + " to give up its lock on " + fullName + ": " + e.getMessage());
+
+            // If the holder has failed the failure detector will release the lock.
+            db.getFailureDetector().monitor(holder.getRequestLocation().getURL());
+        }
+
+        return false;
     }
 
     /**
@@ -449,7 +581,8 @@ public class TableManager extends PersistentManager implements ITableManagerRemo
      * 
      * <p>
      * This decision is currently based on the DESIRED_REPLICATION_FACTOR variable (if the query is a create), the SYNCHRONOUS_UPDATE
-     * variable if the query is another form of update, and the database instance where the request was initiated.
+     * variable if the query is another form of update, the read consistency of the table if the query is a read, and the database instance
+     * where the request was initiated.
      * 
      * @param primaryLocation
      *            The location of the primary copy - also the location of the Table Manager. This location will NOT be returned in the list
@@ -463,7 +596,11 @@ public class TableManager extends PersistentManager implements ITableManagerRemo
      */
     private Map<DatabaseInstanceWrapper, Integer> selectReplicaLocations(final LockType lockType, final LockRequest lockRequest, final boolean isDrop) {
 
-        if (lockType == LockType.READ || lockType == LockType.NONE) { return replicaManager.getAllReplicasOnActiveMachines(); }// else, a more informed decision is needed.
+        if (lockType == LockType.READ || lockType == LockType.NONE) {
+            if (consistencyLevel.getReadConsistency() == ReadConsistency.LATEST) { return replicaManager.getActiveReplicasOnActiveMachines(); }
+
+            return replicaManager.getAllReplicasOnActiveMachines();
+        }// else, a more informed decision is needed.
 
         /*
          * The set of machines onto which new replicas will be added.
@@ -592,7 +729,7 @@ public class TableManager extends PersistentManager implements ITableManagerRemo
             if (commit) {
                 Diagnostic.traceNoEvent(DiagnosticLevel.FULL, "Query committed. Replica set will be updated.");
                 //The method call below changes update IDs which is why rollbacks don't call it.
-                updateActiveReplicaSet(commit, committedQueries, asynchronousCommit, lockType);
+                updateActiveReplicaSet(commit, committedQueries, asynchronousCommit, lockType, lockRequest);
             }
             else {
                 Diagnostic.traceNoEvent(DiagnosticLevel.FULL, "Query was not committed. Some replicas may be on inactive instances.");
@@ -615,9 +752,80 @@ public class TableManager extends PersistentManager implements ITableManagerRemo
                 }
                 newReplicasAvailable = false;
             }
+
+            adaptReplicationFactor();
         }
     }
 
+    @Override
+    public void releaseReadLocks(final Collection<LockRequest> readLocks) throws RPCException, MovedException {
+
+        preMethodTest();
+
+        if (readLocks == null) { return; }
+
+        for (final LockRequest lockRequest : readLocks) {
+            if (lockingTable.peekAtLockGranted(lockRequest) == LockType.READ) {
+                lockingTable.releaseLock(lockRequest);
+            }
+        }
+    }
+
+    @Override
+    public synchronized boolean lockForOptimisticCommit(final LockRequest lockRequest, final Collection<CommitResult> committedQueries) throws RPCException, MovedException, SQLException {
+
+        preMethodTest();
+
+        if (queryMonitoringEnabled) {
+            queryMonitor.addQueryInformation(lockRequest, LockType.WRITE); //Query Monitoring.
+        }
+
+        final LockType lockGranted = lockingTable.requestLock(LockType.WRITE, lockRequest);
+
+        if (queryMonitoringEnabled) {
+            queryMonitor.addLockOutcomeInformation(lockRequest, lockGranted);
+        }
+
+        if (lockGranted == LockType.NONE) {
+            Diagnostic.traceNoEvent(DiagnosticLevel.FULL, "Optimistic update of " + fullName + " rejected: the table is locked by another transaction.");
+            return false;
+        }
+
+        if (!updatedFromCurrentState(committedQueries)) {
+            Diagnostic.traceNoEvent(DiagnosticLevel.FULL, "Optimistic update of " + fullName + " rejected: the table has been changed since the update was made.");
+            lockingTable.releaseLock(lockRequest);
+            return false;
+        }
+
+        // The lock is held until the transaction has committed, and the replica state is only updated then.
+        return true;
+    }
+
+    /**
+     * Whether the given updates were made to every active replica of this table, each starting from the update ID it currently has.
+     */
+    private boolean updatedFromCurrentState(final Collection<CommitResult> committedQueries) {
+
+        if (committedQueries == null) { return false; }
+
+        final Map<DatabaseInstanceWrapper, Integer> activeReplicas = replicaManager.getActiveReplicasOnActiveMachines();
+        final Set<DatabaseInstanceWrapper> updatedReplicas = new HashSet<DatabaseInstanceWrapper>();
+
+        for (final CommitResult commitResult : committedQueries) {
+
+            if (!commitResult.isCommit() || !tableInfo.equals(commitResult.getTable())) {
+                continue;
+            }
+
+            final Integer currentUpdateID = activeReplicas.get(commitResult.getDatabaseInstanceWrapper());
+            if (currentUpdateID == null || currentUpdateID != commitResult.getUpdateID()) { return false; }
+
+            updatedReplicas.add(commitResult.getDatabaseInstanceWrapper());
+        }
+
+        return !updatedReplicas.isEmpty() && updatedReplicas.containsAll(activeReplicas.keySet());
+    }
+
     /**
      * Whether this is a create table request.
      * 
@@ -656,9 +864,10 @@ public class TableManager extends PersistentManager implements ITableManagerRemo
      * @param committedQueries
      * @param asynchronousCommit
      * @param lockType
+     * @param lockRequest the request that held the lock, which carries any write quorum set by the requesting session.
      * @throws SQLException 
      */
-    private void updateActiveReplicaSet(final boolean commit, final Collection<CommitResult> committedQueries, final boolean asynchronousCommit, final LockType lockType) throws SQLException {
+    private void updateActiveReplicaSet(final boolean commit, final Collection<CommitResult> committedQueries, final boolean asynchronousCommit, final LockType lockType, final LockRequest lockRequest) throws SQLException {
 
         // Reads don't change the set of active replicas.
         if (lockType == LockType.WRITE || asynchronousCommit) { // LockType.WRITE == LockType.CREATE in the locking table.
@@ -675,6 +884,27 @@ public class TableManager extends PersistentManager implements ITableManagerRemo
             }
 
             printCurrentActiveReplicas();
+
+            if (commit && !asynchronousCommit) {
+                checkWriteQuorum(lockRequest);
+            }
+        }
+    }
+
+    /**
+     * Report an update whose first part reached fewer replicas than the write quorum of the table, or of the session that made it if it set
+     * one. The quorum is enforced by the requesting instance before it commits, so this can only happen if replicas failed while the update
+     * was being committed. By then the update has committed, so the shortfall is logged rather than returned as an error.
+     */
+    private void checkWriteQuorum(final LockRequest lockRequest) {
+
+        final ConsistencyLevel effectiveLevel = lockRequest == null ? consistencyLevel : consistencyLevel.override(lockRequest.getWriteQuorum(), null);
+
+        final int updated = replicaManager.getActiveReplicas().size();
+        final int updatesNeeded = effectiveLevel.getUpdatesNeededBeforeCommit(replicaManager.getAllReplicasOnActiveMachines().size());
+
+        if (updated < updatesNeeded) {
+            ErrorHandling.errorNoEvent("Only " + updated + " replica(s) of " + fullName + " committed, fewer than the write quorum of " + updatesNeeded + ".");
         }
     }
 
@@ -783,6 +1013,9 @@ public class TableManager extends PersistentManager implements ITableManagerRemo
         inMigration = true;
 
         migrationTime = System.currentTimeMillis();
+
+        // Locks aren't moved to the new Table Manager, so an instance that has kept the write lock must request it again from there.
+        revokeKeptLock(null);
     }
 
     @Override
@@ -798,6 +1031,103 @@ public class TableManager extends PersistentManager implements ITableManagerRemo
          * Obtain replica manager.
          */
         replicaManager = ReplicaManager.recreateReplicaManager(otherTableManager);
+        monitorReplicaLocations();
+
+        consistencyLevel = otherTableManager.getConsistencyLevel();
+        desiredRelationReplicationFactor = otherTableManager.getReplicationFactor();
+    }
+
+    @Override
+    public ConsistencyLevel getConsistencyLevel() throws RPCException, MovedException {
+
+        preMethodTest();
+
+        return consistencyLevel;
+    }
+
+    @Override
+    public int getReplicationFactor() throws RPCException, MovedException {
+
+        preMethodTest();
+
+        return desiredRelationReplicationFactor;
+    }
+
+    @Override
+    public synchronized void setConsistencyLevel(final ConsistencyLevel consistencyLevel) throws RPCException, MovedException, SQLException {
+
+        preMethodTest();
+
+        final ConsistencyLevel oldConsistencyLevel = this.consistencyLevel;
+        this.consistencyLevel = consistencyLevel;
+
+        if (!persistConsistencyLevel()) {
+            this.consistencyLevel = oldConsistencyLevel;
+            throw new SQLException("Failed to persist the consistency level of " + fullName + ".");
+        }
+
+        /*
+         * The read consistency decides which snapshot reads are given, so instances holding the old one must be sent the new one. This is
+         * done while holding the lock that lock requests are granted under, so no request can be given the new version with a snapshot
+         * chosen under the old consistency level.
+         */
+        replicaManager.newSnapshotVersion();
+
+        Diagnostic.traceNoEvent(DiagnosticLevel.INIT, "Consistency level of " + fullName + " set to " + consistencyLevel);
+    }
+
+    /**
+     * Store the current consistency level and replication factor of this table in the Table Manager's meta-data tables.
+     * @return true if the consistency level was stored successfully.
+     */
+    private boolean persistConsistencyLevel() {
+
+        final String consistencyRelation = getMetaTableName(db.getID().sanitizedLocation(), CONSISTENCY);
+
+        try {
+            final int tableID = getTableID(getTableInfo());
+
+            final List<String> updates = new LinkedList<String>();
+            updates.add("DELETE FROM " + consistencyRelation + " WHERE table_id=" + tableID + ";");
+            updates.add("INSERT INTO " + consistencyRelation + " VALUES (" + tableID + ", " + consistencyLevel.getWriteQuorum() + ", '" + consistencyLevel.getReadConsistency() + "', " + desiredRelationReplicationFactor + ");");
+            executeUpdate(updates);
+
+            return true;
+        }
+        catch (final SQLException e) {
+            ErrorHandling.exceptionError(e, "Failed to persist the consistency level of " + fullName + ".");
+            return false;
+        }
+    }
+
+    /**
+     * Load the consistency level and replication factor of this table from the meta-data tables of a previous Table Manager. If none was
+     * stored the defaults are kept.
+     * @param oldPrimaryDatabaseName the name of the database which held the previous Table Manager.
+     */
+    private void recreateConsistencyLevel(final String oldPrimaryDatabaseName) {
+
+        final String oldTableRelation = getMetaTableName(oldPrimaryDatabaseName, TABLES);
+        final String oldConsistencyRelation = getMetaTableName(oldPrimaryDatabaseName, CONSISTENCY);
+
+        final String sql = "SELECT LOCAL ONLY write_quorum, read_consistency, replication_factor FROM " + oldConsistencyRelation + ", " + oldTableRelation + " WHERE tablename = '" + tableName + "' AND schemaname='" + schemaName + "' AND " + oldTableRelation + ".table_id=" + oldConsistencyRelation + ".table_id;";
+
+        try {
+            final LocalResult rs = executeQuery(sql);
+
+            if (rs.next()) {
+                consistencyLevel = new ConsistencyLevel(rs.currentRow()[0].getInt(), ReadConsistency.valueOf(rs.currentRow()[1].getString()));
+                replicaManager.newSnapshotVersion();
+
+                if (rs.currentRow()[2] != ValueNull.INSTANCE) {
+                    desiredRelationReplicationFactor = rs.currentRow()[2].getInt();
+                }
+            }
+        }
+        catch (final Exception e) {
+            // Meta-data created before consistency levels were introduced won't contain this table.
+            Diagnostic.traceNoEvent(DiagnosticLevel.INIT, "No consistency level found for " + fullName + ". The default will be used: " + consistencyLevel);
+        }
     }
 
     @Override
@@ -822,6 +1152,10 @@ public class TableManager extends PersistentManager implements ITableManagerRemo
     public void shutdown(final boolean shutdown) throws RPCException, MovedException {
 
         this.shutdown = shutdown;
+
+        if (shutdown) {
+            db.getFailureDetector().removeListener(this);
+        }
     }
 
     @Override
@@ -833,8 +1167,6 @@ public class TableManager extends PersistentManager implements ITableManagerRemo
     @Override
     public void recreateReplicaManagerState(final String oldPrimaryDatabaseName) throws RPCException, SQLException {
 
-        final ReplicaManager rm = new ReplicaManager();
-
         /*
          * Get Replica information from persisted state.
          */
@@ -855,10 +1187,29 @@ public class TableManager extends PersistentManager implements ITableManagerRemo
             throw e;
         }
 
-        final List<DatabaseInstanceWrapper> replicaLocations = new LinkedList<DatabaseInstanceWrapper>();
+        final List<DatabaseID> replicaIDs = new LinkedList<DatabaseID>();
         while (rs.next()) {
+            replicaIDs.add(new DatabaseID(new DatabaseURL(rs.currentRow()[0].getString(), rs.currentRow()[1].getString(), rs.currentRow()[3].getInt(), rs.currentRow()[2].getString(), false, rs.currentRow()[4].getInt())));
+        }
+
+        recreateReplicaManagerState(oldPrimaryDatabaseName, replicaIDs);
+    }
+
+    /**
+     * Recreate the replica manager from replica locations that have already been read from the old primary's meta-tables, for example by
+     * {@link #loadReplicaState(Database, String)}.
+     * 
+     * @param oldPrimaryDatabaseName
+     *            the sanitized location of the instance that previously held this Table Manager.
+     * @param replicaIDs
+     *            the active replica locations recorded in the old primary's meta-tables.
+     */
+    public void recreateReplicaManagerState(final String oldPrimaryDatabaseName, final List<DatabaseID> replicaIDs) throws RPCException, SQLException {
 
-            final DatabaseID dbID = new DatabaseID(new DatabaseURL(rs.currentRow()[0].getString(), rs.currentRow()[1].getString(), rs.currentRow()[3].getInt(), rs.currentRow()[2].getString(), false, rs.currentRow()[4].getInt()));
+        final ReplicaManager rm = new ReplicaManager();
+
+        final List<DatabaseInstanceWrapper> replicaLocations = new LinkedList<DatabaseInstanceWrapper>();
+        for (final DatabaseID dbID : replicaIDs) {
 
             // Don't include the URL of the old instance unless it is still running.
             final DatabaseInstanceWrapper replicaLocation = getDatabaseInstance(dbID);
@@ -883,6 +1234,51 @@ public class TableManager extends PersistentManager implements ITableManagerRemo
         rm.add(replicaLocations);
 
         replicaManager = rm;
+        monitorReplicaLocations();
+
+        recreateConsistencyLevel(oldPrimaryDatabaseName);
+    }
+
+    /**
+     * Read the active replica locations of every table whose Table Manager was held on the given instance, from the replicated copy of
+     * that instance's meta-tables. This is a single query, rather than one per table.
+     * 
+     * @param db
+     *            the local database, which holds a replica of the meta-tables.
+     * @param oldPrimaryDatabaseName
+     *            the sanitized location of the instance that previously held the Table Managers.
+     * @return the replica locations of each table, keyed by generic table information.
+     * @throws SQLException
+     *             if the meta-tables couldn't be read.
+     */
+    public static Map<TableInfo, List<DatabaseID>> loadReplicaState(final Database db, final String oldPrimaryDatabaseName) throws SQLException {
+
+        final String oldTableRelation = getMetaTableName(oldPrimaryDatabaseName, TABLES);
+        final String oldconnectionRelation = getMetaTableName(oldPrimaryDatabaseName, CONNECTIONS);
+        final String oldReplicaRelation = getMetaTableName(oldPrimaryDatabaseName, REPLICAS);
+
+        final String sql = "SELECT LOCAL ONLY connection_type, machine_name, db_location, connection_port, chord_port, tablename, schemaname FROM " + oldReplicaRelation + ", " + oldTableRelation + ", " + oldconnectionRelation + " WHERE " + oldReplicaRelation + ".active='true' AND " + oldTableRelation + ".table_id="
+                        + oldReplicaRelation + ".table_id AND " + oldconnectionRelation + ".connection_id=" + oldReplicaRelation + ".connection_id;";
+
+        final Parser parser = new Parser(db.getSystemSession(), true);
+        final LocalResult rs = parser.prepareCommand(sql).executeQueryLocal(0);
+
+        final Map<TableInfo, List<DatabaseID>> replicaState = new HashMap<TableInfo, List<DatabaseID>>();
+        while (rs.next()) {
+            final Value[] row = rs.currentRow();
+
+            final DatabaseID dbID = new DatabaseID(new DatabaseURL(row[0].getString(), row[1].getString(), row[3].getInt(), row[2].getString(), false, row[4].getInt()));
+            final TableInfo ti = new TableInfo(row[5].getString(), row[6].getString());
+
+            List<DatabaseID> replicaIDs = replicaState.get(ti);
+            if (replicaIDs == null) {
+                replicaIDs = new LinkedList<DatabaseID>();
+                replicaState.put(ti, replicaIDs);
+            }
+            replicaIDs.add(dbID);
+        }
+
+        return replicaState;
     }
 
     @Override
@@ -937,6 +1333,137 @@ public class TableManager extends PersistentManager implements ITableManagerRemo
 
     }
 
+    /**
+     * Change the replication factor of the table if its recent workload calls for it (see {@link ReplicationFactorPolicy}). New replicas are
+     * created on the instances making the most requests for locks on the table, and replicas are dropped from those making the fewest.
+     */
+    private void adaptReplicationFactor() {
+
+        if (replicationFactorPolicy == null || !db.isReplicating()) { return; }
+
+        final int currentFactor = desiredRelationReplicationFactor;
+        final int newFactor = replicationFactorPolicy.decide(queryMonitor, currentFactor, System.currentTimeMillis(), fullName);
+
+        if (newFactor == currentFactor) { return; }
+
+        desiredRelationReplicationFactor = newFactor;
+        persistConsistencyLevel();
+
+        final List<DatabaseInstanceWrapper> instancesByRequests = new LinkedList<DatabaseInstanceWrapper>();
+        for (final LockRequestPercentagesPerInstance requests : queryMonitor.getPercentageOfLockRequestsFromInstances()) {
+            instancesByRequests.add(0, requests.getInstance()); // most requests first.
+        }
+
+        if (newFactor > currentFactor) {
+            exec.submit(new CreateNewReplicasAsync(this, replicaManager, db.getSystemTableReference(), newFactor, db.getID(), instancesByRequests));
+        }
+        else {
+            exec.submit(new Runnable() {
+
+                @Override
+                public void run() {
+
+                    dropExcessReplicas(newFactor, instancesByRequests);
+                }
+            });
+        }
+    }
+
+    /**
+     * Drop replicas until the table has no more than the given number. Inactive replicas, which are missing updates, are dropped first, then
+     * replicas on instances that haven't requested locks on the table recently, then those on the instances that have requested fewest. The
+     * replica on this instance, if there is one, is kept.
+     *
+     * <p>The drop is made while this Table Manager holds the write lock on the table, so no transaction is given a replica set that includes
+     * a replica being dropped. If the lock can't be taken the replicas are kept, which is safe.
+     * 
+     * @param instancesByRequests
+     *            the instances that have requested locks on the table recently, with those that requested most first.
+     */
+    private void dropExcessReplicas(final int replicationFactor, final List<DatabaseInstanceWrapper> instancesByRequests) {
+
+        final LockRequest maintenanceLock = new LockRequest(db.getLocalDatabaseInstanceInWrapper(), MAINTENANCE_SESSION_ID);
+
+        if (!lockForMaintenance(maintenanceLock)) {
+            Diagnostic.traceNoEvent(DiagnosticLevel.INIT, "Couldn't lock " + fullName + " to drop its excess replicas. They will be kept.");
+            return;
+        }
+
+        try {
+            final Set<DatabaseInstanceWrapper> replicas = new HashSet<DatabaseInstanceWrapper>(replicaManager.getAllReplicasOnActiveMachines().keySet());
+            final Set<DatabaseInstanceWrapper> activeReplicas = replicaManager.getActiveReplicas().keySet();
+
+            int excess = replicas.size() - replicationFactor;
+
+            replicas.remove(db.getLocalDatabaseInstanceInWrapper());
+
+            final List<DatabaseInstanceWrapper> dropOrder = new LinkedList<DatabaseInstanceWrapper>();
+            for (final DatabaseInstanceWrapper replica : replicas) {
+                if (!activeReplicas.contains(replica)) {
+                    dropOrder.add(replica);
+                }
+            }
+            for (final DatabaseInstanceWrapper replica : replicas) {
+                if (activeReplicas.contains(replica) && !instancesByRequests.contains(replica)) {
+                    dropOrder.add(replica);
+                }
+            }
+            for (int i = instancesByRequests.size() - 1; i >= 0; i--) {
+                final DatabaseInstanceWrapper replica = instancesByRequests.get(i);
+                if (replicas.contains(replica) && activeReplicas.contains(replica)) {
+                    dropOrder.add(replica);
+                }
+            }
+
+            for (final DatabaseInstanceWrapper replica : dropOrder) {
+
+                if (excess <= 0) {
+                    break;
+                }
+
+                try {
+                    replica.getDatabaseInstance().executeUpdate("DROP REPLICA " + fullName, true);
+                    excess--;
+                }
+                catch (final Exception e) {
+                    ErrorHandling.errorNoEvent("Failed to drop the replica of " + fullName + " on " + replica.getURL() + ": " + e.getMessage());
+                }
+            }
+        }
+        finally {
+            lockingTable.releaseLock(maintenanceLock);
+        }
+    }
+
+    /**
+     * Take the write lock on the table for this Table Manager, waiting for transactions holding locks on it to finish and asking an instance
+     * that has kept the write lock to give it up.
+     * 
+     * @return true if the lock was taken.
+     */
+    private boolean lockForMaintenance(final LockRequest maintenanceLock) {
+
+        for (int attempt = 0; attempt < MAINTENANCE_LOCK_ATTEMPTS && !shutdown; attempt++) {
+
+            synchronized (lockingTable) {
+                // A write lock held by a session of this instance would otherwise be shared, because locks are compared by instance.
+                if (lockingTable.getWriteLockHolder() == null && lockingTable.requestLock(LockType.WRITE, maintenanceLock) == LockType.WRITE) { return true; }
+            }
+
+            if (!revokeKeptLock(null)) {
+                try {
+                    Thread.sleep(MAINTENANCE_LOCK_INTERVAL);
+                }
+                catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+
+        return false;
+    }
+
     public void persistReplicaInformation() {
 
         for (final DatabaseInstanceWrapper dir : replicaManager.getActiveReplicas().keySet()) {
@@ -950,6 +1477,8 @@ public class TableManager extends PersistentManager implements ITableManagerRemo
                 ErrorHandling.exceptionError(e, "Trying to persist replica information.");
             }
         }
+
+        persistConsistencyLevel();
     }
 
     @Override
@@ -1037,6 +1566,34 @@ public class TableManager extends PersistentManager implements ITableManagerRemo
         }
     }
 
+    /**
+     * Called by this instance's failure detector when an instance has failed, so that replicas on it are marked as inactive without waiting
+     * for the System Table to send a notification.
+     */
+    @Override
+    public void instanceFailed(final DatabaseID failedMachine) {
+
+        replicaManager.markMachineAsFailed(failedMachine);
+
+        // A write lock held by the failed instance, possibly kept after its last transaction, will never be released by it.
+        synchronized (lockingTable) {
+            final LockRequest holder = lockingTable.getWriteLockHolder();
+            if (holder != null && holder.getRequestLocation().getURL().equals(failedMachine)) {
+                lockingTable.releaseLock(holder);
+            }
+        }
+    }
+
+    /**
+     * Ask the failure detector to monitor every instance holding a replica of this table.
+     */
+    private void monitorReplicaLocations() {
+
+        for (final DatabaseInstanceWrapper replica : replicaManager.getAllReplicas().keySet()) {
+            db.getFailureDetector().monitor(replica.getURL());
+        }
+    }
+
     @Override
     public Map<DatabaseInstanceWrapper, Integer> getReplicasOnActiveMachines() {
 
@@ -38,6 +38,7 @@ import org.h2o.db.query.TableProxy;
 import org.h2o.db.query.asynchronous.CommitResult;
 import org.h2o.db.query.locking.LockRequest;
 import org.h2o.db.query.locking.LockType;
+import org.h2o.db.replication.ConsistencyLevel;
 import org.h2o.db.wrappers.DatabaseInstanceWrapper;
 import org.h2o.util.exceptions.MigrationException;
 import org.h2o.util.exceptions.MovedException;
@@ -216,6 +217,35 @@ public class TableManagerProxy extends StreamProxy implements ITableManagerRemot
         }
     }
 
+    @Override
+    public TableProxy getTableProxy(final LockType lockType, final LockRequest lockRequest, final long knownReplicaSetVersion) throws RPCException, SQLException, MovedException {
+
+        try {
+            final Connection connection = (Connection) startCall("getTableProxyIfChanged");
+
+            final JSONWriter jw = connection.getJSONwriter();
+            setUpJSONArrayForRMI(jw);
+            marshaller.serializeLockType(lockType, jw);
+            marshaller.serializeLockRequest(lockRequest, jw);
+            jw.value(knownReplicaSetVersion);
+
+            final JSONReader reader = makeCall(connection);
+            final TableProxy result = marshaller.deserializeTableProxy(reader);
+            finishCall(connection);
+            return result;
+        }
+        catch (final MovedException e) {
+            throw e;
+        }
+        catch (final SQLException e) {
+            throw e;
+        }
+        catch (final Exception e) {
+            dealWithException(e);
+            return null; // not reached
+        }
+    }
+
     @Override
     public TableProxy getTableProxy(final LockType lockType, final LockRequest lockRequest) throws RPCException, SQLException, MovedException {
 
@@ -392,6 +422,53 @@ public class TableManagerProxy extends StreamProxy implements ITableManagerRemot
         }
     }
 
+    @Override
+    public boolean lockForOptimisticCommit(final LockRequest requestingDatabase, final Collection<CommitResult> committedQueries) throws RPCException, MovedException, SQLException {
+
+        try {
+            final Connection connection = (Connection) startCall("lockForOptimisticCommit");
+            final JSONWriter jw = connection.getJSONwriter();
+            setUpJSONArrayForRMI(jw);
+
+            marshaller.serializeLockRequest(requestingDatabase, jw);
+            marshaller.serializeCollectionCommitResult(committedQueries, jw);
+            final JSONReader reader = makeCall(connection);
+            final boolean result = reader.booleanValue();
+            finishCall(connection);
+            return result;
+        }
+        catch (final MovedException e) {
+            throw e;
+        }
+        catch (final SQLException e) {
+            throw e;
+        }
+        catch (final Exception e) {
+            dealWithException(e);
+            return false; // not reached
+        }
+    }
+
+    @Override
+    public void releaseReadLocks(final Collection<LockRequest> readLocks) throws RPCException, MovedException {
+
+        try {
+            final Connection connection = (Connection) startCall("releaseReadLocks");
+            final JSONWriter jw = connection.getJSONwriter();
+            setUpJSONArrayForRMI(jw);
+
+            marshaller.serializeCollectionLockRequest(readLocks, jw);
+            handleVoidCall(makeCall(connection));
+            finishCall(connection);
+        }
+        catch (final MovedException e) {
+            throw e;
+        }
+        catch (final Exception e) {
+            dealWithException(e);
+        }
+    }
+
     @Override
     public void remove(final boolean dropCommand) throws RPCException {
 
@@ -630,6 +707,67 @@ public class TableManagerProxy extends StreamProxy implements ITableManagerRemot
         }
     }
 
+    @Override
+    public ConsistencyLevel getConsistencyLevel() throws RPCException, MovedException {
+
+        try {
+            final Connection connection = (Connection) startCall("getConsistencyLevel");
+            final JSONWriter jw = connection.getJSONwriter();
+            setUpJSONArrayForRMI(jw);
+            final JSONReader reader = makeCall(connection);
+            final ConsistencyLevel result = marshaller.deserializeConsistencyLevel(reader);
+            finishCall(connection);
+            return result;
+        }
+        catch (final Exception e) {
+            dealWithException(e);
+            return null; // not reached
+        }
+    }
+
+    @Override
+    public int getReplicationFactor() throws RPCException, MovedException {
+
+        try {
+            final Connection connection = (Connection) startCall("getReplicationFactor");
+            final JSONWriter jw = connection.getJSONwriter();
+            setUpJSONArrayForRMI(jw);
+            final JSONReader reader = makeCall(connection);
+            final int result = reader.intValue();
+            finishCall(connection);
+            return result;
+        }
+        catch (final MovedException e) {
+            throw e;
+        }
+        catch (final Exception e) {
+            dealWithException(e);
+            return -1; // not reached
+        }
+    }
+
+    @Override
+    public void setConsistencyLevel(final ConsistencyLevel consistencyLevel) throws RPCException, MovedException, SQLException {
+
+        try {
+            final Connection connection = (Connection) startCall("setConsistencyLevel");
+            final JSONWriter jw = connection.getJSONwriter();
+            setUpJSONArrayForRMI(jw);
+            marshaller.serializeConsistencyLevel(consistencyLevel, jw);
+            handleVoidCall(makeCall(connection));
+            finishCall(connection);
+        }
+        catch (final MovedException e) {
+            throw e;
+        }
+        catch (final SQLException e) {
+            throw e;
+        }
+        catch (final Exception e) {
+            dealWithException(e);
+        }
+    }
+
     @Override
     public DatabaseInstanceWrapper getDatabaseLocation() throws RPCException, MovedException {
 
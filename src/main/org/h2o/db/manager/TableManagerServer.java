@@ -9,6 +9,7 @@ import org.h2o.db.interfaces.ITableManagerRemote;
 import org.h2o.db.query.asynchronous.CommitResult;
 import org.h2o.db.query.locking.LockRequest;
 import org.h2o.db.query.locking.LockType;
+import org.h2o.db.replication.ConsistencyLevel;
 import org.json.JSONWriter;
 
 import uk.ac.standrews.cs.nds.rpc.stream.ApplicationServer;
@@ -69,6 +70,21 @@ public class TableManagerServer extends ApplicationServer {
             }
         });
 
+        // public TableProxy getTableProxy(LockType lockType, LockRequest lockRequest, long knownReplicaSetVersion) throws RPCException, SQLException, MovedException;
+
+        handler_map.put("getTableProxyIfChanged", new IHandler() {
+
+            @Override
+            public void execute(final JSONReader args, final JSONWriter writer) throws Exception {
+
+                final LockType p0 = marshaller.deserializeLockType(args.stringValue());
+                final LockRequest p1 = marshaller.deserializeLockRequest(args);
+                final long p2 = args.longValue();
+                marshaller.serializeTableProxy(table_manager.getTableProxy(p0, p1, p2), writer);
+
+            }
+        });
+
         // public final boolean addTableInformation(final DatabaseID tableManagerURL, final TableInfo tableDetails) throws RPCException, MovedException, SQLException;
 
         handler_map.put("addTableInformation", new IHandler() {
@@ -146,6 +162,32 @@ public class TableManagerServer extends ApplicationServer {
             }
         });
 
+        // public boolean lockForOptimisticCommit(final LockRequest requestingDatabase, final Collection<CommitResult> committedQueries) throws RPCException, MovedException, SQLException;
+
+        handler_map.put("lockForOptimisticCommit", new IHandler() {
+
+            @Override
+            public void execute(final JSONReader args, final JSONWriter writer) throws Exception {
+
+                final LockRequest p0 = marshaller.deserializeLockRequest(args);
+                final Collection<CommitResult> p1 = marshaller.deserializeCollectionCommitResult(args);
+                writer.value(table_manager.lockForOptimisticCommit(p0, p1));
+            }
+        });
+
+        // public void releaseReadLocks(final Collection<LockRequest> readLocks) throws RPCException, MovedException;
+
+        handler_map.put("releaseReadLocks", new IHandler() {
+
+            @Override
+            public void execute(final JSONReader args, final JSONWriter writer) throws Exception {
+
+                final Collection<LockRequest> p0 = marshaller.deserializeCollectionLockRequest(args);
+                table_manager.releaseReadLocks(p0);
+                writer.value("");
+            }
+        });
+
         // public void remove(final boolean dropCommand) throws RPCException;
 
         handler_map.put("remove", new IHandler() {
@@ -275,6 +317,41 @@ public class TableManagerServer extends ApplicationServer {
             }
         });
 
+        // public ConsistencyLevel getConsistencyLevel() throws RPCException, MovedException;
+
+        handler_map.put("getConsistencyLevel", new IHandler() {
+
+            @Override
+            public void execute(final JSONReader args, final JSONWriter writer) throws Exception {
+
+                marshaller.serializeConsistencyLevel(table_manager.getConsistencyLevel(), writer);
+            }
+        });
+
+        // public int getReplicationFactor() throws RPCException, MovedException;
+
+        handler_map.put("getReplicationFactor", new IHandler() {
+
+            @Override
+            public void execute(final JSONReader args, final JSONWriter writer) throws Exception {
+
+                writer.value(table_manager.getReplicationFactor());
+            }
+        });
+
+        // public void setConsistencyLevel(ConsistencyLevel consistencyLevel) throws RPCException, MovedException, SQLException;
+
+        handler_map.put("setConsistencyLevel", new IHandler() {
+
+            @Override
+            public void execute(final JSONReader args, final JSONWriter writer) throws Exception {
+
+                final ConsistencyLevel p0 = marshaller.deserializeConsistencyLevel(args);
+                table_manager.setConsistencyLevel(p0);
+                writer.value("");
+            }
+        });
+
         handler_map.put("getReplicasOnActiveMachines", new IHandler() {
 
             @Override
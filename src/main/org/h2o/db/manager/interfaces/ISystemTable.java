@@ -8,6 +8,7 @@ import org.h2o.db.id.DatabaseID;
 import org.h2o.db.id.TableInfo;
 import org.h2o.db.interfaces.IDatabaseInstanceRemote;
 import org.h2o.db.interfaces.ITableManagerRemote;
+import org.h2o.db.partitioning.PartitionScheme;
 import org.h2o.db.wrappers.DatabaseInstanceWrapper;
 import org.h2o.db.wrappers.TableManagerWrapper;
 import org.h2o.util.exceptions.MovedException;
@@ -65,6 +66,63 @@ public interface ISystemTable {
      */
     public boolean removeTableInformation(TableInfo ti) throws RPCException, MovedException;
 
+    /**
+     * Record that the given table is partitioned. The partitions themselves are ordinary tables, registered separately through
+     * {@link #addTableInformation(ITableManagerRemote, TableInfo, Set)}.
+     * 
+     * @param partitionScheme
+     *            how the table is partitioned.
+     * @return true if the scheme was recorded; false if the table is already partitioned.
+     * @throws RPCException
+     */
+    public boolean addPartitionScheme(PartitionScheme partitionScheme) throws RPCException, MovedException;
+
+    /**
+     * Find out how the given table is partitioned.
+     * 
+     * @param ti
+     *            the name of the table.
+     * @return the partition scheme of the table, or null if it is not a partitioned table.
+     * @throws RPCException
+     */
+    public PartitionScheme getPartitionScheme(TableInfo ti) throws RPCException, MovedException;
+
+    /**
+     * Remove the partition scheme of a table that is being dropped.
+     * 
+     * @param ti
+     *            the name of the table.
+     * @return true if the table was partitioned.
+     * @throws RPCException
+     */
+    public boolean removePartitionScheme(TableInfo ti) throws RPCException, MovedException;
+
+    /**
+     * @return the partition scheme of every partitioned table in the system.
+     */
+    public Map<TableInfo, PartitionScheme> getPartitionSchemes() throws RPCException, MovedException;
+
+    /**
+     * Allocate a block of values from a sequence shared by every instance in the system (see the DISTRIBUTED_SEQUENCES setting). Values in
+     * a block that an instance doesn't use are never handed out again, so a shared sequence may have gaps.
+     * 
+     * @param sequenceName
+     *            the name identifying the sequence throughout the system.
+     * @param startValue
+     *            the lowest value the block may start at: the first value of the sequence, or the value following the highest one used by
+     *            the caller, so that values inserted explicitly aren't handed out again.
+     * @param blockLength
+     *            the amount by which the sequence is advanced: the number of values in the block multiplied by the sequence's increment.
+     * @return the first value in the block.
+     * @throws RPCException
+     */
+    public long allocateSequenceBlock(String sequenceName, long startValue, long blockLength) throws RPCException, MovedException;
+
+    /**
+     * @return the next value to be allocated from each shared sequence, keyed by sequence name.
+     */
+    public Map<String, Long> getSequenceValues() throws RPCException, MovedException;
+
     /**
      * Add information about a new database instance to the System Table.
      * 
@@ -81,6 +139,15 @@ public interface ISystemTable {
      */
     public int getNewTableSetNumber() throws RPCException, MovedException;
 
+    /**
+     * Record that a table set number has been given out by the active System Table, so that a hot standby of it never gives out the same
+     * number once it is promoted.
+     * 
+     * @param tableSetNumber
+     *            the number given out.
+     */
+    public void tableSetNumberIssued(int tableSetNumber) throws RPCException, MovedException;
+
     // /**
     // * Get the number of replicas that exist for a particular table.
     // * @param tableName The name of the table.
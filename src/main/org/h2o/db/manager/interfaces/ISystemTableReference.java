@@ -23,6 +23,7 @@ import org.h2o.db.manager.SystemTable;
 import org.h2o.db.manager.TableManager;
 import org.h2o.db.manager.recovery.LocatorException;
 import org.h2o.db.manager.recovery.SystemTableAccessException;
+import org.h2o.db.partitioning.PartitionScheme;
 import org.h2o.db.wrappers.DatabaseInstanceWrapper;
 import org.h2o.util.exceptions.MovedException;
 
@@ -244,7 +245,8 @@ public interface ISystemTableReference {
 
     /**
      * Adds a new Table Manager to the System Table. Before doing this it stores a local reference to the Table Manager to bypass RMI calls
-     * (which are extremely inefficient).
+     * (which are extremely inefficient). Registrations always go to the System Table, even when lookups are spread across the table
+     * directory (see the TABLE_DIRECTORY_SHARDS setting).
      * 
      * @param iTableManagerRemote
      *            The table manager being added to the System Table.
@@ -263,6 +265,44 @@ public interface ISystemTableReference {
 
     public void removeAllTableInformation() throws RPCException, MovedException;
 
+    /**
+     * Find the partition scheme of the given table.
+     * 
+     * @param tableInfo
+     *            The name of the table.
+     * @param useCache
+     *            True if a locally cached copy of the scheme may be returned.
+     * @return The partition scheme, or null if the table is not partitioned.
+     * @throws RPCException
+     *             Thrown if the System Table could not be contacted.
+     * @throws MovedException
+     *             Thrown if the System Table has moved and a new reference is needed.
+     */
+    public PartitionScheme lookupPartitionScheme(TableInfo tableInfo, boolean useCache) throws RPCException, MovedException;
+
+    /**
+     * Register a new partitioned table with the System Table.
+     * 
+     * @return true if the scheme was added; false if the table was already partitioned.
+     */
+    public boolean addPartitionScheme(PartitionScheme partitionScheme) throws RPCException, MovedException;
+
+    /**
+     * Remove the partition scheme of the given table from the System Table and from the local cache.
+     */
+    public void removePartitionScheme(TableInfo tableInfo) throws RPCException, MovedException;
+
+    /**
+     * Allocate a block of values from a sequence shared by every instance in the system. If the System Table has moved or can't be
+     * contacted, its new location is found and the allocation is tried again.
+     * 
+     * @see ISystemTable#allocateSequenceBlock(String, long, long)
+     * @return the first value in the block.
+     * @throws SQLException
+     *             Thrown if the System Table could not be contacted.
+     */
+    public long allocateSequenceBlock(String sequenceName, long startValue, long blockLength) throws SQLException;
+
     public Map<TableInfo, TableManager> getLocalTableManagers();
 
     /**
@@ -301,4 +341,20 @@ public interface ISystemTableReference {
      */
     public Queue<DatabaseInstanceWrapper> getRankedListOfInstances(IMetric metric, Requirements requirements) throws RPCException, MovedException;
 
+    /**
+     * Look up the Table Manager of a table in the part of the table directory held by this instance, on behalf of another instance. If the
+     * table isn't in it the System Table is asked, and the answer kept.
+     * @param tableInfo the table.
+     * @return the table's Table Manager, or null if the System Table doesn't know the table.
+     * @throws SQLException if the System Table couldn't be contacted.
+     */
+    public ITableManagerRemote lookupInTableDirectory(TableInfo tableInfo) throws SQLException;
+
+    /**
+     * Forget the Table Manager of a table in the part of the table directory held by this instance. Called by the System Table when the
+     * table's manager changes.
+     * @param tableInfo the table, or null to forget every table.
+     */
+    public void invalidateTableDirectoryEntry(TableInfo tableInfo);
+
 }
@@ -0,0 +1,221 @@
+package org.h2o.db.manager.monitoring.tablemanager;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>A fixed-size set of counters ('lanes') whose values decay exponentially with age. Time is divided into slots of equal length, and
+ * a ring of slots covers the sliding window over which samples are remembered. Every slot that has aged by one slot length is multiplied
+ * by the decay factor when the counters are read, so recent requests always dominate, while older requests are forgotten gradually rather
+ * than all at once.
+ *
+ * <p>All storage is allocated in the constructor. Increments are lock-free (a compare-and-set to claim a slot for a new time period, then an
+ * atomic add), so the counters can be updated from the Table Manager's lock path at negligible cost. Because a slot is reset when it is
+ * reused, a concurrent increment can occasionally be lost at a slot boundary. This is acceptable for monitoring data, which is only
+ * ever used as a statistical hint.
+ *
+ * @author Angus Macdonald (angus AT cs.st-andrews.ac.uk)
+ */
+public class DecayingCounterArray {
+
+    /**
+     * Number of counters maintained by this object.
+     */
+    private final int lanes;
+
+    /**
+     * Number of slots in the sliding window.
+     */
+    private final int slots;
+
+    /**
+     * The length of a single slot, in milliseconds.
+     */
+    private final long slotLength;
+
+    /**
+     * The weight applied to a slot for each slot length by which it is older than the current slot.
+     */
+    private final double decayPerSlot;
+
+    /**
+     * The time period each slot currently holds counts for, in units of slotLength since the epoch. Indexed by slot.
+     */
+    private final AtomicLongArray slotPeriods;
+
+    /**
+     * Counts, indexed by (slot * lanes) + lane.
+     */
+    private final AtomicLongArray counts;
+
+    /**
+     * @param lanes             the number of separate counters to maintain.
+     * @param slots             the number of slots in the sliding window.
+     * @param slotLength        the length of each slot in milliseconds.
+     * @param decayPerSlot      the factor (between 0 and 1) by which a slot's counts are multiplied for every slot length of its age.
+     */
+    public DecayingCounterArray(final int lanes, final int slots, final long slotLength, final double decayPerSlot) {
+
+        if (lanes < 1 || slots < 1 || slotLength < 1 || decayPerSlot < 0 || decayPerSlot > 1) { throw new IllegalArgumentException("Invalid decaying counter configuration."); }
+
+        this.lanes = lanes;
+        this.slots = slots;
+        this.slotLength = slotLength;
+        this.decayPerSlot = decayPerSlot;
+
+        slotPeriods = new AtomicLongArray(slots);
+        counts = new AtomicLongArray(slots * lanes);
+
+        for (int i = 0; i < slots; i++) {
+            slotPeriods.set(i, -1);
+        }
+    }
+
+    /**
+     * Record a single event on the given counter.
+     * @param lane  the counter to increment.
+     * @param now   the current time, in milliseconds.
+     */
+    public void increment(final int lane, final long now) {
+
+        add(lane, 1, now);
+    }
+
+    /**
+     * Record a number of events on the given counter.
+     * @param lane      the counter to increment.
+     * @param amount    the number of events.
+     * @param now       the current time, in milliseconds.
+     */
+    public void add(final int lane, final long amount, final long now) {
+
+        final long period = now / slotLength;
+        final int slot = (int) (period % slots);
+
+        claimSlot(slot, period);
+
+        counts.addAndGet(slot * lanes + lane, amount);
+    }
+
+    /**
+     * Get the decayed value of the given counter.
+     * @param lane  the counter to read.
+     * @param now   the current time, in milliseconds.
+     * @return the sum of all samples in the sliding window, each weighted by its age.
+     */
+    public double get(final int lane, final long now) {
+
+        final long currentPeriod = now / slotLength;
+
+        double total = 0;
+
+        for (int slot = 0; slot < slots; slot++) {
+            final double weight = weightOf(slot, currentPeriod);
+
+            if (weight > 0) {
+                total += counts.get(slot * lanes + lane) * weight;
+            }
+        }
+
+        return total;
+    }
+
+    /**
+     * Get the decayed value of all counters added together.
+     * @param now   the current time, in milliseconds.
+     */
+    public double getTotal(final long now) {
+
+        final long currentPeriod = now / slotLength;
+
+        double total = 0;
+
+        for (int slot = 0; slot < slots; slot++) {
+            final double weight = weightOf(slot, currentPeriod);
+
+            if (weight > 0) {
+                for (int lane = 0; lane < lanes; lane++) {
+                    total += counts.get(slot * lanes + lane) * weight;
+                }
+            }
+        }
+
+        return total;
+    }
+
+    /**
+     * Get the undecayed number of events (across all counters) recorded in each slot of the sliding window.
+     * @param now   the current time, in milliseconds.
+     * @param result    an array into which the counts will be written, most recent slot first. Its length should be no greater
+     *                  than {@link #getNumberOfSlots()}. Slots with no recorded events are set to zero.
+     */
+    public void getCountsPerSlot(final long now, final long[] result) {
+
+        final long currentPeriod = now / slotLength;
+
+        for (int age = 0; age < result.length; age++) {
+            final long period = currentPeriod - age;
+            final int slot = (int) (period % slots);
+
+            long count = 0;
+
+            if (period >= 0 && slotPeriods.get(slot) == period) {
+                for (int lane = 0; lane < lanes; lane++) {
+                    count += counts.get(slot * lanes + lane);
+                }
+            }
+
+            result[age] = count;
+        }
+    }
+
+    /**
+     * @return the number of slots in the sliding window.
+     */
+    public int getNumberOfSlots() {
+
+        return slots;
+    }
+
+    /**
+     * @return the length of each slot, in milliseconds.
+     */
+    public long getSlotLength() {
+
+        return slotLength;
+    }
+
+    /**
+     * Make sure the given slot holds counts for the given period, resetting it if it holds counts from an earlier period.
+     */
+    private void claimSlot(final int slot, final long period) {
+
+        long slotPeriod = slotPeriods.get(slot);
+
+        while (slotPeriod < period) {
+            if (slotPeriods.compareAndSet(slot, slotPeriod, period)) {
+                for (int lane = 0; lane < lanes; lane++) {
+                    counts.set(slot * lanes + lane, 0);
+                }
+                return;
+            }
+
+            slotPeriod = slotPeriods.get(slot);
+        }
+    }
+
+    /**
+     * @return the weight to apply to the counts in the given slot, or zero if the slot holds no counts within the sliding window.
+     */
+    private double weightOf(final int slot, final long currentPeriod) {
+
+        final long slotPeriod = slotPeriods.get(slot);
+
+        if (slotPeriod < 0 || slotPeriod > currentPeriod) { return 0; }
+
+        final long age = currentPeriod - slotPeriod;
+
+        if (age >= slots) { return 0; }
+
+        return Math.pow(decayPerSlot, age);
+    }
+}
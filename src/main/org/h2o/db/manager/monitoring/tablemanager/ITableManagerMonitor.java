@@ -14,6 +14,14 @@ public interface ITableManagerMonitor {
      */
     public void addQueryInformation(LockRequest requestingUser, LockType typeOfQuery);
 
+    /**
+     * Add information on the outcome of a lock request received by the Table Manager. This is used to monitor how long sessions wait
+     * for locks that they were initially refused.
+     * @param requestingUser    The name of the session-database that made the request.
+     * @param lockGranted       The type of lock granted, or {@link LockType#NONE} if the request was refused.
+     */
+    public void addLockOutcomeInformation(LockRequest requestingUser, LockType lockGranted);
+
     /**
      * Get the ratio of reads to writes.
      * @return number of reads monitored divided by number of writes monitored.
@@ -22,7 +30,7 @@ public interface ITableManagerMonitor {
 
     /**
      * Get the database instance / session that has accessed this table most often.
-     * @return
+     * @return null if no requests have been monitored recently.
      */
     public LockRequest getMostCommonQueryLocation();
 
@@ -35,8 +43,34 @@ public interface ITableManagerMonitor {
 
     /**
      * Returns the number of queries that have been observed to produce this monitoring data.
-     * @return Number of queries that have passed through monitoring.
+     * @return Number of queries that have passed through monitoring, with older queries contributing less than recent ones.
      */
     public int getSampleSize();
 
+    /**
+     * Get the number of requests for a given type of lock.
+     * @param lockType  The type of lock requested.
+     * @return Number of requests monitored for this type of lock, with older requests contributing less than recent ones.
+     */
+    public double getNumberOfRequests(LockType lockType);
+
+    /**
+     * Get the rate at which lock requests are being made.
+     * @return Number of lock requests per second, averaged over the monitoring window with recent requests weighted more heavily.
+     */
+    public double getRequestRate();
+
+    /**
+     * Get the number of lock requests made in each time slot of the monitoring window.
+     * @return Number of requests in each slot, most recent slot first.
+     */
+    public long[] getRequestRateHistogram();
+
+    /**
+     * Get a histogram of the time sessions spent waiting for locks they were initially refused. Bucket 0 holds waits of less than one
+     * millisecond and bucket <code>i</code> holds waits of between 2<sup>i-1</sup> and 2<sup>i</sup> milliseconds. The last bucket
+     * holds all longer waits.
+     * @return Number of waits in each bucket, with older waits contributing less than recent ones.
+     */
+    public double[] getLockWaitTimeHistogram();
 }
@@ -65,7 +65,7 @@ public class LockRequestPercentagesPerInstance implements Comparable<LockRequest
 
         if (getPercentageOfRequests() > o.getPercentageOfRequests()) { return 1; }
 
-        if (getPercentageOfRequests() < o.getPercentageOfRequests()) { return 0; }
+        if (getPercentageOfRequests() < o.getPercentageOfRequests()) { return -1; }
 
         return 0;
     }
@@ -1,8 +1,6 @@
 package org.h2o.db.manager.monitoring.tablemanager;
 
-import java.util.Date;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.h2o.db.query.locking.LockRequest;
 import org.h2o.db.query.locking.LockType;
@@ -14,28 +12,61 @@ import org.h2o.db.query.locking.LockType;
  */
 public class PerUserQueryMonitoringData {
 
+    /**
+     * Value of {@link #firstRefusalTime} when the session is not currently waiting for a lock.
+     */
+    private static final long NOT_WAITING = -1;
+
     /**
      * The user session this object is storing requests from.
      */
     private final LockRequest requestingUser;
 
     /**
-     * History of requests from a particular user session.
+     * Decaying count of requests from a particular user session.
+     */
+    private final DecayingCounterArray lockRequestHistory;
+
+    /**
+     * The time at which this session was first refused a lock it is still waiting for, or {@link #NOT_WAITING}.
      */
-    private final Map<Date, LockType> lockRequestHistory = new HashMap<Date, LockType>();
+    private final AtomicLong firstRefusalTime = new AtomicLong(NOT_WAITING);
 
-    public PerUserQueryMonitoringData(final LockRequest requestingUser) {
+    public PerUserQueryMonitoringData(final LockRequest requestingUser, final int slots, final long slotLength, final double decayPerSlot) {
 
         this.requestingUser = requestingUser;
+
+        lockRequestHistory = new DecayingCounterArray(1, slots, slotLength, decayPerSlot);
     }
 
     /**
      * Add a new request that comes from this user session.
-     * @param lockGranted   The type of lock that was requested (and granted).
+     * @param lockRequested   The type of lock that was requested.
+     * @param now   The current time, in milliseconds.
      */
-    public void addLockRequest(final LockType lockGranted) {
+    public void addLockRequest(final LockType lockRequested, final long now) {
 
-        lockRequestHistory.put(new Date(), lockGranted);
+        lockRequestHistory.increment(0, now);
+    }
+
+    /**
+     * Record the outcome of a lock request from this user session.
+     * @param lockGranted   The type of lock granted ({@link LockType#NONE} if the request was refused).
+     * @param now   The current time, in milliseconds.
+     * @return The time this session spent waiting for the lock it has just been granted, or -1 if it didn't have to wait (or is still waiting).
+     */
+    public long recordLockOutcome(final LockType lockGranted, final long now) {
+
+        if (lockGranted == LockType.NONE) {
+            firstRefusalTime.compareAndSet(NOT_WAITING, now);
+            return -1;
+        }
+
+        final long refusedAt = firstRefusalTime.getAndSet(NOT_WAITING);
+
+        if (refusedAt == NOT_WAITING) { return -1; }
+
+        return Math.max(0, now - refusedAt);
     }
 
     /*
@@ -67,9 +98,21 @@ public class PerUserQueryMonitoringData {
         return true;
     }
 
-    public int numberOfRequests() {
+    /**
+     * @param now   The current time, in milliseconds.
+     * @return The decayed number of requests made by this session.
+     */
+    public double numberOfRequests(final long now) {
+
+        return lockRequestHistory.get(0, now);
+    }
+
+    /**
+     * @return true if this session is waiting for a lock it was refused.
+     */
+    public boolean isWaitingForLock() {
 
-        return lockRequestHistory.size();
+        return firstRefusalTime.get() != NOT_WAITING;
     }
 
     public LockRequest getLocation() {
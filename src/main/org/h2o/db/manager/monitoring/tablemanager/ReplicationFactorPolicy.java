@@ -0,0 +1,109 @@
+package org.h2o.db.manager.monitoring.tablemanager;
+
+import org.h2o.autonomic.settings.Settings;
+
+import uk.ac.standrews.cs.nds.util.Diagnostic;
+import uk.ac.standrews.cs.nds.util.DiagnosticLevel;
+
+/**
+ * Decides the replication factor of a table from the lock requests its Table Manager has received (see the ADAPTIVE_REPLICATION setting).
+ *
+ * <p>Extra replicas make reads of a table more likely to be local, but every replica must be updated by each write. A table that has been
+ * busy recently is given one more replica when its read/write ratio is at or above the read-dominated ratio, and one fewer when it is at or
+ * below the write-dominated ratio, within the configured bounds. The factor is changed at most once per interval, so that each change has
+ * taken effect and been reflected in the monitoring data before the next is made.
+ */
+public class ReplicationFactorPolicy {
+
+    private final int minimumReplicationFactor;
+
+    private final int maximumReplicationFactor;
+
+    private final double readDominatedRatio;
+
+    private final double writeDominatedRatio;
+
+    private final int minimumSampleSize;
+
+    private final long interval;
+
+    /**
+     * When the replication factor was last changed, or null if it hasn't been.
+     */
+    private Long lastChange = null;
+
+    /**
+     * @param minimumReplicationFactor  the lowest factor a table is given.
+     * @param maximumReplicationFactor  the highest factor a table is given.
+     * @param readDominatedRatio        the read/write ratio at or above which the factor is raised.
+     * @param writeDominatedRatio       the read/write ratio at or below which the factor is lowered.
+     * @param minimumSampleSize         the number of recent lock requests needed before the factor is changed.
+     * @param interval                  the minimum time in milliseconds between changes.
+     */
+    public ReplicationFactorPolicy(final int minimumReplicationFactor, final int maximumReplicationFactor, final double readDominatedRatio, final double writeDominatedRatio, final int minimumSampleSize, final long interval) {
+
+        this.minimumReplicationFactor = Math.max(1, minimumReplicationFactor);
+        this.maximumReplicationFactor = Math.max(this.minimumReplicationFactor, maximumReplicationFactor);
+        this.readDominatedRatio = readDominatedRatio;
+        this.writeDominatedRatio = writeDominatedRatio;
+        this.minimumSampleSize = minimumSampleSize;
+        this.interval = interval;
+    }
+
+    /**
+     * @return the policy given by the database's settings, or null if the replication factor of tables isn't adaptive.
+     */
+    public static ReplicationFactorPolicy fromSettings(final Settings settings) {
+
+        if (settings == null || !Boolean.parseBoolean(settings.get("ADAPTIVE_REPLICATION"))) { return null; }
+
+        final int minimum = Integer.parseInt(settings.get("MIN_RELATION_REPLICATION_FACTOR"));
+        final int maximum = Integer.parseInt(settings.get("MAX_RELATION_REPLICATION_FACTOR"));
+        final double readDominatedRatio = Double.parseDouble(settings.get("READ_DOMINATED_RATIO"));
+        final double writeDominatedRatio = Double.parseDouble(settings.get("WRITE_DOMINATED_RATIO"));
+        final int minimumSampleSize = Integer.parseInt(settings.get("ADAPTIVE_REPLICATION_MIN_REQUESTS"));
+        final long interval = Long.parseLong(settings.get("ADAPTIVE_REPLICATION_INTERVAL"));
+
+        return new ReplicationFactorPolicy(minimum, maximum, readDominatedRatio, writeDominatedRatio, minimumSampleSize, interval);
+    }
+
+    /**
+     * Decide the replication factor of a table.
+     *
+     * @param monitor           the monitoring data of the table's Table Manager.
+     * @param currentFactor     the table's current replication factor.
+     * @param now               the current time, in milliseconds.
+     * @param tableName         the name of the table, used when logging decisions.
+     * @return the replication factor the table should have.
+     */
+    public synchronized int decide(final ITableManagerMonitor monitor, final int currentFactor, final long now, final String tableName) {
+
+        if (lastChange != null && now - lastChange < interval) { return currentFactor; }
+
+        final int sampleSize = monitor.getSampleSize();
+
+        if (sampleSize < minimumSampleSize) { return currentFactor; }
+
+        final double readWriteRatio = monitor.getReadWriteRatio();
+
+        int newFactor = currentFactor;
+
+        if (readWriteRatio >= readDominatedRatio) {
+            newFactor++;
+        }
+        else if (readWriteRatio <= writeDominatedRatio) {
+            newFactor--;
+        }
+
+        newFactor = Math.max(minimumReplicationFactor, Math.min(maximumReplicationFactor, newFactor));
+
+        if (newFactor != currentFactor) {
+            lastChange = now;
+
+            Diagnostic.traceNoEvent(DiagnosticLevel.FINAL, "Replication factor of " + tableName + " changed from " + currentFactor + " to " + newFactor + ": read/write ratio is " + readWriteRatio + " over " + sampleSize + " recent lock requests (raised at " + readDominatedRatio + ", lowered at " + writeDominatedRatio
+                            + ", bounds " + minimumReplicationFactor + "-" + maximumReplicationFactor + ").");
+        }
+
+        return newFactor;
+    }
+}
@@ -1,129 +1,222 @@
 package org.h2o.db.manager.monitoring.tablemanager;
 
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.h2o.autonomic.settings.Settings;
 import org.h2o.db.query.locking.LockRequest;
 import org.h2o.db.query.locking.LockType;
 import org.h2o.db.wrappers.DatabaseInstanceWrapper;
 
+/**
+ * Monitors the lock requests received by a Table Manager.
+ *
+ * <p>All counts are held in {@link DecayingCounterArray}s, so the statistics reflect recent activity (older requests are gradually
+ * forgotten) and can be updated without locking. Information is held per user session, per lock type, on the overall rate of requests,
+ * and on the time sessions spend waiting for locks.
+ *
+ * @author Angus Macdonald (angus AT cs.st-andrews.ac.uk)
+ */
 public class TableManagerMonitor implements ITableManagerMonitor {
 
+    /**
+     * Number of buckets in the lock-wait-time histogram.
+     */
+    public static final int LOCK_WAIT_TIME_BUCKETS = 17;
+
     /**
      * Stores information on the location of requests coming into the Table Manager.
      */
-    private final Map<LockRequest, PerUserQueryMonitoringData> perUserData = new HashMap<LockRequest, PerUserQueryMonitoringData>();
+    private final ConcurrentHashMap<LockRequest, PerUserQueryMonitoringData> perUserData = new ConcurrentHashMap<LockRequest, PerUserQueryMonitoringData>();
 
-    /*
-     * Read-Write Ratio.
+    /**
+     * Number of incoming requests for each type of lock, indexed by {@link LockType#ordinal()}.
      */
+    private final DecayingCounterArray requestsPerLockType;
 
     /**
-     * The number of incoming read requests since monitoring began.
+     * Number of lock waits in each bucket of the lock-wait-time histogram.
      */
-    private int numberOfReads = 0;
+    private final DecayingCounterArray lockWaitTimes;
+
+    private final int slots;
+
+    private final long slotLength;
+
+    private final double decayPerSlot;
+
+    public TableManagerMonitor() {
+
+        this(Settings.TABLE_MANAGER_MONITORING_SLOTS, Settings.TABLE_MANAGER_MONITORING_SLOT_LENGTH, Settings.TABLE_MANAGER_MONITORING_DECAY);
+    }
 
     /**
-     * The number of incoming write requests since monitoring began.
+     * @param slots             the number of time slots in the monitoring window.
+     * @param slotLength        the length of each time slot in milliseconds.
+     * @param decayPerSlot      the weight given to monitoring data for each slot by which it is older than the current slot.
      */
-    private int numberOfWrites = 0;
+    public TableManagerMonitor(final int slots, final long slotLength, final double decayPerSlot) {
+
+        this.slots = slots;
+        this.slotLength = slotLength;
+        this.decayPerSlot = decayPerSlot;
+
+        requestsPerLockType = new DecayingCounterArray(LockType.values().length, slots, slotLength, decayPerSlot);
+        lockWaitTimes = new DecayingCounterArray(LOCK_WAIT_TIME_BUCKETS, slots, slotLength, decayPerSlot);
+    }
 
     @Override
     public void addQueryInformation(final LockRequest requestingUser, final LockType typeOfQuery) {
 
-        if (maxNumberOfSamplesBeenReached()) {
-            trimSamples();
+        final long now = now();
+
+        getMonitoringData(requestingUser).addLockRequest(typeOfQuery, now);
+
+        requestsPerLockType.increment(typeOfQuery.ordinal(), now);
+    }
+
+    @Override
+    public void addLockOutcomeInformation(final LockRequest requestingUser, final LockType lockGranted) {
+
+        final PerUserQueryMonitoringData monitoringData = perUserData.get(requestingUser);
+
+        if (monitoringData == null) { return; }
+
+        final long now = now();
+
+        final long waitTime = monitoringData.recordLockOutcome(lockGranted, now);
+
+        if (waitTime >= 0) {
+            lockWaitTimes.increment(getLockWaitTimeBucket(waitTime), now);
         }
+    }
+
+    /**
+     * Get the monitoring data for the given session, creating it if this is the first request seen from the session.
+     */
+    private PerUserQueryMonitoringData getMonitoringData(final LockRequest requestingUser) {
 
         PerUserQueryMonitoringData monitoringData = perUserData.get(requestingUser);
 
         if (monitoringData == null) {
-            monitoringData = new PerUserQueryMonitoringData(requestingUser);
-            perUserData.put(requestingUser, monitoringData);
-        }
+            if (maxNumberOfSamplesBeenReached()) {
+                trimSamples();
+            }
 
-        monitoringData.addLockRequest(typeOfQuery);
+            monitoringData = new PerUserQueryMonitoringData(requestingUser, slots, slotLength, decayPerSlot);
 
-        if (typeOfQuery == LockType.WRITE) {
-            numberOfWrites++;
-        }
-        else if (typeOfQuery == LockType.READ) {
-            numberOfReads++;
+            final PerUserQueryMonitoringData existing = perUserData.putIfAbsent(requestingUser, monitoringData);
+
+            if (existing != null) {
+                monitoringData = existing;
+            }
         }
+
+        return monitoringData;
     }
 
     /**
-     * Reduce the number of samples held by the Table Manager to clear some space/reduce the memory overhead of monitoring.
+     * Reduce the number of user sessions held by the Table Manager to reduce the memory overhead of monitoring. Sessions whose
+     * (decayed) number of requests is no higher than the average are removed, unless they are waiting for a lock. The per-lock-type and
+     * rate statistics are held separately, so they are not affected.
      */
     private void trimSamples() {
 
-        // TODO Don't be so drastic here -- find a way of summarising existing information, rather than deleting it all.
-        perUserData.clear();
+        if (perUserData.isEmpty()) { return; }
+
+        final long now = now();
+
+        double total = 0;
+        for (final PerUserQueryMonitoringData dataItem : perUserData.values()) {
+            total += dataItem.numberOfRequests(now);
+        }
+
+        final double average = total / perUserData.size();
+
+        final Iterator<PerUserQueryMonitoringData> it = perUserData.values().iterator();
+        while (it.hasNext()) {
+            final PerUserQueryMonitoringData dataItem = it.next();
+
+            if (dataItem.numberOfRequests(now) <= average && !dataItem.isWaitingForLock()) {
+                it.remove();
+            }
+        }
     }
 
     /**
-     * Checks whether there are too many samples (taking up too much space), by checking the number of samples against
+     * Checks whether too many sessions are being monitored (taking up too much space), by checking the number of sessions against
      * the system-wide limit, specified in {@link Settings#MAX_NUMBER_OF_TABLE_MANAGER_SAMPLES}
      * @return
      */
     private boolean maxNumberOfSamplesBeenReached() {
 
-        return getSampleSize() >= Settings.MAX_NUMBER_OF_TABLE_MANAGER_SAMPLES;
+        return perUserData.size() >= Settings.MAX_NUMBER_OF_TABLE_MANAGER_SAMPLES;
 
     }
 
     @Override
     public double getReadWriteRatio() {
 
+        final double numberOfReads = getNumberOfRequests(LockType.READ);
+        final double numberOfWrites = getNumberOfRequests(LockType.WRITE);
+
         if (numberOfWrites == 0 && numberOfReads > 0) { return Double.POSITIVE_INFINITY; }
 
         if (numberOfWrites == 0 && numberOfReads == 0) { return 1; }
 
-        return numberOfReads / (double) numberOfWrites;
+        return numberOfReads / numberOfWrites;
     }
 
     @Override
     public LockRequest getMostCommonQueryLocation() {
 
+        final long now = now();
+
         PerUserQueryMonitoringData highestCountLocation = null;
-        int highestCountValue = 0;
+        double highestCountValue = 0;
 
         for (final PerUserQueryMonitoringData dataItem : perUserData.values()) {
-            if (dataItem.numberOfRequests() > highestCountValue) {
-                highestCountValue = dataItem.numberOfRequests();
+            final double numberOfRequests = dataItem.numberOfRequests(now);
+
+            if (numberOfRequests > highestCountValue) {
+                highestCountValue = numberOfRequests;
                 highestCountLocation = dataItem;
             }
         }
 
-        return highestCountLocation.getLocation();
+        return highestCountLocation == null ? null : highestCountLocation.getLocation();
     }
 
     @Override
     public SortedSet<LockRequestPercentagesPerInstance> getPercentageOfLockRequestsFromInstances() {
 
-        final int totalNumberOfRequests = numberOfReads + numberOfWrites;
+        final long now = now();
+
+        final Map<DatabaseInstanceWrapper, Double> queryCount = new HashMap<DatabaseInstanceWrapper, Double>();
 
-        final Map<DatabaseInstanceWrapper, Integer> queryCount = new HashMap<DatabaseInstanceWrapper, Integer>();
+        double totalNumberOfRequests = 0;
 
         for (final PerUserQueryMonitoringData dataItem : perUserData.values()) {
 
-            if (queryCount.get(dataItem.getLocation().getRequestLocation()) == null) {
-                queryCount.put(dataItem.getLocation().getRequestLocation(), dataItem.numberOfRequests());
-            }
-            else {
-                final Integer numberOfRequests = queryCount.get(dataItem.getLocation().getRequestLocation());
-                queryCount.put(dataItem.getLocation().getRequestLocation(), numberOfRequests + dataItem.numberOfRequests());
-            }
+            final double numberOfRequests = dataItem.numberOfRequests(now);
+            totalNumberOfRequests += numberOfRequests;
+
+            final Double previous = queryCount.get(dataItem.getLocation().getRequestLocation());
+
+            queryCount.put(dataItem.getLocation().getRequestLocation(), previous == null ? numberOfRequests : previous + numberOfRequests);
         }
 
         final SortedSet<LockRequestPercentagesPerInstance> percentages = new TreeSet<LockRequestPercentagesPerInstance>();
 
-        for (final Entry<DatabaseInstanceWrapper, Integer> instance : queryCount.entrySet()) {
-            final LockRequestPercentagesPerInstance lockRequestPercentages = new LockRequestPercentagesPerInstance(instance.getKey(), instance.getValue() / (double) totalNumberOfRequests);
+        if (totalNumberOfRequests == 0) { return percentages; }
+
+        for (final Entry<DatabaseInstanceWrapper, Double> instance : queryCount.entrySet()) {
+            final LockRequestPercentagesPerInstance lockRequestPercentages = new LockRequestPercentagesPerInstance(instance.getKey(), instance.getValue() / totalNumberOfRequests);
             final boolean added = percentages.add(lockRequestPercentages);
 
             assert added : "The object being added should always be unique here.";
@@ -135,6 +228,65 @@ public class TableManagerMonitor implements ITableManagerMonitor {
     @Override
     public int getSampleSize() {
 
-        return numberOfReads + numberOfWrites;
+        return (int) Math.round(getNumberOfRequests(LockType.READ) + getNumberOfRequests(LockType.WRITE));
+    }
+
+    @Override
+    public double getNumberOfRequests(final LockType lockType) {
+
+        return requestsPerLockType.get(lockType.ordinal(), now());
+    }
+
+    @Override
+    public double getRequestRate() {
+
+        double totalWeight = 0;
+        for (int age = 0; age < slots; age++) {
+            totalWeight += Math.pow(decayPerSlot, age);
+        }
+
+        return requestsPerLockType.getTotal(now()) / (totalWeight * slotLength / 1000d);
+    }
+
+    @Override
+    public long[] getRequestRateHistogram() {
+
+        final long[] histogram = new long[slots];
+
+        requestsPerLockType.getCountsPerSlot(now(), histogram);
+
+        return histogram;
+    }
+
+    @Override
+    public double[] getLockWaitTimeHistogram() {
+
+        final long now = now();
+
+        final double[] histogram = new double[LOCK_WAIT_TIME_BUCKETS];
+
+        for (int bucket = 0; bucket < LOCK_WAIT_TIME_BUCKETS; bucket++) {
+            histogram[bucket] = lockWaitTimes.get(bucket, now);
+        }
+
+        return histogram;
+    }
+
+    /**
+     * @return the lock-wait-time histogram bucket for a wait of the given length.
+     */
+    static int getLockWaitTimeBucket(final long waitTime) {
+
+        final int bucket = 64 - Long.numberOfLeadingZeros(waitTime); // 0 for 0ms, 1 for 1ms, 2 for 2-3ms, 3 for 4-7ms...
+
+        return Math.min(bucket, LOCK_WAIT_TIME_BUCKETS - 1);
+    }
+
+    /**
+     * @return the current time, in milliseconds. Overridden in tests.
+     */
+    protected long now() {
+
+        return System.currentTimeMillis();
     }
 }
@@ -0,0 +1,320 @@
+/*
+ * Copyright (C) 2009-2010 School of Computer Science, University of St Andrews. All rights reserved. Project Homepage:
+ * http://blogs.cs.st-andrews.ac.uk/h2o H2O is free software: you can redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version. H2O
+ * is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details. You should have received a copy of the GNU General
+ * Public License along with H2O. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.h2o.db.manager.monitorthreads;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.h2.engine.Database;
+import org.h2o.db.DatabaseInstanceProxy;
+import org.h2o.db.id.DatabaseID;
+
+import uk.ac.standrews.cs.nds.util.Diagnostic;
+import uk.ac.standrews.cs.nds.util.DiagnosticLevel;
+import uk.ac.standrews.cs.nds.util.ErrorHandling;
+
+/**
+ * A phi-accrual failure detector, shared by everything on a database instance that needs to know when other instances fail.
+ *
+ * <p>The detector records when it last heard from each monitored instance. Any successful call to an instance counts as a heartbeat, so
+ * instances that are in regular contact are never sent a separate message. If an instance hasn't been heard from for a heartbeat interval,
+ * it is sent an <code>isAlive</code> call. This is one call per instance, rather than one per Table Manager.
+ *
+ * <p>For each instance the detector computes phi, the suspicion that it has failed, from the time since it was last heard from and the
+ * mean time between previous heartbeats (assuming they are exponentially distributed). When phi reaches the threshold the instance is
+ * declared to have failed, and every {@link IFailureListener} is told. The mean is never taken to be less than the heartbeat interval, and
+ * because quiet instances are sent a heartbeat it only exceeds the interval if they are slow to answer, so a failure is normally detected
+ * within about <code>threshold / log10(e)</code> heartbeat intervals.
+ */
+public class FailureDetector extends Thread {
+
+    /**
+     * The default number of times between heartbeats that are used to compute the mean for each instance.
+     */
+    private static final int WINDOW_SIZE = 100;
+
+    private static final double LOG10_E = Math.log10(Math.E);
+
+    private final Database database;
+
+    private final int heartbeatInterval;
+
+    private final double phiThreshold;
+
+    /**
+     * The number of times between heartbeats that are used to compute the mean for each instance.
+     */
+    private final int windowSize;
+
+    /**
+     * The heartbeat history of each instance being monitored.
+     */
+    private final Map<DatabaseID, HeartbeatHistory> histories = new HashMap<DatabaseID, HeartbeatHistory>();
+
+    private final List<IFailureListener> listeners = new CopyOnWriteArrayList<IFailureListener>();
+
+    private boolean running = true;
+
+    public FailureDetector(final Database database, final int heartbeatInterval, final double phiThreshold) {
+
+        this(database, heartbeatInterval, phiThreshold, WINDOW_SIZE);
+    }
+
+    /**
+     * @param database the local database, or null if the local instance isn't known.
+     * @param heartbeatInterval the time between heartbeats, in milliseconds.
+     * @param phiThreshold the suspicion at which an instance is declared to have failed.
+     * @param windowSize the number of times between heartbeats that are used to compute the mean for each instance.
+     */
+    protected FailureDetector(final Database database, final int heartbeatInterval, final double phiThreshold, final int windowSize) {
+
+        setName("h2o-failure-detector-thread");
+        setDaemon(true);
+
+        this.database = database;
+        this.heartbeatInterval = heartbeatInterval;
+        this.phiThreshold = phiThreshold;
+        this.windowSize = windowSize;
+    }
+
+    public void addListener(final IFailureListener listener) {
+
+        listeners.add(listener);
+    }
+
+    public void removeListener(final IFailureListener listener) {
+
+        listeners.remove(listener);
+    }
+
+    /**
+     * Start monitoring an instance, if it isn't already being monitored.
+     * @param databaseID the instance to monitor.
+     */
+    public synchronized void monitor(final DatabaseID databaseID) {
+
+        if (databaseID == null || isLocal(databaseID)) { return; }
+
+        if (!histories.containsKey(databaseID)) {
+            histories.put(databaseID, new HeartbeatHistory(now()));
+        }
+    }
+
+    /**
+     * Stop monitoring an instance, for example because it has left the database system.
+     * @param databaseID the instance to stop monitoring.
+     */
+    public synchronized void stopMonitoring(final DatabaseID databaseID) {
+
+        histories.remove(databaseID);
+    }
+
+    /**
+     * Record that an instance has been heard from, because a call to it has succeeded. The instance is monitored from now on if it wasn't
+     * already.
+     * @param databaseID the instance that was heard from.
+     */
+    public synchronized void heartbeat(final DatabaseID databaseID) {
+
+        if (databaseID == null || isLocal(databaseID)) { return; }
+
+        final long now = now();
+        final HeartbeatHistory history = histories.get(databaseID);
+
+        if (history == null) {
+            histories.put(databaseID, new HeartbeatHistory(now));
+        }
+        else {
+            history.arrived(now);
+        }
+    }
+
+    /**
+     * @param databaseID a monitored instance.
+     * @return the current suspicion that the instance has failed, or 0 if it isn't being monitored.
+     */
+    public synchronized double getPhi(final DatabaseID databaseID) {
+
+        final HeartbeatHistory history = histories.get(databaseID);
+        return history == null ? 0 : history.phi(now());
+    }
+
+    @Override
+    public void run() {
+
+        while (isRunning()) {
+            try {
+                Thread.sleep(heartbeatInterval);
+            }
+            catch (final InterruptedException e) {
+            }
+
+            if (!isRunning()) {
+                break;
+            }
+
+            for (final DatabaseID quiet : getQuietInstances()) {
+                sendHeartbeat(quiet);
+            }
+
+            checkForFailures();
+        }
+    }
+
+    /**
+     * Stop monitoring the instances whose suspicion has reached the threshold, and tell every listener that they have failed.
+     */
+    protected void checkForFailures() {
+
+        for (final DatabaseID failed : removeFailedInstances()) {
+            Diagnostic.traceNoEvent(DiagnosticLevel.FULL, (database == null ? "" : database.getID() + ": ") + "the database instance at " + failed + " is suspected of failure by the failure detector.");
+
+            for (final IFailureListener listener : listeners) {
+                try {
+                    listener.instanceFailed(failed);
+                }
+                catch (final Exception e) {
+                    ErrorHandling.exceptionError(e, "Failed to notify listener of failure at " + failed);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the current time in milliseconds.
+     */
+    protected long now() {
+
+        return System.currentTimeMillis();
+    }
+
+    private boolean isLocal(final DatabaseID databaseID) {
+
+        return database != null && databaseID.equals(database.getID());
+    }
+
+    /**
+     * @return the instances that haven't been heard from for at least a heartbeat interval.
+     */
+    private synchronized List<DatabaseID> getQuietInstances() {
+
+        final long now = now();
+        final List<DatabaseID> quiet = new LinkedList<DatabaseID>();
+
+        for (final Map.Entry<DatabaseID, HeartbeatHistory> entry : histories.entrySet()) {
+            if (now - entry.getValue().getLastArrival() >= heartbeatInterval) {
+                quiet.add(entry.getKey());
+            }
+        }
+
+        return quiet;
+    }
+
+    /**
+     * Stop monitoring the instances whose suspicion has reached the threshold.
+     * @return the instances that have failed.
+     */
+    private synchronized List<DatabaseID> removeFailedInstances() {
+
+        final long now = now();
+        final List<DatabaseID> failed = new LinkedList<DatabaseID>();
+
+        for (final Map.Entry<DatabaseID, HeartbeatHistory> entry : histories.entrySet()) {
+            if (entry.getValue().phi(now) >= phiThreshold) {
+                failed.add(entry.getKey());
+            }
+        }
+
+        for (final DatabaseID databaseID : failed) {
+            histories.remove(databaseID);
+        }
+
+        return failed;
+    }
+
+    private void sendHeartbeat(final DatabaseID databaseID) {
+
+        try {
+            if (DatabaseInstanceProxy.getProxy(databaseID).isAlive()) {
+                recordHeartbeatIfMonitored(databaseID);
+            }
+        }
+        catch (final Exception e) {
+            // No heartbeat, so the suspicion of this instance keeps rising.
+        }
+    }
+
+    /**
+     * Record a heartbeat sent by this thread, unless the instance has stopped being monitored while the heartbeat was being sent.
+     */
+    private synchronized void recordHeartbeatIfMonitored(final DatabaseID databaseID) {
+
+        final HeartbeatHistory history = histories.get(databaseID);
+
+        if (history != null) {
+            history.arrived(now());
+        }
+    }
+
+    public synchronized boolean isRunning() {
+
+        return running;
+    }
+
+    public synchronized void setRunning(final boolean running) {
+
+        this.running = running;
+    }
+
+    /**
+     * The times between recent heartbeats from one instance.
+     */
+    private final class HeartbeatHistory {
+
+        private final LinkedList<Long> intervals = new LinkedList<Long>();
+
+        private long intervalSum = 0;
+
+        private long lastArrival;
+
+        HeartbeatHistory(final long firstArrival) {
+
+            lastArrival = firstArrival;
+        }
+
+        void arrived(final long now) {
+
+            final long interval = now - lastArrival;
+            lastArrival = now;
+
+            intervals.add(interval);
+            intervalSum += interval;
+
+            if (intervals.size() > windowSize) {
+                intervalSum -= intervals.removeFirst();
+            }
+        }
+
+        long getLastArrival() {
+
+            return lastArrival;
+        }
+
+        double phi(final long now) {
+
+            // Frequent calls to an instance mustn't make the detector suspect it as soon as it goes quiet, so the mean is at least the interval.
+            final double mean = intervals.isEmpty() ? heartbeatInterval : Math.max(heartbeatInterval, (double) intervalSum / intervals.size());
+
+            return LOG10_E * (now - lastArrival) / mean;
+        }
+    }
+}
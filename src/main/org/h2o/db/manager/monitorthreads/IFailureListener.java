@@ -0,0 +1,26 @@
+/*
+ * Copyright (C) 2009-2010 School of Computer Science, University of St Andrews. All rights reserved. Project Homepage:
+ * http://blogs.cs.st-andrews.ac.uk/h2o H2O is free software: you can redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version. H2O
+ * is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details. You should have received a copy of the GNU General
+ * Public License along with H2O. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.h2o.db.manager.monitorthreads;
+
+import org.h2o.db.id.DatabaseID;
+
+/**
+ * Receives notifications from a {@link FailureDetector} when a database instance is found to have failed.
+ */
+public interface IFailureListener {
+
+    /**
+     * Called when a monitored database instance is declared to have failed. This is called on the failure detector's thread, so it
+     * should not block for long.
+     *
+     * @param failedMachine
+     *            the instance that has failed.
+     */
+    public void instanceFailed(DatabaseID failedMachine);
+}
@@ -9,6 +9,7 @@
 package org.h2o.db.manager.monitorthreads;
 
 import org.h2.engine.Database;
+import org.h2o.db.manager.SystemTable;
 import org.h2o.db.manager.interfaces.ISystemTableReference;
 import org.h2o.db.replication.MetaDataReplicaManager;
 
@@ -72,6 +73,13 @@ public class MetaDataReplicationThread extends Thread {
                  * Check that there are a sufficient number of replicas of System Table state.
                  */
                 metaDataReplicaManager.replicateMetaDataIfPossible(systemTableReference, true);
+
+                /*
+                 * Check that the System Table has a hot standby, if it should have one.
+                 */
+                if (systemTableReference.isSystemTableLocal() && systemTableReference.getLocalSystemTable() instanceof SystemTable) {
+                    ((SystemTable) systemTableReference.getLocalSystemTable()).checkStandby();
+                }
             }
             else {
                 try {
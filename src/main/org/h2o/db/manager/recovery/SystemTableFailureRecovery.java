@@ -39,6 +39,7 @@ import org.h2o.db.manager.interfaces.ISystemTableMigratable;
 import org.h2o.db.remote.IDatabaseRemote;
 import org.h2o.db.wrappers.SystemTableWrapper;
 import org.h2o.locator.client.H2OLocatorInterface;
+import org.h2o.util.PhaseTimer;
 import org.h2o.util.exceptions.MigrationException;
 import org.h2o.util.exceptions.MovedException;
 
@@ -460,8 +461,29 @@ public class SystemTableFailureRecovery implements ISystemTableFailureRecovery {
 
         Diagnostic.traceNoEvent(DiagnosticLevel.FINAL, "Preparing to re-instantiate System Table from persistent store.");
 
+        /*
+         * If there is a hot standby on this instance its in-memory state is already up to date, so it can take over straight away.
+         */
+        final SystemTable standby = db.getSystemTableStandby();
+
+        if (standby != null) {
+            try {
+                standby.promote();
+            }
+            catch (final Exception e) {
+                ErrorHandling.exceptionError(e, "Failed to promote the hot standby of the System Table.");
+                throw new SystemTableAccessException("Failed to promote the hot standby of the System Table.");
+            }
+
+            Diagnostic.traceNoEvent(DiagnosticLevel.INIT, "Promoted hot standby to System Table at " + db.getID());
+
+            return new SystemTableWrapper(standby, db.getID());
+        }
+
         ISystemTableMigratable newSystemTable = null;
 
+        final PhaseTimer timer = new PhaseTimer("System Table recovery from persisted state");
+
         /*
          * INSTANTIATE A NEW System Table FROM PERSISTED STATE. This must be called if the previous System Table has failed.
          */
@@ -470,6 +492,7 @@ public class SystemTableFailureRecovery implements ISystemTableFailureRecovery {
         }
 
         try {
+            timer.startPhase("create System Table");
             Diagnostic.traceNoEvent(DiagnosticLevel.FULL, "Creating new System Table instance");
             newSystemTable = new SystemTable(db, false); // false - don't overwrite saved persisted state.
 
@@ -482,6 +505,7 @@ public class SystemTableFailureRecovery implements ISystemTableFailureRecovery {
         }
 
         try {
+            timer.startPhase("load persisted state");
             Diagnostic.traceNoEvent(DiagnosticLevel.FULL, "Building state of new System Table");
             newSystemTable.recreateInMemorySystemTableFromLocalPersistedState();
             Diagnostic.traceNoEvent(DiagnosticLevel.FINAL, db.getID() + ": New System Table created.");
@@ -499,6 +523,8 @@ public class SystemTableFailureRecovery implements ISystemTableFailureRecovery {
             throw new SystemTableAccessException("Persisted state didn't exist on machine as expected.");
         }
 
+        timer.finish();
+
         final SystemTableWrapper wrapper = new SystemTableWrapper(newSystemTable, db.getID());
 
         Diagnostic.traceNoEvent(DiagnosticLevel.INIT, "Created new System Table at " + wrapper.getURL());
@@ -0,0 +1,255 @@
+/*
+ * Copyright (C) 2009-2010 School of Computer Science, University of St Andrews. All rights reserved. Project Homepage:
+ * http://blogs.cs.st-andrews.ac.uk/h2o H2O is free software: you can redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version. H2O
+ * is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details. You should have received a copy of the GNU General
+ * Public License along with H2O. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.h2o.db.partitioning;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.TimeZone;
+
+import org.h2.engine.Database;
+import org.h2.value.Value;
+import org.h2.value.ValueNull;
+import org.h2.value.ValueString;
+import org.h2o.db.id.TableInfo;
+
+/**
+ * Describes how a horizontally partitioned table is split.
+ *
+ * <p>A partitioned table has no Table Manager of its own. Each of its partitions is an ordinary H2O table, named
+ * <code>&lt;table&gt;_P&lt;n&gt;</code>, with its own Table Manager and replica set. The System Table stores the partition scheme of every
+ * partitioned table so that any instance can route a query to the partitions involved.
+ *
+ * <p>Instances are immutable.
+ *
+ * @author Angus Macdonald (angus@cs.st-andrews.ac.uk)
+ */
+public class PartitionScheme implements Serializable {
+
+    private static final long serialVersionUID = 3902751884612074239L;
+
+    /**
+     * Added to the name of the partitioned table, followed by the partition number, to give the name of each partition.
+     */
+    public static final String PARTITION_SUFFIX = "_P";
+
+    private final TableInfo tableInfo;
+
+    private final String columnName;
+
+    private final PartitionMethod method;
+
+    private final int numberOfPartitions;
+
+    /**
+     * For range partitioning, the exclusive upper bound of every partition but the last, in ascending order. Empty for hash partitioning.
+     */
+    private final String[] upperBounds;
+
+    /**
+     * @param tableInfo             the name of the partitioned table.
+     * @param columnName            the column whose value decides which partition a row belongs to.
+     * @param method                how rows are assigned to partitions.
+     * @param numberOfPartitions    the number of partitions.
+     * @param upperBounds           for range partitioning, the upper bound of every partition but the last (so there must be one fewer
+     *                              than the number of partitions). Ignored for hash partitioning.
+     */
+    public PartitionScheme(final TableInfo tableInfo, final String columnName, final PartitionMethod method, final int numberOfPartitions, final String[] upperBounds) {
+
+        if (tableInfo == null || columnName == null || method == null) { throw new IllegalArgumentException("A table, partition column and partitioning method must be specified."); }
+        if (numberOfPartitions < 1) { throw new IllegalArgumentException("A partitioned table must have at least one partition."); }
+
+        this.tableInfo = tableInfo.getGenericTableInfo();
+        this.columnName = columnName;
+        this.method = method;
+        this.numberOfPartitions = numberOfPartitions;
+
+        if (method == PartitionMethod.RANGE) {
+            if (upperBounds == null || upperBounds.length != numberOfPartitions - 1) { throw new IllegalArgumentException("A range partitioned table needs one upper bound for every partition but the last."); }
+
+            this.upperBounds = upperBounds.clone();
+        }
+        else {
+            this.upperBounds = new String[0];
+        }
+    }
+
+    /**
+     * Create a scheme that assigns rows to partitions by the hash code of the partition column.
+     */
+    public static PartitionScheme createHashScheme(final TableInfo tableInfo, final String columnName, final int numberOfPartitions) {
+
+        return new PartitionScheme(tableInfo, columnName, PartitionMethod.HASH, numberOfPartitions, null);
+    }
+
+    /**
+     * Create a scheme that assigns rows to partitions by comparing the partition column with a list of upper bounds.
+     * @param upperBounds   the exclusive upper bound of each partition, in ascending order. An extra partition holds every value at or
+     *                      above the last bound.
+     */
+    public static PartitionScheme createRangeScheme(final TableInfo tableInfo, final String columnName, final String[] upperBounds) {
+
+        return new PartitionScheme(tableInfo, columnName, PartitionMethod.RANGE, upperBounds.length + 1, upperBounds);
+    }
+
+    /**
+     * @return the name of the partitioned table.
+     */
+    public TableInfo getTableInfo() {
+
+        return tableInfo;
+    }
+
+    public String getColumnName() {
+
+        return columnName;
+    }
+
+    public PartitionMethod getMethod() {
+
+        return method;
+    }
+
+    public int getNumberOfPartitions() {
+
+        return numberOfPartitions;
+    }
+
+    /**
+     * @return the upper bound of every partition but the last, or an empty array if this is not a range partitioned table.
+     */
+    public String[] getUpperBounds() {
+
+        return upperBounds.clone();
+    }
+
+    /**
+     * @return the name of the table holding the given partition.
+     */
+    public TableInfo getPartitionTableInfo(final int partition) {
+
+        return new TableInfo(tableInfo.getTableName() + PARTITION_SUFFIX + partition, tableInfo.getSchemaName());
+    }
+
+    /**
+     * Find the partition holding rows with the given value in the partition column.
+     * @param key       the value of the partition column, converted to the type of that column.
+     * @param database  used to compare values with range bounds.
+     * @return the partition number.
+     * @throws SQLException if a range bound can't be converted to the type of the key.
+     */
+    public int getPartition(final Value key, final Database database) throws SQLException {
+
+        if (key == null || key == ValueNull.INSTANCE) { return 0; }
+
+        if (method == PartitionMethod.HASH) { return (getCanonicalHashCode(key) & Integer.MAX_VALUE) % numberOfPartitions; }
+
+        for (int i = 0; i < upperBounds.length; i++) {
+            final Value bound = ValueString.get(upperBounds[i]).convertTo(key.getType());
+
+            if (database.compareTypeSave(key, bound) < 0) { return i; }
+        }
+
+        return upperBounds.length;
+    }
+
+    /**
+     * Get a hash code of a partition key that is the same for every representation of the same value, on every instance. The hash code of a
+     * DECIMAL depends on its scale, so 1.5 and 1.50 would differ, and that of a date or time depends on the time zone of the JVM.
+     */
+    private static int getCanonicalHashCode(final Value key) throws SQLException {
+
+        switch (key.getType()) {
+            case Value.DECIMAL: {
+                final BigDecimal decimal = key.getBigDecimal();
+
+                // Zero is compared first, as some JVMs don't strip the trailing zeros of zero.
+                return decimal.signum() == 0 ? 0 : decimal.stripTrailingZeros().hashCode();
+            }
+            case Value.DATE:
+                return hashCode(toUTCMillis(key.getDateNoCopy().getTime()));
+            case Value.TIME:
+                return hashCode(toUTCMillis(key.getTimeNoCopy().getTime()));
+            case Value.TIMESTAMP:
+                return hashCode(toUTCMillis(key.getTimestampNoCopy().getTime()));
+            default:
+                return key.hashCode();
+        }
+    }
+
+    /**
+     * Get the local date and time that the given time represents in this JVM, as a number of milliseconds since the epoch in UTC.
+     */
+    private static long toUTCMillis(final long millis) {
+
+        return millis + TimeZone.getDefault().getOffset(millis);
+    }
+
+    private static int hashCode(final long value) {
+
+        return (int) (value ^ value >>> 32);
+    }
+
+    /**
+     * Get a query returning every row in the given partitions.
+     * @param partitions    the partitions to include.
+     * @return a UNION ALL of the partitions, or a query on a single partition.
+     */
+    public String getSelectSQL(final int... partitions) {
+
+        final StringBuilder sql = new StringBuilder();
+
+        for (final int partition : partitions) {
+            if (sql.length() > 0) {
+                sql.append(" UNION ALL ");
+            }
+            sql.append("SELECT * FROM ").append(getPartitionTableInfo(partition).getFullTableName());
+        }
+
+        return sql.toString();
+    }
+
+    /**
+     * @return the partition number of every partition.
+     */
+    public int[] getAllPartitions() {
+
+        final int[] partitions = new int[numberOfPartitions];
+
+        for (int i = 0; i < numberOfPartitions; i++) {
+            partitions[i] = i;
+        }
+
+        return partitions;
+    }
+
+    @Override
+    public int hashCode() {
+
+        return tableInfo.hashCode();
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+
+        if (this == obj) { return true; }
+        if (!(obj instanceof PartitionScheme)) { return false; }
+
+        final PartitionScheme other = (PartitionScheme) obj;
+
+        return tableInfo.equals(other.tableInfo) && columnName.equals(other.columnName) && method == other.method && numberOfPartitions == other.numberOfPartitions && Arrays.equals(upperBounds, other.upperBounds);
+    }
+
+    @Override
+    public String toString() {
+
+        return tableInfo.getFullTableName() + " partitioned by " + method + "(" + columnName + ") into " + numberOfPartitions + " partitions" + (method == PartitionMethod.RANGE ? " with upper bounds " + Arrays.toString(upperBounds) : "");
+    }
+}
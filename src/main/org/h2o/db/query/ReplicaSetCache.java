@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2009-2010 School of Computer Science, University of St Andrews. All rights reserved. Project Homepage:
+ * http://blogs.cs.st-andrews.ac.uk/h2o H2O is free software: you can redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version. H2O
+ * is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details. You should have received a copy of the GNU General
+ * Public License along with H2O. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.h2o.db.query;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.h2o.db.query.locking.LockType;
+import org.h2o.db.wrappers.DatabaseInstanceWrapper;
+
+/**
+ * The last replica snapshot this instance received from the Table Manager of each table.
+ *
+ * <p>A Table Manager gives out immutable, versioned snapshots of its replica locations. When this instance asks for a lock it sends the
+ * version it holds, and if the snapshot hasn't changed the Table Manager returns the version without the replica locations, which are then
+ * filled in from here.
+ *
+ * <p>Reads and writes may be given different snapshots (reads of tables that must read the latest data only go to up-to-date replicas), so
+ * they are cached separately.
+ */
+public class ReplicaSetCache {
+
+    /**
+     * A replica snapshot received from a Table Manager.
+     */
+    public static final class Snapshot {
+
+        private final long version;
+
+        private final Map<DatabaseInstanceWrapper, Integer> replicas;
+
+        private Snapshot(final long version, final Map<DatabaseInstanceWrapper, Integer> replicas) {
+
+            this.version = version;
+            this.replicas = replicas;
+        }
+
+        public long getVersion() {
+
+            return version;
+        }
+    }
+
+    /**
+     * Cached snapshots, keyed by full table name and whether they are used for writes.
+     */
+    private final Map<String, Snapshot> snapshots = new ConcurrentHashMap<String, Snapshot>();
+
+    /**
+     * @return the snapshot of the given table's replicas that would be used for a lock of the given type, or null if none is held. The
+     *         snapshot must be passed to {@link #resolve(String, LockType, TableProxy, Snapshot)} along with the Table Manager's reply.
+     */
+    public Snapshot get(final String fullTableName, final LockType lockType) {
+
+        return snapshots.get(key(fullTableName, lockType));
+    }
+
+    /**
+     * @return the version of the given snapshot, or {@link TableProxy#NO_REPLICA_SET_VERSION} if it is null.
+     */
+    public static long getVersion(final Snapshot snapshot) {
+
+        return snapshot == null ? TableProxy.NO_REPLICA_SET_VERSION : snapshot.getVersion();
+    }
+
+    /**
+     * Fill in the replica locations of a proxy returned by a Table Manager, or cache them if they have changed.
+     *
+     * @param fullTableName
+     *            the table that was requested.
+     * @param lockType
+     *            the type of lock that was requested.
+     * @param proxy
+     *            the proxy returned by the Table Manager.
+     * @param known
+     *            the snapshot whose version was sent to the Table Manager, or null if none was sent.
+     * @return the proxy, or null if the Table Manager left out replica locations that don't match the snapshot that was sent, in which case
+     *         the request must be repeated without a version so that the full snapshot is sent.
+     */
+    public TableProxy resolve(final String fullTableName, final LockType lockType, final TableProxy proxy, final Snapshot known) {
+
+        if (proxy == null || proxy.getReplicaSetVersion() == TableProxy.NO_REPLICA_SET_VERSION) { return proxy; }
+
+        if (proxy.getReplicaLocations() == null) {
+            if (known == null || known.version != proxy.getReplicaSetVersion()) {
+                snapshots.remove(key(fullTableName, lockType));
+                return null;
+            }
+
+            proxy.setReplicaLocations(known.replicas);
+        }
+        else if (known == null || known.version != proxy.getReplicaSetVersion()) {
+            snapshots.put(key(fullTableName, lockType), new Snapshot(proxy.getReplicaSetVersion(), proxy.getReplicaLocations()));
+        }
+
+        return proxy;
+    }
+
+    private static String key(final String fullTableName, final LockType lockType) {
+
+        return (lockType == LockType.WRITE ? "W:" : "R:") + fullTableName;
+    }
+}
@@ -0,0 +1,350 @@
+/*
+ * Copyright (C) 2009-2010 School of Computer Science, University of St Andrews. All rights reserved. Project Homepage:
+ * http://blogs.cs.st-andrews.ac.uk/h2o H2O is free software: you can redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version. H2O
+ * is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details. You should have received a copy of the GNU General
+ * Public License along with H2O. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.h2o.db.query;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.h2o.db.query.asynchronous.CommitResult;
+import org.h2o.db.query.locking.LockRequest;
+import org.h2o.db.query.locking.LockType;
+import org.h2o.db.wrappers.DatabaseInstanceWrapper;
+
+/**
+ * Write locks that this instance has kept after the transactions that acquired them committed (see the STICKY_LOCKS setting).
+ *
+ * <p>A kept lock is still held by the Table Manager, under the lock request of the transaction that acquired it, so later transactions on
+ * this instance can read and update the table without contacting the Table Manager. The lock is given up when the Table Manager asks for
+ * it back because another instance wants to lock the table (see {@link #revoke(String, LockRequest)}), when an update made with it
+ * doesn't commit on every replica, when the Table Manager can no longer be relied on to hold it (see {@link #invalidate(String)}), and when
+ * the instance shuts down.
+ *
+ * <p>The Table Manager isn't told about updates made with a kept lock. This is safe because a lock is only kept while every update made
+ * with it commits on every replica it was given, so the update IDs recorded by the Table Manager stay in step with each other, and every
+ * transaction using the lock is given the update IDs the Table Manager originally gave out. When the lock is released the replica state is
+ * updated as it would have been after a single transaction.
+ *
+ * <p>A kept lock is used as the Table Manager would use it: by one transaction updating the table, or by any number reading it. Other
+ * sessions on this instance wait for it as they would for a lock held by another instance.
+ */
+public class StickyLockCache {
+
+    /**
+     * A kept lock.
+     */
+    private static final class Entry {
+
+        /**
+         * The proxy through which the lock was granted.
+         */
+        private final TableProxy proxy;
+
+        /**
+         * The transaction updating the table with the lock, or null if there isn't one.
+         */
+        private LockRequest writer = null;
+
+        /**
+         * The transactions reading the table under the lock.
+         */
+        private final Set<LockRequest> readers = new HashSet<LockRequest>();
+
+        /**
+         * True if the lock has been given up while it was in use. It is released by the last transaction using it, and no other transaction
+         * may start using it.
+         */
+        private boolean revoked = false;
+
+        private Entry(final TableProxy proxy) {
+
+            this.proxy = proxy;
+        }
+
+        private boolean inUse() {
+
+            return writer != null || !readers.isEmpty();
+        }
+    }
+
+    /**
+     * Kept locks, keyed by full table name.
+     */
+    private final Map<String, Entry> entries = new HashMap<String, Entry>();
+
+    /**
+     * @return true if this instance has kept a lock on the given table.
+     */
+    public synchronized boolean isKept(final String fullTableName) {
+
+        return entries.containsKey(fullTableName);
+    }
+
+    /**
+     * Use the kept lock on a table, if there is one.
+     *
+     * @param fullTableName
+     *            the table to be read or updated.
+     * @param lockType
+     *            the type of lock needed. Only READ and WRITE locks can be served from a kept lock.
+     * @param lockRequest
+     *            the session making the request.
+     * @return a proxy through which the table can be accessed; a proxy holding no lock if the table is being used by another transaction on
+     *         this instance in a way that conflicts with the request, or the lock is being given up, in which case the request should be
+     *         retried; or null if no lock is kept for the table, in which case one must be requested from the Table Manager.
+     */
+    public synchronized TableProxy acquire(final String fullTableName, final LockType lockType, final LockRequest lockRequest) {
+
+        final Entry entry = entries.get(fullTableName);
+
+        if (entry == null || lockType != LockType.READ && lockType != LockType.WRITE) { return null; }
+
+        if (entry.revoked) { return waitProxy(entry, lockRequest); }
+
+        if (entry.writer != null) {
+            if (!entry.writer.equals(lockRequest)) { return waitProxy(entry, lockRequest); }
+
+            // This transaction is already updating the table.
+            return createProxy(entry, LockType.WRITE);
+        }
+
+        if (lockType == LockType.WRITE) {
+            /*
+             * A read lock held by this transaction is upgraded. Its proxy is replaced by the one returned here, so the transaction won't
+             * finish with it.
+             */
+            entry.readers.remove(lockRequest);
+
+            if (!entry.readers.isEmpty()) { return waitProxy(entry, lockRequest); }
+
+            entry.writer = lockRequest;
+        }
+        else {
+            entry.readers.add(lockRequest);
+        }
+
+        return createProxy(entry, lockType);
+    }
+
+    /**
+     * Give up the kept lock on a table, so that this instance can request a different type of lock on it from the Table Manager.
+     *
+     * @return the proxy through which the lock was granted, which the caller must release; a proxy holding no lock if the lock is in use,
+     *         in which case the request should be retried; or null if no lock is kept for the table.
+     */
+    public synchronized TableProxy surrender(final String fullTableName, final LockRequest lockRequest) {
+
+        final Entry entry = entries.get(fullTableName);
+
+        if (entry == null) { return null; }
+
+        if (entry.inUse()) { return waitProxy(entry, lockRequest); }
+
+        entries.remove(fullTableName);
+
+        return entry.proxy;
+    }
+
+    /**
+     * Called when a transaction that used a lock on the given table finishes, to decide whether the lock is kept.
+     *
+     * @param proxy
+     *            the proxy through which the table was accessed.
+     * @param lockRequest
+     *            the transaction.
+     * @param commit
+     *            true if the transaction committed.
+     * @param committedQueries
+     *            the updates made by the transaction.
+     * @param keepNewLocks
+     *            true if a write lock acquired from the Table Manager by this transaction is to be kept.
+     * @return true if the lock is being kept, so it mustn't be released; false if it must be released now, under the proxy's lock request.
+     */
+    public synchronized boolean finish(final TableProxy proxy, final LockRequest lockRequest, final boolean commit, final Collection<CommitResult> committedQueries, final boolean keepNewLocks) {
+
+        final String fullTableName = proxy.getTableName().getFullTableName();
+
+        final Entry entry = entries.get(fullTableName);
+
+        if (!proxy.isSticky()) {
+            // The lock was acquired from the Table Manager by this transaction.
+            if (entry != null || !keepNewLocks || !commit || proxy.getLockGranted() != LockType.WRITE || !committedOnEveryReplica(proxy, committedQueries)) { return false; }
+
+            proxy.setSticky(true);
+            entries.put(fullTableName, new Entry(proxy));
+            return true;
+        }
+
+        if (entry == null || !entry.proxy.getRequestingDatabase().equals(proxy.getRequestingDatabase())) {
+            /*
+             * The lock has already been given up and released. An update can only be made while nothing else uses the lock, so this was a
+             * read.
+             */
+            return true;
+        }
+
+        if (proxy.getLockGranted() == LockType.WRITE) {
+            entry.writer = null;
+
+            if (!commit || !committedOnEveryReplica(proxy, committedQueries)) {
+                // The Table Manager must be told which replicas missed the update.
+                entries.remove(fullTableName);
+                return false;
+            }
+        }
+        else {
+            entry.readers.remove(lockRequest);
+        }
+
+        if (entry.revoked && !entry.inUse()) {
+            entries.remove(fullTableName);
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Called when the Table Manager of a table asks for a kept lock back.
+     *
+     * @param fullTableName
+     *            the table.
+     * @param lockRequest
+     *            the lock request under which the Table Manager holds the lock.
+     * @return true if the lock was kept and unused, and has been given up, so the Table Manager can release it; false if it isn't a kept
+     *         lock, or if it is in use, in which case it will be released when the transactions using it finish.
+     */
+    public synchronized boolean revoke(final String fullTableName, final LockRequest lockRequest) {
+
+        final Entry entry = entries.get(fullTableName);
+
+        if (entry == null || !entry.proxy.getRequestingDatabase().equals(lockRequest)) { return false; }
+
+        if (entry.inUse()) {
+            entry.revoked = true;
+            return false;
+        }
+
+        entries.remove(fullTableName);
+        return true;
+    }
+
+    /**
+     * Give up the kept lock on a table, or on every table, because its Table Manager can no longer be relied on to hold it: it has moved,
+     * been recreated or dropped, or couldn't be contacted.
+     *
+     * @param fullTableName
+     *            the table, or null for every table.
+     * @return the proxies through which the unused locks were granted, which the caller should try to release. Locks that are in use are
+     *         released when the transactions using them finish.
+     */
+    public synchronized List<TableProxy> invalidate(final String fullTableName) {
+
+        final List<TableProxy> unused = new LinkedList<TableProxy>();
+
+        final Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Map.Entry<String, Entry> tableEntry = iterator.next();
+
+            if (fullTableName != null && !fullTableName.equals(tableEntry.getKey())) {
+                continue;
+            }
+
+            final Entry entry = tableEntry.getValue();
+
+            if (entry.inUse()) {
+                entry.revoked = true;
+            }
+            else {
+                iterator.remove();
+                unused.add(entry.proxy);
+            }
+        }
+
+        return unused;
+    }
+
+    /**
+     * Give up every kept lock, when this instance is shutting down.
+     *
+     * @return the proxies through which the locks were granted, which the caller must release.
+     */
+    public synchronized List<TableProxy> surrenderAll() {
+
+        final List<TableProxy> kept = new LinkedList<TableProxy>();
+
+        for (final Entry entry : entries.values()) {
+            kept.add(entry.proxy);
+        }
+
+        entries.clear();
+
+        return kept;
+    }
+
+    private static TableProxy createProxy(final Entry entry, final LockType lockType) {
+
+        final TableProxy kept = entry.proxy;
+
+        final TableProxy proxy = new TableProxy(lockType, kept.getTableName(), new HashMap<DatabaseInstanceWrapper, Integer>(kept.getReplicaLocations()), kept.getTableManager(), kept.getRequestingDatabase(), kept.getUpdateID(), lockType, kept.getConsistencyLevel());
+        proxy.setSticky(true);
+
+        return proxy;
+    }
+
+    private static TableProxy waitProxy(final Entry entry, final LockRequest lockRequest) {
+
+        final TableProxy kept = entry.proxy;
+
+        return new TableProxy(LockType.NONE, kept.getTableName(), null, kept.getTableManager(), lockRequest, kept.getUpdateID(), LockType.WRITE, kept.getConsistencyLevel());
+    }
+
+    /**
+     * @return true if every replica the proxy was given committed the transaction's updates to the table, or the transaction didn't update
+     *         the table.
+     */
+    private static boolean committedOnEveryReplica(final TableProxy proxy, final Collection<CommitResult> committedQueries) {
+
+        if (proxy.getReplicaLocations() == null || proxy.getReplicaLocations().isEmpty()) { return false; }
+
+        if (committedQueries == null) { return true; }
+
+        boolean updated = false;
+
+        for (final CommitResult commitResult : committedQueries) {
+            if (proxy.getTableName().equals(commitResult.getTable())) {
+                updated = true;
+                break;
+            }
+        }
+
+        if (!updated) { return true; }
+
+        for (final DatabaseInstanceWrapper replica : proxy.getReplicaLocations().keySet()) {
+
+            boolean committed = false;
+
+            for (final CommitResult commitResult : committedQueries) {
+                if (commitResult.isCommit() && replica.equals(commitResult.getDatabaseInstanceWrapper()) && proxy.getTableName().equals(commitResult.getTable())) {
+                    committed = true;
+                    break;
+                }
+            }
+
+            if (!committed) { return false; }
+        }
+
+        return true;
+    }
+}
@@ -43,6 +43,8 @@ import org.h2o.db.manager.recovery.SystemTableAccessException;
 import org.h2o.db.query.asynchronous.AsynchronousQueryExecutor;
 import org.h2o.db.query.locking.LockRequest;
 import org.h2o.db.query.locking.LockType;
+import org.h2o.db.replication.ConsistencyLevel;
+import org.h2o.db.replication.ReadConsistency;
 import org.h2o.db.wrappers.DatabaseInstanceWrapper;
 import org.h2o.test.fixture.H2OTest;
 import org.h2o.util.exceptions.MovedException;
@@ -70,6 +72,11 @@ public class TableProxy implements Serializable {
      */
     private static final long serialVersionUID = -31853777345527026L;
 
+    /**
+     * The replica set version of a proxy whose replica locations weren't taken from one of the Table Manager's replica snapshots.
+     */
+    public static final long NO_REPLICA_SET_VERSION = Long.MIN_VALUE;
+
     private LockType lockGranted;
 
     private final TableInfo tableName;
@@ -99,14 +106,40 @@ public class TableProxy implements Serializable {
      */
     private LockType lockRequested;
 
+    /**
+     * The write quorum and read consistency of the table, as held by its Table Manager when the lock was granted. Null for a dummy proxy.
+     */
+    private ConsistencyLevel consistencyLevel;
+
+    /**
+     * True if this proxy was created from the {@link TableProxyCache} without asking the Table Manager for a lock. No lock is held; the
+     * update is checked by the Table Manager when the transaction commits.
+     */
+    private boolean optimistic = false;
+
+    /**
+     * True if this proxy was created from the {@link StickyLockCache}: the lock was kept by this instance when an earlier transaction
+     * committed, and is held by the Table Manager under that transaction's lock request.
+     */
+    private boolean sticky = false;
+
+    /**
+     * The version of the Table Manager's replica snapshot that the replica locations were taken from, or {@link #NO_REPLICA_SET_VERSION}.
+     * If the requesting instance already had this version the Table Manager sends the version alone, and the locations are filled in from
+     * the {@link ReplicaSetCache}. Snapshots are shared, so the locations are copied before they are changed.
+     */
+    private long replicaSetVersion = NO_REPLICA_SET_VERSION;
+
     /**
      * @param lockGranted the type of lock that has been granted
      * @param tableName name of the table that is being used in the query
      * @param allReplicas proxies for each of the replicas used in the query.
      * @param tableManager proxy for the Table Manager of the table involved in the query (i.e. tableName).
      * @param updateID ID given to this update.
+     * @param consistencyLevel the consistency level of the table.
      */
-    public TableProxy(final LockType lockGranted, final TableInfo tableName, final Map<DatabaseInstanceWrapper, Integer> allReplicas, final ITableManagerRemote tableManager, final LockRequest requestingMachine, final int updateID, final LockType lockRequested) {
+    public TableProxy(final LockType lockGranted, final TableInfo tableName, final Map<DatabaseInstanceWrapper, Integer> allReplicas, final ITableManagerRemote tableManager, final LockRequest requestingMachine, final int updateID, final LockType lockRequested,
+                    final ConsistencyLevel consistencyLevel) {
 
         this.lockGranted = lockGranted;
         this.lockRequested = lockRequested;
@@ -115,6 +148,7 @@ public class TableProxy implements Serializable {
         this.tableManager = tableManager;
         requestingDatabase = requestingMachine;
         this.updateID = updateID;
+        this.consistencyLevel = consistencyLevel;
     }
 
     /**
@@ -141,6 +175,18 @@ public class TableProxy implements Serializable {
      */
     public int executeUpdate(final String query, final String transactionNameForQuery, final Session session) throws SQLException {
 
+        return executeUpdate(query, transactionNameForQuery, session, null);
+    }
+
+    /**
+     * Executes the given SQL update on every replica but the local one, where the statement it was created from has already been executed.
+     * 
+     * @param query the query to be executed
+     * @param localResult the result of the statement on the local replica, or null if the query is to be executed there as well
+     * @throws SQLException
+     */
+    public int executeUpdate(final String query, final String transactionNameForQuery, final Session session, final Integer localResult) throws SQLException {
+
         if (lockRequested == LockType.CREATE && allReplicas == null || allReplicas.size() == 0) {
 
             // If we don't know of any replicas and this is a CREATE TABLE statement then we just run the query on the local DB instance.
@@ -153,7 +199,7 @@ public class TableProxy implements Serializable {
         // Execute the query. Send the query to each DB instance holding a replica.
 
         final AsynchronousQueryExecutor queryExecutor = new AsynchronousQueryExecutor(session.getDatabase());
-        final int returnValue = queryExecutor.executeQuery(query, transactionNameForQuery, allReplicas, tableName, session, false);
+        final int returnValue = queryExecutor.executeQuery(query, transactionNameForQuery, allReplicas, tableName, session, false, getConsistencyLevel(session), localResult);
 
         H2OTest.rmiFailure(); // Test code to simulate the failure of DB instances at this point.
 
@@ -208,18 +254,23 @@ public class TableProxy implements Serializable {
 
         try {
             try {
-                return tableManager.getTableProxy(lockType, lockRequest);
+                return requestTableProxy(tableManager, tableName, lockRequest, lockType, db);
             }
             catch (final MovedException e) {
+                // A lock kept on the table was granted by the old Table Manager, which no longer holds it.
+                invalidateKeptLocks(db, tableName);
+
                 // Get an uncached Table Manager from the System Table
                 tableManager = db.getSystemTableReference().lookup(tableName, false);
 
-                return tableManager.getTableProxy(lockType, lockRequest);
+                return requestTableProxy(tableManager, tableName, lockRequest, lockType, db);
             }
         }
 
         catch (final RPCException e) {
 
+            invalidateKeptLocks(db, tableName);
+
             if (!alreadyCalled) {
 
                 final ISystemTableMigratable systemTable = db.getSystemTable();
@@ -261,8 +312,41 @@ public class TableProxy implements Serializable {
         }
     }
 
+    /**
+     * Ask the Table Manager for a proxy, sending the version of the replica snapshot this instance holds so that the replica locations
+     * are only sent if they have changed.
+     */
+    private static TableProxy requestTableProxy(final ITableManagerRemote tableManager, final String tableName, final LockRequest lockRequest, final LockType lockType, final Database db) throws RPCException, SQLException, MovedException {
+
+        final ReplicaSetCache replicaSets = db.getReplicaSetCache();
+        final ReplicaSetCache.Snapshot known = replicaSets.get(tableName, lockType);
+
+        final TableProxy proxy = replicaSets.resolve(tableName, lockType, tableManager.getTableProxy(lockType, lockRequest, ReplicaSetCache.getVersion(known)), known);
+
+        if (proxy != null) { return proxy; }
+
+        /*
+         * The Table Manager didn't send the replica locations, but they aren't cached here, so the full snapshot is asked for. The lock is
+         * already held by this request, so it is granted again.
+         */
+        return replicaSets.resolve(tableName, lockType, tableManager.getTableProxy(lockType, lockRequest, TableProxy.NO_REPLICA_SET_VERSION), null);
+    }
+
     public static TableProxy getTableProxyAndLock(final LockRequest lockRequest, final String tableName, final LockType lockType, final Database db) throws SQLException {
 
+        // If this instance has kept a lock on the table it is used instead of asking the Table Manager.
+        final StickyLockCache stickyLocks = db.getStickyLockCache();
+
+        final TableProxy kept = stickyLocks.acquire(tableName, lockType, lockRequest);
+        if (kept != null) { return kept; }
+
+        final TableProxy surrendered = stickyLocks.surrender(tableName, lockRequest);
+        if (surrendered != null) {
+            if (surrendered.getLockGranted() == LockType.NONE) { return surrendered; }
+
+            releaseKeptLock(surrendered);
+        }
+
         final ITableManagerRemote tableManager = db.getSystemTableReference().lookup(tableName, true);
 
         if (tableManager == null) {
@@ -274,6 +358,39 @@ public class TableProxy implements Serializable {
         return getTableProxyAndLock(tableManager, tableName, lockRequest, lockType, db, false);
     }
 
+    /**
+     * Release a lock that this instance had kept, once it has been given up (see {@link StickyLockCache}).
+     */
+    public static void releaseKeptLock(final TableProxy surrendered) {
+
+        try {
+            surrendered.getTableManager().releaseLockAndUpdateReplicaState(true, surrendered.getRequestingDatabase(), null, false);
+        }
+        catch (final RPCException e) {
+            ErrorHandling.errorNoEvent("Failed to release kept lock - couldn't contact the Table Manager for " + surrendered.getTableName());
+        }
+        catch (final MovedException e) {
+            ErrorHandling.errorNoEvent("Failed to release kept lock - the Table Manager for " + surrendered.getTableName() + " has moved.");
+        }
+        catch (final SQLException e) {
+            ErrorHandling.errorNoEvent("Failed to release kept lock on " + surrendered.getTableName() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Give up the locks this instance has kept on a table, or on every table, because its Table Manager can no longer be relied on to hold
+     * them. Unused locks are released now, and locks in use when the transactions using them finish.
+     * 
+     * @param fullTableName
+     *            the table, or null for every table.
+     */
+    public static void invalidateKeptLocks(final Database db, final String fullTableName) {
+
+        for (final TableProxy unused : db.getStickyLockCache().invalidate(fullTableName)) {
+            releaseKeptLock(unused);
+        }
+    }
+
     public LockType getLockGranted() {
 
         return lockGranted;
@@ -308,6 +425,52 @@ public class TableProxy implements Serializable {
         return allReplicas;
     }
 
+    /**
+     * Get the replicas that a read made by the given session may be sent to. The Table Manager has already applied the table's read
+     * consistency; if the session has asked for {@link ReadConsistency#LATEST} only the replicas holding the highest update ID are returned.
+     */
+    public Map<DatabaseInstanceWrapper, Integer> getReadableReplicaLocations(final Session session) {
+
+        if (allReplicas == null || session == null || session.getReadConsistency() != ReadConsistency.LATEST) { return allReplicas; }
+
+        int latestUpdateID = 0;
+        for (final Integer replicaUpdateID : allReplicas.values()) {
+            latestUpdateID = Math.max(latestUpdateID, replicaUpdateID);
+        }
+
+        final Map<DatabaseInstanceWrapper, Integer> latestReplicas = new HashMap<DatabaseInstanceWrapper, Integer>();
+        for (final Map.Entry<DatabaseInstanceWrapper, Integer> replica : allReplicas.entrySet()) {
+            if (replica.getValue() == latestUpdateID) {
+                latestReplicas.put(replica.getKey(), replica.getValue());
+            }
+        }
+
+        return latestReplicas;
+    }
+
+    /**
+     * @return the consistency level of the table when this proxy was created, or null if this is a dummy proxy.
+     */
+    public ConsistencyLevel getConsistencyLevel() {
+
+        return consistencyLevel;
+    }
+
+    /**
+     * @return the consistency level of the table with any overrides made by the given session applied, or null if this is a dummy proxy
+     *         and the session has made no overrides.
+     */
+    public ConsistencyLevel getConsistencyLevel(final Session session) {
+
+        if (consistencyLevel == null) {
+            if (session == null || session.getWriteQuorum() == null) { return null; }
+
+            return new ConsistencyLevel(session.getWriteQuorum(), ReadConsistency.ANY);
+        }
+
+        return consistencyLevel.override(session);
+    }
+
     /**
      * Add a new replica location. This should be used carefully because locks (and replica locations) have already been acquired
      * when the TableProxy is created. Currently this is only used to 
@@ -315,7 +478,7 @@ public class TableProxy implements Serializable {
      */
     public void addReplicaLocation(final DatabaseInstanceWrapper databaseInstanceWrapper) {
 
-        allReplicas.put(databaseInstanceWrapper, updateID);
+        getModifiableReplicaLocations().put(databaseInstanceWrapper, updateID);
     }
 
     public Map<DatabaseInstanceWrapper, Integer> getRemoteReplicaLocations() {
@@ -338,6 +501,68 @@ public class TableProxy implements Serializable {
         return updateID;
     }
 
+    /**
+     * @return true if no lock is held for this table, and the update will be checked by the Table Manager when the transaction commits.
+     */
+    public boolean isOptimistic() {
+
+        return optimistic;
+    }
+
+    void setOptimistic(final boolean optimistic) {
+
+        this.optimistic = optimistic;
+    }
+
+    /**
+     * @return true if the lock for this table was kept by this instance after an earlier transaction, rather than requested for this one.
+     */
+    public boolean isSticky() {
+
+        return sticky;
+    }
+
+    void setSticky(final boolean sticky) {
+
+        this.sticky = sticky;
+    }
+
+    /**
+     * @return the version of the Table Manager's replica snapshot that the replica locations of this proxy were taken from, or
+     *         {@link #NO_REPLICA_SET_VERSION}.
+     */
+    public long getReplicaSetVersion() {
+
+        return replicaSetVersion;
+    }
+
+    /**
+     * Record that the replica locations of this proxy were taken from the given version of the Table Manager's replica snapshot. The
+     * locations may be null if the requesting instance already holds that version.
+     */
+    public void setReplicaSetVersion(final long replicaSetVersion) {
+
+        this.replicaSetVersion = replicaSetVersion;
+    }
+
+    /**
+     * Fill in replica locations that were left out because the requesting instance already held them.
+     */
+    void setReplicaLocations(final Map<DatabaseInstanceWrapper, Integer> allReplicas) {
+
+        this.allReplicas = allReplicas;
+    }
+
+    private Map<DatabaseInstanceWrapper, Integer> getModifiableReplicaLocations() {
+
+        if (replicaSetVersion != NO_REPLICA_SET_VERSION) {
+            allReplicas = new HashMap<DatabaseInstanceWrapper, Integer>(allReplicas);
+            replicaSetVersion = NO_REPLICA_SET_VERSION;
+        }
+
+        return allReplicas;
+    }
+
     protected void setLockType(final LockType lockGranted) {
 
         this.lockGranted = lockGranted;
@@ -387,7 +612,7 @@ public class TableProxy implements Serializable {
 
     public void removeReplicaLocation(final DatabaseInstanceWrapper replicaLocation) {
 
-        allReplicas.remove(replicaLocation);
+        getModifiableReplicaLocations().remove(replicaLocation);
 
     }
 }
@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2009-2010 School of Computer Science, University of St Andrews. All rights reserved. Project Homepage:
+ * http://blogs.cs.st-andrews.ac.uk/h2o H2O is free software: you can redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version. H2O
+ * is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details. You should have received a copy of the GNU General
+ * Public License along with H2O. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.h2o.db.query;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.h2.engine.Session;
+import org.h2o.db.id.TableInfo;
+import org.h2o.db.interfaces.ITableManagerRemote;
+import org.h2o.db.query.asynchronous.CommitResult;
+import org.h2o.db.query.locking.LockRequest;
+import org.h2o.db.query.locking.LockType;
+import org.h2o.db.replication.ConsistencyLevel;
+import org.h2o.db.wrappers.DatabaseInstanceWrapper;
+
+/**
+ * The state of the replicas of tables recently updated by this instance, as it was when this instance's last update to each table
+ * committed.
+ *
+ * <p>This is used to update tables optimistically (see the OPTIMISTIC_CONCURRENCY setting): an update is executed on the cached replica
+ * locations without first asking the Table Manager for a lock, and the Table Manager checks the cached update IDs when the transaction
+ * commits. An out-of-date entry therefore causes a conflict and a retry, never an inconsistent replica.
+ */
+public class TableProxyCache {
+
+    /**
+     * The cached state of one table.
+     */
+    private static final class Entry {
+
+        private final TableInfo tableInfo;
+
+        private final ITableManagerRemote tableManager;
+
+        private final Map<DatabaseInstanceWrapper, Integer> replicas;
+
+        private final ConsistencyLevel consistencyLevel;
+
+        private Entry(final TableInfo tableInfo, final ITableManagerRemote tableManager, final Map<DatabaseInstanceWrapper, Integer> replicas, final ConsistencyLevel consistencyLevel) {
+
+            this.tableInfo = tableInfo;
+            this.tableManager = tableManager;
+            this.replicas = Collections.unmodifiableMap(new HashMap<DatabaseInstanceWrapper, Integer>(replicas));
+            this.consistencyLevel = consistencyLevel;
+        }
+    }
+
+    /**
+     * Cached table state, keyed by full table name.
+     */
+    private final Map<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+    /**
+     * The number of optimistic updates whose Table Manager agreed to the commit.
+     */
+    private final AtomicLong acceptedOptimisticUpdates = new AtomicLong();
+
+    /**
+     * The number of optimistic updates that were rolled back because the table had changed, was locked, or its Table Manager couldn't be
+     * reached.
+     */
+    private final AtomicLong rejectedOptimisticUpdates = new AtomicLong();
+
+    /**
+     * Get a proxy with which the given table can be updated without a lock.
+     *
+     * @param fullTableName the table to be updated.
+     * @param lockRequest the session making the update.
+     * @param session the session making the update, used to apply any consistency level overrides it has made.
+     * @return a proxy holding the cached replica locations, or null if the table has no usable cached state, in which case a lock must be
+     *         requested from the Table Manager.
+     */
+    public TableProxy getOptimisticTableProxy(final String fullTableName, final LockRequest lockRequest, final Session session) {
+
+        final Entry entry = entries.get(fullTableName);
+
+        if (entry == null || entry.replicas.isEmpty()) { return null; }
+
+        /*
+         * The Table Manager can only check the update IDs of replicas that have acknowledged the update, so optimistic updates are only
+         * made to tables whose updates wait for every replica.
+         */
+        final int numberOfReplicas = entry.replicas.size();
+        if (entry.consistencyLevel == null || entry.consistencyLevel.override(session).getUpdatesNeededBeforeCommit(numberOfReplicas) < numberOfReplicas) { return null; }
+
+        int updateID = 0;
+        for (final Integer replicaUpdateID : entry.replicas.values()) {
+            updateID = Math.max(updateID, replicaUpdateID);
+        }
+
+        final TableProxy proxy = new TableProxy(LockType.WRITE, entry.tableInfo, new HashMap<DatabaseInstanceWrapper, Integer>(entry.replicas), entry.tableManager, lockRequest, updateID, LockType.WRITE, entry.consistencyLevel);
+        proxy.setOptimistic(true);
+
+        return proxy;
+    }
+
+    /**
+     * Record the state of a table's replicas after a transaction that held a WRITE lock on the table committed.
+     *
+     * @param proxy the proxy through which the table was updated.
+     * @param committedQueries the updates made by the transaction. Replicas that committed are now one update ahead of the update ID
+     *            they were given in the proxy; replicas that didn't commit are left out.
+     */
+    public void recordCommit(final TableProxy proxy, final Collection<CommitResult> committedQueries) {
+
+        if (proxy.getTableManager() == null || proxy.getLockGranted() != LockType.WRITE || proxy.getReplicaLocations() == null || committedQueries == null) { return; }
+
+        final Map<DatabaseInstanceWrapper, Integer> replicas = new HashMap<DatabaseInstanceWrapper, Integer>();
+
+        for (final CommitResult commitResult : committedQueries) {
+            final Integer updateID = proxy.getReplicaLocations().get(commitResult.getDatabaseInstanceWrapper());
+
+            if (commitResult.isCommit() && updateID != null && proxy.getTableName().equals(commitResult.getTable())) {
+                replicas.put(commitResult.getDatabaseInstanceWrapper(), updateID + 1);
+            }
+        }
+
+        update(proxy, replicas);
+    }
+
+    /**
+     * Record the state of a table's replicas, as returned by its Table Manager.
+     *
+     * @param proxy the proxy through which the table was updated.
+     * @param replicas the active replicas of the table, and their update IDs. If this is null or empty the entry for the table is removed.
+     */
+    public void update(final TableProxy proxy, final Map<DatabaseInstanceWrapper, Integer> replicas) {
+
+        final String fullTableName = proxy.getTableName().getFullTableName();
+
+        if (replicas == null || replicas.isEmpty()) {
+            entries.remove(fullTableName);
+        }
+        else {
+            entries.put(fullTableName, new Entry(proxy.getTableName(), proxy.getTableManager(), replicas, proxy.getConsistencyLevel()));
+        }
+    }
+
+    /**
+     * Remove the cached state of the given table, so that its next update requests a lock.
+     */
+    public void invalidate(final String fullTableName) {
+
+        entries.remove(fullTableName);
+    }
+
+    public void recordAcceptedOptimisticUpdate() {
+
+        acceptedOptimisticUpdates.incrementAndGet();
+    }
+
+    public void recordRejectedOptimisticUpdate() {
+
+        rejectedOptimisticUpdates.incrementAndGet();
+    }
+
+    /**
+     * @return the number of optimistic updates whose Table Manager agreed to the commit.
+     */
+    public long getAcceptedOptimisticUpdates() {
+
+        return acceptedOptimisticUpdates.get();
+    }
+
+    /**
+     * @return the number of optimistic updates that were rolled back, and retried with a lock if they were single statements.
+     */
+    public long getRejectedOptimisticUpdates() {
+
+        return rejectedOptimisticUpdates.get();
+    }
+}
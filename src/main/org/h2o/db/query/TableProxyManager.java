@@ -22,6 +22,7 @@ import org.h2.command.Command;
 import org.h2.command.Parser;
 import org.h2.engine.Database;
 import org.h2.engine.Session;
+import org.h2o.autonomic.settings.Settings;
 import org.h2o.db.id.TableInfo;
 import org.h2o.db.interfaces.ITableManagerRemote;
 import org.h2o.db.query.asynchronous.AsynchronousQueryExecutor;
@@ -29,6 +30,9 @@ import org.h2o.db.query.asynchronous.CommitResult;
 import org.h2o.db.query.asynchronous.Transaction;
 import org.h2o.db.query.locking.LockRequest;
 import org.h2o.db.query.locking.LockType;
+import org.h2o.db.query.locking.OptimisticConflictException;
+import org.h2o.db.query.locking.ReadLockReleaser;
+import org.h2o.db.replication.ConsistencyLevel;
 import org.h2o.db.wrappers.DatabaseInstanceWrapper;
 import org.h2o.util.exceptions.MovedException;
 
@@ -49,11 +53,18 @@ import uk.ac.standrews.cs.nds.util.PrettyPrinter;
  */
 public class TableProxyManager {
 
-    private final String transactionName;
+    /**
+     * The name of this transaction. This is generated when it is first needed, because transactions made up of a single query don't need
+     * one.
+     */
+    private String transactionName = null;
 
     private final DatabaseInstanceWrapper localDatabase;
 
-    private final Parser parser;
+    /**
+     * Parser for the COMMIT and PREPARE statements of this transaction. Created when it is first needed.
+     */
+    private Parser parser = null;
 
     private final Map<DatabaseInstanceWrapper, Integer> allReplicas;
 
@@ -110,10 +121,6 @@ public class TableProxyManager {
 
         localDatabase = db.getLocalDatabaseInstanceInWrapper();
 
-        transactionName = db.getTransactionNameGenerator().generateName();
-
-        parser = new Parser(session, true);
-
         allReplicas = new HashMap<DatabaseInstanceWrapper, Integer>();
 
         if (metaRecordProxy) {
@@ -163,7 +170,7 @@ public class TableProxyManager {
                  * Executed if no replica location was specified by the query proxy, which will happen on queries which don't involve a
                  * particular table (these are always local anyway).
                  */
-                allReplicas.put(parser.getSession().getDatabase().getLocalDatabaseInstanceInWrapper(), updateID);
+                allReplicas.put(session.getDatabase().getLocalDatabaseInstanceInWrapper(), updateID);
             }
 
         } //Else: No locks could be found. H2O will try again until the query timeout is reached.
@@ -224,7 +231,7 @@ public class TableProxyManager {
         try {
             final Map<DatabaseInstanceWrapper, Integer> replicasInvolvedInTransaction = getReplicasFromTableProxies();
 
-            if (getTableManagersThatHoldLocks().size() == 0 && replicasInvolvedInTransaction.size() > 0 && h2oCommit) {
+            if (getTableManagersThatHoldLocks().size() == 0 && !hasOptimisticUpdate() && replicasInvolvedInTransaction.size() > 0 && h2oCommit) {
 
                 // H2O commit required to prevent stack overflow on recursive commit calls. testExecuteCall test fails without this.
 
@@ -237,7 +244,7 @@ public class TableProxyManager {
             }
             else if ((getTableManagersThatHoldLocks().size() != 0 || replicasInvolvedInTransaction.size() > 0) && db.getAsynchronousQueryManager() != null) {
 
-                final Transaction committingTransaction = db.getAsynchronousQueryManager().getTransaction(transactionName);
+                final Transaction committingTransaction = db.getAsynchronousQueryManager().getTransaction(getTransactionName());
 
                 Set<CommitResult> committedQueries = null;
 
@@ -313,11 +320,23 @@ public class TableProxyManager {
 
         boolean commitActionSuccessful = false;
 
+        final TableProxy optimisticUpdate = getOptimisticUpdate();
+
+        /*
+         * If a table was updated without a lock its Table Manager must agree to the commit before any replica commits. Once it has, the
+         * transaction holds a lock on every table, so it is committed and reported to the Table Managers like any other.
+         */
+        final TableInfo belowQuorum = commit ? findTableBelowWriteQuorum(committedQueries) : null;
+
+        final boolean conflict = commit && belowQuorum == null && optimisticUpdate != null && !lockForOptimisticCommit(optimisticUpdate, committedQueries, db);
+
+        final boolean committing = commit && belowQuorum == null && !conflict;
+
         try {
-            commitActionSuccessful = sendCommitMessagesToReplicas(commit, h2oCommit, db, committedQueries);
+            commitActionSuccessful = sendCommitMessagesToReplicas(committing, h2oCommit, db, committedQueries);
 
             if (!commitActionSuccessful) {
-                ErrorHandling.errorNoEvent("Commit message to some replicas was unsuccessful for transaction '" + transactionName + "'. Some have committed.");
+                ErrorHandling.errorNoEvent("Commit message to some replicas was unsuccessful for transaction '" + getTransactionName() + "'. Some have committed.");
 
                 /*
                  * XXX Is it possible that throwing an exception here causes inconsistent state?
@@ -329,7 +348,122 @@ public class TableProxyManager {
         }
         finally {
             //Release locks even if the commits failed. Issue a rollback if there was a failure.
-            releaseLocksAndUpdateReplicaState(committedQueries, commit && commitActionSuccessful);
+            releaseLocksAndUpdateReplicaState(committedQueries, committing && commitActionSuccessful);
+        }
+
+        if (committing && commitActionSuccessful) {
+            recordReplicaState(db, committedQueries);
+        }
+        else if (optimisticUpdate != null) {
+            db.getTableProxyCache().invalidate(optimisticUpdate.getTableName().getFullTableName());
+        }
+
+        if (belowQuorum != null) {
+            tableProxies.clear();
+
+            throw new SQLException("Fewer replicas of " + belowQuorum + " than its write quorum prepared to commit transaction '" + getTransactionName() + "'. The transaction has been rolled back.");
+        }
+
+        if (conflict) {
+            // The transaction has been rolled back and every lock released, so there is nothing left for this manager to finish.
+            tableProxies.clear();
+
+            throw new OptimisticConflictException("Table " + optimisticUpdate.getTableName() + " was changed by another transaction while transaction '" + getTransactionName() + "' was updating it without a lock. The transaction has been rolled back.");
+        }
+    }
+
+    /**
+     * Check that every table updated by this transaction was prepared on at least as many replicas as its write quorum, or the quorum set by
+     * this session.
+     * 
+     * @return the first table prepared on too few replicas, or null if every quorum was reached.
+     */
+    private TableInfo findTableBelowWriteQuorum(final Set<CommitResult> committedQueries) {
+
+        if (committedQueries == null) { return null; }
+
+        for (final TableProxy proxy : tableProxies.values()) {
+            if (proxy.getTableManager() == null || proxy.getLockGranted() != LockType.WRITE && proxy.getLockGranted() != LockType.CREATE) {
+                continue;
+            }
+
+            final ConsistencyLevel consistencyLevel = proxy.getConsistencyLevel(session);
+
+            if (consistencyLevel == null || proxy.getAllReplicas() == null) {
+                continue;
+            }
+
+            boolean reported = false;
+            final Set<DatabaseInstanceWrapper> prepared = new HashSet<DatabaseInstanceWrapper>();
+            for (final CommitResult commitResult : committedQueries) {
+                if (proxy.getTableName().equals(commitResult.getTable())) {
+                    reported = true;
+
+                    if (commitResult.isCommit()) {
+                        prepared.add(commitResult.getDatabaseInstanceWrapper());
+                    }
+                }
+            }
+
+            // Only tables whose updates went through the replicas report their outcome.
+            if (reported && prepared.size() < consistencyLevel.getUpdatesNeededBeforeCommit(proxy.getAllReplicas().size())) { return proxy.getTableName(); }
+        }
+
+        return null;
+    }
+
+    /**
+     * Ask the Table Manager of the table that was updated without a lock to check that the table hasn't changed since this instance last
+     * updated it, and to lock it for this transaction if it hasn't.
+     * 
+     * @return true if the transaction can commit; false if it must be rolled back.
+     */
+    private boolean lockForOptimisticCommit(final TableProxy proxy, final Set<CommitResult> committedQueries, final Database db) throws SQLException {
+
+        boolean locked = false;
+
+        try {
+            locked = proxy.getTableManager().lockForOptimisticCommit(requestingDatabase, committedQueries);
+        }
+        catch (final RPCException e) {
+            ErrorHandling.errorNoEvent("Failed to commit optimistic update - couldn't contact the Table Manager for " + proxy.getTableName());
+            alertSysTableToFailedTableManager(proxy.getTableManager());
+        }
+        catch (final MovedException e) {
+            Diagnostic.traceNoEvent(DiagnosticLevel.FULL, "The Table Manager for " + proxy.getTableName() + " has moved. The optimistic update will be rolled back.");
+        }
+        catch (final SQLException e) {
+            ErrorHandling.exceptionError(e, "The Table Manager for " + proxy.getTableName() + " failed to commit an optimistic update.");
+        }
+
+        if (locked) {
+            // From now on the update is finished like one that was locked from the start.
+            proxy.setOptimistic(false);
+            db.getTableProxyCache().recordAcceptedOptimisticUpdate();
+        }
+        else {
+            db.getTableProxyCache().recordRejectedOptimisticUpdate();
+        }
+
+        return locked;
+    }
+
+    /**
+     * Record the state of the replicas of each table this transaction updated while holding a lock, so that later updates from this
+     * instance can be made without one.
+     */
+    private void recordReplicaState(final Database db, final Set<CommitResult> committedQueries) {
+
+        if (!session.isOptimisticConcurrency()) { return; }
+
+        for (final TableProxy proxy : tableProxies.values()) {
+            if (proxy.isSticky()) {
+                // The Table Manager hasn't recorded this update, so the cached update IDs would be ahead of its own.
+                db.getTableProxyCache().invalidate(proxy.getTableName().getFullTableName());
+            }
+            else if (!proxy.isOptimistic()) {
+                db.getTableProxyCache().recordCommit(proxy, committedQueries);
+            }
         }
     }
 
@@ -347,16 +481,40 @@ public class TableProxyManager {
         if (!h2oCommit) { return true; // the application has set auto-commit to true.
         }
 
-        final String sql = (commit ? "commit" : "rollback") + (h2oCommit ? " TRANSACTION " + transactionName : ";");
+        final String sql = (commit ? "commit" : "rollback") + (h2oCommit ? " TRANSACTION " + getTransactionName() : ";");
 
         final AsynchronousQueryExecutor queryExecutor = new AsynchronousQueryExecutor(db);
 
         final Map<DatabaseInstanceWrapper, Integer> commitLocations = getCommittedLocations(commitedQueries);
 
-        final int returnValue = queryExecutor.executeQuery(sql, transactionName, commitLocations, null, parser.getSession(), true);
+        final int returnValue = queryExecutor.executeQuery(sql, getTransactionName(), commitLocations, null, session, true, getStrictestConsistencyLevel(commitLocations.size()));
         return returnValue >= 0;
     }
 
+    /**
+     * Get the consistency level of the table updated in this transaction that requires the most replicas to acknowledge a commit.
+     * @param numberOfReplicas the number of replicas the commit will be sent to.
+     * @return null if none of the tables in this transaction has a known consistency level.
+     */
+    private ConsistencyLevel getStrictestConsistencyLevel(final int numberOfReplicas) {
+
+        ConsistencyLevel strictest = null;
+
+        for (final TableProxy proxy : tableProxies.values()) {
+            if (proxy.getLockGranted() != LockType.WRITE && proxy.getLockGranted() != LockType.CREATE) {
+                continue; // tables that were only read don't affect the commit.
+            }
+
+            final ConsistencyLevel consistencyLevel = proxy.getConsistencyLevel(session);
+
+            if (consistencyLevel != null && (strictest == null || consistencyLevel.getUpdatesNeededBeforeCommit(numberOfReplicas) > strictest.getUpdatesNeededBeforeCommit(numberOfReplicas))) {
+                strictest = consistencyLevel;
+            }
+        }
+
+        return strictest;
+    }
+
     private Map<DatabaseInstanceWrapper, Integer> getCommittedLocations(final Collection<CommitResult> commitedQueries) {
 
         final Map<DatabaseInstanceWrapper, Integer> commitLocations = new HashMap<DatabaseInstanceWrapper, Integer>();
@@ -382,16 +540,16 @@ public class TableProxyManager {
         try {
             prepare();
 
-            final Command commitCommand = parser.prepareCommand((commit ? "COMMIT" : "ROLLBACK") + (h2oCommit ? " TRANSACTION " + transactionName : ";"));
+            final Command commitCommand = getParser().prepareCommand((commit ? "COMMIT" : "ROLLBACK") + (h2oCommit ? " TRANSACTION " + getTransactionName() : ";"));
             final int result = commitCommand.executeUpdate();
 
-            //Diagnostic.traceNoEvent(DiagnosticLevel.FULL, session.getDatabase().getID() + " Queries in successful transaction [" + transactionName + "]: " + PrettyPrinter.toString(queries));
+            //Diagnostic.traceNoEvent(DiagnosticLevel.FULL, session.getDatabase().getID() + " Queries in successful transaction [" + getTransactionName() + "]: " + PrettyPrinter.toString(queries));
 
             return result == 0;
         }
         catch (final SQLException e) {
 
-            Diagnostic.traceNoEvent(DiagnosticLevel.FULL, session.getDatabase().getID() + " Queries in failed transaction [" + transactionName + "]: " + PrettyPrinter.toString(queries));
+            Diagnostic.traceNoEvent(DiagnosticLevel.FULL, session.getDatabase().getID() + " Queries in failed transaction [" + getTransactionName() + "]: " + PrettyPrinter.toString(queries));
 
             throw e;
         }
@@ -404,9 +562,22 @@ public class TableProxyManager {
      */
     public String getTransactionName() {
 
+        if (transactionName == null) {
+            transactionName = session.getDatabase().getTransactionNameGenerator().generateName();
+        }
+
         return transactionName;
     }
 
+    private Parser getParser() {
+
+        if (parser == null) {
+            parser = new Parser(session, true);
+        }
+
+        return parser;
+    }
+
     /**
      * Release locks for every table that is part of this update. This also updates the information on which replicas were updated (which
      * are currently active), hence the parameter
@@ -424,20 +595,75 @@ public class TableProxyManager {
 
         hasCommitted = false;
         for (final ITableManagerRemote tableManagerProxy : getTableManagersThatHoldLocks()) {
+
+            final TableProxy proxy = getQueryProxyForTable(tableManagerProxy);
+
+            if (session.getDatabase().getStickyLockCache().finish(proxy, requestingDatabase, commit, committedQueries, isKeepingLocks())) {
+                // The lock is kept by this instance, so the Table Manager doesn't need to hear about this transaction.
+                continue;
+            }
+
             try {
-                tableManagerProxy.releaseLockAndUpdateReplicaState(commit, requestingDatabase, committedQueries, false);
+                tableManagerProxy.releaseLockAndUpdateReplicaState(commit, proxy.isSticky() ? proxy.getRequestingDatabase() : requestingDatabase, committedQueries, false);
                 hasCommitted = true;
             }
             catch (final RPCException e) {
                 ErrorHandling.errorNoEvent("Failed to release lock - couldn't contact the Table Manager for " + tableManagerProxy.getFullTableName());
+                TableProxy.invalidateKeptLocks(session.getDatabase(), proxy.getTableName().getFullTableName());
                 alertSysTableToFailedTableManager(tableManagerProxy);
             }
             catch (final MovedException e) {
                 ErrorHandling.exceptionError(e, "This should never happen - migrating process should hold the lock.");
+                TableProxy.invalidateKeptLocks(session.getDatabase(), proxy.getTableName().getFullTableName());
+            }
+
+        }
+
+    }
+
+    /**
+     * @return true if write locks acquired by this transaction are to be kept by this instance after it commits (the STICKY_LOCKS setting).
+     */
+    private boolean isKeepingLocks() {
+
+        final Settings settings = session.getDatabase().getDatabaseSettings();
+
+        return settings != null && Boolean.parseBoolean(settings.get("STICKY_LOCKS"));
+    }
+
+    /**
+     * Finish an auto-committed read-only query. The read locks taken out by the query are released in the background (see
+     * {@link ReadLockReleaser}), and this manager is emptied so that the session can use it for its next transaction. Nothing is reported
+     * to the Table Managers, because the query didn't change the state of any replica.
+     *
+     * @return false if this manager holds anything other than read locks, or has started a named transaction. It is left unchanged, and the
+     *         transaction must be finished with {@link #releaseLocksAndUpdateReplicaState(Set, boolean)}.
+     */
+    public boolean finishQuery(final Database db) {
+
+        if (transactionName != null) { return false; }
+
+        final Set<ITableManagerRemote> tableManagers = new HashSet<ITableManagerRemote>();
+
+        for (final TableProxy proxy : tableProxies.values()) {
+
+            if (proxy.isOptimistic() || proxy.isSticky() || proxy.getLockGranted() != LockType.READ && proxy.getLockGranted() != LockType.NONE) { return false; }
+
+            if (proxy.getTableManager() != null && proxy.getLockGranted() == LockType.READ) {
+                tableManagers.add(proxy.getTableManager());
             }
+        }
 
+        if (!tableManagers.isEmpty()) {
+            db.getReadLockReleaser().release(requestingDatabase, tableManagers);
         }
 
+        tableProxies.clear();
+        allReplicas.clear();
+        updateID = 0;
+        tableName = null;
+
+        return true;
     }
 
     /**
@@ -483,7 +709,7 @@ public class TableProxyManager {
     public void prepare() throws SQLException {
 
         if (prepareCommand == null) {
-            prepareCommand = parser.prepareCommand("PREPARE COMMIT " + transactionName);
+            prepareCommand = getParser().prepareCommand("PREPARE COMMIT " + getTransactionName());
         }
 
         prepareCommand.executeUpdate();
@@ -492,7 +718,7 @@ public class TableProxyManager {
 
     public void begin() throws SQLException {
 
-        final Command command = parser.prepareCommand("BEGIN");
+        final Command command = getParser().prepareCommand("BEGIN");
         command.executeUpdate();
     }
 
@@ -527,6 +753,26 @@ public class TableProxyManager {
         return "TableProxyManager [transactionName=" + transactionName + ", localDatabase=" + localDatabase + "]";
     }
 
+    /**
+     * @return true if one of the tables in this transaction is being updated without a lock.
+     */
+    public boolean hasOptimisticUpdate() {
+
+        return getOptimisticUpdate() != null;
+    }
+
+    /**
+     * @return the proxy for the table being updated without a lock, or null if every table is locked.
+     */
+    private TableProxy getOptimisticUpdate() {
+
+        for (final TableProxy qp : tableProxies.values()) {
+            if (qp.isOptimistic()) { return qp; }
+        }
+
+        return null;
+    }
+
     /**
      * Get all of the table managers that hold locks.
      * 
@@ -538,7 +784,7 @@ public class TableProxyManager {
 
         for (final TableProxy qp : tableProxies.values()) {
 
-            if (qp.getTableManager() != null && qp.getLockGranted() != LockType.NONE) {
+            if (qp.getTableManager() != null && qp.getLockGranted() != LockType.NONE && !qp.isOptimistic()) {
                 tableManagers.add(qp.getTableManager());
             }
         }
@@ -559,12 +805,18 @@ public class TableProxyManager {
         return null;
     }
 
+    /*
+     * A transaction is only named once it needs to be (see getTransactionName()), and these methods mustn't name it. Until then a manager
+     * is only equal to itself.
+     */
     @Override
     public int hashCode() {
 
+        if (transactionName == null) { return System.identityHashCode(this); }
+
         final int prime = 31;
         int result = 1;
-        result = prime * result + (transactionName == null ? 0 : transactionName.hashCode());
+        result = prime * result + transactionName.hashCode();
         return result;
     }
 
@@ -575,11 +827,8 @@ public class TableProxyManager {
         if (obj == null) { return false; }
         if (getClass() != obj.getClass()) { return false; }
         final TableProxyManager other = (TableProxyManager) obj;
-        if (transactionName == null) {
-            if (other.transactionName != null) { return false; }
-        }
-        else if (!transactionName.equals(other.transactionName)) { return false; }
-        return true;
+        if (transactionName == null || other.transactionName == null) { return false; }
+        return transactionName.equals(other.transactionName);
     }
 
     public boolean hasCommitted() {
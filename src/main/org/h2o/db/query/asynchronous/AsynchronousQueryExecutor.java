@@ -12,10 +12,6 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 import java.util.concurrent.FutureTask;
 
 import org.h2.command.Parser;
@@ -24,6 +20,7 @@ import org.h2.engine.Session;
 import org.h2o.db.DefaultSettings;
 import org.h2o.db.id.TableInfo;
 import org.h2o.db.query.TableProxy;
+import org.h2o.db.replication.ConsistencyLevel;
 import org.h2o.db.wrappers.DatabaseInstanceWrapper;
 
 import uk.ac.standrews.cs.nds.util.ErrorHandling;
@@ -32,7 +29,10 @@ public class AsynchronousQueryExecutor {
 
     private final Database database;
 
-    int updatesNeededBeforeCommit = 0;
+    /**
+     * The consistency level used for queries that don't specify one (e.g. COMMITs involving no tables with a known consistency level).
+     */
+    private final ConsistencyLevel defaultConsistencyLevel;
 
     private static Integer sleepTimeWhileWaitingForQueriesToFinish = Integer.valueOf(DefaultSettings.getString("AsynchronousQueryExecutor.SLEEP_TIME_WAITING_FOR_QUERIES_TO_COMPLETE")); //$NON-NLS-1$
 
@@ -43,14 +43,9 @@ public class AsynchronousQueryExecutor {
 
         this.database = database;
 
-        if (database.getDatabaseSettings().get("ASYNCHRONOUS_REPLICATION_ENABLED").equals("true")) { //$NON-NLS-1$ //$NON-NLS-2$
-            updatesNeededBeforeCommit = Integer.parseInt(database.getDatabaseSettings().get("ASYNCHRONOUS_REPLICATION_FACTOR")); //$NON-NLS-1$
-        }
-
+        defaultConsistencyLevel = ConsistencyLevel.getDefault(database.getDatabaseSettings());
     }
 
-    private static ExecutorService queryExecutor = Executors.newCachedThreadPool();
-
     /**
      * Asynchronously executes the query on each database instance that requires the update.
      * 
@@ -67,9 +62,25 @@ public class AsynchronousQueryExecutor {
      * @param commitOperation
      *            True if this is a COMMIT, false if it is another type of query. If it is false a PREPARE command will be executed to get
      *            ready for the eventual commit.
+     * @param consistencyLevel
+     *            Specifies how many replicas must respond before this method returns. Replicas that respond later are committed
+     *            asynchronously. If null, the database-wide ASYNCHRONOUS_REPLICATION settings are used.
      * @return The return value of the query. A negative number if there was a failure. 0 if nothing changed.
      */
-    public int executeQuery(final String query, final String transactionNameForQuery, final Map<DatabaseInstanceWrapper, Integer> allReplicas, final TableInfo tableName, final Session session, final boolean commitOperation) {
+    public int executeQuery(final String query, final String transactionNameForQuery, final Map<DatabaseInstanceWrapper, Integer> allReplicas, final TableInfo tableName, final Session session, final boolean commitOperation, final ConsistencyLevel consistencyLevel) {
+
+        return executeQuery(query, transactionNameForQuery, allReplicas, tableName, session, commitOperation, consistencyLevel, null);
+    }
+
+    /**
+     * As {@link #executeQuery(String, String, Map, TableInfo, Session, boolean, ConsistencyLevel)}, for a statement that may already have
+     * been executed on the local replica.
+     * 
+     * @param localResult
+     *            If not null, the statement has already been executed on the local replica with this result, so it is only prepared for
+     *            commit there, and the query (which applies the rows it changed) is sent to the other replicas.
+     */
+    public int executeQuery(final String query, final String transactionNameForQuery, final Map<DatabaseInstanceWrapper, Integer> allReplicas, final TableInfo tableName, final Session session, final boolean commitOperation, final ConsistencyLevel consistencyLevel, final Integer localResult) {
 
         final Parser parser = new Parser(session, true);
 
@@ -77,9 +88,7 @@ public class AsynchronousQueryExecutor {
 
         final int expectedUpdateID = getExpectedUpdateID(allReplicas);
 
-        if (updatesNeededBeforeCommit == 0) { // will be zero if asynchronous updates are off.
-            updatesNeededBeforeCommit = allReplicas.size();
-        }
+        final int updatesNeededBeforeCommit = (consistencyLevel == null ? defaultConsistencyLevel : consistencyLevel).getUpdatesNeededBeforeCommit(allReplicas.size());
 
         int i = 0;
         for (final Entry<DatabaseInstanceWrapper, Integer> replicaToExecuteQueryOn : allReplicas.entrySet()) {
@@ -93,7 +102,7 @@ public class AsynchronousQueryExecutor {
             if (replicaToExecuteQueryOn != null) {
                 final Integer replicaUpdateID = replicaToExecuteQueryOn.getValue();
 
-                executeQueryOnSpecifiedReplica(query, transactionNameForQuery, replicaToExecuteQueryOn.getKey(), replicaUpdateID, isReplicaLocal, parser, executingQueries, commitOperation, tableName);
+                executeQueryOnSpecifiedReplica(query, transactionNameForQuery, replicaToExecuteQueryOn.getKey(), replicaUpdateID, isReplicaLocal, parser, executingQueries, commitOperation, tableName, isReplicaLocal ? localResult : null);
                 i++;
             }
         }
@@ -122,8 +131,8 @@ public class AsynchronousQueryExecutor {
     }
 
     /**
-     * Execute a query on the specified database instance by creating a new asynchronous callable executor ({@link Executors},
-     * {@link Future}).
+     * Execute a query on the specified database instance by adding it to the instance's {@link ReplicationPipeline}, so that it is sent
+     * after every update previously sent to that instance.
      * 
      * <p>
      * This method begins execution of the queries but does not actually return their results (because it is asynchronous). See
@@ -146,25 +155,17 @@ public class AsynchronousQueryExecutor {
      *            True if this is a COMMIT, false if it is another type of query. If it is false a PREPARE command will be executed to get
      *            ready for the eventual commit.
      * @param tableInfo
+     * @param localResult
+     *            The result of the statement if it has already been executed on this (local) replica, otherwise null.
      */
     private void executeQueryOnSpecifiedReplica(final String sql, final String transactionName, final DatabaseInstanceWrapper replicaToExecuteQueryOn, final Integer updateID, final boolean isReplicaLocal, final Parser parser, final List<FutureTask<QueryResult>> executingQueries,
-                    final boolean commitOperation, final TableInfo tableInfo) {
-
-        final RemoteQueryExecutor qt = new RemoteQueryExecutor(sql, transactionName, replicaToExecuteQueryOn, updateID, parser, isReplicaLocal, commitOperation, tableInfo);
+                    final boolean commitOperation, final TableInfo tableInfo, final Integer localResult) {
 
-        final Callable<QueryResult> callableExecuteQuery = new Callable<QueryResult>() {
+        final RemoteQueryExecutor qt = new RemoteQueryExecutor(sql, transactionName, replicaToExecuteQueryOn, updateID, parser, isReplicaLocal, commitOperation, tableInfo, localResult);
 
-            @Override
-            public QueryResult call() {
+        final ReplicationPipeline pipeline = database.getAsynchronousQueryManager().getPipeline(replicaToExecuteQueryOn.getURL());
 
-                return qt.executeQuery();
-            }
-        };
-
-        final FutureTask<QueryResult> future = new FutureTask<QueryResult>(callableExecuteQuery);
-
-        executingQueries.add(future);
-        queryExecutor.execute(future);
+        executingQueries.add(pipeline.submit(qt));
 
     }
 
@@ -243,6 +244,9 @@ public class AsynchronousQueryExecutor {
 
                 final DatabaseInstanceWrapper url = asyncResult.getWrapper();
 
+                // The instance answered, so this counts as a heartbeat from it.
+                database.getFailureDetector().heartbeat(url.getURL());
+
                 if (returnValues[pos] < 0) {
                     // Prepare operation failed at remote machine
                     final CommitResult commitResult = new CommitResult(false, url, asyncResult.getUpdateID(), expectedUpdateID, tableName);
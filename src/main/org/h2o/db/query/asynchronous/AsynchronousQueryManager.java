@@ -16,6 +16,8 @@ import java.util.Map.Entry;
 import java.util.concurrent.FutureTask;
 
 import org.h2.engine.Database;
+import org.h2o.autonomic.settings.Settings;
+import org.h2o.db.id.DatabaseID;
 import org.h2o.db.id.TableInfo;
 
 /**
@@ -28,6 +30,21 @@ import org.h2o.db.id.TableInfo;
  */
 public final class AsynchronousQueryManager {
 
+    /**
+     * The window used by instances without database settings, such as the H2 management database.
+     */
+    private static final int DEFAULT_PIPELINE_WINDOW = 64;
+
+    /**
+     * The pipeline depth used by instances without database settings.
+     */
+    private static final int DEFAULT_PIPELINE_DEPTH = 4;
+
+    /**
+     * The time, in milliseconds, a received update waits for its predecessors on instances without database settings.
+     */
+    private static final long DEFAULT_ORDER_TIMEOUT = 30000;
+
     /**
      * Map of currently executing transactions.
      * 
@@ -42,6 +59,16 @@ public final class AsynchronousQueryManager {
 
     private final Database db;
 
+    /**
+     * The outbound queue of updates to each replica location.
+     */
+    private final Map<DatabaseID, ReplicationPipeline> pipelines = new HashMap<DatabaseID, ReplicationPipeline>();
+
+    /**
+     * Orders the updates received from other instances' pipelines. Created when first used, once the database settings have been loaded.
+     */
+    private UpdateSequencer sequencer = null;
+
     public AsynchronousQueryManager(final Database db) {
 
         this.db = db;
@@ -63,6 +90,62 @@ public final class AsynchronousQueryManager {
         }
     }
 
+    /**
+     * Get the queue used to send updates to a replica location, creating it if necessary. A pipeline that has failed is replaced.
+     */
+    public ReplicationPipeline getPipeline(final DatabaseID replicaLocation) {
+
+        synchronized (pipelines) {
+            ReplicationPipeline pipeline = pipelines.get(replicaLocation);
+
+            if (pipeline == null || pipeline.hasFailed()) {
+                if (pipeline != null) {
+                    pipeline.shutdown();
+                }
+
+                final Settings settings = db.getDatabaseSettings();
+                final int window = settings == null ? DEFAULT_PIPELINE_WINDOW : Integer.parseInt(settings.get("REPLICATION_PIPELINE_WINDOW"));
+
+                // Updates to the local replica don't wait for a round trip, so are executed one at a time.
+                final boolean local = replicaLocation.equals(db.getID());
+                final int depth = local ? 1 : settings == null ? DEFAULT_PIPELINE_DEPTH : Integer.parseInt(settings.get("REPLICATION_PIPELINE_DEPTH"));
+
+                pipeline = new ReplicationPipeline(replicaLocation, window, depth);
+                pipelines.put(replicaLocation, pipeline);
+            }
+
+            return pipeline;
+        }
+    }
+
+    /**
+     * @return the sequencer that applies the updates received from each of the other instances' pipelines in order.
+     */
+    public synchronized UpdateSequencer getUpdateSequencer() {
+
+        if (sequencer == null) {
+            final Settings settings = db.getDatabaseSettings();
+            final long timeout = settings == null ? DEFAULT_ORDER_TIMEOUT : Long.parseLong(settings.get("REPLICATION_ORDER_TIMEOUT"));
+
+            sequencer = new UpdateSequencer(timeout);
+        }
+
+        return sequencer;
+    }
+
+    /**
+     * Stop accepting updates for replicas. Updates that have already been submitted are still sent.
+     */
+    public void shutdownPipelines() {
+
+        synchronized (pipelines) {
+            for (final ReplicationPipeline pipeline : pipelines.values()) {
+                pipeline.shutdown();
+            }
+            pipelines.clear();
+        }
+    }
+
     public synchronized Transaction getTransaction(final String transactionID) {
 
         return activeTransactions.get(transactionID);
@@ -36,6 +36,26 @@ public class RemoteQueryExecutor extends Thread {
 
     private final TableInfo tableInfo;
 
+    /**
+     * The result of a statement that has already been executed on the local replica, or null if the query is to be executed.
+     */
+    private final Integer localResult;
+
+    /**
+     * The ID of the {@link ReplicationPipeline} stream this update is sent in, or null if it isn't sent through a pipeline.
+     */
+    private String stream = null;
+
+    /**
+     * The position of this update in its stream.
+     */
+    private long sequence;
+
+    /**
+     * True if the update may not have reached the replica, or the replica couldn't apply it in order.
+     */
+    private volatile boolean sendFailed = false;
+
     /**
      * 
      * @param query
@@ -53,6 +73,16 @@ public class RemoteQueryExecutor extends Thread {
      */
     public RemoteQueryExecutor(final String query, final String transactionName, final DatabaseInstanceWrapper replica, final int updateID, final Parser parser, final boolean local, final boolean commitOperation, final TableInfo tableInfo) {
 
+        this(query, transactionName, replica, updateID, parser, local, commitOperation, tableInfo, null);
+    }
+
+    /**
+     * @param localResult
+     *            If not null, the statement has already been executed on the local replica with this result, and only has to be prepared for
+     *            commit there. Its rows are being sent to the other replicas in the query.
+     */
+    public RemoteQueryExecutor(final String query, final String transactionName, final DatabaseInstanceWrapper replica, final int updateID, final Parser parser, final boolean local, final boolean commitOperation, final TableInfo tableInfo, final Integer localResult) {
+
         this.query = query;
         this.transactionName = transactionName;
         databaseWrapper = replica;
@@ -61,6 +91,34 @@ public class RemoteQueryExecutor extends Thread {
         this.commitOperation = commitOperation;
         this.updateID = updateID;
         this.tableInfo = tableInfo;
+        this.localResult = localResult;
+    }
+
+    /**
+     * Send this update as part of an ordered stream of updates, which the replica applies in sequence order. Only used for remote
+     * replicas.
+     */
+    public void setStream(final String stream, final long sequence) {
+
+        this.stream = stream;
+        this.sequence = sequence;
+    }
+
+    /**
+     * @return true if the update may not have reached the replica, or the replica couldn't apply it in order, so later updates in the same
+     *         stream can't be applied in order either.
+     */
+    public boolean sendFailed() {
+
+        return sendFailed;
+    }
+
+    /**
+     * @return the result of an update that wasn't sent to the replica.
+     */
+    public QueryResult notSent(final String reason) {
+
+        return new QueryResult(new SQLException(reason), databaseWrapper, updateID, tableInfo);
     }
 
     public QueryResult executeQuery() {
@@ -81,11 +139,19 @@ public class RemoteQueryExecutor extends Thread {
 
             if (!commitOperation) {
 
-                // Execute query.
-                Command command = parser.prepareCommand(query);
-                result = command.executeUpdate(true); // True because it may need to wait
-                // for the remote machine to
-                // commit.
+                Command command;
+
+                if (localResult != null) {
+                    // Already executed.
+                    result = localResult;
+                }
+                else {
+                    // Execute query.
+                    command = parser.prepareCommand(query);
+                    result = command.executeUpdate(true); // True because it may need to wait
+                    // for the remote machine to
+                    // commit.
+                }
 
                 // Prepare query for commit.
                 command = parser.prepareCommand("PREPARE COMMIT " + transactionName);
@@ -123,15 +189,25 @@ public class RemoteQueryExecutor extends Thread {
 
             assert databaseWrapper != null && databaseWrapper.getDatabaseInstance() != null : "The wrapper supplied for remote query should not contain a null RMI reference.";
 
-            final int result = databaseWrapper.getDatabaseInstance().execute(query, transactionName, commitOperation);
+            final int result;
+            if (stream == null) {
+                result = databaseWrapper.getDatabaseInstance().execute(query, transactionName, commitOperation);
+            }
+            else {
+                result = databaseWrapper.getDatabaseInstance().executeInOrder(query, transactionName, commitOperation, stream, sequence);
+            }
 
             qr = new QueryResult(result, databaseWrapper, updateID, tableInfo);
 
         }
         catch (final RPCException e) {
+            sendFailed = true;
             qr = new QueryResult(new SQLException(e.getMessage()), databaseWrapper, updateID, tableInfo);
         }
         catch (final SQLException e) {
+            if (e.getMessage() != null && e.getMessage().contains(UpdateSequencer.OUT_OF_ORDER)) {
+                sendFailed = true;
+            }
             qr = new QueryResult(e, databaseWrapper, updateID, tableInfo);
         }
 
@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2009-2010 School of Computer Science, University of St Andrews. All rights reserved. Project Homepage:
+ * http://blogs.cs.st-andrews.ac.uk/h2o H2O is free software: you can redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version. H2O
+ * is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details. You should have received a copy of the GNU General
+ * Public License along with H2O. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.h2o.db.query.asynchronous;
+
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.h2o.db.id.DatabaseID;
+
+/**
+ * The outbound queue of updates sent from this instance to one replica location.
+ *
+ * <p>Updates are numbered in the order they were submitted, and up to <code>depth</code> of them are sent at once by separate threads, so
+ * a replica that is far away doesn't limit writers to one update per round trip. The replica applies the updates it receives in number
+ * order (see {@link UpdateSequencer}), so statements from different transactions always reach it in the order they were executed here. The
+ * threads stop when the pipeline has been idle for a while, so the number of threads depends on the number of replica locations, not the
+ * number of updates.
+ *
+ * <p>At most <code>window</code> updates can be queued or being sent at once. Writers that submit an update when the window is full wait
+ * until an earlier update has been sent, so a slow replica slows down writers rather than building up an unbounded backlog.
+ *
+ * <p>If an update can't be sent, or the replica can't apply it in order, the pipeline fails: the updates submitted after it are not sent,
+ * because the replica would have to apply them without their predecessor. A failed pipeline is replaced by a new one, with a new stream of
+ * update numbers.
+ */
+public class ReplicationPipeline {
+
+    /**
+     * The time, in seconds, after which an idle pipeline's threads stop.
+     */
+    private static final long IDLE_TIMEOUT = 60;
+
+    /**
+     * The time, in milliseconds, after which an idle pipeline starts a new stream of update numbers, so that the replica can discard the
+     * state of the old one.
+     */
+    private static final long STREAM_RENEWAL = IDLE_TIMEOUT * 1000;
+
+    private final ThreadPoolExecutor sender;
+
+    private final Semaphore window;
+
+    /**
+     * The ID given to the replica with each update, so that it can tell the updates of this pipeline from those of others.
+     */
+    private String stream;
+
+    /**
+     * The number of the next update to be submitted to the current stream.
+     */
+    private long nextSequence;
+
+    /**
+     * The number of updates that have been submitted but not yet sent.
+     */
+    private int outstanding = 0;
+
+    private long lastCompleted = System.currentTimeMillis();
+
+    /**
+     * The number of the first update that couldn't be sent or applied in order, or {@link Long#MAX_VALUE} if there hasn't been one. Updates
+     * numbered after it aren't sent.
+     */
+    private volatile long failedAt = Long.MAX_VALUE;
+
+    /**
+     * @param destination
+     *            the replica location that updates are sent to.
+     * @param windowSize
+     *            the maximum number of updates that can be queued or being sent at once.
+     * @param depth
+     *            the maximum number of updates that can be being sent at once.
+     */
+    public ReplicationPipeline(final DatabaseID destination, final int windowSize, final int depth) {
+
+        window = new Semaphore(windowSize, true);
+
+        sender = new ThreadPoolExecutor(depth, depth, IDLE_TIMEOUT, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+
+            @Override
+            public Thread newThread(final Runnable r) {
+
+                final Thread thread = new Thread(r, "h2o-replication-pipeline-" + destination.sanitizedLocation());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        sender.allowCoreThreadTimeOut(true);
+
+        startNewStream();
+    }
+
+    /**
+     * Add an update to the end of the queue, waiting for space in the window if necessary.
+     *
+     * @param query
+     *            the update to be sent.
+     * @return a task that completes when the update has been executed on the replica, or has failed.
+     */
+    public FutureTask<QueryResult> submit(final RemoteQueryExecutor query) {
+
+        window.acquireUninterruptibly();
+
+        synchronized (this) {
+            if (outstanding == 0 && System.currentTimeMillis() - lastCompleted > STREAM_RENEWAL) {
+                startNewStream();
+            }
+
+            final long sequence = nextSequence;
+            query.setStream(stream, sequence);
+
+            final FutureTask<QueryResult> future = new FutureTask<QueryResult>(new Callable<QueryResult>() {
+
+                @Override
+                public QueryResult call() {
+
+                    try {
+                        if (sequence > failedAt) { return query.notSent("An earlier update to this replica failed, so this one can't be applied in order."); }
+
+                        final QueryResult result = query.executeQuery();
+
+                        if (query.sendFailed()) {
+                            failed(sequence);
+                        }
+
+                        return result;
+                    }
+                    finally {
+                        completed();
+                        window.release();
+                    }
+                }
+            });
+
+            // Numbered and queued under the same lock, so the queue is in number order.
+            try {
+                sender.execute(future);
+            }
+            catch (final RuntimeException e) {
+                window.release();
+                throw e;
+            }
+
+            nextSequence++;
+            outstanding++;
+
+            return future;
+        }
+    }
+
+    /**
+     * @return true if an update couldn't be sent or applied in order, so no more updates will be sent through this pipeline.
+     */
+    public boolean hasFailed() {
+
+        return failedAt != Long.MAX_VALUE;
+    }
+
+    /**
+     * @return the number of updates that are queued or being sent.
+     */
+    public synchronized int getInFlight() {
+
+        return outstanding;
+    }
+
+    /**
+     * Stop accepting updates. Updates that have already been submitted are still sent.
+     */
+    public void shutdown() {
+
+        sender.shutdown();
+    }
+
+    private synchronized void failed(final long sequence) {
+
+        failedAt = Math.min(failedAt, sequence);
+    }
+
+    private synchronized void completed() {
+
+        outstanding--;
+        lastCompleted = System.currentTimeMillis();
+    }
+
+    private void startNewStream() {
+
+        stream = UUID.randomUUID().toString();
+        nextSequence = 0;
+    }
+}
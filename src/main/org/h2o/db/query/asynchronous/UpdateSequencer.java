@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2009-2010 School of Computer Science, University of St Andrews. All rights reserved. Project Homepage:
+ * http://blogs.cs.st-andrews.ac.uk/h2o H2O is free software: you can redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version. H2O
+ * is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details. You should have received a copy of the GNU General
+ * Public License along with H2O. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.h2o.db.query.asynchronous;
+
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Applies the updates received from each {@link ReplicationPipeline} in the order they were submitted, even though several of them may be
+ * sent at once.
+ *
+ * <p>Each pipeline numbers its updates from 0. An update whose predecessors haven't all been applied waits for them. If they don't arrive
+ * within the timeout, the update is rejected and the pipeline's stream is broken: every later update from it is rejected too, so none is
+ * applied out of order. The sender then starts a new stream.
+ */
+public class UpdateSequencer {
+
+    /**
+     * The start of the message of every exception thrown when an update is rejected because it can't be applied in order.
+     */
+    public static final String OUT_OF_ORDER = "Replicated update can't be applied in order";
+
+    /**
+     * The time, in milliseconds, after which the state of a stream that hasn't been used is discarded. Pipelines start a new stream after
+     * a much shorter idle time (see {@link ReplicationPipeline}).
+     */
+    private static final long STREAM_EXPIRY = 10 * 60 * 1000;
+
+    private final long timeout;
+
+    /**
+     * The position of each stream.
+     *
+     * <p>
+     * Key: the stream ID of a pipeline
+     * <p>
+     * Value: the next update to apply from it
+     */
+    private final Map<String, Stream> streams = new HashMap<String, Stream>();
+
+    /**
+     * @param timeout
+     *            the time, in milliseconds, an update waits for its predecessors before it is rejected.
+     */
+    public UpdateSequencer(final long timeout) {
+
+        this.timeout = timeout;
+    }
+
+    /**
+     * Wait until every earlier update in the stream has been applied. The caller must then apply the update and call
+     * {@link #finished(String, long)}, whether or not it succeeded.
+     *
+     * @param stream
+     *            the ID of the pipeline that sent the update.
+     * @param sequence
+     *            the position of the update in the stream.
+     * @throws SQLException
+     *             if the update can't be applied in order, because an earlier update didn't arrive in time or has already been rejected.
+     */
+    public void awaitTurn(final String stream, final long sequence) throws SQLException {
+
+        final Stream position = getStream(stream);
+
+        synchronized (position) {
+            position.lastUsed = System.currentTimeMillis();
+            final long deadline = position.lastUsed + timeout;
+
+            while (!position.broken && position.next < sequence) {
+                final long remaining = deadline - System.currentTimeMillis();
+
+                if (remaining <= 0) {
+                    position.broken = true;
+                    position.notifyAll();
+                    throw new SQLException(OUT_OF_ORDER + ": update " + sequence + " of stream " + stream + " was still waiting for update " + position.next + " after " + timeout + "ms.");
+                }
+
+                try {
+                    position.wait(remaining);
+                }
+                catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    position.broken = true;
+                    position.notifyAll();
+                    throw new SQLException(OUT_OF_ORDER + ": interrupted while update " + sequence + " of stream " + stream + " was waiting for update " + position.next + ".");
+                }
+            }
+
+            if (position.broken) { throw new SQLException(OUT_OF_ORDER + ": an update before update " + sequence + " of stream " + stream + " was lost."); }
+
+            if (position.next > sequence) { throw new SQLException(OUT_OF_ORDER + ": update " + sequence + " of stream " + stream + " has already been applied."); }
+        }
+    }
+
+    /**
+     * Let the next update in the stream be applied.
+     */
+    public void finished(final String stream, final long sequence) {
+
+        final Stream position = getStream(stream);
+
+        synchronized (position) {
+            if (position.next == sequence) {
+                position.next++;
+                position.lastUsed = System.currentTimeMillis();
+                position.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * @return the number of streams whose state is held.
+     */
+    public synchronized int getNumberOfStreams() {
+
+        return streams.size();
+    }
+
+    private synchronized Stream getStream(final String stream) {
+
+        Stream position = streams.get(stream);
+
+        if (position == null) {
+            removeExpiredStreams();
+
+            position = new Stream(System.currentTimeMillis());
+            streams.put(stream, position);
+        }
+
+        return position;
+    }
+
+    private void removeExpiredStreams() {
+
+        final long expiry = System.currentTimeMillis() - STREAM_EXPIRY;
+
+        final Iterator<Stream> iterator = streams.values().iterator();
+        while (iterator.hasNext()) {
+            final Stream position = iterator.next();
+
+            synchronized (position) {
+                if (position.lastUsed < expiry) {
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    private static class Stream {
+
+        private long next = 0;
+
+        private long lastUsed;
+
+        private boolean broken = false;
+
+        Stream(final long created) {
+
+            lastUsed = created;
+        }
+    }
+}
@@ -59,4 +59,9 @@ public interface ILockingTable {
      * @return  The type of lock granted.
      */
     public LockType peekAtLockGranted(LockRequest lockRequest);
+
+    /**
+     * @return the session holding the write lock, or null if no write lock is held.
+     */
+    public LockRequest getWriteLockHolder();
 }
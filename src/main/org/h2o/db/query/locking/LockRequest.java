@@ -12,18 +12,34 @@ public class LockRequest implements Serializable {
     private final DatabaseInstanceWrapper databaseMakingRequest;
     private final int sessionID;
 
+    /**
+     * The write quorum set by the requesting session, overriding that of the table, or null if it hasn't set one. Not part of the identity
+     * of the request.
+     */
+    private final Integer writeQuorum;
+
     /**
      * @param sessionID this should be the value from session.getSerialID().
      */
     public LockRequest(final DatabaseInstanceWrapper databaseMakingRequest, final int sessionID) {
 
+        this(databaseMakingRequest, sessionID, null);
+    }
+
+    /**
+     * @param sessionID this should be the value from session.getSerialID().
+     * @param writeQuorum the write quorum set by the requesting session, or null if the quorum of the table is to be used.
+     */
+    public LockRequest(final DatabaseInstanceWrapper databaseMakingRequest, final int sessionID, final Integer writeQuorum) {
+
         this.databaseMakingRequest = databaseMakingRequest;
         this.sessionID = sessionID;
+        this.writeQuorum = writeQuorum;
     }
 
     public LockRequest(final Session session) {
 
-        this(session.getDatabase().getLocalDatabaseInstanceInWrapper(), session.getSessionId());
+        this(session.getDatabase().getLocalDatabaseInstanceInWrapper(), session.getSessionId(), session.getWriteQuorum());
     }
 
     public int getSessionID() {
@@ -36,6 +52,14 @@ public class LockRequest implements Serializable {
         return databaseMakingRequest;
     }
 
+    /**
+     * @return the write quorum set by the requesting session, or null if the quorum of the table is to be used.
+     */
+    public Integer getWriteQuorum() {
+
+        return writeQuorum;
+    }
+
     @Override
     public int hashCode() {
 
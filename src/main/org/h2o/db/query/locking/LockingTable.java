@@ -163,4 +163,10 @@ public class LockingTable implements ILockingTable, Serializable {
 
         return LockType.NONE;
     }
+
+    @Override
+    public synchronized LockRequest getWriteLockHolder() {
+
+        return writeLockHolder;
+    }
 }
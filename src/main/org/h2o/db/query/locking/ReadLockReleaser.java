@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2009-2010 School of Computer Science, University of St Andrews. All rights reserved. Project Homepage:
+ * http://blogs.cs.st-andrews.ac.uk/h2o H2O is free software: you can redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version. H2O
+ * is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details. You should have received a copy of the GNU General
+ * Public License along with H2O. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.h2o.db.query.locking;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.h2o.db.interfaces.ITableManagerRemote;
+
+import uk.ac.standrews.cs.nds.util.ErrorHandling;
+
+/**
+ * Releases the read locks held by auto-committed queries in the background.
+ *
+ * <p>A read-only query doesn't change the state of any replica, so its locks can be released after its result has been returned. Locks
+ * queued while an earlier batch is being sent are released together, with one call to each Table Manager.
+ *
+ * <p>A session must call {@link #awaitRelease(LockRequest)} before it requests another lock, because the Table Manager identifies locks by
+ * session, and a delayed release would otherwise release the new lock.
+ */
+public class ReadLockReleaser {
+
+    /**
+     * The time, in seconds, after which the idle release thread stops.
+     */
+    private static final long IDLE_TIMEOUT = 60;
+
+    private final ThreadPoolExecutor sender;
+
+    /**
+     * Read locks waiting to be released, by the Table Manager holding them.
+     */
+    private final Map<ITableManagerRemote, Set<LockRequest>> queued = new HashMap<ITableManagerRemote, Set<LockRequest>>();
+
+    /**
+     * The number of Table Managers on which each session has a release outstanding.
+     */
+    private final Map<LockRequest, Integer> outstanding = new HashMap<LockRequest, Integer>();
+
+    private boolean draining = false;
+
+    public ReadLockReleaser() {
+
+        sender = new ThreadPoolExecutor(1, 1, IDLE_TIMEOUT, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+
+            @Override
+            public Thread newThread(final Runnable r) {
+
+                final Thread thread = new Thread(r, "h2o-read-lock-releaser");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        sender.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Queue the release of the read locks held by a session.
+     *
+     * @param lockRequest
+     *            the session holding the locks.
+     * @param tableManagers
+     *            the Table Managers from which the session holds read locks.
+     */
+    public synchronized void release(final LockRequest lockRequest, final Collection<ITableManagerRemote> tableManagers) {
+
+        for (final ITableManagerRemote tableManager : tableManagers) {
+
+            Set<LockRequest> locks = queued.get(tableManager);
+            if (locks == null) {
+                locks = new HashSet<LockRequest>();
+                queued.put(tableManager, locks);
+            }
+
+            if (locks.add(lockRequest)) {
+                final Integer count = outstanding.get(lockRequest);
+                outstanding.put(lockRequest, count == null ? 1 : count + 1);
+            }
+        }
+
+        if (!draining && !queued.isEmpty()) {
+            draining = true;
+
+            try {
+                sender.execute(new Runnable() {
+
+                    @Override
+                    public void run() {
+
+                        drain();
+                    }
+                });
+            }
+            catch (final RejectedExecutionException e) {
+                // The releaser has been shut down, so no thread will release these locks. Stop waiting for them.
+                ErrorHandling.errorNoEvent("Read lock releaser has been shut down: " + queued.size() + " Table Managers not contacted.");
+
+                draining = false;
+                discardQueued();
+            }
+        }
+    }
+
+    /**
+     * Wait until any read locks queued for release by the given session have been released. If the thread is interrupted while waiting, it
+     * still waits, and its interrupt status is set again before returning.
+     */
+    public synchronized void awaitRelease(final LockRequest lockRequest) {
+
+        boolean interrupted = false;
+
+        while (outstanding.containsKey(lockRequest)) {
+            try {
+                wait();
+            }
+            catch (final InterruptedException e) {
+                // Keep waiting, because a release that arrived after the next lock was granted would release that lock.
+                interrupted = true;
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Stop the release thread once the locks that have been queued are released.
+     */
+    public void shutdown() {
+
+        sender.shutdown();
+    }
+
+    private void drain() {
+
+        while (true) {
+
+            final Map<ITableManagerRemote, Set<LockRequest>> batch;
+
+            synchronized (this) {
+                if (queued.isEmpty()) {
+                    draining = false;
+                    return;
+                }
+
+                batch = new HashMap<ITableManagerRemote, Set<LockRequest>>(queued);
+                queued.clear();
+            }
+
+            for (final Entry<ITableManagerRemote, Set<LockRequest>> entry : batch.entrySet()) {
+
+                try {
+                    entry.getKey().releaseReadLocks(entry.getValue());
+                }
+                catch (final Exception e) {
+                    // A Table Manager that can't be contacted will be recreated without these locks.
+                    ErrorHandling.errorNoEvent("Failed to release " + entry.getValue().size() + " read locks: " + e.getMessage());
+                }
+                finally {
+                    released(entry.getValue());
+                }
+            }
+        }
+    }
+
+    private synchronized void discardQueued() {
+
+        for (final Set<LockRequest> locks : queued.values()) {
+            released(locks);
+        }
+
+        queued.clear();
+    }
+
+    private synchronized void released(final Set<LockRequest> locks) {
+
+        for (final LockRequest lockRequest : locks) {
+            final int count = outstanding.get(lockRequest) - 1;
+
+            if (count == 0) {
+                outstanding.remove(lockRequest);
+            }
+            else {
+                outstanding.put(lockRequest, count);
+            }
+        }
+
+        notifyAll();
+    }
+}
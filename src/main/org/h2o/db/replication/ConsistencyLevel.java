@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2009-2010 School of Computer Science, University of St Andrews. All rights reserved. Project Homepage:
+ * http://blogs.cs.st-andrews.ac.uk/h2o H2O is free software: you can redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version. H2O
+ * is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details. You should have received a copy of the GNU General
+ * Public License along with H2O. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.h2o.db.replication;
+
+import java.io.Serializable;
+
+import org.h2.engine.Session;
+import org.h2o.autonomic.settings.Settings;
+
+/**
+ * The replication guarantees requested for a table: the number of replicas that must acknowledge a write before it returns (the write
+ * quorum), and the set of replicas a read may be sent to.
+ * 
+ * <p>Each Table Manager holds the consistency level of its table. Individual sessions can override either part of it for the remainder
+ * of the session (see {@link Session#setWriteQuorum(Integer)} and {@link Session#setReadConsistency(ReadConsistency)}).
+ * 
+ * <p>Instances are immutable.
+ * 
+ * @author Angus Macdonald (angus@cs.st-andrews.ac.uk)
+ */
+public class ConsistencyLevel implements Serializable {
+
+    private static final long serialVersionUID = -4172531873541926471L;
+
+    /**
+     * Write quorum meaning that every replica on an active machine must acknowledge a write before it returns.
+     */
+    public static final int ALL_REPLICAS = 0;
+
+    /**
+     * Number of replicas that must acknowledge a write before it returns, or {@link #ALL_REPLICAS}.
+     */
+    private final int writeQuorum;
+
+    private final ReadConsistency readConsistency;
+
+    /**
+     * @param writeQuorum       the number of replicas that must acknowledge a write, or {@link #ALL_REPLICAS}.
+     * @param readConsistency   the set of replicas reads may be sent to.
+     */
+    public ConsistencyLevel(final int writeQuorum, final ReadConsistency readConsistency) {
+
+        if (writeQuorum < 0) { throw new IllegalArgumentException("The write quorum cannot be negative."); }
+        if (readConsistency == null) { throw new IllegalArgumentException("A read consistency must be specified."); }
+
+        this.writeQuorum = writeQuorum;
+        this.readConsistency = readConsistency;
+    }
+
+    /**
+     * Get the consistency level given to new tables, as specified by the ASYNCHRONOUS_REPLICATION_ENABLED and
+     * ASYNCHRONOUS_REPLICATION_FACTOR settings.
+     */
+    public static ConsistencyLevel getDefault(final Settings databaseSettings) {
+
+        int writeQuorum = ALL_REPLICAS;
+
+        if (databaseSettings.get("ASYNCHRONOUS_REPLICATION_ENABLED").equals("true")) { //$NON-NLS-1$ //$NON-NLS-2$
+            writeQuorum = Integer.parseInt(databaseSettings.get("ASYNCHRONOUS_REPLICATION_FACTOR")); //$NON-NLS-1$
+        }
+
+        return new ConsistencyLevel(writeQuorum, ReadConsistency.ANY);
+    }
+
+    /**
+     * @return the number of replicas that must acknowledge a write before it returns, or {@link #ALL_REPLICAS}.
+     */
+    public int getWriteQuorum() {
+
+        return writeQuorum;
+    }
+
+    public ReadConsistency getReadConsistency() {
+
+        return readConsistency;
+    }
+
+    /**
+     * Get the number of replicas that must acknowledge a write before it can return.
+     * @param numberOfReplicas  the number of replicas the write has been sent to.
+     * @return the write quorum, capped at the number of replicas involved.
+     */
+    public int getUpdatesNeededBeforeCommit(final int numberOfReplicas) {
+
+        if (writeQuorum == ALL_REPLICAS || writeQuorum > numberOfReplicas) { return numberOfReplicas; }
+
+        return writeQuorum;
+    }
+
+    /**
+     * @param writeQuorum   the new write quorum, or null to keep the current quorum.
+     * @param readConsistency   the new read consistency, or null to keep the current read consistency.
+     * @return a consistency level with the given parts replaced.
+     */
+    public ConsistencyLevel override(final Integer writeQuorum, final ReadConsistency readConsistency) {
+
+        if (writeQuorum == null && readConsistency == null) { return this; }
+
+        return new ConsistencyLevel(writeQuorum == null ? this.writeQuorum : writeQuorum, readConsistency == null ? this.readConsistency : readConsistency);
+    }
+
+    /**
+     * @return this consistency level with any overrides made by the given session applied.
+     */
+    public ConsistencyLevel override(final Session session) {
+
+        if (session == null) { return this; }
+
+        return override(session.getWriteQuorum(), session.getReadConsistency());
+    }
+
+    @Override
+    public int hashCode() {
+
+        return 31 * writeQuorum + readConsistency.hashCode();
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+
+        if (this == obj) { return true; }
+        if (!(obj instanceof ConsistencyLevel)) { return false; }
+
+        final ConsistencyLevel other = (ConsistencyLevel) obj;
+
+        return writeQuorum == other.writeQuorum && readConsistency == other.readConsistency;
+    }
+
+    @Override
+    public String toString() {
+
+        return "write quorum: " + (writeQuorum == ALL_REPLICAS ? "ALL" : String.valueOf(writeQuorum)) + ", read consistency: " + readConsistency;
+    }
+}
@@ -163,13 +163,14 @@ public class MetaDataReplicaManager {
         final String databaseName = db.getID().sanitizedLocation().toUpperCase();
 
         addNewReplicaLocationQuery = "CREATE REPLICA IF NOT EXISTS " + TableManager.getMetaTableName(databaseName, TableManager.TABLES) + ", " + TableManager.getMetaTableName(databaseName, TableManager.REPLICAS) + ", " + TableManager.getMetaTableName(databaseName, TableManager.CONNECTIONS)
-                        + " FROM '" + db.getID().getOriginalURL() + "';";
+                        + ", " + TableManager.getMetaTableName(databaseName, TableManager.CONSISTENCY) + " FROM '" + db.getID().getOriginalURL() + "';";
 
-        addNewSystemTableQuery = "CREATE REPLICA IF NOT EXISTS " + PersistentSystemTable.TABLES + ", " + PersistentSystemTable.CONNECTIONS + ", " + PersistentSystemTable.TABLEMANAGERSTATE + " FROM '" + db.getID().getOriginalURL() + "';";
+        addNewSystemTableQuery = "CREATE REPLICA IF NOT EXISTS " + PersistentSystemTable.TABLES + ", " + PersistentSystemTable.CONNECTIONS + ", " + PersistentSystemTable.TABLEMANAGERSTATE + ", " + PersistentSystemTable.PARTITIONS + ", " + PersistentSystemTable.SEQUENCES + " FROM '" + db.getID().getOriginalURL() + "';";
 
-        dropOldSystemTableReplica = "DROP REPLICA IF EXISTS " + PersistentSystemTable.TABLES + ", " + PersistentSystemTable.CONNECTIONS + ", " + PersistentSystemTable.TABLEMANAGERSTATE + ";";
+        dropOldSystemTableReplica = "DROP REPLICA IF EXISTS " + PersistentSystemTable.TABLES + ", " + PersistentSystemTable.CONNECTIONS + ", " + PersistentSystemTable.TABLEMANAGERSTATE + ", " + PersistentSystemTable.PARTITIONS + ", " + PersistentSystemTable.SEQUENCES + ";";
 
-        dropOldTableManagerReplica = "DROP REPLICA IF EXISTS " + TableManager.getMetaTableName(databaseName, TableManager.TABLES) + ", " + TableManager.getMetaTableName(databaseName, TableManager.CONNECTIONS) + ", " + TableManager.getMetaTableName(databaseName, TableManager.REPLICAS) + ";";
+        dropOldTableManagerReplica = "DROP REPLICA IF EXISTS " + TableManager.getMetaTableName(databaseName, TableManager.TABLES) + ", " + TableManager.getMetaTableName(databaseName, TableManager.CONNECTIONS) + ", " + TableManager.getMetaTableName(databaseName, TableManager.REPLICAS) + ", "
+                        + TableManager.getMetaTableName(databaseName, TableManager.CONSISTENCY) + ";";
     }
 
     /**
@@ -498,9 +499,17 @@ public class MetaDataReplicaManager {
      */
     public int addTableManagerReplicaInformation(final int tableID, final int connectionID, final int primaryLocationConnectionID, final boolean active) throws SQLException {
 
-        final String sql = "INSERT INTO " + PersistentSystemTable.TABLEMANAGERSTATE + " VALUES (" + tableID + ", " + connectionID + ", " + primaryLocationConnectionID + ", " + active + ");";
+        return executeUpdate(constructAddTableManagerReplicaQuery(String.valueOf(tableID), connectionID, primaryLocationConnectionID, active), true, null);
+    }
+
+    /**
+     * @param tableID
+     *            the table's ID, or an SQL expression that evaluates to it.
+     * @return the update that records a replica of a Table Manager's state in the System Table.
+     */
+    public static String constructAddTableManagerReplicaQuery(final String tableID, final int connectionID, final int primaryLocationConnectionID, final boolean active) {
 
-        return executeUpdate(sql, true, null);
+        return "INSERT INTO " + PersistentSystemTable.TABLEMANAGERSTATE + " VALUES (" + tableID + ", " + connectionID + ", " + primaryLocationConnectionID + ", " + active + ");";
     }
 
     /**
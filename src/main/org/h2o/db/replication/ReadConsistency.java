@@ -0,0 +1,28 @@
+/*
+ * Copyright (C) 2009-2010 School of Computer Science, University of St Andrews. All rights reserved. Project Homepage:
+ * http://blogs.cs.st-andrews.ac.uk/h2o H2O is free software: you can redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version. H2O
+ * is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details. You should have received a copy of the GNU General
+ * Public License along with H2O. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.h2o.db.replication;
+
+/**
+ * The set of replicas that a read on a table may be sent to.
+ * 
+ * @see ConsistencyLevel
+ */
+public enum ReadConsistency {
+
+    /*
+     * Any replica on an active machine. If fewer than all replicas must acknowledge a write, this replica may not yet hold the most
+     * recent update.
+     */
+    ANY,
+
+    /*
+     * Only replicas that hold the most recent committed update (the Table Manager's set of active replicas).
+     */
+    LATEST
+}
@@ -10,12 +10,14 @@ package org.h2o.db.replication;
 
 import java.sql.SQLException;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Random;
 import java.util.Set;
 
 import org.h2o.db.id.DatabaseID;
@@ -72,9 +74,28 @@ public class ReplicaManager {
         }
     };
 
+    /**
+     * Immutable snapshot of the replicas on active machines. Rebuilt when the replica state changes, and shared by every lock request
+     * made in the meantime.
+     */
     private Map<DatabaseInstanceWrapper, Integer> onActiveMachines = null;
 
-    private boolean updatedSinceLastCache = true;
+    /**
+     * Immutable snapshot of the active replicas on active machines, rebuilt along with {@link #onActiveMachines}.
+     */
+    private Map<DatabaseInstanceWrapper, Integer> activeOnActiveMachines = null;
+
+    /**
+     * True if the replica state has changed since the snapshots were taken. This is set by threads that don't hold this object's lock.
+     */
+    private volatile boolean updatedSinceLastCache = true;
+
+    /**
+     * The version of the current snapshots. It changes every time the snapshots are rebuilt, so an instance that has cached a snapshot
+     * can be told that it is still current by sending just the version. Versions start at a random point so that a replica manager
+     * recreated elsewhere doesn't reuse the versions of its predecessor.
+     */
+    private long snapshotVersion = (long) new Random().nextInt() << 32;
 
     public ReplicaManager() {
 
@@ -122,6 +143,7 @@ public class ReplicaManager {
 
         addToAllReplicas(replicaLocation, getCurrentUpdateID());
         activeReplicas.put(replicaLocation, getCurrentUpdateID());
+        updatedSinceLastCache = true;
     }
 
     private Integer addToAllReplicas(final DatabaseInstanceWrapper replicaLocation, final Integer newUpdateID) {
@@ -181,9 +203,9 @@ public class ReplicaManager {
      */
     public void remove(final DatabaseInstanceWrapper dbInstance) {
 
-        updatedSinceLastCache = true;
         getAllReplicas().remove(dbInstance);
         activeReplicas.remove(dbInstance);
+        updatedSinceLastCache = true;
     }
 
     /**
@@ -251,6 +273,7 @@ public class ReplicaManager {
             if (!allRollback && firstPartOfUpdate) {
                 // Reset the active set.
                 activeReplicas = new HashMap<DatabaseInstanceWrapper, Integer>();
+                updatedSinceLastCache = true;
             }
 
             /*
@@ -332,6 +355,7 @@ public class ReplicaManager {
         else if (firstPartOfUpdate && instancesUpdated.size() == 0) {
             // If no replicas were updated make sure that the original set of active replicas is still valid.
             activeReplicas = oldActiveReplicas;
+            updatedSinceLastCache = true;
             return getInactiveReplicas();
         }
         else {
@@ -522,6 +546,7 @@ public class ReplicaManager {
 
         for (final DatabaseInstanceWrapper wrapper : failed) {
             activeReplicas.remove(wrapper);
+            updatedSinceLastCache = true;
             markMachineAsFailed(wrapper.getURL());
         }
     }
@@ -536,15 +561,82 @@ public class ReplicaManager {
         return allReplicas;
     }
 
-    public Map<DatabaseInstanceWrapper, Integer> getAllReplicasOnActiveMachines() {
+    /**
+     * @return an immutable snapshot of the replicas that are on active machines. The same map is returned until the replica state
+     *         changes.
+     */
+    public synchronized Map<DatabaseInstanceWrapper, Integer> getAllReplicasOnActiveMachines() {
 
-        if (updatedSinceLastCache) {
-            onActiveMachines = CollectionFilter.filter(allReplicas, isActive);
-        }
+        updateSnapshots();
 
         return onActiveMachines;
     }
 
+    /**
+     * @return an immutable snapshot of the replicas that hold the most recent committed update and are on active machines. The same map is
+     *         returned until the replica state changes.
+     */
+    public synchronized Map<DatabaseInstanceWrapper, Integer> getActiveReplicasOnActiveMachines() {
+
+        updateSnapshots();
+
+        return activeOnActiveMachines;
+    }
+
+    /**
+     * @return the version of the snapshots returned by {@link #getAllReplicasOnActiveMachines()} and
+     *         {@link #getActiveReplicasOnActiveMachines()}. If the version hasn't changed the snapshots haven't either.
+     */
+    public synchronized long getSnapshotVersion() {
+
+        updateSnapshots();
+
+        return snapshotVersion;
+    }
+
+    /**
+     * Give the snapshots a new version, for example because the table's consistency level has changed, and with it the snapshot given out
+     * for reads.
+     */
+    public synchronized void newSnapshotVersion() {
+
+        updatedSinceLastCache = true;
+    }
+
+    private void updateSnapshots() {
+
+        if (!updatedSinceLastCache && !machineStateChanged()) { return; }
+
+        final Map<DatabaseInstanceWrapper, Integer> allOnActive = CollectionFilter.filter(allReplicas, isActive);
+        final Map<DatabaseInstanceWrapper, Integer> activeOnActive = new HashMap<DatabaseInstanceWrapper, Integer>();
+
+        for (final Entry<DatabaseInstanceWrapper, Integer> replica : allOnActive.entrySet()) {
+            if (activeReplicas.containsKey(replica.getKey())) {
+                activeOnActive.put(replica.getKey(), replica.getValue());
+            }
+        }
+
+        onActiveMachines = Collections.unmodifiableMap(allOnActive);
+        activeOnActiveMachines = Collections.unmodifiableMap(activeOnActive);
+        snapshotVersion++;
+        updatedSinceLastCache = false;
+    }
+
+    /**
+     * Whether a replica's machine has been marked as active or inactive since the snapshots were taken. Wrappers are shared with the
+     * System Table, which marks machines as failed without going through this class.
+     */
+    private boolean machineStateChanged() {
+
+        if (onActiveMachines == null) { return true; }
+
+        for (final DatabaseInstanceWrapper wrapper : allReplicas.keySet()) {
+            if (wrapper.isActive() != onActiveMachines.containsKey(wrapper)) { return true; }
+        }
+
+        return false;
+    }
+
     public DatabaseInstanceWrapper getManagerLocation() {
 
         return primaryLocation;
@@ -14,9 +14,10 @@ import org.h2o.db.id.DatabaseID;
 import org.h2o.db.id.TableInfo;
 import org.h2o.db.interfaces.ITableManagerRemote;
 
-import uk.ac.standrews.cs.nds.rpc.RPCException;
-
 /**
+ * The System Table's record of a table's Table Manager. Records are immutable, so they can be handed out while the System Table replaces
+ * them; a Table Manager that moves or is recreated gets a new record.
+ * 
  * @author Angus Macdonald (angus@cs.st-andrews.ac.uk)
  */
 public class TableManagerWrapper implements Serializable {
@@ -26,17 +27,17 @@ public class TableManagerWrapper implements Serializable {
     /**
      * Contains information on the table itself, such as its fully qualified name.
      */
-    private TableInfo tableInfo;
+    private final TableInfo tableInfo;
 
     /**
      * Remote reference to the actual Table Manager.
      */
-    private ITableManagerRemote tableManager;
+    private final ITableManagerRemote tableManager;
 
     /**
      * Location of the Table Manager.
      */
-    private DatabaseID tableManagerURL;
+    private final DatabaseID tableManagerURL;
 
     public TableManagerWrapper(final TableInfo tableInfo, final ITableManagerRemote tableManager, final DatabaseID tableManagerURL) {
 
@@ -53,15 +54,6 @@ public class TableManagerWrapper implements Serializable {
         return tableInfo;
     }
 
-    /**
-     * @param tableInfo
-     *            the tableInfo to set
-     */
-    public void setTableInfo(final TableInfo tableInfo) {
-
-        this.tableInfo = tableInfo.getGenericTableInfo();
-    }
-
     /**
      * @return the tableManager
      */
@@ -70,15 +62,6 @@ public class TableManagerWrapper implements Serializable {
         return tableManager;
     }
 
-    /**
-     * @param tableManager
-     *            the tableManager to set
-     */
-    public void setTableManager(final ITableManagerRemote tableManager) {
-
-        this.tableManager = tableManager;
-    }
-
     /**
      * @return the tableManagerURL
      */
@@ -87,15 +70,6 @@ public class TableManagerWrapper implements Serializable {
         return tableManagerURL;
     }
 
-    /**
-     * @param tableManagerURL
-     *            the tableManagerURL to set
-     */
-    public void setTableManagerURL(final DatabaseID tableManagerURL) throws RPCException {
-
-        this.tableManagerURL = tableManagerURL;
-    }
-
     /*
      * (non-Javadoc)
      * @see java.lang.Object#hashCode()
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2009-2010 School of Computer Science, University of St Andrews. All rights reserved. Project Homepage:
+ * http://blogs.cs.st-andrews.ac.uk/h2o H2O is free software: you can redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version. H2O
+ * is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details. You should have received a copy of the GNU General
+ * Public License along with H2O. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.h2o.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import uk.ac.standrews.cs.nds.util.Diagnostic;
+import uk.ac.standrews.cs.nds.util.DiagnosticLevel;
+
+/**
+ * Records how long each phase of a multi-phase operation (such as database startup) took.
+ *
+ * <p>Phases run one after another: starting a phase ends the previous one. The durations are traced when the operation finishes, and can be
+ * read afterwards with {@link #getDurations()}.
+ */
+public class PhaseTimer {
+
+    private final String operation;
+
+    /**
+     * The duration of each completed phase in milliseconds, in the order the phases were run.
+     */
+    private final Map<String, Long> durations = new LinkedHashMap<String, Long>();
+
+    private String currentPhase = null;
+
+    private long currentPhaseStart;
+
+    public PhaseTimer(final String operation) {
+
+        this.operation = operation;
+    }
+
+    /**
+     * End the current phase, if there is one, and start a new one.
+     */
+    public synchronized void startPhase(final String phase) {
+
+        endCurrentPhase();
+
+        currentPhase = phase;
+        currentPhaseStart = System.currentTimeMillis();
+    }
+
+    /**
+     * End the current phase and trace the duration of every phase.
+     */
+    public synchronized void finish() {
+
+        endCurrentPhase();
+
+        Diagnostic.traceNoEvent(DiagnosticLevel.INIT, toString());
+    }
+
+    /**
+     * @return the duration of each completed phase in milliseconds, in the order the phases were run.
+     */
+    public synchronized Map<String, Long> getDurations() {
+
+        return new LinkedHashMap<String, Long>(durations);
+    }
+
+    /**
+     * @return the total duration of the completed phases in milliseconds.
+     */
+    public synchronized long getTotal() {
+
+        long total = 0;
+        for (final long duration : durations.values()) {
+            total += duration;
+        }
+        return total;
+    }
+
+    @Override
+    public synchronized String toString() {
+
+        final StringBuilder builder = new StringBuilder(operation + " took " + getTotal() + "ms:");
+
+        for (final Entry<String, Long> entry : durations.entrySet()) {
+            builder.append("\n\t" + entry.getKey() + ": " + entry.getValue() + "ms");
+        }
+
+        return builder.toString();
+    }
+
+    private void endCurrentPhase() {
+
+        if (currentPhase != null) {
+            final long duration = System.currentTimeMillis() - currentPhaseStart;
+
+            // A phase that is run more than once is reported as its total duration.
+            final Long previous = durations.get(currentPhase);
+            durations.put(currentPhase, previous == null ? duration : previous + duration);
+
+            currentPhase = null;
+        }
+    }
+}
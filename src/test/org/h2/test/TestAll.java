@@ -107,6 +107,7 @@ import org.h2.test.unit.TestExit;
 import org.h2.test.unit.TestFile;
 import org.h2.test.unit.TestFileLock;
 import org.h2.test.unit.TestFileSystem;
+import org.h2.test.unit.TestGroupCommit;
 import org.h2.test.unit.TestIntArray;
 import org.h2.test.unit.TestIntIntHashMap;
 import org.h2.test.unit.TestMathUtils;
@@ -529,6 +530,7 @@ public class TestAll {
 		new TestFileLock().runTest(this);
 		// new TestFtp().runTest(this);
 		new TestFileSystem().runTest(this);
+		new TestGroupCommit().runTest(this);
 		new TestIntArray().runTest(this);
 		new TestIntIntHashMap().runTest(this);
 		new TestMathUtils().runTest(this);
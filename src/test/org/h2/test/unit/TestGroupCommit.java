@@ -0,0 +1,278 @@
+/*
+ * Copyright 2004-2009 H2 Group. Multiple-Licensed under the H2 License, Version 1.0, and under the Eclipse Public License, Version 1.0
+ * (http://h2database.com/html/license.html). Initial Developer: H2 Group
+ */
+package org.h2.test.unit;
+
+import java.sql.SQLException;
+
+import org.h2.log.GroupCommit;
+import org.h2.log.LogSystem;
+import org.h2.test.TestBase;
+
+/**
+ * Tests that commit records are flushed in groups, and that no commit is reported as durable when the flush it depends on fails.
+ */
+public class TestGroupCommit extends TestBase {
+
+	/**
+	 * Run just this test.
+	 *
+	 * @param a
+	 *            ignored
+	 */
+	public static void main(String[] a) throws Exception {
+		TestBase.createCaller().init().test();
+	}
+
+	public void test() throws Exception {
+		testSingleCommit();
+		testGroupedFlush();
+		testLeaderWaitsForGroup();
+		testFailedFlushIsReported();
+		testFollowerWaitsForSuccessfulFlush();
+	}
+
+	private void testSingleCommit() throws Exception {
+		Object database = new Object();
+		ControlledLog log = new ControlledLog();
+		GroupCommit groupCommit = new GroupCommit(database, log, 0, 10);
+		long ticket;
+		synchronized (database) {
+			ticket = groupCommit.recordAppended();
+		}
+		groupCommit.waitUntilFlushed(ticket);
+		assertEquals(1, log.getFlushCount());
+		// already flushed: must not flush again
+		groupCommit.waitUntilFlushed(ticket);
+		assertEquals(1, log.getFlushCount());
+		assertEquals(1, groupCommit.getGroupCount());
+		assertEquals(1, groupCommit.getMaxGroupSize());
+	}
+
+	private void testGroupedFlush() throws Exception {
+		Object database = new Object();
+		ControlledLog log = new ControlledLog();
+		GroupCommit groupCommit = new GroupCommit(database, log, 0, 10);
+
+		// records appended before anyone waits are made durable by a single flush
+		Committer[] committers = new Committer[4];
+		synchronized (database) {
+			for (int i = 0; i < committers.length; i++) {
+				committers[i] = new Committer(groupCommit, groupCommit.recordAppended());
+			}
+		}
+		for (int i = 0; i < committers.length; i++) {
+			committers[i].start();
+		}
+		for (int i = 0; i < committers.length; i++) {
+			committers[i].join();
+			assertTrue(committers[i].getException() == null);
+		}
+		assertEquals(1, log.getFlushCount());
+		assertEquals(1, groupCommit.getGroupCount());
+		assertEquals(committers.length, groupCommit.getMaxGroupSize());
+	}
+
+	private void testLeaderWaitsForGroup() throws Exception {
+		Object database = new Object();
+		ControlledLog log = new ControlledLog();
+		final int size = 3;
+		GroupCommit groupCommit = new GroupCommit(database, log, 60000, size);
+
+		// the leader waits for more records, and flushes as soon as the group is full
+		Committer[] committers = new Committer[size];
+		for (int i = 0; i < size; i++) {
+			committers[i] = new Committer(database, groupCommit);
+			committers[i].start();
+		}
+		long start = System.currentTimeMillis();
+		for (int i = 0; i < size; i++) {
+			committers[i].join();
+			assertTrue(committers[i].getException() == null);
+		}
+		assertSmaller(System.currentTimeMillis() - start, 30000);
+		assertEquals(1, log.getFlushCount());
+		assertEquals(1, groupCommit.getGroupCount());
+		assertEquals(size, groupCommit.getMaxGroupSize());
+	}
+
+	private void testFailedFlushIsReported() throws Exception {
+		Object database = new Object();
+		ControlledLog log = new ControlledLog();
+		GroupCommit groupCommit = new GroupCommit(database, log, 0, 10);
+		long ticket;
+		synchronized (database) {
+			ticket = groupCommit.recordAppended();
+		}
+		log.failNext();
+		try {
+			groupCommit.waitUntilFlushed(ticket);
+			fail();
+		} catch (SQLException e) {
+			// expected
+		}
+		assertEquals(0, groupCommit.getGroupCount());
+
+		// the record is still outstanding, so waiting again flushes again
+		groupCommit.waitUntilFlushed(ticket);
+		assertEquals(2, log.getFlushCount());
+		assertEquals(1, groupCommit.getGroupCount());
+	}
+
+	private void testFollowerWaitsForSuccessfulFlush() throws Exception {
+		Object database = new Object();
+		ControlledLog log = new ControlledLog();
+		GroupCommit groupCommit = new GroupCommit(database, log, 0, 10);
+
+		Committer leader;
+		Committer follower;
+		synchronized (database) {
+			leader = new Committer(groupCommit, groupCommit.recordAppended());
+			follower = new Committer(groupCommit, groupCommit.recordAppended());
+		}
+
+		// the leader's flush covers both records, but is held up and then fails
+		log.block();
+		log.failNext();
+		leader.start();
+		log.waitForFlushStart(1);
+		follower.start();
+		Thread.sleep(100);
+		assertFalse(follower.isDone());
+
+		log.unblock();
+		leader.join();
+		follower.join();
+
+		// the leader sees its flush fail; the follower only returns after a flush of its own record succeeded
+		assertTrue(leader.getException() != null);
+		assertTrue(follower.getException() == null);
+		assertEquals(2, log.getFlushCount());
+		assertEquals(1, log.getSuccessfulFlushCount());
+		assertEquals(1, groupCommit.getGroupCount());
+	}
+
+	/**
+	 * A log system that only counts flushes, and that can hold up or fail a flush.
+	 */
+	private static class ControlledLog extends LogSystem {
+
+		private int flushCount;
+
+		private int successfulFlushCount;
+
+		private boolean blocked;
+
+		private boolean failNext;
+
+		ControlledLog() {
+			super(null, null, false, null, null);
+		}
+
+		public void flush() throws SQLException {
+			boolean fail;
+			synchronized (this) {
+				flushCount++;
+				notifyAll();
+				while (blocked) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						// ignore
+					}
+				}
+				fail = failNext;
+				failNext = false;
+				if (!fail) {
+					successfulFlushCount++;
+				}
+			}
+			if (fail) {
+				throw new SQLException("flush failed");
+			}
+		}
+
+		synchronized void block() {
+			blocked = true;
+		}
+
+		synchronized void unblock() {
+			blocked = false;
+			notifyAll();
+		}
+
+		synchronized void failNext() {
+			failNext = true;
+		}
+
+		synchronized void waitForFlushStart(int count) throws InterruptedException {
+			while (flushCount < count) {
+				wait();
+			}
+		}
+
+		synchronized int getFlushCount() {
+			return flushCount;
+		}
+
+		synchronized int getSuccessfulFlushCount() {
+			return successfulFlushCount;
+		}
+	}
+
+	/**
+	 * A thread that waits until a commit record is flushed, appending it first if it has no ticket yet.
+	 */
+	private static class Committer extends Thread {
+
+		private final Object database;
+
+		private final GroupCommit groupCommit;
+
+		private long ticket;
+
+		private boolean done;
+
+		private SQLException exception;
+
+		Committer(Object database, GroupCommit groupCommit) {
+			this.database = database;
+			this.groupCommit = groupCommit;
+			this.ticket = -1;
+		}
+
+		Committer(GroupCommit groupCommit, long ticket) {
+			this.database = null;
+			this.groupCommit = groupCommit;
+			this.ticket = ticket;
+		}
+
+		public void run() {
+			if (ticket < 0) {
+				synchronized (database) {
+					ticket = groupCommit.recordAppended();
+				}
+			}
+			try {
+				groupCommit.waitUntilFlushed(ticket);
+			} catch (SQLException e) {
+				synchronized (this) {
+					exception = e;
+				}
+			}
+			synchronized (this) {
+				done = true;
+			}
+		}
+
+		synchronized boolean isDone() {
+			return done;
+		}
+
+		synchronized SQLException getException() {
+			return exception;
+		}
+	}
+
+}
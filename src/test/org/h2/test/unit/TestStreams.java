@@ -9,12 +9,17 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.Random;
 
+import org.h2.compress.CompressDeflate;
+import org.h2.compress.CompressLZF;
+import org.h2.compress.CompressedBlockInputStream;
+import org.h2.compress.CompressedBlockOutputStream;
+import org.h2.compress.Compressor;
 import org.h2.compress.LZFInputStream;
 import org.h2.compress.LZFOutputStream;
 import org.h2.test.TestBase;
 
 /**
- * Tests the LZF stream.
+ * Tests the LZF stream and the compressed block streams.
  */
 public class TestStreams extends TestBase {
 	
@@ -30,6 +35,8 @@ public class TestStreams extends TestBase {
 	
 	public void test() throws IOException {
 		testLZFStreams();
+		testCompressedBlockStreams(new CompressLZF(), new CompressLZF());
+		testCompressedBlockStreams(new CompressDeflate(), new CompressDeflate());
 	}
 	
 	private byte[] getRandomBytes(Random random) {
@@ -96,4 +103,42 @@ public class TestStreams extends TestBase {
 		}
 	}
 	
+	/**
+	 * Data written in pieces, with flushes in between, is read back unchanged, whether or not each block was compressed.
+	 */
+	private void testCompressedBlockStreams(Compressor compress, Compressor decompress) throws IOException {
+		Random random = new Random(1);
+		int max = getSize(100, 1000);
+		for ( int i = 0; i < max; i += 3 ) {
+			byte[] buffer = getRandomBytes(random);
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			CompressedBlockOutputStream comp = new CompressedBlockOutputStream(out, compress, random.nextInt(2000), 16 * 1024);
+			for ( int j = 0; j < buffer.length; ) {
+				int[] sizes = new int[] { 1, random.nextInt(100), random.nextInt(100000) };
+				int size = Math.min(sizes[random.nextInt(sizes.length)], buffer.length - j);
+				if ( size == 1 ) {
+					comp.write(buffer[j]);
+				} else {
+					comp.write(buffer, j, size);
+				}
+				j += size;
+				if ( random.nextInt(5) == 1 ) {
+					comp.flush();
+				}
+			}
+			comp.close();
+			CompressedBlockInputStream expand = new CompressedBlockInputStream(new ByteArrayInputStream(out.toByteArray()), decompress);
+			byte[] test = new byte[buffer.length];
+			for ( int j = 0; j < buffer.length; ) {
+				int l = expand.read(test, j, Math.min(random.nextInt(100000) + 1, test.length - j));
+				if ( l < 0 ) {
+					break;
+				}
+				j += l;
+			}
+			assertEquals(buffer, test);
+			assertEquals(-1, expand.read());
+		}
+	}
+	
 }
@@ -0,0 +1,322 @@
+package org.h2o.db.manager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.h2o.db.id.TableInfo;
+import org.h2o.db.wrappers.DatabaseInstanceWrapper;
+import org.h2o.db.wrappers.TableManagerWrapper;
+import org.h2o.test.fixture.UnitTestFixture;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of the transfers planned by the {@link ReplicaRebalancer}. The transfers are recorded rather than made.
+ */
+public class ReplicaRebalancerTest {
+
+    private final DatabaseInstanceWrapper one = UnitTestFixture.createInstance("one");
+
+    private final DatabaseInstanceWrapper two = UnitTestFixture.createInstance("two");
+
+    private final DatabaseInstanceWrapper three = UnitTestFixture.createInstance("three");
+
+    private final DatabaseInstanceWrapper four = UnitTestFixture.createInstance("four");
+
+    /**
+     * An instance that has left the system.
+     */
+    private final DatabaseInstanceWrapper departed = UnitTestFixture.createInstance("departed");
+
+    /**
+     * The replicas of each table, updated as transfers are made.
+     */
+    private final Map<TableManagerWrapper, Set<DatabaseInstanceWrapper>> placement = new HashMap<TableManagerWrapper, Set<DatabaseInstanceWrapper>>();
+
+    /**
+     * The transfers made, in order, as "copy TABLE to INSTANCE", "drop TABLE from INSTANCE" or "migrate TABLE to INSTANCE".
+     */
+    private final List<String> transfers = new LinkedList<String>();
+
+    private final Set<DatabaseInstanceWrapper> noReplicateInstances = new HashSet<DatabaseInstanceWrapper>();
+
+    private boolean copiesFail = false;
+
+    @Before
+    public void setUp() {
+
+        placement.clear();
+        transfers.clear();
+        noReplicateInstances.clear();
+        copiesFail = false;
+    }
+
+    /**
+     * Replicas are moved from the instance holding the most that can be moved until no two instances differ by more than one, and Table
+     * Managers then follow, each to an instance holding a replica of its table.
+     */
+    @Test
+    public void replicasAndTableManagersAreSpreadEvenly() {
+
+        for (int i = 0; i < 4; i++) {
+            addTable("T" + i, one, one, two);
+        }
+
+        run(100, one, two, three);
+
+        assertEquals(2, count("copy"));
+        assertEquals(2, count("drop"));
+        assertEquals(2, count("migrate"));
+
+        assertEquals(4, replicasOn(one));
+        assertEquals(2, replicasOn(two));
+        assertEquals(2, replicasOn(three));
+
+        // Each migrated Table Manager went to an instance holding its table.
+        for (final String transfer : transfers) {
+            if (transfer.startsWith("migrate")) {
+                final String[] parts = transfer.split(" ");
+                assertTrue(transfer, placement.get(find(parts[1])).contains(UnitTestFixture.createInstance(parts[3])));
+            }
+        }
+    }
+
+    /**
+     * The replica on the instance holding a table's Table Manager is its primary copy, so it is never moved, even if that instance holds the
+     * most replicas. The Table Managers are still spread.
+     */
+    @Test
+    public void primaryCopyIsNeverMoved() {
+
+        for (int i = 0; i < 4; i++) {
+            addTable("T" + i, one, one);
+        }
+
+        run(100, one, two, three);
+
+        assertEquals(Arrays.asList("migrate", "migrate"), kinds());
+        assertEquals(4, replicasOn(one));
+    }
+
+    /**
+     * A placement in which no two instances hold more than one replica or Table Manager more than each other is left alone.
+     */
+    @Test
+    public void balancedPlacementIsLeftAlone() {
+
+        addTable("T0", one, one);
+        addTable("T1", two, two);
+        addTable("T2", three, one, three);
+
+        run(100, one, two, three);
+
+        assertTrue(transfers.toString(), transfers.isEmpty());
+    }
+
+    /**
+     * Every copy and migration counts against the budget, but dropping the original of a moved replica doesn't.
+     */
+    @Test
+    public void budgetLimitsTransfers() {
+
+        for (int i = 0; i < 4; i++) {
+            addTable("T" + i, one, one, two);
+        }
+
+        run(1, one, two, three);
+
+        assertEquals(Arrays.asList("copy", "drop"), kinds());
+    }
+
+    /**
+     * Replicas held by an instance that has left aren't replaced, because the Table Manager replaces them, and aren't counted.
+     */
+    @Test
+    public void lostReplicasAreNotReplaced() {
+
+        addTable("T0", one, one, departed);
+        addTable("T1", two, two, departed);
+
+        run(100, one, two);
+
+        assertTrue(transfers.toString(), transfers.isEmpty());
+    }
+
+    /**
+     * Instances that mustn't hold new replicas aren't given any, but can still be given Table Managers.
+     */
+    @Test
+    public void noReplicateInstanceIsNotGivenReplicas() {
+
+        noReplicateInstances.add(three);
+
+        for (int i = 0; i < 4; i++) {
+            addTable("T" + i, one, one, two);
+        }
+
+        run(100, one, two, three, four);
+
+        assertEquals(0, replicasOn(three));
+        assertEquals(2, replicasOn(two));
+        assertEquals(2, replicasOn(four));
+
+        boolean migratedToThree = false;
+        for (final String transfer : transfers) {
+            migratedToThree |= transfer.startsWith("migrate") && transfer.endsWith(" to three");
+        }
+        assertTrue(transfers.toString(), migratedToThree);
+    }
+
+    /**
+     * A replica whose copy failed isn't dropped, and no more replicas are moved.
+     */
+    @Test
+    public void failedCopyStopsRebalancing() {
+
+        copiesFail = true;
+
+        for (int i = 0; i < 4; i++) {
+            addTable("T" + i, one, one, two);
+        }
+
+        run(100, one, two, three);
+
+        assertEquals(0, count("copy"));
+        assertEquals(0, count("drop"));
+        assertEquals(4, replicasOn(two));
+    }
+
+    /**
+     * Nothing is moved when there is only one instance, or no budget.
+     */
+    @Test
+    public void nothingIsMovedWithoutSomewhereToMoveIt() {
+
+        addTable("T0", one, one);
+        addTable("T1", one, one);
+        addTable("T2", one, one);
+
+        run(100, one);
+        run(0, one, two);
+
+        assertTrue(transfers.toString(), transfers.isEmpty());
+        assertFalse(placement.get(find("T0")).contains(two));
+    }
+
+    private void addTable(final String name, final DatabaseInstanceWrapper manager, final DatabaseInstanceWrapper... replicas) {
+
+        placement.put(new TableManagerWrapper(new TableInfo(name, "PUBLIC"), null, manager.getURL()), new HashSet<DatabaseInstanceWrapper>(Arrays.asList(replicas)));
+    }
+
+    private void run(final int budget, final DatabaseInstanceWrapper... rankedInstances) {
+
+        new RecordingRebalancer(Arrays.asList(rankedInstances), budget).run();
+    }
+
+    private TableManagerWrapper find(final String tableName) {
+
+        for (final TableManagerWrapper wrapper : placement.keySet()) {
+            if (wrapper.getTableInfo().getTableName().equals(tableName)) { return wrapper; }
+        }
+
+        return null;
+    }
+
+    private int replicasOn(final DatabaseInstanceWrapper instance) {
+
+        int replicas = 0;
+        for (final Set<DatabaseInstanceWrapper> tableReplicas : placement.values()) {
+            if (tableReplicas.contains(instance)) {
+                replicas++;
+            }
+        }
+
+        return replicas;
+    }
+
+    private List<String> kinds() {
+
+        final List<String> kinds = new LinkedList<String>();
+        for (final String transfer : transfers) {
+            kinds.add(transfer.split(" ")[0]);
+        }
+
+        return kinds;
+    }
+
+    private int count(final String kind) {
+
+        return Collections.frequency(kinds(), kind);
+    }
+
+    private static String nameOf(final DatabaseInstanceWrapper instance) {
+
+        final String url = instance.getURL().getURL();
+
+        return url.substring(url.lastIndexOf(':') + 1);
+    }
+
+    /**
+     * A rebalancer that finds replicas in the test's placement and records its transfers there instead of making them.
+     */
+    private class RecordingRebalancer extends ReplicaRebalancer {
+
+        RecordingRebalancer(final List<DatabaseInstanceWrapper> rankedInstances, final int budget) {
+
+            super(rankedInstances, noReplicateInstances, new LinkedList<TableManagerWrapper>(placement.keySet()), budget);
+        }
+
+        @Override
+        protected Set<DatabaseInstanceWrapper> findReplicas(final TableManagerWrapper wrapper) {
+
+            return new HashSet<DatabaseInstanceWrapper>(placement.get(wrapper));
+        }
+
+        @Override
+        protected boolean createReplica(final String tableName, final DatabaseInstanceWrapper source, final DatabaseInstanceWrapper target) {
+
+            if (copiesFail) { return false; }
+
+            assertTrue(placement.get(find(shortName(tableName))).contains(source));
+
+            placement.get(find(shortName(tableName))).add(target);
+            transfers.add("copy " + shortName(tableName) + " to " + nameOf(target));
+
+            return true;
+        }
+
+        @Override
+        protected boolean dropReplica(final String tableName, final DatabaseInstanceWrapper from) {
+
+            assertFalse(from.getURL().equals(find(shortName(tableName)).getURL()));
+
+            placement.get(find(shortName(tableName))).remove(from);
+            transfers.add("drop " + shortName(tableName) + " from " + nameOf(from));
+
+            return true;
+        }
+
+        @Override
+        protected boolean migrateTableManager(final String tableName, final DatabaseInstanceWrapper to) {
+
+            transfers.add("migrate " + shortName(tableName) + " to " + nameOf(to));
+
+            return true;
+        }
+
+        private String shortName(final String fullTableName) {
+
+            return fullTableName.substring(fullTableName.indexOf('.') + 1);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package org.h2o.db.partitioning;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.TimeZone;
+
+import org.h2.value.ValueDecimal;
+import org.h2.value.ValueInt;
+import org.h2.value.ValueNull;
+import org.h2.value.ValueTimestamp;
+import org.h2o.db.id.TableInfo;
+import org.junit.Test;
+
+/**
+ * Tests of the partitions that a {@link PartitionScheme} assigns keys to.
+ */
+public class PartitionSchemeTest {
+
+    /**
+     * Enough partitions that unequal hash codes are unlikely to be assigned the same partition by chance.
+     */
+    private static final int PARTITIONS = 1009;
+
+    private final PartitionScheme scheme = PartitionScheme.createHashScheme(new TableInfo("TEST", "PUBLIC"), "ID", PARTITIONS);
+
+    /**
+     * Decimals that differ only in their scale are equal, so they are assigned the same partition.
+     */
+    @Test
+    public void equalDecimalsAreAssignedTheSamePartition() throws SQLException {
+
+        final int partition = scheme.getPartition(ValueDecimal.get(new BigDecimal("1.5")), null);
+
+        assertEquals(partition, scheme.getPartition(ValueDecimal.get(new BigDecimal("1.50")), null));
+        assertEquals(partition, scheme.getPartition(ValueDecimal.get(new BigDecimal("1.500")), null));
+
+        final int zero = scheme.getPartition(ValueDecimal.get(new BigDecimal("0")), null);
+        assertEquals(zero, scheme.getPartition(ValueDecimal.get(new BigDecimal("0.00")), null));
+
+        assertEquals(scheme.getPartition(ValueDecimal.get(new BigDecimal("150")), null), scheme.getPartition(ValueDecimal.get(new BigDecimal("1.5E+2")), null));
+    }
+
+    /**
+     * A timestamp is assigned the same partition by instances in different time zones.
+     */
+    @Test
+    public void timestampsAreAssignedTheSamePartitionInEveryTimeZone() throws SQLException {
+
+        final TimeZone original = TimeZone.getDefault();
+
+        try {
+            TimeZone.setDefault(TimeZone.getTimeZone("UTC"));
+            final int partition = scheme.getPartition(ValueTimestamp.get(Timestamp.valueOf("2010-06-01 12:30:00")), null);
+
+            TimeZone.setDefault(TimeZone.getTimeZone("America/Los_Angeles"));
+            assertEquals(partition, scheme.getPartition(ValueTimestamp.get(Timestamp.valueOf("2010-06-01 12:30:00")), null));
+
+            TimeZone.setDefault(TimeZone.getTimeZone("Asia/Tokyo"));
+            assertEquals(partition, scheme.getPartition(ValueTimestamp.get(Timestamp.valueOf("2010-06-01 12:30:00")), null));
+        }
+        finally {
+            TimeZone.setDefault(original);
+        }
+    }
+
+    /**
+     * Every key is assigned one of the partitions, and NULL is assigned the first.
+     */
+    @Test
+    public void keysAreAssignedAnExistingPartition() throws SQLException {
+
+        for (int i = -50; i < 50; i++) {
+            final int partition = scheme.getPartition(ValueInt.get(i), null);
+            assertTrue(partition >= 0 && partition < PARTITIONS);
+        }
+
+        assertEquals(0, scheme.getPartition(ValueNull.INSTANCE, null));
+    }
+}
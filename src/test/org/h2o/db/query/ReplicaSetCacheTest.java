@@ -0,0 +1,161 @@
+package org.h2o.db.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.h2o.db.id.TableInfo;
+import org.h2o.db.query.locking.LockRequest;
+import org.h2o.db.query.locking.LockType;
+import org.h2o.db.replication.ReplicaManager;
+import org.h2o.db.wrappers.DatabaseInstanceWrapper;
+import org.h2o.test.fixture.UnitTestFixture;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of the versioned replica snapshots given out by a Table Manager's {@link ReplicaManager} and cached by the requesting instance's
+ * {@link ReplicaSetCache}.
+ */
+public class ReplicaSetCacheTest {
+
+    private static final String TABLE_NAME = UnitTestFixture.TABLE_NAME;
+
+    private final TableInfo table = UnitTestFixture.createTableInfo();
+
+    private final DatabaseInstanceWrapper one = UnitTestFixture.createInstance("one");
+
+    private final DatabaseInstanceWrapper two = UnitTestFixture.createInstance("two");
+
+    private final LockRequest request = new LockRequest(one, 1);
+
+    private final Map<DatabaseInstanceWrapper, Integer> replicas = new HashMap<DatabaseInstanceWrapper, Integer>();
+
+    private ReplicaSetCache cache = null;
+
+    @Before
+    public void setUp() {
+
+        cache = new ReplicaSetCache();
+
+        replicas.clear();
+        replicas.put(one, 1);
+        replicas.put(two, 1);
+    }
+
+    /**
+     * A snapshot sent by the Table Manager is cached, and its locations are filled in when the Table Manager leaves them out of a later
+     * reply with the same version.
+     */
+    @Test
+    public void unchangedSnapshotIsFilledIn() {
+
+        assertNull(cache.get(TABLE_NAME, LockType.WRITE));
+
+        final TableProxy full = cache.resolve(TABLE_NAME, LockType.WRITE, createProxy(replicas, 5), null);
+        assertSame(replicas, full.getReplicaLocations());
+
+        final ReplicaSetCache.Snapshot known = cache.get(TABLE_NAME, LockType.WRITE);
+        assertEquals(5, ReplicaSetCache.getVersion(known));
+
+        // Reads are given a different snapshot, so they don't share the cached one.
+        assertNull(cache.get(TABLE_NAME, LockType.READ));
+
+        final TableProxy omitted = cache.resolve(TABLE_NAME, LockType.WRITE, createProxy(null, 5), known);
+        assertSame(replicas, omitted.getReplicaLocations());
+    }
+
+    /**
+     * A snapshot with a new version replaces the cached one.
+     */
+    @Test
+    public void newVersionReplacesCachedSnapshot() {
+
+        cache.resolve(TABLE_NAME, LockType.WRITE, createProxy(replicas, 5), null);
+
+        final Map<DatabaseInstanceWrapper, Integer> changed = new HashMap<DatabaseInstanceWrapper, Integer>();
+        changed.put(one, 2);
+
+        cache.resolve(TABLE_NAME, LockType.WRITE, createProxy(changed, 6), cache.get(TABLE_NAME, LockType.WRITE));
+
+        assertEquals(6, ReplicaSetCache.getVersion(cache.get(TABLE_NAME, LockType.WRITE)));
+        assertSame(changed, cache.resolve(TABLE_NAME, LockType.WRITE, createProxy(null, 6), cache.get(TABLE_NAME, LockType.WRITE)).getReplicaLocations());
+    }
+
+    /**
+     * If the Table Manager leaves out locations that don't match what was sent, the reply can't be used. The cached snapshot is dropped so
+     * the request is repeated without a version.
+     */
+    @Test
+    public void omittedLocationsThatDontMatchAreRejected() {
+
+        assertNull(cache.resolve(TABLE_NAME, LockType.WRITE, createProxy(null, 5), null));
+
+        cache.resolve(TABLE_NAME, LockType.WRITE, createProxy(replicas, 5), null);
+        final ReplicaSetCache.Snapshot known = cache.get(TABLE_NAME, LockType.WRITE);
+
+        assertNull(cache.resolve(TABLE_NAME, LockType.WRITE, createProxy(null, 6), known));
+        assertNull(cache.get(TABLE_NAME, LockType.WRITE));
+        assertEquals(TableProxy.NO_REPLICA_SET_VERSION, ReplicaSetCache.getVersion(cache.get(TABLE_NAME, LockType.WRITE)));
+
+        // The repeated request is sent the full snapshot, which is cached again.
+        assertSame(replicas, cache.resolve(TABLE_NAME, LockType.WRITE, createProxy(replicas, 6), null).getReplicaLocations());
+        assertEquals(6, ReplicaSetCache.getVersion(cache.get(TABLE_NAME, LockType.WRITE)));
+    }
+
+    /**
+     * Proxies that aren't taken from a snapshot are passed through and not cached.
+     */
+    @Test
+    public void unversionedProxyIsNotCached() {
+
+        final TableProxy proxy = createProxy(replicas, TableProxy.NO_REPLICA_SET_VERSION);
+
+        assertSame(proxy, cache.resolve(TABLE_NAME, LockType.WRITE, proxy, null));
+        assertNull(cache.get(TABLE_NAME, LockType.WRITE));
+        assertNull(cache.resolve(TABLE_NAME, LockType.WRITE, null, null));
+    }
+
+    /**
+     * The Table Manager's snapshot keeps its version, and is the same map, until the replica state changes or a new version is asked for.
+     */
+    @Test
+    public void snapshotVersionChangesWithReplicaState() {
+
+        final ReplicaManager replicaManager = new ReplicaManager();
+        replicaManager.add(one);
+
+        final long first = replicaManager.getSnapshotVersion();
+        final Map<DatabaseInstanceWrapper, Integer> snapshot = replicaManager.getAllReplicasOnActiveMachines();
+
+        assertEquals(first, replicaManager.getSnapshotVersion());
+        assertSame(snapshot, replicaManager.getAllReplicasOnActiveMachines());
+
+        replicaManager.add(two);
+        final long second = replicaManager.getSnapshotVersion();
+        assertTrue(second != first);
+        assertTrue(replicaManager.getAllReplicasOnActiveMachines().containsKey(two));
+
+        // For example when the table's consistency level changes.
+        replicaManager.newSnapshotVersion();
+        final long third = replicaManager.getSnapshotVersion();
+        assertTrue(third != second);
+
+        replicaManager.remove(two);
+        assertTrue(replicaManager.getSnapshotVersion() != third);
+        assertFalse(replicaManager.getAllReplicasOnActiveMachines().containsKey(two));
+    }
+
+    private TableProxy createProxy(final Map<DatabaseInstanceWrapper, Integer> replicaLocations, final long version) {
+
+        final TableProxy proxy = new TableProxy(LockType.WRITE, table, replicaLocations, null, request, 1, LockType.WRITE, null);
+        proxy.setReplicaSetVersion(version);
+
+        return proxy;
+    }
+}
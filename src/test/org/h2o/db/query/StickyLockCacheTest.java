@@ -0,0 +1,159 @@
+package org.h2o.db.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.h2o.db.id.TableInfo;
+import org.h2o.db.query.asynchronous.CommitResult;
+import org.h2o.db.query.locking.LockRequest;
+import org.h2o.db.query.locking.LockType;
+import org.h2o.db.wrappers.DatabaseInstanceWrapper;
+import org.h2o.test.fixture.UnitTestFixture;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of how the write locks kept by an instance between transactions are shared by its own transactions and given up.
+ */
+public class StickyLockCacheTest {
+
+    private static final String TABLE_NAME = UnitTestFixture.TABLE_NAME;
+
+    private final TableInfo table = UnitTestFixture.createTableInfo();
+
+    private final DatabaseInstanceWrapper replica = UnitTestFixture.createInstance("one");
+
+    /**
+     * The transaction that acquired the lock from the Table Manager.
+     */
+    private final LockRequest holder = new LockRequest(replica, 1);
+
+    private final LockRequest first = new LockRequest(replica, 2);
+
+    private final LockRequest second = new LockRequest(replica, 3);
+
+    private StickyLockCache cache = null;
+
+    @Before
+    public void setUp() {
+
+        cache = new StickyLockCache();
+
+        final Map<DatabaseInstanceWrapper, Integer> replicas = new HashMap<DatabaseInstanceWrapper, Integer>();
+        replicas.put(replica, 1);
+
+        final TableProxy granted = new TableProxy(LockType.WRITE, table, replicas, null, holder, 1, LockType.WRITE, null);
+        final List<CommitResult> committed = Collections.singletonList(new CommitResult(true, replica, 1, 1, table));
+
+        assertTrue(cache.finish(granted, holder, true, committed, true));
+        assertTrue(cache.isKept(TABLE_NAME));
+    }
+
+    /**
+     * An update waits for the transactions reading the table under the kept lock.
+     */
+    @Test
+    public void updateWaitsForLocalReaders() {
+
+        final TableProxy read = cache.acquire(TABLE_NAME, LockType.READ, first);
+        assertEquals(LockType.READ, read.getLockGranted());
+
+        assertEquals(LockType.NONE, cache.acquire(TABLE_NAME, LockType.WRITE, second).getLockGranted());
+
+        assertTrue(cache.finish(read, first, true, null, true));
+
+        assertEquals(LockType.WRITE, cache.acquire(TABLE_NAME, LockType.WRITE, second).getLockGranted());
+    }
+
+    /**
+     * A read waits for the transaction updating the table under the kept lock.
+     */
+    @Test
+    public void readWaitsForLocalWriter() {
+
+        final TableProxy write = cache.acquire(TABLE_NAME, LockType.WRITE, first);
+        assertEquals(LockType.WRITE, write.getLockGranted());
+
+        assertEquals(LockType.NONE, cache.acquire(TABLE_NAME, LockType.READ, second).getLockGranted());
+
+        // The updating transaction can still read the table.
+        assertEquals(LockType.WRITE, cache.acquire(TABLE_NAME, LockType.READ, first).getLockGranted());
+
+        assertTrue(cache.finish(write, first, true, null, true));
+
+        assertEquals(LockType.READ, cache.acquire(TABLE_NAME, LockType.READ, second).getLockGranted());
+    }
+
+    /**
+     * A transaction that is the only one reading the table can go on to update it.
+     */
+    @Test
+    public void readerCanUpgrade() {
+
+        cache.acquire(TABLE_NAME, LockType.READ, first);
+
+        final TableProxy write = cache.acquire(TABLE_NAME, LockType.WRITE, first);
+        assertEquals(LockType.WRITE, write.getLockGranted());
+
+        assertTrue(cache.finish(write, first, true, null, true));
+
+        // The read lock was replaced by the write lock, so nothing is left using the kept lock.
+        assertEquals(1, cache.invalidate(TABLE_NAME).size());
+    }
+
+    /**
+     * A kept lock that is invalidated while it is in use can't be used by another transaction, and is released by the last one using it.
+     */
+    @Test
+    public void invalidatedLockIsReleasedWhenUnused() {
+
+        final TableProxy read = cache.acquire(TABLE_NAME, LockType.READ, first);
+
+        assertEquals(0, cache.invalidate(TABLE_NAME).size());
+
+        assertEquals(LockType.NONE, cache.acquire(TABLE_NAME, LockType.READ, second).getLockGranted());
+
+        assertFalse(cache.finish(read, first, true, null, true));
+        assertFalse(cache.isKept(TABLE_NAME));
+        assertNull(cache.acquire(TABLE_NAME, LockType.READ, second));
+    }
+
+    /**
+     * An unused kept lock is given up at once when it is invalidated, or when the Table Manager asks for it back.
+     */
+    @Test
+    public void unusedLockIsGivenUp() {
+
+        final List<TableProxy> unused = cache.invalidate(null);
+
+        assertEquals(1, unused.size());
+        assertEquals(holder, unused.get(0).getRequestingDatabase());
+        assertFalse(cache.isKept(TABLE_NAME));
+
+        setUp();
+
+        assertFalse(cache.revoke(TABLE_NAME, first));
+        assertTrue(cache.revoke(TABLE_NAME, holder));
+        assertFalse(cache.isKept(TABLE_NAME));
+    }
+
+    /**
+     * Every kept lock is given up when the instance shuts down, even if it is in use.
+     */
+    @Test
+    public void locksAreSurrenderedAtShutdown() {
+
+        assertNotNull(cache.acquire(TABLE_NAME, LockType.WRITE, first));
+
+        assertEquals(1, cache.surrenderAll().size());
+        assertFalse(cache.isKept(TABLE_NAME));
+    }
+}
@@ -0,0 +1,334 @@
+package org.h2o.db.query.asynchronous;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.h2o.db.id.DatabaseID;
+import org.h2o.test.fixture.UnitTestFixture;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that updates sent through a {@link ReplicationPipeline} several at a time are applied by the replica's {@link UpdateSequencer} in
+ * the order they were submitted, and that none are applied out of order when one is lost.
+ */
+public class ReplicationPipelineTest {
+
+    private static final int WINDOW = 64;
+
+    private final DatabaseID replica = UnitTestFixture.createDatabaseID("one");
+
+    private final Random random = new Random(42);
+
+    /**
+     * The updates applied by the replica, in the order they were applied.
+     */
+    private final List<Integer> applied = Collections.synchronizedList(new LinkedList<Integer>());
+
+    /**
+     * The number of updates being sent at once, and the most there have been.
+     */
+    private final AtomicInteger sending = new AtomicInteger();
+
+    private final AtomicInteger maxSending = new AtomicInteger();
+
+    private UpdateSequencer sequencer = null;
+
+    private ReplicationPipeline pipeline = null;
+
+    @Before
+    public void setUp() {
+
+        applied.clear();
+        sending.set(0);
+        maxSending.set(0);
+        sequencer = new UpdateSequencer(5000);
+    }
+
+    @After
+    public void tearDown() {
+
+        if (pipeline != null) {
+            pipeline.shutdown();
+        }
+    }
+
+    /**
+     * Updates that are sent at the same time, and arrive in any order, are applied in the order they were submitted.
+     */
+    @Test(timeout = 60000)
+    public void updatesAreAppliedInSubmissionOrder() throws Exception {
+
+        pipeline = new ReplicationPipeline(replica, WINDOW, 4);
+
+        final List<FutureTask<QueryResult>> results = new LinkedList<FutureTask<QueryResult>>();
+        for (int i = 0; i < 50; i++) {
+            results.add(pipeline.submit(new TestUpdate(i, 20)));
+        }
+
+        for (final FutureTask<QueryResult> result : results) {
+            assertNull(result.get().getException());
+        }
+
+        assertInOrder(50);
+        assertTrue("Updates weren't sent concurrently.", maxSending.get() > 1);
+        assertFalse(pipeline.hasFailed());
+        assertEquals(0, pipeline.getInFlight());
+    }
+
+    /**
+     * The updates submitted after one that can't be sent are not sent.
+     */
+    @Test(timeout = 60000)
+    public void updatesAfterAFailedSendAreNotSent() throws Exception {
+
+        pipeline = new ReplicationPipeline(replica, WINDOW, 1);
+
+        final TestUpdate lost = new TestUpdate(0, 0);
+        lost.lose();
+
+        final List<FutureTask<QueryResult>> results = new LinkedList<FutureTask<QueryResult>>();
+        results.add(pipeline.submit(lost));
+        for (int i = 1; i < 3; i++) {
+            results.add(pipeline.submit(new TestUpdate(i, 0)));
+        }
+
+        for (final FutureTask<QueryResult> result : results) {
+            assertNotNull(result.get().getException());
+        }
+
+        assertTrue(pipeline.hasFailed());
+        assertEquals(0, applied.size());
+        assertEquals(1, maxSending.get());
+    }
+
+    /**
+     * When an update is lost, the updates sent after it that reach the replica are rejected rather than applied out of order.
+     */
+    @Test(timeout = 60000)
+    public void updatesAfterALostUpdateAreNotApplied() throws Exception {
+
+        sequencer = new UpdateSequencer(200);
+        pipeline = new ReplicationPipeline(replica, WINDOW, 4);
+
+        final List<FutureTask<QueryResult>> results = new LinkedList<FutureTask<QueryResult>>();
+        for (int i = 0; i < 4; i++) {
+            final TestUpdate update = new TestUpdate(i, 0);
+            if (i == 1) {
+                update.lose();
+            }
+            results.add(pipeline.submit(update));
+        }
+
+        assertNull(results.get(0).get().getException());
+        for (int i = 1; i < 4; i++) {
+            assertNotNull(results.get(i).get().getException());
+        }
+
+        assertEquals(1, applied.size());
+        assertEquals(0, applied.get(0).intValue());
+        assertTrue(pipeline.hasFailed());
+    }
+
+    /**
+     * An update that fails when it is executed on the replica doesn't hold up the updates after it.
+     */
+    @Test(timeout = 60000)
+    public void failedUpdateDoesNotBlockStream() throws Exception {
+
+        pipeline = new ReplicationPipeline(replica, WINDOW, 4);
+
+        final List<FutureTask<QueryResult>> results = new LinkedList<FutureTask<QueryResult>>();
+        for (int i = 0; i < 10; i++) {
+            final TestUpdate update = new TestUpdate(i, 10);
+            if (i == 3) {
+                update.failOnReplica();
+            }
+            results.add(pipeline.submit(update));
+        }
+
+        for (int i = 0; i < 10; i++) {
+            final QueryResult result = results.get(i).get();
+            if (i == 3) {
+                assertNotNull(result.getException());
+            }
+            else {
+                assertNull(result.getException());
+            }
+        }
+
+        // Every other update is applied, in order.
+        assertEquals(9, applied.size());
+        for (int i = 0; i < 9; i++) {
+            assertEquals(i < 3 ? i : i + 1, applied.get(i).intValue());
+        }
+        assertFalse(pipeline.hasFailed());
+    }
+
+    /**
+     * An update waits for the updates before it, and is rejected if they don't arrive in time. Later updates in the stream are then also
+     * rejected, but other streams aren't affected.
+     */
+    @Test(timeout = 60000)
+    public void sequencerRejectsUpdatesThatCantBeAppliedInOrder() throws Exception {
+
+        sequencer = new UpdateSequencer(200);
+
+        sequencer.awaitTurn("a", 0);
+        sequencer.finished("a", 0);
+
+        try {
+            sequencer.awaitTurn("a", 2);
+            fail("Update 2 shouldn't be applied before update 1.");
+        }
+        catch (final SQLException e) {
+            assertTrue(e.getMessage().startsWith(UpdateSequencer.OUT_OF_ORDER));
+        }
+
+        try {
+            sequencer.awaitTurn("a", 1);
+            fail("The stream should be broken.");
+        }
+        catch (final SQLException e) {
+            assertTrue(e.getMessage().startsWith(UpdateSequencer.OUT_OF_ORDER));
+        }
+
+        sequencer.awaitTurn("b", 0);
+        sequencer.finished("b", 0);
+
+        try {
+            sequencer.awaitTurn("b", 0);
+            fail("An update shouldn't be applied twice.");
+        }
+        catch (final SQLException e) {
+            assertTrue(e.getMessage().startsWith(UpdateSequencer.OUT_OF_ORDER));
+        }
+
+        sequencer.awaitTurn("b", 1);
+        sequencer.finished("b", 1);
+
+        assertEquals(2, sequencer.getNumberOfStreams());
+    }
+
+    private void assertInOrder(final int expected) {
+
+        assertEquals(expected, applied.size());
+        for (int i = 0; i < expected; i++) {
+            assertEquals(i, applied.get(i).intValue());
+        }
+    }
+
+    /**
+     * An update that is "sent" after a random delay, and applied through the test's sequencer as a replica would apply it.
+     */
+    private class TestUpdate extends RemoteQueryExecutor {
+
+        private final int id;
+
+        private final int maxDelay;
+
+        private String stream;
+
+        private long sequence;
+
+        private boolean lost = false;
+
+        private boolean failOnReplica = false;
+
+        private boolean sendFailed = false;
+
+        TestUpdate(final int id, final int maxDelay) {
+
+            super(null, null, null, 0, null, false, false, null);
+
+            this.id = id;
+            this.maxDelay = maxDelay;
+        }
+
+        /**
+         * The update won't reach the replica.
+         */
+        void lose() {
+
+            lost = true;
+        }
+
+        /**
+         * The update will reach the replica, but fail there.
+         */
+        void failOnReplica() {
+
+            failOnReplica = true;
+        }
+
+        @Override
+        public void setStream(final String stream, final long sequence) {
+
+            super.setStream(stream, sequence);
+            this.stream = stream;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public QueryResult executeQuery() {
+
+            final int nowSending = sending.incrementAndGet();
+            synchronized (maxSending) {
+                maxSending.set(Math.max(maxSending.get(), nowSending));
+            }
+
+            try {
+                if (maxDelay > 0) {
+                    Thread.sleep(random.nextInt(maxDelay));
+                }
+
+                if (lost) {
+                    sendFailed = true;
+                    return new QueryResult(new SQLException("Lost."), null, 0, null);
+                }
+
+                sequencer.awaitTurn(stream, sequence);
+                try {
+                    if (failOnReplica) { throw new SQLException("Failed on the replica."); }
+
+                    applied.add(id);
+                    return new QueryResult(1, null, 0, null);
+                }
+                finally {
+                    sequencer.finished(stream, sequence);
+                }
+            }
+            catch (final SQLException e) {
+                if (e.getMessage().startsWith(UpdateSequencer.OUT_OF_ORDER)) {
+                    sendFailed = true;
+                }
+                return new QueryResult(e, null, 0, null);
+            }
+            catch (final InterruptedException e) {
+                return new QueryResult(new SQLException("Interrupted."), null, 0, null);
+            }
+            finally {
+                sending.decrementAndGet();
+            }
+        }
+
+        @Override
+        public boolean sendFailed() {
+
+            return sendFailed;
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package org.h2o.monitoring;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.LinkedList;
+import java.util.List;
+
+import org.h2o.db.id.DatabaseID;
+import org.h2o.db.manager.monitorthreads.FailureDetector;
+import org.h2o.db.manager.monitorthreads.IFailureListener;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FailureDetectorTest {
+
+    private static final int HEARTBEAT_INTERVAL = 100;
+
+    private static final double PHI_THRESHOLD = 1.0;
+
+    private static final double LOG10_E = Math.log10(Math.E);
+
+    private static final double DELTA = 0.0001;
+
+    /**
+     * The time reported to the detector, so that tests are not affected by how long they take to run.
+     */
+    private long currentTime = 0;
+
+    private final DatabaseID one = DatabaseID.parseURL("jdbc:h2:mem:one");
+
+    private final DatabaseID two = DatabaseID.parseURL("jdbc:h2:mem:two");
+
+    private final List<DatabaseID> failures = new LinkedList<DatabaseID>();
+
+    private TestFailureDetector detector = null;
+
+    @Before
+    public void setUp() throws Exception {
+
+        currentTime = 0;
+        failures.clear();
+        detector = createDetector(100);
+    }
+
+    /**
+     * An instance that isn't monitored is never suspected.
+     */
+    @Test
+    public void unmonitoredInstanceIsNotSuspected() {
+
+        currentTime = 100000;
+
+        assertEquals(0, detector.getPhi(one), DELTA);
+    }
+
+    /**
+     * Before any heartbeat has arrived, the mean time between heartbeats is taken to be the heartbeat interval.
+     */
+    @Test
+    public void noSamplesUsesHeartbeatInterval() {
+
+        detector.monitor(one);
+
+        assertEquals(0, detector.getPhi(one), DELTA);
+
+        currentTime = 10 * HEARTBEAT_INTERVAL;
+
+        assertEquals(LOG10_E * 10, detector.getPhi(one), DELTA);
+    }
+
+    /**
+     * Suspicion grows with the time since the last heartbeat, in proportion to the mean time between heartbeats.
+     */
+    @Test
+    public void phiGrowsWithSilence() {
+
+        detector.monitor(one);
+
+        for (int i = 0; i < 5; i++) {
+            currentTime += 2 * HEARTBEAT_INTERVAL;
+            detector.heartbeat(one);
+        }
+
+        assertEquals(0, detector.getPhi(one), DELTA);
+
+        currentTime += HEARTBEAT_INTERVAL;
+        assertEquals(LOG10_E / 2, detector.getPhi(one), DELTA);
+
+        currentTime += 3 * HEARTBEAT_INTERVAL;
+        assertEquals(LOG10_E * 2, detector.getPhi(one), DELTA);
+    }
+
+    /**
+     * Calls more frequent than the heartbeat interval don't make the detector suspect an instance as soon as it goes quiet.
+     */
+    @Test
+    public void meanIsAtLeastHeartbeatInterval() {
+
+        detector.monitor(one);
+
+        for (int i = 0; i < 50; i++) {
+            currentTime += 1;
+            detector.heartbeat(one);
+        }
+
+        currentTime += HEARTBEAT_INTERVAL;
+
+        assertEquals(LOG10_E, detector.getPhi(one), DELTA);
+    }
+
+    /**
+     * Only the most recent times between heartbeats are used to compute the mean.
+     */
+    @Test
+    public void meanUsesOnlyTheWindow() {
+
+        detector = createDetector(3);
+        detector.monitor(one);
+
+        for (int i = 0; i < 3; i++) {
+            currentTime += 10 * HEARTBEAT_INTERVAL;
+            detector.heartbeat(one);
+        }
+
+        currentTime += 2 * HEARTBEAT_INTERVAL;
+        assertEquals(LOG10_E / 5, detector.getPhi(one), DELTA);
+
+        for (int i = 0; i < 4; i++) {
+            currentTime += 2 * HEARTBEAT_INTERVAL;
+            detector.heartbeat(one);
+        }
+
+        // The long intervals have left the window, so the mean is now twice the heartbeat interval.
+        currentTime += 2 * HEARTBEAT_INTERVAL;
+        assertEquals(LOG10_E, detector.getPhi(one), DELTA);
+    }
+
+    /**
+     * An instance is declared to have failed, once, when its suspicion reaches the threshold, and is no longer monitored.
+     */
+    @Test
+    public void failureIsReportedAtThreshold() {
+
+        detector.monitor(one);
+        detector.monitor(two);
+
+        final long timeToThreshold = (long) Math.ceil(PHI_THRESHOLD / LOG10_E * HEARTBEAT_INTERVAL);
+
+        currentTime = timeToThreshold - 1;
+        detector.heartbeat(two);
+        detector.check();
+
+        assertTrue(detector.getPhi(one) < PHI_THRESHOLD);
+        assertEquals(0, failures.size());
+
+        currentTime = timeToThreshold;
+        detector.check();
+
+        assertEquals(1, failures.size());
+        assertEquals(one, failures.get(0));
+        assertEquals(0, detector.getPhi(one), DELTA);
+
+        currentTime += 1;
+        detector.check();
+
+        assertEquals(1, failures.size());
+    }
+
+    /**
+     * A heartbeat clears the suspicion of an instance.
+     */
+    @Test
+    public void heartbeatClearsSuspicion() {
+
+        detector.monitor(one);
+
+        currentTime = 2 * HEARTBEAT_INTERVAL;
+        assertTrue(detector.getPhi(one) > 0);
+
+        detector.heartbeat(one);
+        detector.check();
+
+        assertEquals(0, detector.getPhi(one), DELTA);
+        assertEquals(0, failures.size());
+    }
+
+    private TestFailureDetector createDetector(final int windowSize) {
+
+        final TestFailureDetector newDetector = new TestFailureDetector(windowSize);
+
+        newDetector.addListener(new IFailureListener() {
+
+            @Override
+            public void instanceFailed(final DatabaseID failedMachine) {
+
+                failures.add(failedMachine);
+            }
+        });
+
+        return newDetector;
+    }
+
+    /**
+     * A failure detector whose clock is set by the test, and that isn't started.
+     */
+    private class TestFailureDetector extends FailureDetector {
+
+        TestFailureDetector(final int windowSize) {
+
+            super(null, HEARTBEAT_INTERVAL, PHI_THRESHOLD, windowSize);
+        }
+
+        @Override
+        protected long now() {
+
+            return currentTime;
+        }
+
+        void check() {
+
+            checkForFailures();
+        }
+    }
+}
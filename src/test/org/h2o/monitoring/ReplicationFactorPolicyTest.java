@@ -0,0 +1,127 @@
+package org.h2o.monitoring;
+
+import static org.junit.Assert.assertEquals;
+
+import org.h2o.db.id.DatabaseID;
+import org.h2o.db.manager.monitoring.tablemanager.ReplicationFactorPolicy;
+import org.h2o.db.manager.monitoring.tablemanager.TableManagerMonitor;
+import org.h2o.db.query.locking.LockRequest;
+import org.h2o.db.query.locking.LockType;
+import org.h2o.db.wrappers.DatabaseInstanceWrapper;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ReplicationFactorPolicyTest {
+
+    private static final String TABLE_NAME = "PUBLIC.TEST";
+
+    private TableManagerMonitor monitor = null;
+
+    private ReplicationFactorPolicy policy = null;
+
+    /**
+     * The time reported to the monitor, so that tests are not affected by data decaying as the test runs.
+     */
+    private long currentTime = 0;
+
+    final DatabaseInstanceWrapper dbWrapperOne = new DatabaseInstanceWrapper(DatabaseID.parseURL("jdbc:h2:mem:one"), null, true);
+
+    final LockRequest lockRequestFromOne = new LockRequest(dbWrapperOne, 1);
+
+    @Before
+    public void setUp() throws Exception {
+
+        monitor = new TableManagerMonitor(4, 1000, 0.5) {
+
+            @Override
+            protected long now() {
+
+                return currentTime;
+            }
+        };
+
+        policy = new ReplicationFactorPolicy(1, 5, 4, 1, 100, 30000);
+    }
+
+    /**
+     * A busy table that is mostly read is given another replica.
+     */
+    @Test
+    public void readDominatedTableIsRaised() {
+
+        insertQueries(200, LockType.READ);
+        insertQueries(10, LockType.WRITE);
+
+        assertEquals(4, policy.decide(monitor, 3, currentTime, TABLE_NAME));
+    }
+
+    /**
+     * A busy table that is mostly written loses a replica.
+     */
+    @Test
+    public void writeDominatedTableIsLowered() {
+
+        insertQueries(20, LockType.READ);
+        insertQueries(200, LockType.WRITE);
+
+        assertEquals(2, policy.decide(monitor, 3, currentTime, TABLE_NAME));
+    }
+
+    /**
+     * A table with a mixed workload keeps its replication factor.
+     */
+    @Test
+    public void mixedTableIsUnchanged() {
+
+        insertQueries(200, LockType.READ);
+        insertQueries(100, LockType.WRITE);
+
+        assertEquals(3, policy.decide(monitor, 3, currentTime, TABLE_NAME));
+    }
+
+    /**
+     * The replication factor of a table that has had few requests isn't changed.
+     */
+    @Test
+    public void quietTableIsUnchanged() {
+
+        insertQueries(50, LockType.READ);
+
+        assertEquals(3, policy.decide(monitor, 3, currentTime, TABLE_NAME));
+    }
+
+    /**
+     * The replication factor is kept within its bounds.
+     */
+    @Test
+    public void factorIsBounded() throws Exception {
+
+        insertQueries(200, LockType.READ);
+        assertEquals(5, policy.decide(monitor, 5, currentTime, TABLE_NAME));
+
+        setUp();
+
+        insertQueries(200, LockType.WRITE);
+        assertEquals(1, policy.decide(monitor, 1, currentTime, TABLE_NAME));
+    }
+
+    /**
+     * The replication factor is changed at most once per interval.
+     */
+    @Test
+    public void changesAreSpacedOut() {
+
+        insertQueries(200, LockType.READ);
+
+        assertEquals(4, policy.decide(monitor, 3, currentTime, TABLE_NAME));
+        assertEquals(4, policy.decide(monitor, 4, currentTime + 1000, TABLE_NAME));
+        assertEquals(5, policy.decide(monitor, 4, currentTime + 30000, TABLE_NAME));
+    }
+
+    private void insertQueries(final int numberOfInsertions, final LockType typeOfInsertion) {
+
+        for (int i = 0; i < numberOfInsertions; i++) {
+            monitor.addQueryInformation(lockRequestFromOne, typeOfInsertion);
+        }
+    }
+}
@@ -18,6 +18,11 @@ public class TableManagerMonitorTest {
 
     private TableManagerMonitor monitor = null;
 
+    /**
+     * The time reported to the monitor, so that tests are not affected by data decaying as the test runs.
+     */
+    private long currentTime = 0;
+
     final DatabaseInstanceWrapper dbWrapperOne = new DatabaseInstanceWrapper(DatabaseID.parseURL("jdbc:h2:mem:one"), null, true);
     final DatabaseInstanceWrapper dbWrapperTwo = new DatabaseInstanceWrapper(DatabaseID.parseURL("jdbc:h2:mem:two"), null, true);
     final DatabaseInstanceWrapper dbWrapperThree = new DatabaseInstanceWrapper(DatabaseID.parseURL("jdbc:h2:mem:three"), null, true);
@@ -33,7 +38,14 @@ public class TableManagerMonitorTest {
     @Before
     public void setUp() throws Exception {
 
-        monitor = new TableManagerMonitor();
+        monitor = new TableManagerMonitor(4, 1000, 0.5) {
+
+            @Override
+            protected long now() {
+
+                return currentTime;
+            }
+        };
     }
 
     @After
@@ -138,6 +150,85 @@ public class TableManagerMonitorTest {
         assertEquals(.25, firstByRequest.getPercentageOfRequests(), 0);
     }
 
+    /*
+     * Tests of decaying monitoring data.
+     */
+
+    @Test
+    public void testOldRequestsDecay() {
+
+        insertQueries(4, LockType.WRITE, lockRequestFromOne);
+
+        currentTime = 1000; // one slot later.
+
+        insertQueries(4, LockType.READ, lockRequestFromOne);
+
+        assertEquals(2, monitor.getNumberOfRequests(LockType.WRITE), 0);
+        assertEquals(4, monitor.getNumberOfRequests(LockType.READ), 0);
+        assertEquals(2, monitor.getReadWriteRatio(), 0);
+    }
+
+    @Test
+    public void testRequestsForgottenOutsideWindow() {
+
+        insertQueries(4, LockType.WRITE, lockRequestFromOne);
+
+        currentTime = 4000; // the window is four slots long.
+
+        assertEquals(0, monitor.getNumberOfRequests(LockType.WRITE), 0);
+        assertEquals(0, monitor.getSampleSize());
+    }
+
+    @Test
+    public void testMostCommonLocationChangesOverTime() {
+
+        insertQueries(3, LockType.READ, lockRequestFromOne);
+
+        currentTime = 2000;
+
+        insertQueries(2, LockType.READ, lockRequestFromTwo);
+
+        assertEquals(lockRequestFromTwo, monitor.getMostCommonQueryLocation());
+    }
+
+    @Test
+    public void testRequestRateHistogram() {
+
+        insertQueries(3, LockType.READ, lockRequestFromOne);
+
+        currentTime = 2000;
+
+        insertQueries(1, LockType.WRITE, lockRequestFromTwo);
+
+        final long[] histogram = monitor.getRequestRateHistogram();
+
+        assertEquals(1, histogram[0]);
+        assertEquals(0, histogram[1]);
+        assertEquals(3, histogram[2]);
+    }
+
+    @Test
+    public void testLockWaitTimeHistogram() {
+
+        insertQueries(1, LockType.WRITE, lockRequestFromOne);
+        monitor.addLockOutcomeInformation(lockRequestFromOne, LockType.NONE);
+
+        currentTime = 5;
+
+        insertQueries(1, LockType.WRITE, lockRequestFromOne);
+        monitor.addLockOutcomeInformation(lockRequestFromOne, LockType.WRITE);
+
+        final double[] histogram = monitor.getLockWaitTimeHistogram();
+
+        assertEquals(1, histogram[3], 0); // 4-7ms.
+
+        double total = 0;
+        for (final double bucket : histogram) {
+            total += bucket;
+        }
+        assertEquals(1, total, 0);
+    }
+
     /*
      * Utility Functions...
      */
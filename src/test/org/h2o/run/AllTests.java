@@ -14,15 +14,22 @@ import org.h2o.test.AsynchronousTests;
 import org.h2o.test.BenchmarkTests;
 import org.h2o.test.ChordTests;
 import org.h2o.test.CustomSettingsTests;
+import org.h2o.test.DistributedJoinTests;
+import org.h2o.test.DistributedSequenceTests;
 import org.h2o.test.FailureTests;
 import org.h2o.test.IndexTests;
 import org.h2o.test.LocatorTests;
+import org.h2o.test.MetaDataTests;
 import org.h2o.test.MultiQueryTransactionTests;
 import org.h2o.test.MultipleSchemaTests;
+import org.h2o.test.OptimisticConcurrencyTests;
+import org.h2o.test.PartitionedTableTests;
 import org.h2o.test.PreparedStatementTests;
 import org.h2o.test.ReplicaTests;
 import org.h2o.test.RestartTests;
+import org.h2o.test.RowBasedReplicationTests;
 import org.h2o.test.SystemTableTests;
+import org.h2o.test.TableDirectoryTests;
 import org.h2o.test.TransactionNameTests;
 import org.h2o.test.WrapperTests;
 import org.h2o.test.h2.H2Tests;
@@ -40,13 +47,13 @@ import org.junit.runners.Suite;
 // H2oProperties.class, 
                 TransactionNameTests.class,
                 // Database Tests
-                SystemTableTests.class, MultipleSchemaTests.class, ReplicaTests.class, CustomSettingsTests.class, IndexTests.class,
+                SystemTableTests.class, MultipleSchemaTests.class, ReplicaTests.class, MetaDataTests.class, CustomSettingsTests.class, RowBasedReplicationTests.class, OptimisticConcurrencyTests.class, TableDirectoryTests.class, DistributedSequenceTests.class, IndexTests.class,
                 //UpdateTests.class, 
                 MultiQueryTransactionTests.class, PreparedStatementTests.class, BenchmarkTests.class, H2Tests.class, WrapperTests.class, RestartTests.class, LocatorTests.class, ChordTests.class,
                 // End-to-end tests
                 org.h2o.test.endtoend.suites.AllTests.class,
                 // Other multi-process tests.
-                AsynchronousTests.class, FailureTests.class})
+                AsynchronousTests.class, FailureTests.class, PartitionedTableTests.class, DistributedJoinTests.class})
 public class AllTests {
 
     // The above annotations do all the work.
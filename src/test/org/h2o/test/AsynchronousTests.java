@@ -12,6 +12,7 @@ import static org.junit.Assert.fail;
 
 import java.io.IOException;
 import java.sql.SQLException;
+import java.sql.Statement;
 
 import org.h2.table.Table;
 import org.h2o.autonomic.settings.Settings;
@@ -300,4 +301,223 @@ public class AsynchronousTests extends MultiProcessTestBase {
 
     }
 
+    /**
+     * Tests that a per-table write quorum of two lets an update return before the third (delayed) replica has committed, regardless of the
+     * database-wide asynchronous replication settings.
+     * 
+     * @throws InterruptedException
+     * @throws SQLException 
+     * @throws IOException 
+     * @throws StartupException 
+     */
+    @Test(timeout = 35000)
+    public void tableWriteQuorumAllowsAsynchronousUpdate() throws InterruptedException, SQLException, IOException, StartupException {
+
+        createTestTableWithDelayedThirdReplica();
+
+        executeUpdateOnNthMachine("SET WRITE_QUORUM FOR TEST 2;", 0);
+
+        executeUpdateOnNthMachine("INSERT INTO TEST VALUES(3, 'Third');", 0);
+
+        assertTestTableExistsLocally(connections[0], 3);
+        assertTestTableExistsLocally(connections[1], 3);
+        assertTestTableExists(connections[2], 3, false);
+    }
+
+    /**
+     * Tests that a write quorum of ALL makes an update wait for the third (delayed) replica to commit.
+     * 
+     * @throws InterruptedException
+     * @throws SQLException 
+     * @throws IOException 
+     * @throws StartupException 
+     */
+    @Test(timeout = 60000)
+    public void tableWriteQuorumAllIsSynchronous() throws InterruptedException, SQLException, IOException, StartupException {
+
+        createTestTableWithDelayedThirdReplica();
+
+        executeUpdateOnNthMachine("SET WRITE_QUORUM FOR TEST ALL;", 0);
+
+        executeUpdateOnNthMachine("INSERT INTO TEST VALUES(3, 'Third');", 0);
+
+        assertTestTableExistsLocally(connections[0], 3);
+        assertTestTableExistsLocally(connections[1], 3);
+        assertTestTableExistsLocally(connections[2], 3);
+    }
+
+    /**
+     * Tests that a session can override the write quorum of a table.
+     * 
+     * @throws InterruptedException
+     * @throws SQLException 
+     * @throws IOException 
+     * @throws StartupException 
+     */
+    @Test(timeout = 60000)
+    public void sessionWriteQuorumOverridesTable() throws InterruptedException, SQLException, IOException, StartupException {
+
+        createTestTableWithDelayedThirdReplica();
+
+        executeUpdateOnNthMachine("SET WRITE_QUORUM FOR TEST 2;", 0);
+
+        final Statement statement = connections[0].createStatement();
+        try {
+            statement.execute("SET WRITE_QUORUM ALL;");
+            statement.execute("INSERT INTO TEST VALUES(3, 'Third');");
+        }
+        finally {
+            statement.close();
+        }
+
+        assertTestTableExistsLocally(connections[2], 3);
+    }
+
+    /**
+     * Tests that a write quorum of 0 is rejected, as 0 is the value used internally to mean every replica.
+     * 
+     * @throws SQLException 
+     */
+    @Test(timeout = 35000)
+    public void writeQuorumOfZeroIsRejected() throws SQLException {
+
+        final Statement statement = connections[0].createStatement();
+        try {
+            statement.execute("SET WRITE_QUORUM 0;");
+            fail("A write quorum of 0 should be rejected.");
+        }
+        catch (final SQLException e) {
+            // Expected.
+        }
+        finally {
+            statement.close();
+        }
+    }
+
+    /**
+     * Tests that updates made without locks from two instances in turn are all applied to every replica. Each instance's cached replica
+     * state is out of date after the other instance's update, so most of these updates conflict and are retried with a lock.
+     * 
+     * @throws InterruptedException
+     * @throws SQLException 
+     * @throws IOException 
+     * @throws StartupException 
+     */
+    @Test(timeout = 120000)
+    public void optimisticUpdatesFromTwoInstances() throws InterruptedException, SQLException, IOException, StartupException {
+
+        for (int i = 0; i < dbs.length; i++) {
+            killDatabase(i);
+        }
+
+        sleep("Killed off all databases.", 5000);
+
+        for (int i = 0; i < dbs.length; i++) {
+            changeLocalSetting(i, "OPTIMISTIC_CONCURRENCY", "true");
+            startDatabase(i);
+            sleep(2000);
+        }
+
+        for (int i = 0; i < dbs.length; i++) {
+            createConnectionsToDatabase(i);
+        }
+
+        executeUpdateOnNthMachine("CREATE TABLE TEST(ID INT PRIMARY KEY, NAME VARCHAR(255)); INSERT INTO TEST VALUES(1, 'Hello'); INSERT INTO TEST VALUES(2, 'World');", 0);
+        executeUpdateOnNthMachine("CREATE REPLICA TEST;", 1);
+        executeUpdateOnNthMachine("CREATE REPLICA TEST;", 2);
+
+        sleep(2000);
+
+        final int updates = 10;
+        for (int id = 3; id < 3 + updates; id++) {
+            executeUpdateOnNthMachine("INSERT INTO TEST VALUES(" + id + ", 'Optimistic');", id % 2);
+        }
+
+        assertTestTableExistsLocally(connections[0], 2 + updates);
+        assertTestTableExistsLocally(connections[1], 2 + updates);
+        assertTestTableExistsLocally(connections[2], 2 + updates);
+    }
+
+    /**
+     * Makes runs of updates to the TEST table from two instances in turn, with sticky locks enabled. Each instance keeps the write lock after its
+     * updates, so the lock must be revoked whenever the other instance starts updating the table. Every replica must end up with every
+     * update.
+     */
+    @Test(timeout = 120000)
+    public void stickyLocksRevokedByAnotherInstance() throws InterruptedException, SQLException, IOException, StartupException {
+
+        for (int i = 0; i < dbs.length; i++) {
+            killDatabase(i);
+        }
+
+        sleep("Killed off all databases.", 5000);
+
+        for (int i = 0; i < dbs.length; i++) {
+            changeLocalSetting(i, "STICKY_LOCKS", "true");
+            startDatabase(i);
+            sleep(2000);
+        }
+
+        for (int i = 0; i < dbs.length; i++) {
+            createConnectionsToDatabase(i);
+        }
+
+        executeUpdateOnNthMachine("CREATE TABLE TEST(ID INT PRIMARY KEY, NAME VARCHAR(255)); INSERT INTO TEST VALUES(1, 'Hello'); INSERT INTO TEST VALUES(2, 'World');", 0);
+        executeUpdateOnNthMachine("CREATE REPLICA TEST;", 1);
+        executeUpdateOnNthMachine("CREATE REPLICA TEST;", 2);
+
+        sleep(2000);
+
+        final int runs = 4;
+        final int updatesPerRun = 5;
+
+        int id = 3;
+        for (int run = 0; run < runs; run++) {
+            for (int update = 0; update < updatesPerRun; update++) {
+                executeUpdateOnNthMachine("INSERT INTO TEST VALUES(" + id++ + ", 'Sticky');", run % 2);
+            }
+
+            // A read from a third instance must also get the lock back.
+            assertTestTableExists(connections[2], 2 + (run + 1) * updatesPerRun, false);
+        }
+
+        assertTestTableExistsLocally(connections[0], 2 + runs * updatesPerRun);
+        assertTestTableExistsLocally(connections[1], 2 + runs * updatesPerRun);
+        assertTestTableExistsLocally(connections[2], 2 + runs * updatesPerRun);
+    }
+
+    /**
+     * Creates the TEST table on the first machine, with replicas on the second and third. Commits on the third machine are delayed.
+     */
+    private void createTestTableWithDelayedThirdReplica() throws InterruptedException, SQLException, IOException, StartupException {
+
+        final String create1 = "CREATE TABLE TEST(ID INT PRIMARY KEY, NAME VARCHAR(255)); " + "INSERT INTO TEST VALUES(1, 'Hello'); INSERT INTO TEST VALUES(2, 'World');";
+
+        killDatabase(2);
+
+        sleep(5000);
+
+        delayQueryCommit(2);
+
+        startDatabase(2);
+
+        sleep("About to create recreate connections to the newly restarted database.", 2000);
+
+        createConnectionsToDatabase(2);
+
+        executeUpdateOnNthMachine(create1, 0);
+
+        sleep(1000);
+
+        assertTestTableExists(2, 0);
+        assertMetaDataExists(connections[0], 1);
+
+        sleep(2000);
+
+        final String createReplica = "CREATE REPLICA TEST;";
+        executeUpdateOnNthMachine(createReplica, 1);
+        executeUpdateOnNthMachine(createReplica, 2);
+
+        sleep("About to begin test.\n\n\n\n", 3000);
+    }
 }
@@ -8,6 +8,7 @@
  */
 package org.h2o.test;
 
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.fail;
 
 import java.io.FileNotFoundException;
@@ -17,12 +18,23 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
-
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.h2.engine.Database;
+import org.h2.engine.Engine;
+import org.h2o.db.id.TableInfo;
+import org.h2o.db.manager.interfaces.ISystemTableMigratable;
 import org.h2o.test.fixture.TestBase;
 import org.h2o.test.util.ReadBenchmarkQueriesFromFile;
 import org.junit.Test;
 
 import uk.ac.standrews.cs.nds.rpc.stream.StreamProxy;
+import uk.ac.standrews.cs.nds.util.Diagnostic;
+import uk.ac.standrews.cs.nds.util.DiagnosticLevel;
 
 /**
  * Tests that check for problems that have previous occurred when running the PolePosition and BenchmarkSQL benchmarking tools.
@@ -206,6 +218,112 @@ public class BenchmarkTests extends TestBase {
         runBenchmarkCode("testQueries/benchmarkSQL-full.txt");
     }
 
+    /**
+     * Measures the overhead added to each auto-committed SELECT on a table whose Table Manager is on another instance. The same queries are
+     * then run in explicit transactions of one query each, which name the transaction and release the lock before the commit returns, as
+     * auto-committed queries used to.
+     * @throws SQLException
+     */
+    @Test
+    public void autoCommittedSelectOverhead() throws SQLException {
+
+        final int iterations = 500;
+
+        Statement stat = null;
+        try {
+            stat = cb.createStatement();
+
+            // Warm up connections to the Table Manager.
+            for (int i = 0; i < 50; i++) {
+                stat.executeQuery("SELECT * FROM TEST").close();
+            }
+
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                final ResultSet rs = stat.executeQuery("SELECT * FROM TEST");
+                if (!rs.next()) {
+                    fail("The table should have entries.");
+                }
+                rs.close();
+            }
+            final long autoCommitted = System.nanoTime() - start;
+
+            cb.setAutoCommit(false);
+
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                final ResultSet rs = stat.executeQuery("SELECT * FROM TEST");
+                if (!rs.next()) {
+                    fail("The table should have entries.");
+                }
+                rs.close();
+                cb.commit();
+            }
+            final long explicitlyCommitted = System.nanoTime() - start;
+
+            cb.setAutoCommit(true);
+
+            Diagnostic.traceNoEvent(DiagnosticLevel.FULL, "Auto-committed SELECT: " + autoCommitted / iterations / 1000 + "us per query.");
+            Diagnostic.traceNoEvent(DiagnosticLevel.FULL, "SELECT in its own transaction: " + explicitlyCommitted / iterations / 1000 + "us per query.");
+        }
+        finally {
+            if (stat != null) {
+                stat.close();
+            }
+        }
+    }
+
+    /**
+     * Measures the throughput of Table Manager lookups made directly on the System Table by increasing numbers of concurrent threads, as
+     * after a failover, when every instance's cached Table Manager references are out of date at once.
+     * @throws Exception
+     */
+    @Test
+    public void systemTableLookupThroughput() throws Exception {
+
+        final int lookupsPerThread = 20000;
+
+        ISystemTableMigratable systemTable = null;
+        for (final Database db : Engine.getInstance().getAllDatabases()) {
+            if (db.getSystemTableReference() != null && db.getSystemTableReference().isSystemTableLocal()) {
+                systemTable = db.getSystemTable();
+            }
+        }
+        assertNotNull("The System Table should be running on one of the instances.", systemTable);
+
+        final ISystemTableMigratable lookedUp = systemTable;
+        final TableInfo table = new TableInfo("TEST", "PUBLIC");
+
+        for (int threads = 1; threads <= 16; threads *= 2) {
+
+            final ExecutorService exec = Executors.newFixedThreadPool(threads);
+            final List<Future<Object>> results = new ArrayList<Future<Object>>();
+
+            final long start = System.nanoTime();
+            for (int t = 0; t < threads; t++) {
+                results.add(exec.submit(new Callable<Object>() {
+
+                    @Override
+                    public Object call() throws Exception {
+
+                        for (int i = 0; i < lookupsPerThread; i++) {
+                            assertNotNull(lookedUp.lookup(table));
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (final Future<Object> result : results) {
+                result.get();
+            }
+            final long elapsed = System.nanoTime() - start;
+
+            exec.shutdown();
+
+            Diagnostic.traceNoEvent(DiagnosticLevel.FULL, threads + " thread(s): " + (long) threads * lookupsPerThread * 1000000000L / elapsed + " System Table lookups per second.");
+        }
+    }
+
     /*
      * 
      * UTILITY FUNCTIONS
@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2009-2010 School of Computer Science, University of St Andrews. All rights reserved. Project Homepage:
+ * http://blogs.cs.st-andrews.ac.uk/h2o H2O is free software: you can redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version. H2O
+ * is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details. You should have received a copy of the GNU General
+ * Public License along with H2O. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.h2o.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.h2o.test.fixture.MultiProcessTestBase;
+import org.junit.Test;
+
+/**
+ * Tests of queries joining tables on different instances.
+ *
+ * @author Angus Macdonald (angus@cs.st-andrews.ac.uk)
+ */
+public class DistributedJoinTests extends MultiProcessTestBase {
+
+    /**
+     * Tests that a local table joined to a remote table gives the right results, and that the join strategy is shown in the query plan.
+     *
+     * @throws InterruptedException
+     * @throws SQLException
+     */
+    @Test(timeout = 60000)
+    public void joinLocalAndRemoteTables() throws InterruptedException, SQLException {
+
+        executeUpdateOnNthMachine("CREATE TABLE REMOTE(ID INT PRIMARY KEY, NAME VARCHAR(255));", 0);
+        executeUpdateOnNthMachine("INSERT INTO REMOTE VALUES(1, 'One'), (2, 'Two'), (3, 'Three'), (4, 'Four');", 0);
+
+        executeUpdateOnNthMachine("CREATE TABLE LOCAL(ID INT PRIMARY KEY, REMOTE_ID INT);", 1);
+        executeUpdateOnNthMachine("INSERT INTO LOCAL VALUES(10, 2), (11, 4), (12, 5);", 1);
+
+        sleep(1000);
+
+        final Statement statement = connections[1].createStatement();
+
+        try {
+            ResultSet rs = statement.executeQuery("EXPLAIN SELECT L.ID, R.NAME FROM LOCAL L LEFT JOIN REMOTE R ON L.REMOTE_ID = R.ID;");
+            rs.next();
+            final String plan = rs.getString(1);
+            assertTrue(plan, plan.contains("semi-join") || plan.contains("broadcast join"));
+            rs.close();
+
+            rs = statement.executeQuery("SELECT L.ID, R.NAME FROM LOCAL L LEFT JOIN REMOTE R ON L.REMOTE_ID = R.ID ORDER BY L.ID;");
+
+            assertTrue(rs.next());
+            assertEquals(10, rs.getInt(1));
+            assertEquals("Two", rs.getString(2));
+
+            assertTrue(rs.next());
+            assertEquals(11, rs.getInt(1));
+            assertEquals("Four", rs.getString(2));
+
+            assertTrue(rs.next());
+            assertEquals(12, rs.getInt(1));
+            assertNull(rs.getString(2));
+
+            assertFalse(rs.next());
+            rs.close();
+
+            rs = statement.executeQuery("SELECT COUNT(*) FROM LOCAL L, REMOTE R WHERE L.REMOTE_ID = R.ID AND R.NAME <> 'Two';");
+            rs.next();
+            assertEquals(1, rs.getInt(1));
+            rs.close();
+        }
+        finally {
+            statement.close();
+        }
+    }
+
+    /**
+     * Tests that a query reading only tables held by another instance is executed on that instance.
+     *
+     * @throws InterruptedException
+     * @throws SQLException
+     */
+    @Test(timeout = 60000)
+    public void queryOnRemoteTablesIsPushedDown() throws InterruptedException, SQLException {
+
+        executeUpdateOnNthMachine("CREATE TABLE REMOTE(ID INT PRIMARY KEY, NAME VARCHAR(255));", 0);
+        executeUpdateOnNthMachine("CREATE TABLE REMOTE2(ID INT PRIMARY KEY, REMOTE_ID INT);", 0);
+        executeUpdateOnNthMachine("INSERT INTO REMOTE VALUES(1, 'One'), (2, 'Two');", 0);
+        executeUpdateOnNthMachine("INSERT INTO REMOTE2 VALUES(10, 1), (11, 1), (12, 2);", 0);
+
+        sleep(1000);
+
+        final Statement statement = connections[1].createStatement();
+
+        try {
+            final String sql = "SELECT R.NAME, COUNT(*) FROM REMOTE R JOIN REMOTE2 S ON R.ID = S.REMOTE_ID GROUP BY R.NAME ORDER BY R.NAME";
+
+            ResultSet rs = statement.executeQuery("EXPLAIN " + sql);
+            rs.next();
+            final String plan = rs.getString(1);
+            assertTrue(plan, plan.contains("executed on"));
+            rs.close();
+
+            rs = statement.executeQuery(sql);
+
+            assertTrue(rs.next());
+            assertEquals("One", rs.getString(1));
+            assertEquals(2, rs.getInt(2));
+
+            assertTrue(rs.next());
+            assertEquals("Two", rs.getString(1));
+            assertEquals(1, rs.getInt(2));
+
+            assertFalse(rs.next());
+            rs.close();
+        }
+        finally {
+            statement.close();
+        }
+    }
+
+    /**
+     * Tests that a join with a remote table whose outer table is filtered only returns the rows of the outer table that pass the filter,
+     * whichever join strategy is used.
+     *
+     * @throws InterruptedException
+     * @throws SQLException
+     */
+    @Test(timeout = 60000)
+    public void joinWithFilteredOuterTable() throws InterruptedException, SQLException {
+
+        executeUpdateOnNthMachine("CREATE TABLE REMOTE(ID INT PRIMARY KEY, NAME VARCHAR(255));", 0);
+        executeUpdateOnNthMachine("INSERT INTO REMOTE VALUES(1, 'One'), (2, 'Two'), (3, 'Three'), (4, 'Four');", 0);
+
+        executeUpdateOnNthMachine("CREATE TABLE LOCAL(ID INT PRIMARY KEY, REMOTE_ID INT);", 1);
+        executeUpdateOnNthMachine("INSERT INTO LOCAL VALUES(10, 1), (11, 2), (12, 3), (13, 4);", 1);
+
+        sleep(1000);
+
+        final Statement statement = connections[1].createStatement();
+
+        try {
+            ResultSet rs = statement.executeQuery("SELECT L.ID, R.NAME FROM LOCAL L, REMOTE R WHERE L.REMOTE_ID = R.ID AND L.ID >= 12 ORDER BY L.ID;");
+
+            assertTrue(rs.next());
+            assertEquals(12, rs.getInt(1));
+            assertEquals("Three", rs.getString(2));
+
+            assertTrue(rs.next());
+            assertEquals(13, rs.getInt(1));
+            assertEquals("Four", rs.getString(2));
+
+            assertFalse(rs.next());
+            rs.close();
+
+            rs = statement.executeQuery("SELECT R.NAME FROM LOCAL L, REMOTE R WHERE L.REMOTE_ID = R.ID AND L.ID = 11;");
+
+            assertTrue(rs.next());
+            assertEquals("Two", rs.getString(1));
+
+            assertFalse(rs.next());
+            rs.close();
+        }
+        finally {
+            statement.close();
+        }
+    }
+}
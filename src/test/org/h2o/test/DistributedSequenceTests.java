@@ -0,0 +1,205 @@
+package org.h2o.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Properties;
+
+import org.h2.engine.Constants;
+import org.h2.engine.Session;
+import org.h2.jdbc.JdbcConnection;
+import org.h2o.autonomic.settings.Settings;
+import org.h2o.db.manager.PersistentSystemTable;
+import org.h2o.db.manager.interfaces.ISystemTableReference;
+import org.h2o.locator.server.LocatorServer;
+import org.h2o.test.fixture.TestBase;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of sequences shared by every instance, whose values are taken from the System Table in blocks (see the DISTRIBUTED_SEQUENCES
+ * setting).
+ */
+public class DistributedSequenceTests extends TestBase {
+
+    private static final int BLOCK_SIZE = 5;
+
+    private static final int GENERATED_VALUES_LIMIT = 3;
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+
+        Constants.IS_TEAR_DOWN = false;
+        setUpDescriptorFiles();
+        ls = new LocatorServer(29999, "junitLocator");
+        ls.createNewLocatorFile();
+        ls.start();
+
+        final Properties settings = Settings.defaultSettings();
+        settings.setProperty("DISTRIBUTED_SEQUENCES", "true");
+        settings.setProperty("SEQUENCE_BLOCK_SIZE", Integer.toString(BLOCK_SIZE));
+        settings.setProperty("RELATION_REPLICATION_FACTOR", "2");
+        settings.setProperty("GENERATED_VALUES_LIMIT", Integer.toString(GENERATED_VALUES_LIMIT));
+
+        Settings.saveAsLocalProperties(settings, "jdbc:h2:mem:one");
+        Settings.saveAsLocalProperties(settings, "jdbc:h2:mem:two");
+
+        org.h2.Driver.load();
+
+        ca = DriverManager.getConnection("jdbc:h2:sm:mem:one", PersistentSystemTable.USERNAME, PersistentSystemTable.PASSWORD);
+        cb = DriverManager.getConnection("jdbc:h2:mem:two", PersistentSystemTable.USERNAME, PersistentSystemTable.PASSWORD);
+
+        sa = ca.createStatement();
+        sb = cb.createStatement();
+    }
+
+    /**
+     * Blocks are allocated one after another, never starting below the value the caller has reached, and the next block is persisted.
+     */
+    @Test
+    public void allocateSequenceBlock() throws SQLException {
+
+        final ISystemTableReference systemTable = getSystemTableReference(cb);
+
+        assertEquals(1, systemTable.allocateSequenceBlock("PUBLIC.SEQ", 1, BLOCK_SIZE));
+        assertEquals(1 + BLOCK_SIZE, systemTable.allocateSequenceBlock("PUBLIC.SEQ", 1, BLOCK_SIZE));
+
+        // An instance that has already reached a higher value, because a value was inserted explicitly, skips the values below it.
+        assertEquals(100, systemTable.allocateSequenceBlock("PUBLIC.SEQ", 100, BLOCK_SIZE));
+        assertEquals(100 + BLOCK_SIZE, systemTable.allocateSequenceBlock("PUBLIC.SEQ", 1, BLOCK_SIZE));
+
+        // Each sequence is allocated separately.
+        assertEquals(1, systemTable.allocateSequenceBlock("PUBLIC.OTHER", 1, BLOCK_SIZE));
+
+        final ResultSet rs = sa.executeQuery("SELECT LOCAL ONLY next_value FROM " + PersistentSystemTable.SEQUENCES + " WHERE sequence_name='PUBLIC.SEQ'");
+        assertTrue(rs.next());
+        assertEquals(100 + 2 * BLOCK_SIZE, rs.getLong(1));
+        rs.close();
+    }
+
+    /**
+     * An instance that has used up its block takes the next one from the System Table, so its values continue without a gap while no other
+     * instance takes values. The next instance to take values starts after them.
+     */
+    @Test
+    public void blockIsRefilledWhenExhausted() throws SQLException {
+
+        sa.execute("CREATE TABLE TEST(ID IDENTITY, NAME VARCHAR(255));");
+
+        for (int i = 0; i < BLOCK_SIZE + 2; i++) {
+            sa.execute("INSERT INTO TEST(NAME) VALUES('one');");
+        }
+
+        sb.execute("INSERT INTO TEST(NAME) VALUES('two');");
+
+        final List<Long> ids = getIDs(sa);
+        assertEquals(BLOCK_SIZE + 3, ids.size());
+
+        for (int i = 0; i < BLOCK_SIZE + 2; i++) {
+            assertEquals(i + 1, ids.get(i).longValue());
+        }
+
+        // The second instance's block starts after the two blocks taken by the first.
+        assertEquals(2 * BLOCK_SIZE + 1, ids.get(BLOCK_SIZE + 2).longValue());
+
+        assertEquals(ids, getIDs(sb));
+    }
+
+    /**
+     * Rows inserted alternately from two instances are given IDs that are unique across both, and each replica stores the same IDs.
+     */
+    @Test
+    public void identityValuesAreUniqueAcrossInstances() throws SQLException {
+
+        sa.execute("CREATE TABLE TEST(ID IDENTITY, NAME VARCHAR(255));");
+
+        for (int i = 0; i < 3 * BLOCK_SIZE; i++) {
+            (i % 2 == 0 ? sa : sb).execute("INSERT INTO TEST(NAME) VALUES('row" + i + "');");
+        }
+
+        final List<Long> ids = getIDs(sa);
+
+        assertEquals(3 * BLOCK_SIZE, ids.size());
+        assertEquals(ids.size(), new HashSet<Long>(ids).size());
+        assertEquals(ids, getIDs(sb));
+    }
+
+    /**
+     * The rows of an INSERT ... SELECT are given their IDs where the statement is issued, so each replica stores the same IDs.
+     */
+    @Test
+    public void insertSelectIsGivenTheSameValuesOnEveryReplica() throws SQLException {
+
+        sa.execute("CREATE TABLE SOURCE(NAME VARCHAR(255));");
+        sa.execute("INSERT INTO SOURCE VALUES('a'); INSERT INTO SOURCE VALUES('b'); INSERT INTO SOURCE VALUES('c');");
+
+        sa.execute("CREATE TABLE TEST(ID IDENTITY, NAME VARCHAR(255));");
+
+        // The second instance has taken a block, so its copy of the sequence is ahead of the first's.
+        sb.execute("INSERT INTO TEST(NAME) VALUES('first');");
+
+        sa.execute("INSERT INTO TEST(NAME) SELECT NAME FROM SOURCE;");
+        assertEquals(3, sa.getUpdateCount());
+
+        sa.execute("INSERT INTO TEST(NAME) SELECT NAME FROM SOURCE WHERE NAME='none';");
+
+        final List<Long> ids = getIDs(sa);
+
+        assertEquals(4, ids.size());
+        assertEquals(ids.size(), new HashSet<Long>(ids).size());
+        assertEquals(ids, getIDs(sb));
+    }
+
+    /**
+     * An INSERT ... SELECT returning more rows than the GENERATED_VALUES_LIMIT setting allows is sent to each replica as it is, so every
+     * replica still inserts every row, with IDs unique on that replica.
+     */
+    @Test
+    public void insertSelectOverTheLimitIsReplicatedByStatement() throws SQLException {
+
+        sa.execute("CREATE TABLE SOURCE(NAME VARCHAR(255));");
+        for (int i = 0; i <= GENERATED_VALUES_LIMIT; i++) {
+            sa.execute("INSERT INTO SOURCE VALUES('row" + i + "');");
+        }
+
+        sa.execute("CREATE TABLE TEST(ID IDENTITY, NAME VARCHAR(255));");
+
+        sa.execute("INSERT INTO TEST(NAME) SELECT NAME FROM SOURCE;");
+        assertEquals(GENERATED_VALUES_LIMIT + 1, sa.getUpdateCount());
+
+        final List<Long> idsOnA = getIDs(sa);
+        final List<Long> idsOnB = getIDs(sb);
+
+        assertEquals(GENERATED_VALUES_LIMIT + 1, idsOnA.size());
+        assertEquals(idsOnA.size(), new HashSet<Long>(idsOnA).size());
+        assertEquals(GENERATED_VALUES_LIMIT + 1, idsOnB.size());
+        assertEquals(idsOnB.size(), new HashSet<Long>(idsOnB).size());
+    }
+
+    private static List<Long> getIDs(final Statement stat) throws SQLException {
+
+        final List<Long> ids = new LinkedList<Long>();
+
+        final ResultSet rs = stat.executeQuery("SELECT LOCAL ONLY ID FROM TEST ORDER BY NAME, ID;");
+        while (rs.next()) {
+            ids.add(rs.getLong(1));
+        }
+        rs.close();
+
+        return ids;
+    }
+
+    private static ISystemTableReference getSystemTableReference(final Connection connection) {
+
+        return ((Session) ((JdbcConnection) connection).getSession()).getDatabase().getSystemTableReference();
+    }
+}
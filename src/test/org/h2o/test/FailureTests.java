@@ -8,12 +8,23 @@
  */
 package org.h2o.test;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
 import java.io.IOException;
 import java.sql.Connection;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.h2o.db.id.DatabaseID;
 import org.h2o.db.manager.recovery.LocatorException;
@@ -750,4 +761,185 @@ public class FailureTests extends MultiProcessTestBase {
 
         // Query through restarted database.
     }
+
+    /**
+     * Kills off an instance holding the Table Managers of many tables, then queries and updates all of those tables at once from the
+     * surviving instances, so that their Table Managers are recreated concurrently and in batches. Then restarts the old instance and
+     * checks that it can access every table through the recreated Table Managers.
+     *
+     * @throws InterruptedException
+     * @throws SQLException
+     * @throws StartupException
+     * @throws ExecutionException
+     */
+    @Test(timeout = 120000)
+    public void concurrentTableManagerRecreationAfterFailureAndRestart() throws InterruptedException, SQLException, StartupException, ExecutionException {
+
+        final int numberOfTables = 12;
+
+        sleep(1000);
+
+        for (int t = 0; t < numberOfTables; t++) {
+            executeUpdateOnNthMachine("CREATE TABLE MANY" + t + "(ID INT PRIMARY KEY, NAME VARCHAR(255)); INSERT INTO MANY" + t + " VALUES(1, 'Hello');", 2);
+        }
+
+        sleep("Wait for the tables and Table Manager state to be replicated.", 10000);
+
+        killDatabase(2);
+        sleep("Killed off the instance holding the Table Managers.", 5000);
+
+        /*
+         * Every table is written to at the same time, half of them from each surviving instance.
+         */
+        accessTablesConcurrently(new int[]{0, 1}, numberOfTables, 2);
+
+        startDatabase(2);
+        sleep("Restarted old database.", 10000);
+        createConnectionsToDatabase(2);
+
+        accessTablesConcurrently(new int[]{2}, numberOfTables, 3);
+    }
+
+    /**
+     * Inserts a row into each of the MANY tables and then counts their rows, with a separate connection and thread for each table.
+     *
+     * @param instances the instances that tables are accessed through, in turn.
+     * @param expectedRows the number of rows each table should hold after the insert.
+     */
+    private void accessTablesConcurrently(final int[] instances, final int numberOfTables, final int expectedRows) throws InterruptedException, ExecutionException {
+
+        final ExecutorService exec = Executors.newFixedThreadPool(numberOfTables);
+
+        try {
+            final List<Future<Integer>> results = new LinkedList<Future<Integer>>();
+
+            for (int t = 0; t < numberOfTables; t++) {
+                final String table = "MANY" + t;
+                final String connectionString = fullDbName[instances[t % instances.length]];
+
+                results.add(exec.submit(new Callable<Integer>() {
+
+                    @Override
+                    public Integer call() throws Exception {
+
+                        final Connection connection = createConnectionToDatabase(connectionString);
+
+                        try {
+                            final Statement statement = connection.createStatement();
+                            statement.executeUpdate("INSERT INTO " + table + " VALUES(" + expectedRows + ", 'World');");
+
+                            final ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM " + table + ";");
+                            rs.next();
+                            final int rows = rs.getInt(1);
+                            rs.close();
+                            statement.close();
+
+                            return rows;
+                        }
+                        finally {
+                            connection.close();
+                        }
+                    }
+                }));
+            }
+
+            for (final Future<Integer> result : results) {
+                assertEquals(expectedRows, result.get().intValue());
+            }
+        }
+        finally {
+            exec.shutdownNow();
+        }
+    }
+
+    /**
+     * Measures how long System Table lookups are unavailable after the System Table instance fails, when a hot standby of the System
+     * Table is running. Each lookup creates a new table, which has to be registered with the System Table.
+     *
+     * @throws InterruptedException
+     * @throws SQLException
+     * @throws IOException
+     * @throws LocatorException
+     * @throws StartupException
+     */
+    @Test(timeout = 120000)
+    public void lookupUnavailabilityDuringSystemTableFailover() throws InterruptedException, SQLException, IOException, LocatorException, StartupException {
+
+        for (int i = 0; i < dbs.length; i++) {
+            killDatabase(i);
+        }
+
+        sleep("Killed off all databases.", 5000);
+
+        for (int i = 0; i < dbs.length; i++) {
+            changeLocalSetting(i, "SYSTEM_TABLE_HOT_STANDBY", "true");
+            startDatabase(i);
+            sleep(2000);
+        }
+
+        for (int i = 0; i < dbs.length; i++) {
+            createConnectionsToDatabase(i);
+        }
+
+        String sql = "CREATE TABLE TEST(ID INT PRIMARY KEY, NAME VARCHAR(255));";
+        sql += "INSERT INTO TEST VALUES(1, 'Hello');";
+        sql += "INSERT INTO TEST VALUES(2, 'World');";
+
+        executeUpdateOnFirstMachine(sql);
+
+        sleep("Wait for the System Table to be replicated and the standby to start.", 10000);
+
+        final String systemTableInstance = findSystemTableInstance();
+
+        Connection survivor = null;
+        for (int i = 0; i < dbs.length; i++) {
+            if (!dbs[i].equals(systemTableInstance)) {
+                survivor = connections[i];
+                break;
+            }
+        }
+
+        final Statement stat = survivor.createStatement();
+
+        killDatabase(systemTableInstance);
+        final long failureTime = System.currentTimeMillis();
+        final long deadline = failureTime + 60000;
+
+        int attempts = 0;
+        boolean created = false;
+        while (!created && System.currentTimeMillis() < deadline) {
+            attempts++;
+            try {
+                stat.execute("CREATE TABLE FAILOVER" + attempts + "(ID INT PRIMARY KEY);");
+                created = true;
+            }
+            catch (final SQLException e) {
+                Thread.sleep(50);
+            }
+        }
+
+        final long unavailable = System.currentTimeMillis() - failureTime;
+
+        Diagnostic.traceNoEvent(DiagnosticLevel.INIT, "System Table lookups were unavailable for " + unavailable + "ms after failure (" + attempts + " attempts).");
+
+        assertTrue("The hot standby wasn't promoted: System Table lookups were still unavailable " + unavailable + "ms after the failure.", created);
+
+        stat.close();
+
+        /*
+         * The promoted standby serves lookups from every surviving instance, both for the table created before the failure and for the one
+         * created through it.
+         */
+        for (int i = 0; i < dbs.length; i++) {
+            if (dbs[i].equals(systemTableInstance)) {
+                continue;
+            }
+
+            assertTestTableExists(connections[i], 2, false);
+
+            final Statement check = connections[i].createStatement();
+            check.executeQuery("SELECT * FROM FAILOVER" + attempts + ";").close();
+            check.close();
+        }
+    }
 }
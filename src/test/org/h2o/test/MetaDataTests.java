@@ -0,0 +1,171 @@
+package org.h2o.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Field;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.h2.engine.Database;
+import org.h2.engine.Session;
+import org.h2.jdbc.JdbcConnection;
+import org.h2o.db.id.TableInfo;
+import org.h2o.db.manager.PersistentManager;
+import org.h2o.db.manager.PersistentSystemTable;
+import org.h2o.db.manager.SystemTable;
+import org.h2o.db.manager.TableManager;
+import org.h2o.db.wrappers.DatabaseInstanceWrapper;
+import org.h2o.test.fixture.TestBase;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of the connection and table IDs, and listed replicas, that the System Table and Table Managers keep in memory rather than looking
+ * up in their meta-data tables, and of meta-data updates that are made together.
+ */
+public class MetaDataTests extends TestBase {
+
+    private final TableInfo test = new TableInfo("TEST", "PUBLIC");
+
+    private Database dbA = null;
+
+    private Database dbB = null;
+
+    private TableManager tableManager = null;
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+
+        super.setUp();
+
+        dbA = getDatabase(ca);
+        dbB = getDatabase(cb);
+
+        // The table was created on the first instance, which holds its Table Manager.
+        tableManager = dbA.getSystemTableReference().getLocalTableManagers().get(test);
+    }
+
+    /**
+     * The IDs the Table Manager resolves match its meta-data, and stay the same when they are resolved again from memory.
+     */
+    @Test
+    public void idsMatchTheMetaData() throws SQLException {
+
+        final String location = dbA.getID().sanitizedLocation();
+
+        final int connectionID = tableManager.getConnectionID(dbA.getID());
+        assertEquals(getInt(sa, "SELECT LOCAL ONLY connection_id FROM " + TableManager.getMetaTableName(location, TableManager.CONNECTIONS) + " WHERE db_location='" + dbA.getID().getDbLocation() + "' AND connection_port=" + dbA.getID().getPort()), connectionID);
+        assertEquals(connectionID, tableManager.getConnectionID(dbA.getID()));
+
+        final int tableID = tableManager.getTableID(test);
+        assertEquals(getInt(sa, "SELECT LOCAL ONLY table_id FROM " + TableManager.getMetaTableName(location, TableManager.TABLES) + " WHERE tablename='TEST' AND schemaname='PUBLIC'"), tableID);
+        assertEquals(tableID, tableManager.getTableID(test));
+        assertTrue(tableManager.isTableListed(test));
+
+        // The table and its first replica were added together.
+        assertEquals(1, getInt(sa, "SELECT LOCAL ONLY count(*) FROM " + TableManager.getMetaTableName(location, TableManager.REPLICAS) + " WHERE table_id=" + tableID));
+        assertTrue(tableManager.isReplicaListed(test, connectionID));
+    }
+
+    /**
+     * A replica is listed once it has been created, and is no longer listed once it has been dropped, even though it was remembered as
+     * listed.
+     */
+    @Test
+    public void replicaListingFollowsReplicas() throws SQLException {
+
+        createReplicaOnB();
+
+        final int connectionID = tableManager.getConnectionID(dbB.getID());
+        assertTrue(tableManager.isReplicaListed(test, connectionID));
+
+        sb.execute("DROP REPLICA TEST;");
+
+        assertFalse(tableManager.isReplicaListed(test, connectionID));
+        assertTrue(tableManager.isReplicaListed(test, tableManager.getConnectionID(dbA.getID())));
+    }
+
+    /**
+     * The System Table forgets the ID of a table that is dropped, so a table recreated with the same name is given its new ID.
+     */
+    @Test
+    public void droppedTableIDIsForgotten() throws Exception {
+
+        final PersistentManager systemTable = getPersistedSystemTable(dbA);
+
+        final int oldTableID = systemTable.getTableID(test);
+
+        sa.execute("DROP TABLE TEST;");
+
+        assertFalse(systemTable.isTableListed(test));
+
+        sa.execute("CREATE TABLE TEST(ID INT PRIMARY KEY, NAME VARCHAR(255));");
+
+        final int newTableID = systemTable.getTableID(test);
+        assertTrue(newTableID != oldTableID);
+        assertEquals(getInt(sa, "SELECT LOCAL ONLY table_id FROM " + PersistentSystemTable.TABLES + " WHERE tablename='TEST' AND schemaname='PUBLIC'"), newTableID);
+    }
+
+    /**
+     * Several replicas are marked inactive, and active again, in one meta-data update.
+     */
+    @Test
+    public void replicasAreMarkedInactiveTogether() throws SQLException {
+
+        createReplicaOnB();
+
+        final Set<DatabaseInstanceWrapper> replicas = new HashSet<DatabaseInstanceWrapper>();
+        replicas.add(new DatabaseInstanceWrapper(dbA.getID(), null, true));
+        replicas.add(new DatabaseInstanceWrapper(dbB.getID(), null, true));
+
+        tableManager.persistInactiveInformation(test, replicas);
+        assertEquals(0, countActiveReplicas());
+
+        tableManager.persistActiveInformation(test, replicas);
+        assertEquals(2, countActiveReplicas());
+    }
+
+    private int countActiveReplicas() throws SQLException {
+
+        final String replicaRelation = TableManager.getMetaTableName(dbA.getID().sanitizedLocation(), TableManager.REPLICAS);
+
+        return getInt(sa, "SELECT LOCAL ONLY count(*) FROM " + replicaRelation + " WHERE table_id=" + tableManager.getTableID(test) + " AND active=true");
+    }
+
+    private static int getInt(final Statement stat, final String sql) throws SQLException {
+
+        final ResultSet rs = stat.executeQuery(sql);
+
+        try {
+            assertTrue("Expected a result from: " + sql, rs.next());
+            return rs.getInt(1);
+        }
+        finally {
+            rs.close();
+        }
+    }
+
+    private static Database getDatabase(final Connection connection) {
+
+        return ((Session) ((JdbcConnection) connection).getSession()).getDatabase();
+    }
+
+    /**
+     * Get the persisted state of the System Table running on the given instance. Uses reflection, because it is only reached through the
+     * System Table.
+     */
+    private static PersistentManager getPersistedSystemTable(final Database db) throws Exception {
+
+        final Field field = SystemTable.class.getDeclaredField("persisted");
+        field.setAccessible(true);
+
+        return (PersistentManager) field.get(db.getSystemTable());
+    }
+}
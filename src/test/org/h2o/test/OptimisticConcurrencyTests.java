@@ -0,0 +1,124 @@
+package org.h2o.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Properties;
+
+import org.h2.engine.Constants;
+import org.h2.engine.Session;
+import org.h2.jdbc.JdbcConnection;
+import org.h2o.autonomic.settings.Settings;
+import org.h2o.db.manager.PersistentSystemTable;
+import org.h2o.db.query.TableProxyCache;
+import org.h2o.locator.server.LocatorServer;
+import org.h2o.test.fixture.TestBase;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of updates made without first acquiring a lock from the Table Manager (see the OPTIMISTIC_CONCURRENCY setting).
+ */
+public class OptimisticConcurrencyTests extends TestBase {
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+
+        Constants.IS_TEAR_DOWN = false;
+        setUpDescriptorFiles();
+        ls = new LocatorServer(29999, "junitLocator");
+        ls.createNewLocatorFile();
+        ls.start();
+
+        final Properties settings = Settings.defaultSettings();
+        settings.setProperty("RELATION_REPLICATION_FACTOR", "2");
+        settings.setProperty("OPTIMISTIC_CONCURRENCY", "true");
+
+        Settings.saveAsLocalProperties(settings, "jdbc:h2:mem:one");
+        Settings.saveAsLocalProperties(settings, "jdbc:h2:mem:two");
+
+        org.h2.Driver.load();
+
+        ca = DriverManager.getConnection("jdbc:h2:sm:mem:one", PersistentSystemTable.USERNAME, PersistentSystemTable.PASSWORD);
+        cb = DriverManager.getConnection("jdbc:h2:mem:two", PersistentSystemTable.USERNAME, PersistentSystemTable.PASSWORD);
+
+        sa = ca.createStatement();
+        sb = cb.createStatement();
+    }
+
+    /**
+     * An instance whose cached replica state is out of date, because another instance has updated the table since, has its optimistic
+     * update rejected by the Table Manager. The update is rolled back and retried with a lock, and the next update from the same instance
+     * is made optimistically again.
+     */
+    @Test
+    public void versionClashIsDetectedAndRetried() throws SQLException {
+
+        final TableProxyCache cacheOnA = getTableProxyCache(ca);
+
+        sa.execute("CREATE TABLE TEST(ID INT PRIMARY KEY, NAME VARCHAR(255));");
+
+        // Each instance's first update is made with a lock, and caches the state of the replicas.
+        sa.execute("INSERT INTO TEST VALUES(1, 'Hello');");
+        sb.execute("INSERT INTO TEST VALUES(2, 'World');");
+
+        assertEquals(0, cacheOnA.getAcceptedOptimisticUpdates());
+        assertEquals(0, cacheOnA.getRejectedOptimisticUpdates());
+
+        // The second instance's update has made the first instance's cached update IDs out of date.
+        sa.execute("INSERT INTO TEST VALUES(3, 'Clash');");
+        assertEquals(1, sa.getUpdateCount());
+
+        assertEquals(0, cacheOnA.getAcceptedOptimisticUpdates());
+        assertEquals(1, cacheOnA.getRejectedOptimisticUpdates());
+
+        // The retry refreshed the cache, so this update is accepted.
+        sa.execute("INSERT INTO TEST VALUES(4, 'Optimistic');");
+
+        assertEquals(1, cacheOnA.getAcceptedOptimisticUpdates());
+        assertEquals(1, cacheOnA.getRejectedOptimisticUpdates());
+
+        final int[] pKey = {1, 2, 3, 4};
+        final String[] secondCol = {"Hello", "World", "Clash", "Optimistic"};
+
+        validateOnFirstMachine("TEST", pKey, secondCol);
+        validateOnSecondMachine("TEST", pKey, secondCol);
+    }
+
+    /**
+     * Updates made optimistically from two instances in turn are each rejected once the other instance has updated the table, and every
+     * update still reaches both replicas.
+     */
+    @Test
+    public void alternatingUpdatesFromTwoInstances() throws SQLException {
+
+        final TableProxyCache cacheOnA = getTableProxyCache(ca);
+        final TableProxyCache cacheOnB = getTableProxyCache(cb);
+
+        sa.execute("CREATE TABLE TEST(ID INT PRIMARY KEY, NAME VARCHAR(255));");
+        sa.execute("INSERT INTO TEST VALUES(1, 'Hello');");
+        sb.execute("INSERT INTO TEST VALUES(2, 'World');");
+
+        for (int id = 3; id < 9; id++) {
+            (id % 2 == 1 ? sa : sb).execute("INSERT INTO TEST VALUES(" + id + ", 'Alternating');");
+        }
+
+        assertEquals(3, cacheOnA.getRejectedOptimisticUpdates());
+        assertEquals(3, cacheOnB.getRejectedOptimisticUpdates());
+        assertEquals(0, cacheOnA.getAcceptedOptimisticUpdates() + cacheOnB.getAcceptedOptimisticUpdates());
+
+        final int[] pKey = {1, 2, 3, 4, 5, 6, 7, 8};
+        final String[] secondCol = {"Hello", "World", "Alternating", "Alternating", "Alternating", "Alternating", "Alternating", "Alternating"};
+
+        validateOnFirstMachine("TEST", pKey, secondCol);
+        validateOnSecondMachine("TEST", pKey, secondCol);
+    }
+
+    private static TableProxyCache getTableProxyCache(final Connection connection) {
+
+        return ((Session) ((JdbcConnection) connection).getSession()).getDatabase().getTableProxyCache();
+    }
+}
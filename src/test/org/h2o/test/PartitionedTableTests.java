@@ -0,0 +1,241 @@
+/*
+ * Copyright (C) 2009-2010 School of Computer Science, University of St Andrews. All rights reserved. Project Homepage:
+ * http://blogs.cs.st-andrews.ac.uk/h2o H2O is free software: you can redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version. H2O
+ * is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details. You should have received a copy of the GNU General
+ * Public License along with H2O. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.h2o.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.h2o.test.fixture.MultiProcessTestBase;
+import org.junit.Test;
+
+/**
+ * Tests of horizontally partitioned tables.
+ *
+ * @author Angus Macdonald (angus@cs.st-andrews.ac.uk)
+ */
+public class PartitionedTableTests extends MultiProcessTestBase {
+
+    /**
+     * Tests that rows inserted into a hash partitioned table are spread across its partitions, and can be read from any machine.
+     *
+     * @throws InterruptedException
+     * @throws SQLException
+     */
+    @Test(timeout = 60000)
+    public void hashPartitionedInsertAndScan() throws InterruptedException, SQLException {
+
+        executeUpdateOnNthMachine("CREATE TABLE TEST(ID INT PRIMARY KEY, NAME VARCHAR(255)) PARTITION BY HASH(ID) PARTITIONS 3;", 0);
+
+        sleep(1000);
+
+        executeUpdateOnNthMachine("INSERT INTO TEST VALUES(1, 'Hello'), (2, 'World'), (3, 'Three'), (4, 'Four'), (5, 'Five'), (6, 'Six');", 0);
+
+        assertEquals(6, countRows(connections[0], "SELECT * FROM TEST;"));
+        assertEquals(6, countRows(connections[1], "SELECT * FROM TEST;"));
+
+        final int rowsInPartitions = countRows(connections[0], "SELECT * FROM TEST_P0;") + countRows(connections[0], "SELECT * FROM TEST_P1;") + countRows(connections[0], "SELECT * FROM TEST_P2;");
+        assertEquals(6, rowsInPartitions);
+    }
+
+    /**
+     * Tests that a query on the partition column only returns rows from the partition holding that value.
+     *
+     * @throws InterruptedException
+     * @throws SQLException
+     */
+    @Test(timeout = 60000)
+    public void pointQueryOnRangePartitionedTable() throws InterruptedException, SQLException {
+
+        executeUpdateOnNthMachine("CREATE TABLE TEST(ID INT PRIMARY KEY, NAME VARCHAR(255)) PARTITION BY RANGE(ID) VALUES LESS THAN (10, 20);", 0);
+
+        sleep(1000);
+
+        executeUpdateOnNthMachine("INSERT INTO TEST VALUES(1, 'Hello'), (15, 'World'), (25, 'Three');", 1);
+
+        assertEquals(1, countRows(connections[0], "SELECT * FROM TEST_P0;"));
+        assertEquals(1, countRows(connections[0], "SELECT * FROM TEST_P1;"));
+        assertEquals(1, countRows(connections[0], "SELECT * FROM TEST_P2;"));
+
+        assertEquals(1, countRows(connections[2], "SELECT * FROM TEST WHERE ID = 15;"));
+        assertEquals(2, countRows(connections[2], "SELECT * FROM TEST WHERE ID > 5;"));
+    }
+
+    /**
+     * Tests updates and deletes on a partitioned table, and that the partition column can't be updated.
+     *
+     * @throws InterruptedException
+     * @throws SQLException
+     */
+    @Test(timeout = 60000)
+    public void updateAndDeleteOnPartitionedTable() throws InterruptedException, SQLException {
+
+        executeUpdateOnNthMachine("CREATE TABLE TEST(ID INT PRIMARY KEY, NAME VARCHAR(255)) PARTITION BY HASH(ID) PARTITIONS 2;", 0);
+
+        sleep(1000);
+
+        executeUpdateOnNthMachine("INSERT INTO TEST VALUES(1, 'Hello'), (2, 'World'), (3, 'Three');", 0);
+
+        executeUpdateOnNthMachine("UPDATE TEST SET NAME = 'Changed' WHERE ID = 2;", 1);
+        executeUpdateOnNthMachine("UPDATE TEST SET NAME = 'All';", 1);
+        executeUpdateOnNthMachine("DELETE FROM TEST WHERE ID = 3;", 1);
+
+        assertEquals(2, countRows(connections[0], "SELECT * FROM TEST WHERE NAME = 'All';"));
+
+        try {
+            executeUpdateOnNthMachine("UPDATE TEST SET ID = 4 WHERE ID = 1;", 0);
+            fail("The partition column shouldn't be updatable.");
+        }
+        catch (final SQLException e) {
+            // Expected.
+        }
+    }
+
+    /**
+     * Tests that an insert which omits the partition column, or gives it as DEFAULT, is rejected rather than put in the first partition.
+     *
+     * @throws InterruptedException
+     * @throws SQLException
+     */
+    @Test(timeout = 60000)
+    public void insertWithoutPartitionKeyIsRejected() throws InterruptedException, SQLException {
+
+        executeUpdateOnNthMachine("CREATE TABLE TEST(ID INT DEFAULT 15, NAME VARCHAR(255)) PARTITION BY RANGE(ID) VALUES LESS THAN (10);", 0);
+
+        sleep(1000);
+
+        try {
+            executeUpdateOnNthMachine("INSERT INTO TEST(NAME) VALUES('Hello');", 0);
+            fail("An insert without the partition column should be rejected.");
+        }
+        catch (final SQLException e) {
+            // Expected.
+        }
+
+        try {
+            executeUpdateOnNthMachine("INSERT INTO TEST VALUES(DEFAULT, 'Hello');", 1);
+            fail("An insert with a default partition key should be rejected.");
+        }
+        catch (final SQLException e) {
+            // Expected.
+        }
+
+        executeUpdateOnNthMachine("INSERT INTO TEST VALUES(15, 'Hello');", 1);
+
+        assertEquals(0, countRows(connections[0], "SELECT * FROM TEST_P0;"));
+        assertEquals(1, countRows(connections[0], "SELECT * FROM TEST_P1;"));
+    }
+
+    /**
+     * Tests that dropping a partitioned table drops all of its partitions.
+     *
+     * @throws InterruptedException
+     * @throws SQLException
+     */
+    @Test(timeout = 60000)
+    public void dropPartitionedTable() throws InterruptedException, SQLException {
+
+        executeUpdateOnNthMachine("CREATE TABLE TEST(ID INT PRIMARY KEY, NAME VARCHAR(255)) PARTITION BY HASH(ID) PARTITIONS 2;", 0);
+
+        sleep(1000);
+
+        executeUpdateOnNthMachine("DROP TABLE TEST;", 1);
+
+        try {
+            countRows(connections[0], "SELECT * FROM TEST_P0;");
+            fail("The partition should have been dropped.");
+        }
+        catch (final SQLException e) {
+            // Expected.
+        }
+
+        executeUpdateOnNthMachine("CREATE TABLE TEST(ID INT PRIMARY KEY, NAME VARCHAR(255));", 0);
+    }
+
+    /**
+     * Tests that a grouped query over a partitioned table is evaluated by merging partial aggregates from each partition, and gives the
+     * same results as reading every row.
+     *
+     * @throws InterruptedException
+     * @throws SQLException
+     */
+    @Test(timeout = 60000)
+    public void distributedAggregationOnPartitionedTable() throws InterruptedException, SQLException {
+
+        executeUpdateOnNthMachine("CREATE TABLE TEST(ID INT PRIMARY KEY, REGION VARCHAR(255), X INT) PARTITION BY HASH(ID) PARTITIONS 3;", 0);
+
+        sleep(1000);
+
+        executeUpdateOnNthMachine("INSERT INTO TEST VALUES(1, 'North', 10), (2, 'North', 20), (3, 'South', 5), (4, 'South', 7), (5, 'South', 9), (6, 'East', NULL);", 0);
+
+        final Statement statement = connections[1].createStatement();
+
+        try {
+            ResultSet rs = statement.executeQuery("EXPLAIN SELECT REGION, SUM(X) FROM TEST GROUP BY REGION;");
+            rs.next();
+            assertTrue(rs.getString(1).contains("distributed aggregation"));
+            rs.close();
+
+            rs = statement.executeQuery("SELECT REGION, COUNT(*), COUNT(X), SUM(X), MIN(X), MAX(X), AVG(X) FROM TEST GROUP BY REGION HAVING COUNT(*) > 1 ORDER BY REGION;");
+
+            assertTrue(rs.next());
+            assertEquals("North", rs.getString(1));
+            assertEquals(2, rs.getLong(2));
+            assertEquals(2, rs.getLong(3));
+            assertEquals(30, rs.getLong(4));
+            assertEquals(10, rs.getInt(5));
+            assertEquals(20, rs.getInt(6));
+            assertEquals(15, rs.getInt(7));
+
+            assertTrue(rs.next());
+            assertEquals("South", rs.getString(1));
+            assertEquals(3, rs.getLong(2));
+            assertEquals(21, rs.getLong(4));
+            assertEquals(7, rs.getInt(7));
+
+            assertFalse(rs.next());
+            rs.close();
+
+            rs = statement.executeQuery("SELECT COUNT(*), SUM(X) FROM TEST WHERE X > 6;");
+            rs.next();
+            assertEquals(4, rs.getLong(1));
+            assertEquals(46, rs.getLong(2));
+            rs.close();
+        }
+        finally {
+            statement.close();
+        }
+    }
+
+    private int countRows(final Connection connection, final String sql) throws SQLException {
+
+        final Statement statement = connection.createStatement();
+
+        try {
+            final ResultSet rs = statement.executeQuery(sql);
+
+            int rows = 0;
+            while (rs.next()) {
+                rows++;
+            }
+            rs.close();
+
+            return rows;
+        }
+        finally {
+            statement.close();
+        }
+    }
+}
@@ -10,6 +10,8 @@ package org.h2o.test;
 
 import static org.junit.Assert.fail;
 
+import java.io.File;
+import java.io.FileWriter;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.ResultSet;
@@ -722,4 +724,125 @@ public class ReplicaTests extends TestBase {
         }
     }
 
+    /**
+     * Tests that BULK LOAD loads a CSV file into every replica of a table, and that the table can be updated normally afterwards.
+     */
+    @Test
+    public void bulkLoad() {
+
+        final File csvFile = new File("db_data/unittests/bulk_load_test.csv");
+
+        try {
+            createReplicaOnB();
+
+            csvFile.getParentFile().mkdirs();
+
+            final FileWriter writer = new FileWriter(csvFile);
+            try {
+                writer.write("ID,NAME\n3,Bulk\n4,Loaded\n5,Rows\n");
+            }
+            finally {
+                writer.close();
+            }
+
+            sa.executeUpdate("BULK LOAD INTO TEST FROM '" + csvFile.getPath() + "'");
+
+            final int[] pKey = {1, 2, 3, 4, 5};
+            final String[] secondCol = {"Hello", "World", "Bulk", "Loaded", "Rows"};
+
+            validateOnFirstMachine("TEST", pKey, secondCol);
+            validateOnSecondMachine("TEST", pKey, secondCol);
+
+            sb.executeUpdate("INSERT INTO TEST VALUES(6, 'After');");
+
+            validateOnFirstMachine("TEST", new int[]{1, 2, 3, 4, 5, 6}, new String[]{"Hello", "World", "Bulk", "Loaded", "Rows", "After"});
+        }
+        catch (final Exception e) {
+            e.printStackTrace();
+            fail("An Unexpected Exception was thrown.");
+        }
+        finally {
+            csvFile.delete();
+        }
+    }
+
+    /**
+     * Tests that BULK LOAD is refused to a user without the right to insert into the table, and that no replica is changed.
+     */
+    @Test
+    public void bulkLoadNeedsTheRightToInsert() {
+
+        final File csvFile = new File("db_data/unittests/bulk_load_test.csv");
+
+        try {
+            createReplicaOnB();
+
+            csvFile.getParentFile().mkdirs();
+
+            final FileWriter writer = new FileWriter(csvFile);
+            try {
+                writer.write("ID,NAME\n3,Bulk\n");
+            }
+            finally {
+                writer.close();
+            }
+
+            sa.execute("CREATE USER READER PASSWORD 'reader';");
+            sa.execute("GRANT SELECT ON TEST TO READER;");
+
+            final Connection reader = DriverManager.getConnection("jdbc:h2:sm:mem:one", "READER", "reader");
+            try {
+                reader.createStatement().executeUpdate("BULK LOAD INTO TEST FROM '" + csvFile.getPath() + "'");
+                fail("BULK LOAD should need the right to insert.");
+            }
+            catch (final SQLException e) {
+                // Expected.
+            }
+            finally {
+                reader.close();
+            }
+
+            final int[] pKey = {1, 2};
+            final String[] secondCol = {"Hello", "World"};
+
+            validateOnFirstMachine("TEST", pKey, secondCol);
+            validateOnSecondMachine("TEST", pKey, secondCol);
+        }
+        catch (final Exception e) {
+            e.printStackTrace();
+            fail("An Unexpected Exception was thrown.");
+        }
+        finally {
+            csvFile.delete();
+        }
+    }
+
+    /**
+     * Tests that the values given to an IDENTITY column are the same on every replica of the table, wherever the rows are inserted.
+     */
+    @Test
+    public void identityValuesAreReplicated() {
+
+        try {
+            sa.execute("CREATE TABLE IDTEST(ID IDENTITY, NAME VARCHAR(255));");
+            sa.execute("INSERT INTO IDTEST(NAME) VALUES('Hello');");
+            sa.execute("INSERT INTO IDTEST(NAME) VALUES('World');");
+
+            createReplicaOnB("IDTEST");
+
+            sa.execute("INSERT INTO IDTEST(NAME) VALUES('Generated');");
+            sb.execute("INSERT INTO IDTEST(NAME) VALUES('Remotely');");
+
+            final int[] pKey = {1, 2, 3, 4};
+            final String[] secondCol = {"Hello", "World", "Generated", "Remotely"};
+
+            validateOnFirstMachine("IDTEST", pKey, secondCol);
+            validateOnSecondMachine("IDTEST", pKey, secondCol);
+        }
+        catch (final Exception e) {
+            e.printStackTrace();
+            fail("An Unexpected Exception was thrown.");
+        }
+    }
+
 }
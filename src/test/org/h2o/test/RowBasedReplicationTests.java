@@ -0,0 +1,321 @@
+package org.h2o.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.h2.api.Trigger;
+import org.h2.engine.Constants;
+import org.h2o.autonomic.settings.Settings;
+import org.h2o.db.manager.PersistentSystemTable;
+import org.h2o.locator.server.LocatorServer;
+import org.h2o.test.fixture.TestBase;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of row-based replication, where the rows changed by a statement are sent to the other replicas rather than the statement (see the
+ * ROW_BASED_REPLICATION setting).
+ */
+public class RowBasedReplicationTests extends TestBase {
+
+    /**
+     * The most rows a statement may change and still have them sent to the other replica.
+     */
+    private static final int LIMIT = 10;
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+
+        Constants.IS_TEAR_DOWN = false;
+        setUpDescriptorFiles();
+        ls = new LocatorServer(29999, "junitLocator");
+        ls.createNewLocatorFile();
+        ls.start();
+
+        final Properties settings = Settings.defaultSettings();
+        settings.setProperty("RELATION_REPLICATION_FACTOR", "2");
+        settings.setProperty("ROW_BASED_REPLICATION", "true");
+        settings.setProperty("ROW_BASED_REPLICATION_LIMIT", Integer.toString(LIMIT));
+
+        Settings.saveAsLocalProperties(settings, "jdbc:h2:mem:one");
+        Settings.saveAsLocalProperties(settings, "jdbc:h2:mem:two");
+
+        org.h2.Driver.load();
+
+        ca = DriverManager.getConnection("jdbc:h2:sm:mem:one", PersistentSystemTable.USERNAME, PersistentSystemTable.PASSWORD);
+        cb = DriverManager.getConnection("jdbc:h2:mem:two", PersistentSystemTable.USERNAME, PersistentSystemTable.PASSWORD);
+
+        sa = ca.createStatement();
+        sb = cb.createStatement();
+    }
+
+    /**
+     * Inserts, updates and deletes executed on an instance with a replica are applied to the other replica.
+     */
+    @Test
+    public void changesAreReplicated() {
+
+        try {
+            sa.execute("CREATE TABLE TEST(ID INT PRIMARY KEY, NAME VARCHAR(255));");
+            sa.execute("INSERT INTO TEST VALUES(1, 'Hello');");
+            sa.execute("INSERT INTO TEST VALUES(2, 'World');");
+            sa.execute("INSERT INTO TEST VALUES(3, 'Hello World');");
+
+            sa.execute("UPDATE TEST SET NAME = 'Changed' WHERE ID = 2;");
+            assertEquals(1, sa.getUpdateCount());
+
+            sa.execute("DELETE FROM TEST WHERE ID = 3;");
+            assertEquals(1, sa.getUpdateCount());
+
+            final int[] pKey = {1, 2};
+            final String[] secondCol = {"Hello", "Changed"};
+
+            validateOnFirstMachine("TEST", pKey, secondCol);
+            validateOnSecondMachine("TEST", pKey, secondCol);
+        }
+        catch (final SQLException e) {
+            e.printStackTrace();
+            fail("An Unexpected Exception was thrown.");
+        }
+    }
+
+    /**
+     * A non-deterministic update leaves both replicas with the same values, because it is only executed once.
+     */
+    @Test
+    public void nonDeterministicUpdateIsReplicated() {
+
+        try {
+            sa.execute("CREATE TABLE TEST(ID INT PRIMARY KEY, NAME VARCHAR(255));");
+            sa.execute("INSERT INTO TEST VALUES(1, 'Hello'), (2, 'World');");
+
+            sa.execute("UPDATE TEST SET NAME = CAST(RAND() AS VARCHAR);");
+            assertEquals(2, sa.getUpdateCount());
+
+            assertReplicasMatch(2);
+        }
+        catch (final SQLException e) {
+            e.printStackTrace();
+            fail("An Unexpected Exception was thrown.");
+        }
+    }
+
+    /**
+     * A non-deterministic update executed on the second instance, which holds a replica but not the System Table or the Table Manager, is
+     * also executed once and applied to the first instance's replica.
+     */
+    @Test
+    public void updateFromSecondInstanceIsReplicated() {
+
+        try {
+            sa.execute("CREATE TABLE TEST(ID INT PRIMARY KEY, NAME VARCHAR(255));");
+            sa.execute("INSERT INTO TEST VALUES(1, 'Hello'), (2, 'World');");
+
+            sb.execute("INSERT INTO TEST VALUES(3, 'Second');");
+            sb.execute("UPDATE TEST SET NAME = CAST(RAND() AS VARCHAR);");
+            assertEquals(3, sb.getUpdateCount());
+
+            sb.execute("DELETE FROM TEST WHERE ID = 1;");
+            assertEquals(1, sb.getUpdateCount());
+
+            assertReplicasMatch(2);
+        }
+        catch (final SQLException e) {
+            e.printStackTrace();
+            fail("An Unexpected Exception was thrown.");
+        }
+    }
+
+    /**
+     * Changed rows of a table without a primary key are found through its unique index, so a non-deterministic update is still executed
+     * once.
+     */
+    @Test
+    public void tableWithUniqueIndexIsReplicatedByRow() {
+
+        try {
+            sa.execute("CREATE TABLE TEST(ID INT UNIQUE, NAME VARCHAR(255));");
+            sa.execute("INSERT INTO TEST VALUES(1, 'Hello'), (2, 'World');");
+
+            sa.execute("UPDATE TEST SET NAME = CAST(RAND() AS VARCHAR);");
+            assertEquals(2, sa.getUpdateCount());
+
+            assertReplicasMatch(2);
+        }
+        catch (final SQLException e) {
+            e.printStackTrace();
+            fail("An Unexpected Exception was thrown.");
+        }
+    }
+
+    /**
+     * A table with no primary key or unique index is replicated by statement, including rows that are exact duplicates.
+     */
+    @Test
+    public void tableWithoutUniqueIndexIsReplicatedByStatement() {
+
+        try {
+            sa.execute("CREATE TABLE TEST(ID INT, NAME VARCHAR(255));");
+            sa.execute("INSERT INTO TEST VALUES(1, 'Hello'), (2, 'World'), (2, 'World'), (3, 'Hello World');");
+
+            sa.execute("UPDATE TEST SET NAME = 'Changed' WHERE ID = 2;");
+            assertEquals(2, sa.getUpdateCount());
+
+            sa.execute("DELETE FROM TEST WHERE ID = 3;");
+            assertEquals(1, sa.getUpdateCount());
+
+            final int[] pKey = {1, 2, 2};
+            final String[] secondCol = {"Hello", "Changed", "Changed"};
+
+            validateOnFirstMachine("TEST", pKey, secondCol);
+            validateOnSecondMachine("TEST", pKey, secondCol);
+        }
+        catch (final SQLException e) {
+            e.printStackTrace();
+            fail("An Unexpected Exception was thrown.");
+        }
+    }
+
+    /**
+     * A table with a trigger is replicated by statement, because applying rows doesn't fire triggers. The trigger, which only exists on the
+     * instance it was created on, fires once for each row changed there.
+     */
+    @Test
+    public void tableWithTriggerIsReplicatedByStatement() {
+
+        try {
+            sa.execute("CREATE TABLE TEST(ID INT PRIMARY KEY, NAME VARCHAR(255));");
+            sa.execute("CREATE TRIGGER COUNT_CHANGES AFTER INSERT ON TEST FOR EACH ROW CALL \"" + CountingTrigger.class.getName() + "\";");
+
+            CountingTrigger.FIRED.set(0);
+
+            sa.execute("INSERT INTO TEST VALUES(1, 'Hello');");
+            sa.execute("INSERT INTO TEST VALUES(2, 'World');");
+            sa.execute("UPDATE TEST SET NAME = 'Changed' WHERE ID = 2;");
+
+            assertEquals(2, CountingTrigger.FIRED.get());
+
+            final int[] pKey = {1, 2};
+            final String[] secondCol = {"Hello", "Changed"};
+
+            validateOnFirstMachine("TEST", pKey, secondCol);
+            validateOnSecondMachine("TEST", pKey, secondCol);
+        }
+        catch (final SQLException e) {
+            e.printStackTrace();
+            fail("An Unexpected Exception was thrown.");
+        }
+    }
+
+    /**
+     * A table with a CLOB column is replicated by statement, because large objects aren't sent with the changed rows.
+     */
+    @Test
+    public void tableWithLargeObjectIsReplicatedByStatement() {
+
+        try {
+            sa.execute("CREATE TABLE TEST(ID INT PRIMARY KEY, NAME CLOB);");
+            sa.execute("INSERT INTO TEST VALUES(1, 'Hello');");
+            sa.execute("INSERT INTO TEST VALUES(2, 'World');");
+
+            sa.execute("UPDATE TEST SET NAME = 'Changed' WHERE ID = 2;");
+            assertEquals(1, sa.getUpdateCount());
+
+            final int[] pKey = {1, 2};
+            final String[] secondCol = {"Hello", "Changed"};
+
+            validateOnFirstMachine("TEST", pKey, secondCol);
+            validateOnSecondMachine("TEST", pKey, secondCol);
+        }
+        catch (final SQLException e) {
+            e.printStackTrace();
+            fail("An Unexpected Exception was thrown.");
+        }
+    }
+
+    /**
+     * A statement that changes more rows than the limit is undone and replicated by statement instead, so its changes are made exactly once
+     * on each replica.
+     */
+    @Test
+    public void changesOverTheLimitAreReplicatedByStatement() {
+
+        try {
+            sa.execute("CREATE TABLE TEST(ID INT PRIMARY KEY, NAME VARCHAR(255));");
+
+            final int rows = LIMIT * 2;
+            for (int i = 1; i <= rows; i++) {
+                sa.execute("INSERT INTO TEST VALUES(" + i + ", 'Row');");
+            }
+
+            sa.execute("UPDATE TEST SET NAME = NAME || '+';");
+            assertEquals(rows, sa.getUpdateCount());
+
+            final int[] pKey = new int[rows];
+            final String[] secondCol = new String[rows];
+            for (int i = 0; i < rows; i++) {
+                pKey[i] = i + 1;
+                secondCol[i] = "Row+";
+            }
+
+            validateOnFirstMachine("TEST", pKey, secondCol);
+            validateOnSecondMachine("TEST", pKey, secondCol);
+        }
+        catch (final SQLException e) {
+            e.printStackTrace();
+            fail("An Unexpected Exception was thrown.");
+        }
+    }
+
+    /**
+     * Check that both replicas of the test table hold the same rows.
+     */
+    private void assertReplicasMatch(final int expectedRows) throws SQLException {
+
+        final ResultSet first = sa.executeQuery("SELECT LOCAL ONLY * FROM TEST ORDER BY ID;");
+        final ResultSet second = sb.executeQuery("SELECT LOCAL ONLY * FROM TEST ORDER BY ID;");
+
+        for (int i = 0; i < expectedRows; i++) {
+            assertTrue(first.next());
+            assertTrue(second.next());
+            assertEquals(first.getInt(1), second.getInt(1));
+            assertEquals(first.getString(2), second.getString(2));
+        }
+
+        assertFalse(first.next());
+        assertFalse(second.next());
+
+        first.close();
+        second.close();
+    }
+
+    /**
+     * Counts the rows it fires for.
+     */
+    public static class CountingTrigger implements Trigger {
+
+        static final AtomicInteger FIRED = new AtomicInteger();
+
+        @Override
+        public void init(final Connection conn, final String schemaName, final String triggerName, final String tableName, final boolean before, final int type) {
+
+            // Nothing to set up.
+        }
+
+        @Override
+        public void fire(final Connection conn, final Object[] oldRow, final Object[] newRow) {
+
+            FIRED.incrementAndGet();
+        }
+    }
+}
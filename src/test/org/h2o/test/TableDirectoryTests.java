@@ -0,0 +1,149 @@
+package org.h2o.test;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Properties;
+
+import org.h2.engine.Constants;
+import org.h2.engine.Session;
+import org.h2.jdbc.JdbcConnection;
+import org.h2o.autonomic.settings.Settings;
+import org.h2o.db.id.TableInfo;
+import org.h2o.db.interfaces.ITableManagerRemote;
+import org.h2o.db.manager.PersistentSystemTable;
+import org.h2o.db.manager.interfaces.ISystemTableReference;
+import org.h2o.locator.server.LocatorServer;
+import org.h2o.test.fixture.TestBase;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of Table Manager lookups answered by the instances holding the table directory (see the TABLE_DIRECTORY_SHARDS setting).
+ */
+public class TableDirectoryTests extends TestBase {
+
+    /**
+     * How long, in milliseconds, the second instance keeps the entries of its part of the table directory.
+     */
+    private static final long EXPIRY = 1000;
+
+    private final TableInfo test = new TableInfo("TEST", "PUBLIC");
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+
+        Constants.IS_TEAR_DOWN = false;
+        setUpDescriptorFiles();
+        ls = new LocatorServer(29999, "junitLocator");
+        ls.createNewLocatorFile();
+        ls.start();
+
+        final Properties settings = Settings.defaultSettings();
+        settings.setProperty("TABLE_DIRECTORY_SHARDS", "2");
+        settings.setProperty("TABLE_DIRECTORY_EXPIRY", Long.toString(EXPIRY));
+
+        Settings.saveAsLocalProperties(settings, "jdbc:h2:mem:one");
+        Settings.saveAsLocalProperties(settings, "jdbc:h2:mem:two");
+
+        org.h2.Driver.load();
+
+        ca = DriverManager.getConnection("jdbc:h2:sm:mem:one", PersistentSystemTable.USERNAME, PersistentSystemTable.PASSWORD);
+        cb = DriverManager.getConnection("jdbc:h2:mem:two", PersistentSystemTable.USERNAME, PersistentSystemTable.PASSWORD);
+
+        sa = ca.createStatement();
+        sb = cb.createStatement();
+
+        sa.execute("CREATE TABLE TEST(ID INT PRIMARY KEY, NAME VARCHAR(255)); INSERT INTO TEST VALUES(1, 'Hello'); INSERT INTO TEST VALUES(2, 'World');");
+    }
+
+    /**
+     * An instance that doesn't hold the System Table finds the Table Manager of a table it hasn't used before.
+     */
+    @Test
+    public void tableManagerIsFound() throws SQLException {
+
+        sb.execute("INSERT INTO TEST VALUES(3, 'Directory');");
+
+        validateOnFirstMachine("TEST", new int[]{1, 2, 3}, new String[]{"Hello", "World", "Directory"});
+    }
+
+    /**
+     * An entry is kept until the System Table invalidates it or it expires, after which the Table Manager is looked up again.
+     */
+    @Test
+    public void entriesAreInvalidatedAndExpire() throws Exception {
+
+        final ISystemTableReference directory = getSystemTableReference(cb);
+
+        final ITableManagerRemote first = directory.lookupInTableDirectory(test);
+        assertNotNull(first);
+        assertSame(first, directory.lookupInTableDirectory(test));
+
+        directory.invalidateTableDirectoryEntry(test);
+
+        final ITableManagerRemote second = directory.lookupInTableDirectory(test);
+        assertNotNull(second);
+        assertNotSame(first, second);
+
+        Thread.sleep(EXPIRY + 100);
+
+        assertNotSame(second, directory.lookupInTableDirectory(test));
+    }
+
+    /**
+     * The System Table tells the instances holding the table directory when a table is dropped, so a table recreated with the same name is
+     * found at its new Table Manager.
+     */
+    @Test
+    public void droppedTableIsForgotten() throws Exception {
+
+        final ISystemTableReference directory = getSystemTableReference(cb);
+
+        sb.execute("INSERT INTO TEST VALUES(3, 'Directory');");
+        assertNotNull(directory.lookupInTableDirectory(test));
+
+        sa.execute("DROP TABLE TEST;");
+
+        // The invalidation is sent in the background, but well before the entry would expire.
+        final long deadline = System.currentTimeMillis() + EXPIRY / 2;
+        while (directory.lookupInTableDirectory(test) != null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertNull(directory.lookupInTableDirectory(test));
+
+        sb.execute("CREATE TABLE TEST(ID INT PRIMARY KEY, NAME VARCHAR(255));");
+        sa.execute("INSERT INTO TEST VALUES(1, 'Recreated');");
+
+        validateOnSecondMachine("TEST", new int[]{1}, new String[]{"Recreated"});
+    }
+
+    /**
+     * An instance whose Table Manager reference is out of date because the Table Manager has moved finds it again.
+     */
+    @Test
+    public void movedTableManagerIsFound() throws SQLException {
+
+        sb.execute("INSERT INTO TEST VALUES(3, 'Before');");
+
+        sb.executeUpdate("MIGRATE TABLEMANAGER test");
+        sb.execute("INSERT INTO TEST VALUES(4, 'Moved');");
+
+        sa.executeUpdate("MIGRATE TABLEMANAGER test");
+        sb.execute("INSERT INTO TEST VALUES(5, 'Back');");
+        sa.execute("INSERT INTO TEST VALUES(6, 'Again');");
+
+        validateOnFirstMachine("TEST", new int[]{1, 2, 3, 4, 5, 6}, new String[]{"Hello", "World", "Before", "Moved", "Back", "Again"});
+    }
+
+    private static ISystemTableReference getSystemTableReference(final Connection connection) {
+
+        return ((Session) ((JdbcConnection) connection).getSession()).getDatabase().getSystemTableReference();
+    }
+}
@@ -284,6 +284,17 @@ public class MultiProcessTestBase extends TestBase {
         properties.saveAndClose();
     }
 
+    /**
+     * Change a setting in the properties file of an instance. The instance must be restarted for the change to take effect.
+     */
+    protected void changeLocalSetting(final int dbName, final String key, final String value) throws IOException {
+
+        final H2OPropertiesWrapper properties = H2OPropertiesWrapper.getWrapper(DatabaseID.parseURL(fullDbName[dbName]));
+        properties.loadProperties();
+        properties.setProperty(key, value);
+        properties.saveAndClose();
+    }
+
     protected String findSystemTableInstance() throws IOException, LocatorException {
 
         return findSystemTableInstances().get(0);
@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2009-2010 School of Computer Science, University of St Andrews. All rights reserved. Project Homepage:
+ * http://blogs.cs.st-andrews.ac.uk/h2o H2O is free software: you can redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version. H2O
+ * is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details. You should have received a copy of the GNU General
+ * Public License along with H2O. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.h2o.test.fixture;
+
+import org.h2o.db.id.DatabaseID;
+import org.h2o.db.id.TableInfo;
+import org.h2o.db.wrappers.DatabaseInstanceWrapper;
+
+/**
+ * The table and instances used by unit tests that don't start a database.
+ */
+public final class UnitTestFixture {
+
+    /**
+     * The full name of the table returned by {@link #createTableInfo()}.
+     */
+    public static final String TABLE_NAME = "PUBLIC.TEST";
+
+    private UnitTestFixture() {
+
+    }
+
+    public static TableInfo createTableInfo() {
+
+        return new TableInfo("TEST", "PUBLIC");
+    }
+
+    /**
+     * @return the ID of the in-memory database with the given name, e.g. jdbc:h2:mem:one.
+     */
+    public static DatabaseID createDatabaseID(final String name) {
+
+        return DatabaseID.parseURL("jdbc:h2:mem:" + name);
+    }
+
+    /**
+     * @return an active instance, with no remote reference, of the in-memory database with the given name.
+     */
+    public static DatabaseInstanceWrapper createInstance(final String name) {
+
+        return new DatabaseInstanceWrapper(createDatabaseID(name), null, true);
+    }
+}